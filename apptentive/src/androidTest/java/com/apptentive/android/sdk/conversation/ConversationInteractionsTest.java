@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2017, Apptentive, Inc. All Rights Reserved.
+ * Please refer to the LICENSE file for the terms and conditions
+ * under which redistribution and use of this file is permitted.
+ */
+
+package com.apptentive.android.sdk.conversation;
+
+import com.apptentive.android.sdk.ApptentiveInternal;
+import com.apptentive.android.sdk.ApptentiveInternalMock;
+import com.apptentive.android.sdk.TestCaseBase;
+import com.apptentive.android.sdk.module.engagement.interaction.model.Interaction;
+import com.apptentive.android.sdk.util.Util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ConversationInteractionsTest extends TestCaseBase {
+	private static final String EVENT_LAUNCH = "local#app#launch";
+
+	private static final String SHARED_INVOCATION = "{\"interaction_id\":\"first_launch\",\"criteria\":{\"code_point/" + EVENT_LAUNCH + "/invokes/total\":{\"$eq\":0}}}";
+
+	private static final String TARGETS = "{" +
+		"\"local#app#a\":[" + SHARED_INVOCATION + "]," +
+		"\"local#app#b\":[" + SHARED_INVOCATION + "]," +
+		"\"local#app#c\":[{\"interaction_id\":\"old_version\",\"criteria\":{\"application/version_code\":{\"$lt\":5}}}," + SHARED_INVOCATION + "]," +
+		"\"local#app#d\":[{\"interaction_id\":\"missing\",\"criteria\":{}}]" +
+		"}";
+
+	private static final String FIRST_LAUNCH_INTERACTION = "{\"id\":\"first_launch\",\"type\":\"TextModal\",\"version\":1,\"configuration\":{}}";
+	private static final String OLD_VERSION_INTERACTION = "{\"id\":\"old_version\",\"type\":\"TextModal\",\"version\":1,\"configuration\":{}}";
+
+	private static final String INTERACTIONS = "{" +
+		"\"first_launch\":" + FIRST_LAUNCH_INTERACTION + "," +
+		"\"old_version\":" + OLD_VERSION_INTERACTION +
+		"}";
+
+	private static final String MANIFEST = "{" +
+		"\"targets\":" + TARGETS + "," +
+		"\"interactions\":[" + FIRST_LAUNCH_INTERACTION + "," + OLD_VERSION_INTERACTION + "]" +
+		"}";
+
+	private static final List<String> EVENT_LABELS = Arrays.asList("local#app#a", "local#app#b", "local#app#c", "local#app#d", "local#app#unknown");
+
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+
+	@Before
+	public void setUp() {
+		super.setUp();
+		ApptentiveInternal.setInstance(new ApptentiveInternalMock() {
+			@Override
+			public int getApplicationVersionCode() {
+				return 10;
+			}
+
+			@Override
+			public String getApplicationVersionName() {
+				return "1.0";
+			}
+		});
+	}
+
+	@After
+	public void tearDown() {
+		super.tearDown();
+		ApptentiveInternal.setInstance(null);
+	}
+
+	@Test
+	public void testCanShowInteractionsMatchesSingleLabel() throws Exception {
+		// "a", "b" and "c" share the same interaction and criteria
+		assertCanShowInteractions(createConversation(), createConversation(), true, true, true, false, false);
+	}
+
+	@Test
+	public void testCanShowInteractionsAfterEvent() throws Exception {
+		Conversation batchConversation = createConversation();
+		Conversation singleConversation = createConversation();
+		storeLaunchEvent(batchConversation);
+		storeLaunchEvent(singleConversation);
+
+		assertCanShowInteractions(batchConversation, singleConversation, false, false, false, false, false);
+	}
+
+	@Test
+	public void testInteractionIndexIsBuiltOncePerManifest() throws Exception {
+		Conversation conversation = new Conversation(tempFolder.newFile(), tempFolder.newFile());
+		conversation.storeInteractionManifest(MANIFEST);
+
+		// pre-parsed interactions are shared by all the lookups until the manifest changes
+		Interaction interaction = conversation.getInteraction("first_launch");
+		assertNotNull(interaction);
+		assertTrue(conversation.canShowInteraction("local#app#a"));
+		assertSame(interaction, conversation.getInteraction("first_launch"));
+		assertSame(interaction, conversation.getApplicableInteraction("local#app#b"));
+
+		// new manifest
+		conversation.storeInteractionManifest(MANIFEST);
+		Interaction newInteraction = conversation.getInteraction("first_launch");
+		assertNotSame(interaction, newInteraction);
+		assertSame(newInteraction, conversation.getApplicableInteraction("local#app#a"));
+
+		// targets are replaced
+		conversation.setTargets("{\"local#app#a\":[{\"interaction_id\":\"old_version\",\"criteria\":{}}]}");
+		assertNotSame(newInteraction, conversation.getInteraction("first_launch"));
+		assertEquals("old_version", conversation.getApplicableInteraction("local#app#a").getId());
+		assertNull(conversation.getApplicableInteraction("local#app#b"));
+
+		// interactions are replaced
+		interaction = conversation.getInteraction("old_version");
+		conversation.setInteractions("{\"old_version\":{\"id\":\"old_version\",\"type\":\"TextModal\",\"version\":2,\"configuration\":{}}}");
+		Interaction replacedInteraction = conversation.getApplicableInteraction("local#app#a");
+		assertNotSame(interaction, replacedInteraction);
+		assertEquals(2, replacedInteraction.getVersion().intValue());
+		assertNull(conversation.getInteraction("first_launch"));
+	}
+
+	//region Helpers
+
+	/**
+	 * Checks the batch results of one conversation against the single label results of another
+	 * one (the conversations don't share the result cache) and the expected values.
+	 */
+	private static void assertCanShowInteractions(Conversation batchConversation, Conversation singleConversation, boolean... expected) {
+		Map<String, Boolean> result = batchConversation.canShowInteractions(EVENT_LABELS);
+		assertEquals(expected.length, result.size());
+		for (int i = 0; i < expected.length; ++i) {
+			String eventLabel = EVENT_LABELS.get(i);
+			assertEquals(eventLabel, expected[i], result.get(eventLabel));
+			assertEquals(eventLabel, singleConversation.canShowInteraction(eventLabel), result.get(eventLabel));
+
+			// cached batch results are the same
+			assertEquals(eventLabel, batchConversation.canShowInteraction(eventLabel), result.get(eventLabel));
+		}
+	}
+
+	private Conversation createConversation() throws IOException {
+		Conversation conversation = new Conversation(tempFolder.newFile(), tempFolder.newFile());
+		conversation.setTargets(TARGETS);
+		conversation.setInteractions(INTERACTIONS);
+		return conversation;
+	}
+
+	private static void storeLaunchEvent(Conversation conversation) {
+		conversation.getEventData().storeEventForCurrentAppVersion(Util.currentTimeSeconds(), 10, "1.0", EVENT_LAUNCH);
+	}
+
+	//endregion
+}
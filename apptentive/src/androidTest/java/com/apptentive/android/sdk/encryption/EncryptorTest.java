@@ -9,12 +9,22 @@ package com.apptentive.android.sdk.encryption;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.SecureRandom;
 import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.crypto.Cipher;
 import javax.crypto.KeyGenerator;
 import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
@@ -22,6 +32,7 @@ public class EncryptorTest {
 
 	private static final int TEST_DATA_SIZE = 8096;
 	private Encryptor encryptor;
+	private SecretKeySpec key;
 	private byte[] testData;
 
 	@Before
@@ -31,6 +42,7 @@ public class EncryptorTest {
 		keyGen.init(256);
 		SecretKey secretKey = keyGen.generateKey();
 		encryptor = new Encryptor(secretKey.getEncoded());
+		key = new SecretKeySpec(secretKey.getEncoded(), "AES");
 
 		// Set up the test data
 		testData = new byte[TEST_DATA_SIZE];
@@ -48,4 +60,133 @@ public class EncryptorTest {
 		assertNotNull(plainText);
 		assertTrue(Arrays.equals(plainText, testData));
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void testEncryptionStream() throws Exception {
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		stream.write(1); // preceding data is not touched
+
+		OutputStream encryptionStream = encryptor.createEncryptionStream(stream);
+		encryptionStream.write(testData, 0, 100);
+		encryptionStream.write(testData, 100, testData.length - 100);
+		encryptionStream.close();
+
+		stream.write(2); // the underlying stream remains open
+
+		byte[] data = stream.toByteArray();
+		assertEquals(1, data[0]);
+		assertEquals(2, data[data.length - 1]);
+		byte[] plainText = encryptor.decrypt(Arrays.copyOfRange(data, 1, data.length - 1));
+		assertTrue(Arrays.equals(plainText, testData));
+	}
+
+	@Test
+	public void testDecryptionStream() throws Exception {
+		byte[] cipherText = encryptor.encrypt(testData);
+
+		InputStream stream = encryptor.createDecryptionStream(new ByteArrayInputStream(cipherText));
+		ByteArrayOutputStream plainText = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1000];
+		int read;
+		while ((read = stream.read(buffer)) != -1) {
+			plainText.write(buffer, 0, read);
+		}
+		stream.close();
+
+		assertTrue(Arrays.equals(plainText.toByteArray(), testData));
+	}
+
+	@Test
+	public void testSharedEncryptor() throws Exception {
+		final int threadCount = 4;
+		final AtomicInteger failures = new AtomicInteger();
+		Thread[] threads = new Thread[threadCount];
+		for (int i = 0; i < threadCount; ++i) {
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						for (int j = 0; j < 100; ++j) {
+							if (!Arrays.equals(encryptor.decrypt(encryptor.encrypt(testData)), testData)) {
+								failures.incrementAndGet();
+							}
+						}
+					} catch (Exception e) {
+						failures.incrementAndGet();
+					}
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(0, failures.get());
+	}
+
+	@Test
+	public void testThroughput() throws Exception {
+		final int[] sizes = { 1024, 100 * 1024, 10 * 1024 * 1024 };
+		final long bytesPerRun = 20 * 1024 * 1024;
+
+		for (int size : sizes) {
+			byte[] data = new byte[size];
+			new Random(size).nextBytes(data);
+			int iterations = (int) Math.max(2, bytesPerRun / size);
+
+			// a new cipher and random generator per operation (the way it used to be done)
+			long start = System.nanoTime();
+			for (int i = 0; i < iterations; ++i) {
+				encryptUncached(data);
+			}
+			long uncachedNanos = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (int i = 0; i < iterations; ++i) {
+				encryptor.encrypt(data);
+			}
+			long cachedNanos = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (int i = 0; i < iterations; ++i) {
+				OutputStream stream = encryptor.createEncryptionStream(new DiscardingOutputStream());
+				stream.write(data);
+				stream.close();
+			}
+			long streamNanos = System.nanoTime() - start;
+
+			System.out.println(String.format("Encrypted %d x %d bytes: uncached %.1f MB/s, cached %.1f MB/s, stream %.1f MB/s",
+				iterations, size, throughput(size, iterations, uncachedNanos), throughput(size, iterations, cachedNanos), throughput(size, iterations, streamNanos)));
+		}
+	}
+
+	//region Helpers
+
+	private byte[] encryptUncached(byte[] plainText) throws Exception {
+		byte[] iv = new byte[16];
+		new SecureRandom().nextBytes(iv);
+		Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+		cipher.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(iv));
+		byte[] cipherText = cipher.doFinal(plainText);
+		byte[] ret = new byte[iv.length + cipherText.length];
+		System.arraycopy(iv, 0, ret, 0, iv.length);
+		System.arraycopy(cipherText, 0, ret, iv.length, cipherText.length);
+		return ret;
+	}
+
+	private static double throughput(int size, int iterations, long nanos) {
+		return (double) size * iterations / (1024 * 1024) / (nanos / 1e9);
+	}
+
+	private static class DiscardingOutputStream extends OutputStream {
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	}
+
+	//endregion
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2017, Apptentive, Inc. All Rights Reserved.
+ * Please refer to the LICENSE file for the terms and conditions
+ * under which redistribution and use of this file is permitted.
+ */
+
+package com.apptentive.android.sdk.model;
+
+import com.apptentive.android.sdk.TestCaseBase;
+import com.apptentive.android.sdk.encryption.Encryptor;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CompoundMessageTest extends TestCaseBase {
+	private static final String ENCRYPTION_KEY = "5C5361D08DA7AD6CD70ACEB572D387BB713A312DE8CE6128B8A42F62A7B381DB";
+	private static final String MIME_TYPE = "application/octet-stream";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private CompoundMessage message;
+
+	@Before
+	public void setUp() {
+		super.setUp();
+		message = new CompoundMessage();
+		message.setBody("Test message");
+	}
+
+	@Test
+	public void testRenderData() throws Exception {
+		byte[] attachment = createData(100 * 1024);
+		message.setAssociatedFiles(createStoredFiles(createFile(attachment)));
+
+		List<byte[]> parts = parseParts(renderData(message));
+		assertEquals(2, parts.size());
+
+		JSONObject json = new JSONObject(getPartText(parts.get(0), "application/json;charset=UTF-8"));
+		assertEquals("Test message", json.getString("body"));
+		assertArrayEquals(attachment, getPartContent(parts.get(1), MIME_TYPE));
+	}
+
+	@Test
+	public void testRenderEncryptedData() throws Exception {
+		byte[] attachment = createData(100 * 1024 + 3); // not aligned with the cipher block size
+		message.setAssociatedFiles(createStoredFiles(createFile(attachment)));
+		message.setToken("token");
+		message.setEncryptionKey(ENCRYPTION_KEY);
+
+		List<byte[]> parts = parseParts(renderData(message));
+		assertEquals(2, parts.size());
+
+		// each part is encrypted and wrapped in a plain text set of headers
+		Encryptor encryptor = new Encryptor(ENCRYPTION_KEY);
+		byte[] messagePart = encryptor.decrypt(getPartContent(parts.get(0), "application/octet-stream"));
+		JSONObject json = new JSONObject(getPartText(messagePart, "application/json;charset=UTF-8"));
+		assertEquals("Test message", json.getString("body"));
+
+		byte[] attachmentPart = encryptor.decrypt(getPartContent(parts.get(1), "application/octet-stream"));
+		assertArrayEquals(attachment, getPartContent(attachmentPart, MIME_TYPE));
+	}
+
+	@Test
+	public void testRenderDataMissingAttachment() throws Exception {
+		byte[] attachment = createData(10);
+		List<StoredFile> storedFiles = createStoredFiles(new File(folder.getRoot(), "missing"), createFile(attachment));
+		message.setAssociatedFiles(storedFiles);
+
+		// missing attachments are skipped
+		List<byte[]> parts = parseParts(renderData(message));
+		assertEquals(2, parts.size());
+		assertArrayEquals(attachment, getPartContent(parts.get(1), MIME_TYPE));
+	}
+
+	@Test
+	public void testRenderDataMatchesStreaming() throws Exception {
+		message.setAssociatedFiles(createStoredFiles(createFile(createData(1024))));
+
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		message.renderData(stream);
+		assertArrayEquals(stream.toByteArray(), message.renderData());
+	}
+
+	//region Helpers
+
+	private static byte[] renderData(CompoundMessage message) throws Exception {
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		message.renderData(stream);
+		return stream.toByteArray();
+	}
+
+	/**
+	 * Splits multipart body into parts (each part starts with its headers)
+	 */
+	private List<byte[]> parseParts(byte[] data) throws IOException {
+		String contentType = message.getHttpRequestContentType();
+		String boundary = contentType.substring(contentType.indexOf("boundary=") + "boundary=".length());
+		byte[] delimiter = ("--" + boundary).getBytes("UTF-8");
+
+		List<byte[]> parts = new ArrayList<>();
+		int start = indexOf(data, delimiter, 0);
+		assertEquals(0, start);
+		while (true) {
+			int contentStart = start + delimiter.length;
+			if (data[contentStart] == '-' && data[contentStart + 1] == '-') {
+				assertEquals(data.length, contentStart + 2); // closing delimiter
+				break;
+			}
+			contentStart += 2; // line end
+			int end = indexOf(data, delimiter, contentStart);
+			assertTrue(end != -1);
+			assertEquals('\r', data[end - 2]);
+			assertEquals('\n', data[end - 1]);
+			parts.add(Arrays.copyOfRange(data, contentStart, end - 2)); // each part is followed by a line end
+			start = end;
+		}
+		return parts;
+	}
+
+	/**
+	 * Returns part content following its headers
+	 */
+	private static byte[] getPartContent(byte[] part, String expectedContentType) throws IOException {
+		byte[] separator = "\r\n\r\n".getBytes("UTF-8");
+		int headersEnd = indexOf(part, separator, 0);
+		assertTrue(headersEnd != -1);
+		String headers = new String(part, 0, headersEnd, "UTF-8");
+		assertTrue(headers, headers.endsWith("Content-Type: " + expectedContentType));
+		return Arrays.copyOfRange(part, headersEnd + separator.length, part.length);
+	}
+
+	private static String getPartText(byte[] part, String expectedContentType) throws IOException {
+		return new String(getPartContent(part, expectedContentType), "UTF-8");
+	}
+
+	private static int indexOf(byte[] data, byte[] pattern, int fromIndex) {
+		outer:
+		for (int i = fromIndex; i <= data.length - pattern.length; ++i) {
+			for (int j = 0; j < pattern.length; ++j) {
+				if (data[i + j] != pattern[j]) {
+					continue outer;
+				}
+			}
+			return i;
+		}
+		return -1;
+	}
+
+	private static List<StoredFile> createStoredFiles(File... files) {
+		List<StoredFile> storedFiles = new ArrayList<>();
+		for (File file : files) {
+			StoredFile storedFile = new StoredFile();
+			storedFile.setSourceUriOrPath(file.getAbsolutePath());
+			storedFile.setLocalFilePath(file.getAbsolutePath());
+			storedFile.setMimeType(MIME_TYPE);
+			storedFiles.add(storedFile);
+		}
+		return storedFiles;
+	}
+
+	private File createFile(byte[] data) throws IOException {
+		File file = folder.newFile();
+		FileOutputStream stream = new FileOutputStream(file);
+		try {
+			stream.write(data);
+		} finally {
+			stream.close();
+		}
+		return file;
+	}
+
+	private static byte[] createData(int length) {
+		byte[] data = new byte[length];
+		new Random(length).nextBytes(data);
+		return data;
+	}
+
+	//endregion
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2017, Apptentive, Inc. All Rights Reserved.
+ * Please refer to the LICENSE file for the terms and conditions
+ * under which redistribution and use of this file is permitted.
+ */
+
+package com.apptentive.android.sdk.module.engagement.interaction.model;
+
+import com.apptentive.android.sdk.conversation.Conversation;
+import com.apptentive.android.sdk.module.engagement.logic.FieldContext;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class InteractionIndexTest {
+	private static final String EVENT_LAUNCH = "local#app#launch";
+	private static final double CURRENT_TIME = 1000;
+
+	private static final String TARGETS = "{" +
+		"\"" + EVENT_LAUNCH + "\":[" +
+		"{\"interaction_id\":\"debug_only\",\"criteria\":{\"application/debug\":true}}," +
+		"{\"interaction_id\":\"old_version\",\"criteria\":{\"application/version_code\":{\"$lt\":5}}}," +
+		"{\"interaction_id\":\"first_launch\",\"criteria\":{\"application/version_code\":{\"$gte\":5},\"code_point/" + EVENT_LAUNCH + "/invokes/total\":{\"$eq\":0}}}," +
+		"{\"interaction_id\":\"fallback\",\"criteria\":{\"$not\":{\"application/debug\":true}}}" +
+		"]}";
+
+	private static final String SHARED_INVOCATION = "{\"interaction_id\":\"first_launch\",\"criteria\":{\"code_point/" + EVENT_LAUNCH + "/invokes/total\":{\"$eq\":0}}}";
+
+	private static final String INTERACTIONS = "{" +
+		"\"debug_only\":" + createInteraction("debug_only") + "," +
+		"\"old_version\":" + createInteraction("old_version") + "," +
+		"\"first_launch\":" + createInteraction("first_launch") + "," +
+		"\"fallback\":" + createInteraction("fallback") +
+		"}";
+
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+
+	private Conversation conversation;
+
+	@Before
+	public void setUp() throws IOException {
+		conversation = new Conversation(tempFolder.newFile(), tempFolder.newFile());
+	}
+
+	@Test
+	public void testPruneDropsInvocationsWhichCanNeverMatch() throws Exception {
+		InteractionIndex index = InteractionIndex.compile(TARGETS, INTERACTIONS);
+		assertEquals(4, index.getInvocationCount(EVENT_LAUNCH));
+
+		FieldContext context = createContext(10, false);
+		InteractionIndex prunedIndex = index.prune(context);
+		assertTrue(prunedIndex.isPrunedFor(context));
+		assertFalse(prunedIndex.isPrunedFor(createContext(10, true)));
+		assertFalse(index.isPrunedFor(context));
+
+		// "debug_only" and "old_version" can't match this app release
+		assertEquals(2, prunedIndex.getInvocationCount(EVENT_LAUNCH));
+		assertEquals(4, index.getInvocationCount(EVENT_LAUNCH));
+
+		// the dynamic remainder is still evaluated
+		assertEquals("first_launch", prunedIndex.getApplicableInteractionId(EVENT_LAUNCH, context));
+		conversation.getEventData().storeEventForCurrentAppVersion(CURRENT_TIME, 10, "1.0", EVENT_LAUNCH);
+		assertEquals("fallback", prunedIndex.getApplicableInteractionId(EVENT_LAUNCH, context));
+
+		// pruned interactions are still available by id
+		assertEquals("debug_only", prunedIndex.getInteraction("debug_only").getId());
+	}
+
+	@Test
+	public void testPruneForAnotherRelease() throws Exception {
+		InteractionIndex index = InteractionIndex.compile(TARGETS, INTERACTIONS);
+
+		FieldContext context = createContext(1, true);
+		InteractionIndex prunedIndex = index.prune(context);
+
+		// "first_launch" and "fallback" can't match an old debug release
+		assertEquals(2, prunedIndex.getInvocationCount(EVENT_LAUNCH));
+		assertEquals("debug_only", prunedIndex.getApplicableInteractionId(EVENT_LAUNCH, context));
+	}
+
+	@Test
+	public void testCanShowInteractionsMatchesSingleLabel() throws Exception {
+		// "a", "b" and "c" share the same interaction and criteria
+		String targets = "{" +
+			"\"local#app#a\":[" + SHARED_INVOCATION + "]," +
+			"\"local#app#b\":[" + SHARED_INVOCATION + "]," +
+			"\"local#app#c\":[{\"interaction_id\":\"debug_only\",\"criteria\":{\"application/debug\":true}}," + SHARED_INVOCATION + "]," +
+			"\"local#app#d\":[{\"interaction_id\":\"fallback\",\"criteria\":{\"application/debug\":true}}]" +
+			"}";
+		List<String> eventLabels = Arrays.asList("local#app#a", "local#app#b", "local#app#c", "local#app#d", "local#app#unknown", "local#app#a");
+
+		FieldContext context = createContext(10, false);
+		InteractionIndex index = InteractionIndex.compile(targets, INTERACTIONS);
+		InteractionIndex prunedIndex = index.prune(context);
+
+		assertCanShowInteractions(index, eventLabels, context, true, true, true, false, false);
+		assertCanShowInteractions(prunedIndex, eventLabels, context, true, true, true, false, false);
+
+		conversation.getEventData().storeEventForCurrentAppVersion(CURRENT_TIME, 10, "1.0", EVENT_LAUNCH);
+		assertCanShowInteractions(index, eventLabels, context, false, false, false, false, false);
+		assertCanShowInteractions(prunedIndex, eventLabels, context, false, false, false, false, false);
+	}
+
+	@Test
+	public void testMatchesTargetsWalk() throws Exception {
+		String targets = "{" +
+			"\"" + EVENT_LAUNCH + "\":" + new JSONObject(TARGETS).getJSONArray(EVENT_LAUNCH) + "," +
+			"\"local#app#no_criteria\":[{\"interaction_id\":\"fallback\"},{\"interaction_id\":\"first_launch\",\"criteria\":{}}]," +
+			"\"local#app#or\":[{\"interaction_id\":\"old_version\",\"criteria\":{\"$or\":[{\"application/debug\":true},{\"code_point/" + EVENT_LAUNCH + "/invokes/total\":{\"$gte\":2}}]}}]," +
+			"\"local#app#missing\":[{\"interaction_id\":\"missing\",\"criteria\":{}}]" +
+			"}";
+		String[] eventLabels = { EVENT_LAUNCH, "local#app#no_criteria", "local#app#or", "local#app#missing", "local#app#unknown" };
+		FieldContext[] contexts = { createContext(10, false), createContext(10, true), createContext(1, false), createContext(1, true) };
+
+		InteractionIndex index = InteractionIndex.compile(targets, INTERACTIONS);
+		for (int invokes = 0; invokes < 3; ++invokes) {
+			for (FieldContext context : contexts) {
+				InteractionIndex prunedIndex = index.prune(context);
+				for (String eventLabel : eventLabels) {
+					String expected = getApplicableInteractionId(new Targets(targets), eventLabel, context);
+					assertEquals(eventLabel, expected, index.getApplicableInteractionId(eventLabel, context));
+					assertEquals(eventLabel, expected, prunedIndex.getApplicableInteractionId(eventLabel, context));
+				}
+			}
+			conversation.getEventData().storeEventForCurrentAppVersion(CURRENT_TIME, 10, "1.0", EVENT_LAUNCH);
+		}
+	}
+
+	//region Helpers
+
+	/**
+	 * Walks the invocations the way {@link Targets#getApplicableInteraction(String)} does but
+	 * against a given <code>context</code>.
+	 */
+	private static String getApplicableInteractionId(Targets targets, String eventLabel, FieldContext context) throws JSONException {
+		JSONArray invocations = targets.optJSONArray(eventLabel);
+		if (invocations != null) {
+			for (int i = 0; i < invocations.length(); i++) {
+				Invocation invocation = new Invocation(invocations.getJSONObject(i).toString());
+				if (invocation.isCriteriaMet(context)) {
+					return invocation.getInteractionId();
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Checks the batch results against the single label lookup and the expected values
+	 * (the last label is a duplicate).
+	 */
+	private static void assertCanShowInteractions(InteractionIndex index, List<String> eventLabels, FieldContext context, boolean... expected) {
+		Map<String, Boolean> result = index.canShowInteractions(eventLabels, context);
+		assertEquals(expected.length, result.size());
+		for (int i = 0; i < expected.length; ++i) {
+			String eventLabel = eventLabels.get(i);
+			assertEquals(eventLabel, expected[i], result.get(eventLabel));
+			assertEquals(eventLabel, index.getApplicableInteraction(eventLabel, context) != null, result.get(eventLabel));
+		}
+	}
+
+	private FieldContext createContext(int versionCode, boolean debug) {
+		return new FieldContext(conversation, versionCode, "1.0", debug, CURRENT_TIME);
+	}
+
+	private static String createInteraction(String id) {
+		return "{\"id\":\"" + id + "\",\"type\":\"TextModal\",\"version\":1,\"configuration\":{\"title\":\"" + id + "\"}}";
+	}
+
+	//endregion
+}
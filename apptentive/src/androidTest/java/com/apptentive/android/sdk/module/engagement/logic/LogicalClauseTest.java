@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2017, Apptentive, Inc. All Rights Reserved.
+ * Please refer to the LICENSE file for the terms and conditions
+ * under which redistribution and use of this file is permitted.
+ */
+
+package com.apptentive.android.sdk.module.engagement.logic;
+
+import com.apptentive.android.sdk.conversation.Conversation;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class LogicalClauseTest {
+	private static final String EVENT_LABEL = "local#app#test";
+	private static final double CURRENT_TIME = 1000;
+
+	private static final String STATIC_VERSION_CODE = "{\"application/version_code\":{\"$gte\":10}}";
+	private static final String STATIC_DEBUG = "{\"application/debug\":true}";
+	private static final String DYNAMIC_INVOKES = "{\"code_point/" + EVENT_LABEL + "/invokes/total\":{\"$gt\":0}}";
+
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+
+	private Conversation conversation;
+
+	@Before
+	public void setUp() throws IOException {
+		conversation = new Conversation(tempFolder.newFile(), tempFolder.newFile());
+	}
+
+	@Test
+	public void testConstantClause() {
+		FieldContext context = createContext(10, false);
+
+		assertSame(ConstantClause.TRUE, ConstantClause.valueOf(true));
+		assertSame(ConstantClause.FALSE, ConstantClause.valueOf(false));
+		assertTrue(ConstantClause.TRUE.evaluate(context));
+		assertFalse(ConstantClause.FALSE.evaluate(context));
+		assertSame(ConstantClause.TRUE, ConstantClause.TRUE.partiallyEvaluate(context));
+		assertSame(ConstantClause.FALSE, ConstantClause.FALSE.partiallyEvaluate(context));
+	}
+
+	@Test
+	public void testStaticAnd() throws Exception {
+		String json = "{\"application/version_code\":{\"$gte\":10},\"application/debug\":false}";
+		assertSame(ConstantClause.TRUE, partiallyEvaluate(json, createContext(10, false)));
+		assertSame(ConstantClause.FALSE, partiallyEvaluate(json, createContext(9, false)));
+		assertSame(ConstantClause.FALSE, partiallyEvaluate(json, createContext(10, true)));
+	}
+
+	@Test
+	public void testStaticOr() throws Exception {
+		String json = "{\"$or\":[" + STATIC_VERSION_CODE + "," + STATIC_DEBUG + "]}";
+		assertSame(ConstantClause.TRUE, partiallyEvaluate(json, createContext(10, false)));
+		assertSame(ConstantClause.TRUE, partiallyEvaluate(json, createContext(9, true)));
+		assertSame(ConstantClause.FALSE, partiallyEvaluate(json, createContext(9, false)));
+	}
+
+	@Test
+	public void testStaticNot() throws Exception {
+		String json = "{\"$not\":" + STATIC_DEBUG + "}";
+		assertSame(ConstantClause.TRUE, partiallyEvaluate(json, createContext(10, false)));
+		assertSame(ConstantClause.FALSE, partiallyEvaluate(json, createContext(10, true)));
+	}
+
+	@Test
+	public void testAndWithDynamicClause() throws Exception {
+		String json = "{\"application/version_code\":{\"$gte\":10},\"code_point/" + EVENT_LABEL + "/invokes/total\":{\"$gt\":0}}";
+
+		// a static false child resolves the whole clause
+		assertSame(ConstantClause.FALSE, partiallyEvaluate(json, createContext(9, false)));
+
+		// a static true child is dropped
+		FieldContext context = createContext(10, false);
+		Clause clause = partiallyEvaluate(json, context);
+		assertTrue(clause instanceof ConditionalClause);
+		assertDynamicInvokes(clause, context, true);
+	}
+
+	@Test
+	public void testOrWithDynamicClause() throws Exception {
+		String json = "{\"$or\":[" + STATIC_VERSION_CODE + "," + DYNAMIC_INVOKES + "]}";
+
+		// a static true child resolves the whole clause
+		assertSame(ConstantClause.TRUE, partiallyEvaluate(json, createContext(10, false)));
+
+		// a static false child is dropped
+		FieldContext context = createContext(9, false);
+		Clause clause = partiallyEvaluate(json, context);
+		assertTrue(clause instanceof ConditionalClause);
+		assertDynamicInvokes(clause, context, true);
+	}
+
+	@Test
+	public void testNotWithDynamicClause() throws Exception {
+		String json = "{\"$not\":" + DYNAMIC_INVOKES + "}";
+
+		FieldContext context = createContext(10, false);
+		Clause clause = partiallyEvaluate(json, context);
+		assertTrue(clause instanceof LogicalClause);
+		assertDynamicInvokes(clause, context, false);
+	}
+
+	@Test
+	public void testNestedClauses() throws Exception {
+		String json = "{\"$or\":[{\"$and\":[" + STATIC_VERSION_CODE + "," + STATIC_DEBUG + "]},{\"$not\":" + STATIC_DEBUG + "}]}";
+		assertSame(ConstantClause.TRUE, partiallyEvaluate(json, createContext(10, true)));
+		assertSame(ConstantClause.TRUE, partiallyEvaluate(json, createContext(9, false)));
+		assertSame(ConstantClause.FALSE, partiallyEvaluate(json, createContext(9, true)));
+	}
+
+	@Test
+	public void testNothingIsResolvedWithoutConversation() throws Exception {
+		FieldContext context = new FieldContext(null, 10, "1.0", false, CURRENT_TIME);
+		Clause clause = partiallyEvaluate("{\"$or\":[" + STATIC_VERSION_CODE + "," + STATIC_DEBUG + "]}", context);
+		assertFalse(clause instanceof ConstantClause);
+	}
+
+	//region Helpers
+
+	private FieldContext createContext(int versionCode, boolean debug) {
+		return new FieldContext(conversation, versionCode, "1.0", debug, CURRENT_TIME);
+	}
+
+	private static Clause partiallyEvaluate(String json, FieldContext context) throws Exception {
+		return ClauseParser.parse(json).partiallyEvaluate(context);
+	}
+
+	/**
+	 * Checks that the remaining clause still depends on the event counter.
+	 *
+	 * @param expected - expected value of the clause once the event is invoked
+	 */
+	private void assertDynamicInvokes(Clause clause, FieldContext context, boolean expected) {
+		assertEquals(!expected, clause.evaluate(context));
+		conversation.getEventData().storeEventForCurrentAppVersion(CURRENT_TIME, 10, "1.0", EVENT_LABEL);
+		assertEquals(expected, clause.evaluate(context));
+	}
+
+	//endregion
+}
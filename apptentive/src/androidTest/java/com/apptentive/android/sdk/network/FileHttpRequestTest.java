@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2017, Apptentive, Inc. All Rights Reserved.
+ * Please refer to the LICENSE file for the terms and conditions
+ * under which redistribution and use of this file is permitted.
+ */
+
+package com.apptentive.android.sdk.network;
+
+import com.apptentive.android.sdk.TestCaseBase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FileHttpRequestTest extends TestCaseBase {
+	private static final long TIMEOUT_SECONDS = 30;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private MockHttpServer server;
+	private HttpRequestManager requestManager;
+	private byte[] receivedBody;
+
+	@Before
+	public void setUp() {
+		super.setUp();
+
+		requestManager = new HttpRequestManager();
+		try {
+			server = new MockHttpServer(new MockHttpServer.RequestHandler() {
+				@Override
+				public MockHttpServer.Response handleRequest(String method, String path, byte[] body) throws Exception {
+					receivedBody = body;
+					return new MockHttpServer.Response(201, "{}");
+				}
+			}).start();
+		} catch (Exception e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	@After
+	public void tearDown() {
+		requestManager.cancelAll();
+		server.stop();
+		super.tearDown();
+	}
+
+	@Test
+	public void testStreamFileRegion() throws Exception {
+		byte[] data = createData(3 * 1024 * 1024 + 17);
+		File file = createFile(data);
+
+		int offset = 1024 * 1024 + 3;
+		int length = 2 * 1024 * 1024;
+		sendRequest(file, offset, length);
+
+		// the server reads exactly Content-Length bytes: the body is sent with a fixed length
+		assertResult("finished: 201");
+		assertArrayEquals(Arrays.copyOfRange(data, offset, offset + length), receivedBody);
+	}
+
+	@Test
+	public void testStreamEmptyRegion() throws Exception {
+		File file = createFile(createData(10));
+		sendRequest(file, 10, 0);
+
+		assertResult("finished: 201");
+		assertEquals(0, receivedBody.length);
+	}
+
+	@Test
+	public void testFileRegionOutOfBounds() throws Exception {
+		File file = createFile(createData(100));
+		sendRequest(file, 50, 51);
+
+		assertResult("failed: -1");
+		assertEquals(0, server.getRequestCount());
+	}
+
+	@Test
+	public void testMissingFile() throws Exception {
+		sendRequest(new File(folder.getRoot(), "missing"), 0, 10);
+
+		assertResult("failed: -1");
+		assertEquals(0, server.getRequestCount());
+	}
+
+	//region Helpers
+
+	private void sendRequest(File file, long offset, long length) throws InterruptedException {
+		final CountDownLatch latch = new CountDownLatch(1);
+		HttpRequest request = new FileHttpRequest(server.getUrl() + "/upload", file, offset, length) {
+			@Override
+			protected boolean isNetworkConnectionPresent() {
+				return true;
+			}
+		};
+		request.setRequestManager(requestManager);
+		request.setMethod(HttpRequestMethod.POST);
+		request.setRequestProperty("Content-Type", "application/octet-stream");
+		request.setRetryPolicy(new HttpRequestRetryPolicyDefault() {
+			@Override
+			public boolean shouldRetryRequest(int responseCode, int retryAttempt) {
+				return false;
+			}
+		});
+		request.addListener(new HttpRequest.Adapter<HttpRequest>() {
+			@Override
+			public void onFinish(HttpRequest request) {
+				addResult("finished: %d", request.getResponseCode());
+				latch.countDown();
+			}
+
+			@Override
+			public void onFail(HttpRequest request, String reason) {
+				addResult("failed: %d", request.getResponseCode());
+				latch.countDown();
+			}
+		});
+		requestManager.startRequest(request);
+		assertTrue(latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+	}
+
+	private File createFile(byte[] data) throws IOException {
+		File file = folder.newFile();
+		FileOutputStream stream = new FileOutputStream(file);
+		try {
+			stream.write(data);
+		} finally {
+			stream.close();
+		}
+		return file;
+	}
+
+	private static byte[] createData(int length) {
+		byte[] data = new byte[length];
+		new Random(length).nextBytes(data);
+		return data;
+	}
+
+	//endregion
+}
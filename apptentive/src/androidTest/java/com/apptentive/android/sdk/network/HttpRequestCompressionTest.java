@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2017, Apptentive, Inc. All Rights Reserved.
+ * Please refer to the LICENSE file for the terms and conditions
+ * under which redistribution and use of this file is permitted.
+ */
+
+package com.apptentive.android.sdk.network;
+
+import com.apptentive.android.sdk.TestCaseBase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HttpRequestCompressionTest extends TestCaseBase {
+	private static final long TIMEOUT_SECONDS = 30;
+	private static final long COMPRESSION_THRESHOLD = 1024;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private MockHttpServer server;
+	private HttpRequestManager requestManager;
+	private byte[] receivedBody;
+
+	@Before
+	public void setUp() {
+		super.setUp();
+
+		requestManager = new HttpRequestManager();
+		try {
+			server = new MockHttpServer(new MockHttpServer.RequestHandler() {
+				@Override
+				public MockHttpServer.Response handleRequest(String method, String path, byte[] body) throws Exception {
+					receivedBody = body;
+					return new MockHttpServer.Response(201, "{}");
+				}
+			}).start();
+		} catch (Exception e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	@After
+	public void tearDown() {
+		requestManager.cancelAll();
+		server.stop();
+		super.tearDown();
+	}
+
+	@Test
+	public void testCompressLargeBody() throws Exception {
+		byte[] data = createEventsJson(200);
+		HttpRequest request = sendRequest(createRawRequest(data), COMPRESSION_THRESHOLD);
+
+		assertResult("finished: 201");
+		assertArrayEquals(data, receivedBody);
+
+		// repetitive JSON shrinks a lot on the wire
+		assertEquals(data.length, request.getRequestDataLength());
+		assertEquals(server.getReceivedBodyBytes(), request.getRequestDataBytesSent());
+		assertTrue("Sent " + server.getReceivedBodyBytes() + " of " + data.length + " bytes", server.getReceivedBodyBytes() * 5 < data.length);
+	}
+
+	@Test
+	public void testCompressStreamedBody() throws Exception {
+		byte[] data = createEventsJson(200);
+		File file = createFile(data);
+		HttpRequest request = sendRequest(createFileRequest(file, data.length), COMPRESSION_THRESHOLD);
+
+		assertResult("finished: 201");
+		assertArrayEquals(data, receivedBody);
+		assertEquals(server.getReceivedBodyBytes(), request.getRequestDataBytesSent());
+		assertTrue("Sent " + server.getReceivedBodyBytes() + " of " + data.length + " bytes", server.getReceivedBodyBytes() * 5 < data.length);
+	}
+
+	@Test
+	public void testSmallBodyIsNotCompressed() throws Exception {
+		byte[] data = createEventsJson(1);
+		assertTrue(data.length <= COMPRESSION_THRESHOLD);
+
+		HttpRequest request = sendRequest(createRawRequest(data), COMPRESSION_THRESHOLD);
+
+		assertResult("finished: 201");
+		assertArrayEquals(data, receivedBody);
+		assertEquals(data.length, server.getReceivedBodyBytes());
+		assertEquals(data.length, request.getRequestDataBytesSent());
+	}
+
+	@Test
+	public void testCompressionIsDisabledByDefault() throws Exception {
+		byte[] data = createEventsJson(200);
+		HttpRequest request = sendRequest(createRawRequest(data), -1);
+
+		assertResult("finished: 201");
+		assertArrayEquals(data, receivedBody);
+		assertEquals(data.length, server.getReceivedBodyBytes());
+		assertEquals(data.length, request.getRequestDataBytesSent());
+	}
+
+	//region Helpers
+
+	private HttpRequest sendRequest(HttpRequest request, long compressionThreshold) throws InterruptedException {
+		final CountDownLatch latch = new CountDownLatch(1);
+		request.setRequestManager(requestManager);
+		request.setMethod(HttpRequestMethod.POST);
+		request.setRequestProperty("Content-Type", "application/json");
+		request.setRequestCompressionThreshold(compressionThreshold);
+		request.setRetryPolicy(new HttpRequestRetryPolicyDefault() {
+			@Override
+			public boolean shouldRetryRequest(int responseCode, int retryAttempt) {
+				return false;
+			}
+		});
+		request.addListener(new HttpRequest.Adapter<HttpRequest>() {
+			@Override
+			public void onFinish(HttpRequest request) {
+				addResult("finished: %d", request.getResponseCode());
+				latch.countDown();
+			}
+
+			@Override
+			public void onFail(HttpRequest request, String reason) {
+				addResult("failed: %d", request.getResponseCode());
+				latch.countDown();
+			}
+		});
+		requestManager.startRequest(request);
+		assertTrue(latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+		return request;
+	}
+
+	private HttpRequest createRawRequest(byte[] data) {
+		return new RawHttpRequest(server.getUrl() + "/events", data) {
+			@Override
+			protected boolean isNetworkConnectionPresent() {
+				return true;
+			}
+		};
+	}
+
+	private HttpRequest createFileRequest(File file, long length) {
+		return new FileHttpRequest(server.getUrl() + "/events", file, 0, length) {
+			@Override
+			protected boolean isNetworkConnectionPresent() {
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Creates a JSON array of events with custom data (similar to a payload batch)
+	 */
+	private static byte[] createEventsJson(int count) throws IOException {
+		StringBuilder json = new StringBuilder("[");
+		for (int i = 0; i < count; ++i) {
+			if (i > 0) {
+				json.append(',');
+			}
+			json.append("{\"event\":{\"nonce\":\"").append(String.format("%08x-0000-4000-8000-%012x", i, i)).append("\",")
+				.append("\"label\":\"com.apptentive#app#launch\",")
+				.append("\"client_created_at\":").append(1500000000 + i).append(",")
+				.append("\"client_created_at_utc_offset\":-25200,")
+				.append("\"data\":{\"screen\":\"main\",\"orientation\":\"portrait\",\"network\":\"wifi\"}}}");
+		}
+		json.append(']');
+		return json.toString().getBytes("UTF-8");
+	}
+
+	private File createFile(byte[] data) throws IOException {
+		File file = folder.newFile();
+		FileOutputStream stream = new FileOutputStream(file);
+		try {
+			stream.write(data);
+		} finally {
+			stream.close();
+		}
+		return file;
+	}
+
+	//endregion
+}
@@ -16,11 +16,15 @@ import com.apptentive.android.sdk.model.AppReleasePayload;
 import com.apptentive.android.sdk.model.DevicePayload;
 import com.apptentive.android.sdk.model.EventPayload;
 import com.apptentive.android.sdk.model.Payload;
+import com.apptentive.android.sdk.model.PayloadData;
+import com.apptentive.android.sdk.model.PayloadType;
 import com.apptentive.android.sdk.model.PersonPayload;
 import com.apptentive.android.sdk.model.SdkPayload;
+import com.apptentive.android.sdk.model.SurveyResponsePayload;
 import com.apptentive.android.sdk.module.messagecenter.model.MessageFactory;
 
 import org.json.JSONException;
+import org.json.JSONObject;
 import org.junit.After;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -30,8 +34,20 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 @RunWith(AndroidJUnit4.class)
 public class ApptentiveDatabaseHelperTest {
@@ -56,6 +72,470 @@ public class ApptentiveDatabaseHelperTest {
 		};
 	}
 
+	@Test
+	public void testMigrationFromV4AssignsPriorities() throws Exception {
+		final Context context = InstrumentationRegistry.getContext();
+
+		// payload table as it was in v4
+		getDatabaseFile(context).getParentFile().mkdirs();
+		SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(getDatabaseFile(context), null);
+		try {
+			db.execSQL("CREATE TABLE payload (_id INTEGER PRIMARY KEY, payloadType TEXT, identifier TEXT, contentType TEXT, authToken TEXT," +
+				" conversationId TEXT, requestMethod TEXT, path TEXT, encrypted INTEGER, localConversationId TEXT);");
+			db.execSQL("INSERT INTO payload (payloadType, identifier) VALUES ('message', 'message-nonce');");
+			db.execSQL("INSERT INTO payload (payloadType, identifier) VALUES ('event', 'event-nonce');");
+			db.execSQL("INSERT INTO payload (payloadType, identifier) VALUES ('future_type', 'future-nonce');");
+			db.setVersion(4);
+		} finally {
+			db.close();
+		}
+
+		ApptentiveDatabaseHelper dbHelper = new ApptentiveDatabaseHelper(context);
+		Cursor cursor = null;
+		try {
+			cursor = dbHelper.getReadableDatabase().rawQuery("SELECT priority FROM payload ORDER BY _id", null);
+			List<Integer> priorities = new ArrayList<>();
+			while (cursor.moveToNext()) {
+				assertFalse(cursor.isNull(0));
+				priorities.add(cursor.getInt(0));
+			}
+
+			// unrecognized types get the same priority they're read with
+			assertEquals(Arrays.asList(
+				PayloadSender.getSendPriority(PayloadType.message).ordinal(),
+				PayloadSender.getSendPriority(PayloadType.event).ordinal(),
+				PayloadSender.getSendPriority(PayloadType.unknown).ordinal()
+			), priorities);
+		} finally {
+			if (cursor != null) {
+				cursor.close();
+			}
+			dbHelper.close();
+		}
+	}
+
+	@Test
+	public void testUnsentPayloadsAcrossPrefetchWindows() throws Exception {
+		final Context context = InstrumentationRegistry.getContext();
+		ApptentiveDatabaseHelper dbHelper = new ApptentiveDatabaseHelper(context);
+		try {
+			final int payloadCount = 100; // more than a few prefetch windows
+			List<String> expectedNonces = new ArrayList<>();
+			for (int i = 0; i < payloadCount; ++i) {
+				EventPayload payload = new EventPayload("event-" + i, (JSONObject) null);
+				payload.setConversationId("conversation");
+				payload.setToken("token");
+				payload.setLocalConversationIdentifier("local-conversation");
+				dbHelper.addPayload(payload);
+				expectedNonces.add(payload.getNonce());
+			}
+
+			// read payloads in small chunks and delete them the way the send loop does
+			List<String> actualNonces = new ArrayList<>();
+			List<PayloadData> payloads;
+			boolean addedLatePayload = false;
+			while (!(payloads = dbHelper.getUnsentPayloads(null, 7)).isEmpty()) {
+				assertTrue(payloads.size() <= 7);
+				for (PayloadData payload : payloads) {
+					actualNonces.add(payload.getNonce());
+					dbHelper.deletePayload(payload.getNonce());
+				}
+
+				// payloads added while draining the queue are not lost
+				if (!addedLatePayload && actualNonces.size() >= payloadCount / 2) {
+					addedLatePayload = true;
+					EventPayload payload = new EventPayload("late-event", (JSONObject) null);
+					payload.setConversationId("conversation");
+					payload.setToken("token");
+					payload.setLocalConversationIdentifier("local-conversation");
+					dbHelper.addPayload(payload);
+					expectedNonces.add(payload.getNonce());
+				}
+			}
+
+			assertEquals(expectedNonces, actualNonces);
+			assertTrue(dbHelper.getUnsentPayloads(null, 1).isEmpty());
+		} finally {
+			dbHelper.close();
+		}
+	}
+
+	@Test
+	public void testAddPayloadsGroupCommit() throws Exception {
+		final Context context = InstrumentationRegistry.getContext();
+		ApptentiveDatabaseHelper dbHelper = new ApptentiveDatabaseHelper(context);
+		try {
+			List<Payload> payloads = new ArrayList<>();
+			for (int i = 0; i < 30; ++i) {
+				EventPayload payload = new EventPayload("event-" + i, (JSONObject) null);
+				payload.setConversationId("conversation");
+				payload.setToken("token");
+				payload.setLocalConversationIdentifier("local-conversation");
+				payloads.add(payload);
+			}
+			dbHelper.addPayloads(payloads);
+
+			List<PayloadData> unsentPayloads = dbHelper.getUnsentPayloads(null, 100);
+			assertEquals(payloads.size(), unsentPayloads.size());
+			for (int i = 0; i < payloads.size(); ++i) {
+				assertEquals(payloads.get(i).getNonce(), unsentPayloads.get(i).getNonce());
+			}
+		} finally {
+			dbHelper.close();
+		}
+	}
+
+	@Test
+	public void testPriorityLanes() throws Exception {
+		final Context context = InstrumentationRegistry.getContext();
+		ApptentiveDatabaseHelper dbHelper = new ApptentiveDatabaseHelper(context);
+		try {
+			List<String> events = new ArrayList<>();
+			for (int i = 0; i < 5; ++i) {
+				events.add(addPayload(dbHelper, new EventPayload("event-" + i, (JSONObject) null)));
+			}
+			String person = addPayload(dbHelper, new PersonPayload("{\"custom_data\":{}}"));
+
+			// person update passes the events which were created before
+			List<String> expected = new ArrayList<>();
+			expected.add(person);
+			expected.addAll(events);
+			assertEquals(expected, drainPayloads(dbHelper));
+		} finally {
+			dbHelper.close();
+		}
+	}
+
+	@Test
+	public void testPriorityLanesStarvation() throws Exception {
+		final Context context = InstrumentationRegistry.getContext();
+		ApptentiveDatabaseHelper dbHelper = new ApptentiveDatabaseHelper(context);
+		try {
+			List<String> events = new ArrayList<>();
+			List<String> persons = new ArrayList<>();
+			for (int i = 0; i < 30; ++i) {
+				events.add(addPayload(dbHelper, new EventPayload("event-" + i, (JSONObject) null)));
+			}
+			for (int i = 0; i < 30; ++i) {
+				persons.add(addPayload(dbHelper, new PersonPayload("{\"custom_data\":{}}")));
+			}
+
+			List<String> nonces = drainPayloads(dbHelper);
+			assertEquals(events.size() + persons.size(), nonces.size());
+
+			// events are not waiting until all the person updates are gone
+			assertTrue(nonces.indexOf(events.get(0)) < persons.size());
+
+			// the order is preserved within each lane
+			List<String> actualEvents = new ArrayList<>();
+			List<String> actualPersons = new ArrayList<>();
+			for (String nonce : nonces) {
+				(events.contains(nonce) ? actualEvents : actualPersons).add(nonce);
+			}
+			assertEquals(events, actualEvents);
+			assertEquals(persons, actualPersons);
+		} finally {
+			dbHelper.close();
+		}
+	}
+
+	@Test
+	public void testConversationPartitions() throws Exception {
+		final Context context = InstrumentationRegistry.getContext();
+		ApptentiveDatabaseHelper dbHelper = new ApptentiveDatabaseHelper(context);
+		try {
+			// the first conversation is still waiting for its id
+			for (int i = 0; i < 5; ++i) {
+				EventPayload payload = new EventPayload("pending-event-" + i, (JSONObject) null);
+				payload.setLocalConversationIdentifier("pending-conversation");
+				dbHelper.addPayload(payload);
+			}
+
+			List<String> expected = new ArrayList<>();
+			for (int i = 0; i < 5; ++i) {
+				expected.add(addPayload(dbHelper, new EventPayload("event-" + i, (JSONObject) null)));
+			}
+
+			// payloads of the other conversation are not blocked
+			assertEquals(expected, drainPayloads(dbHelper));
+		} finally {
+			dbHelper.close();
+		}
+	}
+
+	@Test
+	public void testPayloadQueueQuotaDropsOldestEvents() throws Exception {
+		final Context context = InstrumentationRegistry.getContext();
+		ApptentiveDatabaseHelper dbHelper = new ApptentiveDatabaseHelper(context);
+		try {
+			dbHelper.setPayloadQueueQuota(6, Integer.MAX_VALUE);
+
+			List<String> persons = new ArrayList<>();
+			for (int i = 0; i < 3; ++i) {
+				persons.add(addPayload(dbHelper, new PersonPayload("{\"custom_data\":{}}")));
+			}
+			List<String> events = new ArrayList<>();
+			for (int i = 0; i < 5; ++i) {
+				events.add(addPayload(dbHelper, new EventPayload("event-" + i, (JSONObject) null)));
+			}
+
+			// the oldest events make room for the new ones
+			List<String> expected = new ArrayList<>(persons);
+			expected.addAll(events.subList(2, events.size()));
+			assertEquals(expected, drainPayloads(dbHelper));
+			assertEquals(2, dbHelper.getPayloadQueueOverflow().getDroppedCount());
+		} finally {
+			dbHelper.close();
+		}
+	}
+
+	@Test
+	public void testPayloadQueueQuotaKeepsUserPayloads() throws Exception {
+		final Context context = InstrumentationRegistry.getContext();
+		ApptentiveDatabaseHelper dbHelper = new ApptentiveDatabaseHelper(context);
+		try {
+			dbHelper.setPayloadQueueQuota(3, Integer.MAX_VALUE);
+
+			List<String> expected = new ArrayList<>();
+			for (int i = 0; i < 3; ++i) {
+				expected.add(addPayload(dbHelper, new SurveyResponsePayload("{\"nonce\":\"survey-" + i + "\",\"id\":\"survey-" + i + "\",\"answers\":{}}")));
+			}
+
+			// nothing to drop: the new event is dropped
+			addPayload(dbHelper, new EventPayload("event", (JSONObject) null));
+
+			// survey responses are added over the quota
+			expected.add(addPayload(dbHelper, new SurveyResponsePayload("{\"nonce\":\"survey-3\",\"id\":\"survey-3\",\"answers\":{}}")));
+
+			assertEquals(expected, drainPayloads(dbHelper));
+			assertEquals(1, dbHelper.getPayloadQueueOverflow().getDroppedCount());
+			assertEquals(1, dbHelper.getPayloadQueueOverflow().getOverQuotaCount());
+		} finally {
+			dbHelper.close();
+		}
+	}
+
+	@Test
+	public void testPayloadQueueByteQuota() throws Exception {
+		final Context context = InstrumentationRegistry.getContext();
+		ApptentiveDatabaseHelper dbHelper = new ApptentiveDatabaseHelper(context);
+		try {
+			dbHelper.setPayloadQueueQuota(Integer.MAX_VALUE, 1024);
+
+			final int payloadCount = 50;
+			List<String> events = new ArrayList<>();
+			for (int i = 0; i < payloadCount; ++i) {
+				events.add(addPayload(dbHelper, new EventPayload("event-" + i, (JSONObject) null)));
+			}
+
+			// the newest events are kept
+			List<String> nonces = drainPayloads(dbHelper);
+			assertTrue(nonces.size() < payloadCount);
+			assertEquals(events.subList(payloadCount - nonces.size(), payloadCount), nonces);
+			assertEquals(payloadCount - nonces.size(), dbHelper.getPayloadQueueOverflow().getDroppedCount());
+		} finally {
+			dbHelper.close();
+		}
+	}
+
+	@Test
+	public void testPayloadQueueAggregation() throws Exception {
+		final Context context = InstrumentationRegistry.getContext();
+		ApptentiveDatabaseHelper dbHelper = new ApptentiveDatabaseHelper(context);
+		try {
+			dbHelper.setPayloadQueueQuota(3, Integer.MAX_VALUE);
+
+			List<String> expected = new ArrayList<>();
+			addPayload(dbHelper, new EventPayload("event-0", (JSONObject) null));
+			expected.add(addPayload(dbHelper, new EventPayload("event-1", (JSONObject) null)));
+			expected.add(addPayload(dbHelper, new EventPayload("event-2", (JSONObject) null)));
+
+			// the first repeated event drops the oldest one and the rest are added to it
+			expected.add(addPayload(dbHelper, new EventPayload("repeated", (JSONObject) null)));
+			for (int i = 0; i < 4; ++i) {
+				assertEquals(expected.get(2), addPayload(dbHelper, new EventPayload("repeated", (JSONObject) null)));
+			}
+
+			// events with custom data are never aggregated
+			Map<String, Object> customData = new HashMap<>();
+			customData.put("key", "value");
+			expected.remove(0);
+			expected.add(addPayload(dbHelper, new EventPayload("repeated", null, null, customData)));
+
+			PayloadData aggregate = dbHelper.getUnsentPayloads(null, 3).get(1);
+			assertEquals(expected.get(1), aggregate.getNonce());
+			JSONObject json = new JSONObject(new String(aggregate.getData(), "UTF-8")).getJSONObject("event");
+			assertEquals("repeated", json.getString("label"));
+			assertEquals(5, json.getInt("count"));
+
+			assertEquals(expected, drainPayloads(dbHelper));
+			assertEquals(4, dbHelper.getPayloadQueueOverflow().getAggregatedCount());
+			assertEquals(2, dbHelper.getPayloadQueueOverflow().getDroppedCount());
+		} finally {
+			dbHelper.close();
+		}
+	}
+
+	@Test
+	public void testPayloadQueueAggregationMetrics() throws Exception {
+		final Context context = InstrumentationRegistry.getContext();
+		ApptentiveDatabaseHelper dbHelper = new ApptentiveDatabaseHelper(context);
+		try {
+			PayloadMetrics metrics = new PayloadMetrics();
+			dbHelper.setPayloadMetrics(metrics);
+			dbHelper.setPayloadQueueQuota(2, Integer.MAX_VALUE);
+
+			addPayload(dbHelper, metrics, new EventPayload("event-0", (JSONObject) null));
+			String event = addPayload(dbHelper, metrics, new EventPayload("event-1", (JSONObject) null));
+
+			// the first repeated event drops the oldest one and the rest are added to it
+			String aggregate = addPayload(dbHelper, metrics, new EventPayload("repeated", (JSONObject) null));
+			for (int i = 0; i < 3; ++i) {
+				assertEquals(aggregate, addPayload(dbHelper, metrics, new EventPayload("repeated", (JSONObject) null)));
+			}
+			assertEquals(3, dbHelper.getPayloadQueueOverflow().getAggregatedCount());
+
+			// aggregated events are not counted as persisted
+			PayloadMetricsSnapshot snapshot = metrics.snapshot();
+			assertEquals(3, snapshot.getEnqueueLatency().getCount());
+			assertEquals(2, snapshot.getQueueDepth());
+
+			// the aggregate is still tracked until it's sent
+			List<String> nonces = new ArrayList<>();
+			PayloadData payload;
+			while ((payload = dbHelper.getOldestUnsentPayload()) != null) {
+				metrics.onPayloadSendStarted(payload.getNonce());
+				nonces.add(payload.getNonce());
+				dbHelper.deletePayload(payload.getNonce());
+			}
+			assertEquals(Arrays.asList(event, aggregate), nonces);
+			assertEquals(2, metrics.snapshot().getQueueingDelay().getCount());
+		} finally {
+			dbHelper.close();
+		}
+	}
+
+	@Test
+	public void testPayloadQueueQuotaSkipsPayloadsInFlight() throws Exception {
+		final Context context = InstrumentationRegistry.getContext();
+		ApptentiveDatabaseHelper dbHelper = new ApptentiveDatabaseHelper(context);
+		try {
+			dbHelper.setPayloadQueueQuota(3, Integer.MAX_VALUE);
+
+			final List<String> events = new ArrayList<>();
+			for (int i = 0; i < 3; ++i) {
+				events.add(addPayload(dbHelper, new EventPayload("event-" + i, (JSONObject) null)));
+			}
+
+			// the oldest event is being sent
+			EventPayload payload = new EventPayload("event-3", (JSONObject) null);
+			payload.setConversationId("conversation");
+			payload.setToken("token");
+			payload.setLocalConversationIdentifier("local-conversation");
+			dbHelper.addPayloads(Collections.<Payload>singletonList(payload), new ApptentiveDatabaseHelper.PayloadInFlightFilter() {
+				@Override
+				public boolean isInFlight(String nonce) {
+					return nonce.equals(events.get(0));
+				}
+			});
+
+			assertEquals(Arrays.asList(events.get(0), events.get(2), payload.getNonce()), drainPayloads(dbHelper));
+		} finally {
+			dbHelper.close();
+		}
+	}
+
+	@Test
+	public void testPayloadSegmentInFlightIsNotCompacted() throws Exception {
+		final Context context = InstrumentationRegistry.getContext();
+		ApptentiveDatabaseHelper dbHelper = new ApptentiveDatabaseHelper(context);
+		try {
+			final Set<String> inFlightNonces = new HashSet<>();
+			dbHelper.setPayloadInFlightFilter(new ApptentiveDatabaseHelper.PayloadInFlightFilter() {
+				@Override
+				public boolean isInFlight(String nonce) {
+					return inFlightNonces.contains(nonce);
+				}
+			});
+
+			// large bodies are streamed from the segment file: fill a whole segment with them
+			List<String> nonces = new ArrayList<>();
+			for (int i = 0; i < 5; ++i) {
+				nonces.add(addPayload(dbHelper, createLargeEvent("event-" + i)));
+			}
+
+			// the first payload is being sent
+			PayloadData payload = dbHelper.getOldestUnsentPayload();
+			assertEquals(nonces.get(0), payload.getNonce());
+			assertTrue(payload.isStreamed());
+			inFlightNonces.add(payload.getNonce());
+			byte[] expected = readBody(payload);
+
+			// the rest of the segment is dead but the body is still read from it
+			for (int i = 1; i < 4; ++i) {
+				dbHelper.deletePayload(nonces.get(i));
+			}
+			assertTrue(payload.getDataFile().exists());
+			assertArrayEquals(expected, readBody(payload));
+
+			// the segment is compacted once the payload is done
+			inFlightNonces.clear();
+			dbHelper.deletePayload(nonces.get(4));
+			assertFalse(payload.getDataFile().exists());
+			assertEquals(Collections.singletonList(nonces.get(0)), drainPayloads(dbHelper));
+		} finally {
+			dbHelper.close();
+		}
+	}
+
+	private static EventPayload createLargeEvent(String label) {
+		StringBuilder value = new StringBuilder();
+		while (value.length() < 80 * 1024) {
+			value.append(label);
+		}
+		Map<String, Object> customData = new HashMap<>();
+		customData.put("value", value.toString());
+		return new EventPayload(label, null, null, customData);
+	}
+
+	private static byte[] readBody(PayloadData payload) throws IOException {
+		byte[] data = new byte[(int) payload.getDataLength()];
+		RandomAccessFile file = new RandomAccessFile(payload.getDataFile(), "r");
+		try {
+			file.seek(payload.getDataOffset());
+			file.readFully(data);
+		} finally {
+			file.close();
+		}
+		return data;
+	}
+
+	private static String addPayload(ApptentiveDatabaseHelper dbHelper, PayloadMetrics metrics, Payload payload) {
+		metrics.onPayloadEnqueued(payload.getNonce());
+		return addPayload(dbHelper, payload);
+	}
+
+	private static String addPayload(ApptentiveDatabaseHelper dbHelper, Payload payload) {
+		payload.setConversationId("conversation");
+		payload.setToken("token");
+		payload.setLocalConversationIdentifier("local-conversation");
+		dbHelper.addPayload(payload);
+		return payload.getNonce();
+	}
+
+	/**
+	 * Sends payloads one by one (the way the send loop does) and returns their nonces
+	 */
+	private static List<String> drainPayloads(ApptentiveDatabaseHelper dbHelper) {
+		List<String> nonces = new ArrayList<>();
+		PayloadData payload;
+		while ((payload = dbHelper.getOldestUnsentPayload()) != null) {
+			nonces.add(payload.getNonce());
+			dbHelper.deletePayload(payload.getNonce());
+		}
+		return nonces;
+	}
+
 	private static void replaceDbFile(Context context, String filename) throws IOException {
 		InputStream input = context.getAssets().open(filename);
 		try {
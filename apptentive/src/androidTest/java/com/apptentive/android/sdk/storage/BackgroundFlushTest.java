@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2017, Apptentive, Inc. All Rights Reserved.
+ * Please refer to the LICENSE file for the terms and conditions
+ * under which redistribution and use of this file is permitted.
+ */
+
+package com.apptentive.android.sdk.storage;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+
+import com.apptentive.android.sdk.TestCaseBase;
+import com.apptentive.android.sdk.comm.ApptentiveHttpClient;
+import com.apptentive.android.sdk.model.EventPayload;
+import com.apptentive.android.sdk.network.MockHttpServer;
+import com.apptentive.android.sdk.notifications.ApptentiveNotificationCenter;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.apptentive.android.sdk.ApptentiveNotifications.NOTIFICATION_APP_ENTERED_BACKGROUND;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BackgroundFlushTest extends TestCaseBase {
+	private static final long TIMEOUT_SECONDS = 30;
+
+	private Context context;
+	private MockHttpServer server;
+	private volatile int responseCode;
+	private final AtomicInteger sentPayloadCount = new AtomicInteger();
+	private ApptentiveTaskManager taskManager;
+
+	@Before
+	public void setUp() {
+		super.setUp();
+
+		context = InstrumentationRegistry.getContext();
+		responseCode = 200;
+		try {
+			server = new MockHttpServer(new MockHttpServer.RequestHandler() {
+				@Override
+				public MockHttpServer.Response handleRequest(String method, String path, byte[] body) throws Exception {
+					int code = responseCode;
+					if (code == 200) {
+						sentPayloadCount.incrementAndGet();
+					}
+					return new MockHttpServer.Response(code, "{}");
+				}
+			}).start();
+		} catch (Exception e) {
+			throw new AssertionError(e);
+		}
+
+		taskManager = new ApptentiveTaskManager(context, new ApptentiveHttpClient("key", "signature", server.getUrl()));
+
+		// payloads should stay in the queue until the flush
+		ApptentiveNotificationCenter.defaultCenter().postNotification(NOTIFICATION_APP_ENTERED_BACKGROUND);
+	}
+
+	@After
+	public void tearDown() {
+		ApptentiveNotificationCenter.defaultCenter().removeObserver(taskManager);
+		PayloadFlushJobService.cancel(context);
+		taskManager.reset(context);
+		context.deleteDatabase(ApptentiveDatabaseHelper.DATABASE_NAME);
+		server.stop();
+		super.tearDown();
+	}
+
+	@Test
+	public void testFlushInBackground() throws Exception {
+		final int payloadCount = 20;
+		addPayloads(payloadCount);
+		waitForQueue();
+		assertEquals(0, server.getRequestCount());
+
+		assertFalse(flush());
+		assertEquals(payloadCount, server.getRequestCount());
+
+		// nothing left to send
+		assertFalse(flush());
+		assertEquals(payloadCount, server.getRequestCount());
+	}
+
+	@Test
+	public void testFlushEmptyQueue() throws Exception {
+		assertFalse(flush());
+		assertEquals(0, server.getRequestCount());
+	}
+
+	@Test
+	public void testFlushFailure() throws Exception {
+		responseCode = 503;
+		addPayloads(3);
+
+		// the job should be retried later
+		assertTrue(flush());
+		assertTrue(server.getRequestCount() > 0);
+		assertEquals(0, sentPayloadCount.get());
+
+		// failed payloads stay in the queue
+		responseCode = 200;
+		assertFalse(flush());
+		assertEquals(3, sentPayloadCount.get());
+	}
+
+	//region Helpers
+
+	/**
+	 * Runs a background flush and returns <code>true</code> if it needs to be rescheduled
+	 */
+	private boolean flush() throws InterruptedException {
+		final CountDownLatch latch = new CountDownLatch(1);
+		final AtomicBoolean needsReschedule = new AtomicBoolean();
+		taskManager.flushInBackground(new ApptentiveTaskManager.BackgroundFlushListener() {
+			@Override
+			public void onFinishBackgroundFlush(boolean reschedule) {
+				needsReschedule.set(reschedule);
+				latch.countDown();
+			}
+		});
+		assertTrue(latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+		return needsReschedule.get();
+	}
+
+	private void addPayloads(int count) {
+		for (int i = 0; i < count; ++i) {
+			EventPayload payload = new EventPayload("event-" + i, (JSONObject) null);
+			payload.setConversationId("conversation");
+			payload.setToken("token");
+			payload.setLocalConversationIdentifier("local-conversation");
+			taskManager.addPayload(payload);
+		}
+	}
+
+	/**
+	 * Waits until the task manager is done with the queued database tasks
+	 */
+	private void waitForQueue() throws Exception {
+		taskManager.getAssociatedFiles("dummy").get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+	}
+
+	//endregion
+}
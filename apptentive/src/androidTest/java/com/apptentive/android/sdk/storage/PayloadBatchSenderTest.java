@@ -0,0 +1,305 @@
+/*
+ * Copyright (c) 2017, Apptentive, Inc. All Rights Reserved.
+ * Please refer to the LICENSE file for the terms and conditions
+ * under which redistribution and use of this file is permitted.
+ */
+
+package com.apptentive.android.sdk.storage;
+
+import com.apptentive.android.sdk.TestCaseBase;
+import com.apptentive.android.sdk.model.PayloadBatch;
+import com.apptentive.android.sdk.model.PayloadData;
+import com.apptentive.android.sdk.model.PayloadType;
+import com.apptentive.android.sdk.network.HttpRequest;
+import com.apptentive.android.sdk.network.HttpRequestManager;
+import com.apptentive.android.sdk.network.HttpRequestMethod;
+import com.apptentive.android.sdk.network.HttpRequestRetryPolicyDefault;
+import com.apptentive.android.sdk.network.MockHttpServer;
+import com.apptentive.android.sdk.network.RawHttpRequest;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PayloadBatchSenderTest extends TestCaseBase {
+	private static final String CONVERSATION_ID = "conversation";
+	private static final long TIMEOUT_SECONDS = 30;
+
+	private MockHttpServer server;
+	private Map<String, Integer> batchResponseCodes; // response codes per payload nonce (missing results if -1)
+	private volatile int batchRequestResponseCode; // response code of the whole batch request
+	private List<JSONObject> receivedPayloads;
+
+	@Before
+	public void setUp() {
+		super.setUp();
+
+		batchResponseCodes = new HashMap<>();
+		batchRequestResponseCode = 200;
+		receivedPayloads = new ArrayList<>();
+		try {
+			server = new MockHttpServer(new MockHttpServer.RequestHandler() {
+				@Override
+				public MockHttpServer.Response handleRequest(String method, String path, byte[] body) throws Exception {
+					return handleServerRequest(path, body);
+				}
+			}).start();
+		} catch (Exception e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	@After
+	public void tearDown() {
+		server.stop();
+		super.tearDown();
+	}
+
+	@Test
+	public void testBatchResults() throws Exception {
+		batchResponseCodes.put("2", 500);
+		batchResponseCodes.put("3", 400);
+		batchResponseCodes.put("4", -1); // result is missing
+
+		final CountDownLatch latch = new CountDownLatch(4);
+		PayloadSender sender = createSender(1, latch);
+
+		List<PayloadData> payloads = new ArrayList<>();
+		for (int i = 1; i <= 4; ++i) {
+			payloads.add(createEvent(String.valueOf(i)));
+		}
+
+		assertTrue(sender.sendPayloads(new PayloadBatch(payloads)));
+		assertTrue(latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+		assertResult(
+			"succeed: 1 201",
+			"failed: 2 500",
+			"failed: 3 400",
+			"failed: 4 -1"
+		);
+
+		// all the payloads were sent with a single request and their bodies were not altered
+		assertEquals(1, server.getRequestCount());
+		assertEquals(4, receivedPayloads.size());
+		for (int i = 0; i < payloads.size(); ++i) {
+			JSONObject received = receivedPayloads.get(i);
+			assertEquals(payloads.get(i).getNonce(), received.getString("nonce"));
+			assertEquals("/conversations/conversation/events", received.getString("path"));
+			assertEquals(payloads.get(i).getNonce(), received.getJSONObject("body").getJSONObject("event").getString("label"));
+		}
+	}
+
+	@Test
+	public void testRejectedBatch() throws Exception {
+		batchRequestResponseCode = 404; // batch endpoint is not supported
+
+		final CountDownLatch latch = new CountDownLatch(3);
+		PayloadSender sender = createSender(1, latch);
+
+		List<PayloadData> payloads = new ArrayList<>();
+		for (int i = 1; i <= 3; ++i) {
+			payloads.add(createEvent(String.valueOf(i)));
+		}
+
+		assertTrue(sender.sendPayloads(new PayloadBatch(payloads)));
+		assertTrue(latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+		// no payload was reported as finished (and therefore none of them would be deleted)
+		assertResult("rejected: 3 404");
+		assertEquals(1, server.getRequestCount());
+		assertFalse(sender.isBusy());
+		for (PayloadData payload : payloads) {
+			assertFalse(sender.isSendingPayload(payload.getNonce()));
+		}
+
+		// the payloads can be sent again one by one
+		for (PayloadData payload : payloads) {
+			while (!sender.sendPayload(payload)) {
+				Thread.sleep(1);
+			}
+		}
+		long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS);
+		while (sender.isSendingPayload("3") && System.currentTimeMillis() < deadline) {
+			Thread.sleep(1);
+		}
+
+		assertResult(
+			"succeed: 1 201",
+			"succeed: 2 201",
+			"succeed: 3 201"
+		);
+		assertEquals(4, server.getRequestCount());
+	}
+
+	@Test
+	public void testThroughput() throws Exception {
+		final int payloadCount = 100;
+		final int batchSize = 10;
+		server.setLatencyMillis(10);
+
+		List<PayloadData> payloads = new ArrayList<>();
+		for (int i = 0; i < payloadCount; ++i) {
+			payloads.add(createEvent("event-" + i));
+		}
+
+		// one by one
+		CountDownLatch latch = new CountDownLatch(payloadCount);
+		PayloadSender sender = createSender(1, latch);
+		long startTime = System.currentTimeMillis();
+		for (PayloadData payload : payloads) {
+			while (!sender.sendPayload(payload)) {
+				Thread.sleep(1);
+			}
+		}
+		assertTrue(latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+		long singleDuration = System.currentTimeMillis() - startTime;
+		int singleRequests = server.getRequestCount();
+
+		// batches
+		latch = new CountDownLatch(payloadCount);
+		sender = createSender(1, latch);
+		startTime = System.currentTimeMillis();
+		for (int i = 0; i < payloadCount; i += batchSize) {
+			PayloadBatch batch = new PayloadBatch(payloads.subList(i, i + batchSize));
+			while (!sender.sendPayloads(batch)) {
+				Thread.sleep(1);
+			}
+		}
+		assertTrue(latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+		long batchDuration = System.currentTimeMillis() - startTime;
+		int batchRequests = server.getRequestCount() - singleRequests;
+
+		assertResult(); // no payloads failed
+
+		System.out.println(String.format("Sent %d payloads: one by one %d ms (%d requests), batches of %d %d ms (%d requests)",
+			payloadCount, singleDuration, singleRequests, batchSize, batchDuration, batchRequests));
+
+		assertEquals(payloadCount, singleRequests);
+		assertEquals(payloadCount / batchSize, batchRequests);
+		assertTrue(batchDuration < singleDuration);
+	}
+
+	//region Helpers
+
+	private PayloadSender createSender(int maxConcurrentRequests, final CountDownLatch latch) {
+		PayloadSender sender = new PayloadSender(new LocalPayloadRequestSender(), new HttpRequestRetryPolicyDefault() {
+			@Override
+			public boolean shouldRetryRequest(int responseCode, int retryAttempt) {
+				return false;
+			}
+		}, maxConcurrentRequests);
+		sender.setListener(new PayloadSender.Listener() {
+			@Override
+			public void onFinishSending(PayloadSender sender, PayloadData payload, boolean cancelled, String errorMessage, int responseCode, JSONObject responseData, long retryAfterMillis) {
+				// only record the failures of the throughput test payloads
+				if (errorMessage != null || !payload.getNonce().startsWith("event-")) {
+					synchronized (PayloadBatchSenderTest.this) {
+						addResult("%s: %s %d", errorMessage == null ? "succeed" : "failed", payload.getNonce(), responseCode);
+					}
+				}
+				latch.countDown();
+			}
+
+			@Override
+			public void onRejectBatch(PayloadSender sender, PayloadBatch batch, int responseCode) {
+				synchronized (PayloadBatchSenderTest.this) {
+					addResult("rejected: %d %d", batch.getPayloads().size(), responseCode);
+				}
+				for (int i = 0; i < batch.getPayloads().size(); ++i) {
+					latch.countDown();
+				}
+			}
+		});
+		return sender;
+	}
+
+	private static PayloadData createEvent(String nonce) throws Exception {
+		JSONObject event = new JSONObject();
+		event.put("label", nonce);
+		event.put("nonce", nonce);
+		JSONObject json = new JSONObject();
+		json.put("event", event);
+
+		return new PayloadData(PayloadType.event, nonce, CONVERSATION_ID, json.toString().getBytes("UTF-8"), "token", "application/json", "/conversations/" + CONVERSATION_ID + "/events", HttpRequestMethod.POST, false);
+	}
+
+	private synchronized MockHttpServer.Response handleServerRequest(String path, byte[] body) throws Exception {
+		if (!path.endsWith("/batch")) {
+			return new MockHttpServer.Response(201, "{}");
+		}
+
+		if (batchRequestResponseCode != 200) {
+			return new MockHttpServer.Response(batchRequestResponseCode, "{}");
+		}
+
+		JSONArray payloads = new JSONObject(new String(body, "UTF-8")).getJSONArray("payloads");
+		JSONArray results = new JSONArray();
+		for (int i = 0; i < payloads.length(); ++i) {
+			JSONObject payload = payloads.getJSONObject(i);
+			receivedPayloads.add(payload);
+
+			String nonce = payload.getString("nonce");
+			Integer responseCode = batchResponseCodes.get(nonce);
+			if (responseCode == null) {
+				responseCode = 201;
+			}
+			if (responseCode == -1) {
+				continue;
+			}
+
+			JSONObject result = new JSONObject();
+			result.put("nonce", nonce);
+			result.put("status", responseCode);
+			result.put("body", new JSONObject());
+			results.put(result);
+		}
+
+		JSONObject response = new JSONObject();
+		response.put("results", results);
+		return new MockHttpServer.Response(200, response.toString());
+	}
+
+	private class LocalPayloadRequestSender implements PayloadRequestSender {
+		private final HttpRequestManager requestManager = new HttpRequestManager();
+
+		@Override
+		public HttpRequest createPayloadSendRequest(PayloadData payload, HttpRequest.Listener<HttpRequest> listener) {
+			return createRequest(payload.getHttpRequestPath(), payload.getData(), listener);
+		}
+
+		@Override
+		public HttpRequest createPayloadBatchSendRequest(PayloadBatch batch, HttpRequest.Listener<HttpRequest> listener) {
+			return createRequest(batch.getHttpRequestPath(), batch.renderData(), listener);
+		}
+
+		private HttpRequest createRequest(String path, byte[] data, HttpRequest.Listener<HttpRequest> listener) {
+			HttpRequest request = new RawHttpRequest(server.getUrl() + path, data) {
+				@Override
+				protected boolean isNetworkConnectionPresent() {
+					return true;
+				}
+			};
+			request.setRequestManager(requestManager);
+			request.setMethod(HttpRequestMethod.POST);
+			request.setRequestProperty("Content-Type", "application/json");
+			request.addListener(listener);
+			return request;
+		}
+	}
+
+	//endregion
+}
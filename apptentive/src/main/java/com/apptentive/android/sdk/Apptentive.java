@@ -41,9 +41,13 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -1226,6 +1230,90 @@ public class Apptentive {
 		}
 	}
 
+	/**
+	 * Asynchronous version of {@link #engage(Context, String)}. This call returns immediately: the
+	 * event is recorded and the criteria are evaluated on a background thread, and the interaction
+	 * (if any) is launched on the main thread.
+	 *
+	 * @param context  The context from which to launch the Interaction. This should be an
+	 *                 Activity, except in rare cases where you don't have access to one, in which
+	 *                 case Apptentive Interactions will launch in a new task.
+	 * @param event    A unique String representing the line this method is called on.
+	 * @param callback An optional EngageCallback, which will be called on the main thread when the
+	 *                 engagement is finished.
+	 */
+	public static void engageAsync(Context context, String event, EngageCallback callback) {
+		engageAsync(context, event, null, callback, (ExtendedData[]) null);
+	}
+
+	/**
+	 * Asynchronous version of {@link #engage(Context, String, Map, ExtendedData...)}. This call
+	 * returns immediately: the event is recorded and the criteria are evaluated on a background
+	 * thread, and the interaction (if any) is launched on the main thread.
+	 *
+	 * @param context      The context from which to launch the Interaction. This should be an
+	 *                     Activity, except in rare cases where you don't have access to one, in which
+	 *                     case Apptentive Interactions will launch in a new task.
+	 * @param event        A unique String representing the line this method is called on.
+	 * @param customData   A Map of String keys to Object values. Objects may be Strings, Numbers, or Booleans.
+	 * @param callback     An optional EngageCallback, which will be called on the main thread when
+	 *                     the engagement is finished.
+	 * @param extendedData An array of ExtendedData objects.
+	 */
+	public static void engageAsync(Context context, String event, Map<String, Object> customData, EngageCallback callback, ExtendedData... extendedData) {
+		try {
+			if (StringUtils.isNullOrEmpty(event)) {
+				ApptentiveLog.e("Unable to engage event: name is null or empty");
+				notifyEngageFinished(callback, false);
+				return;
+			}
+			if (context == null) {
+				ApptentiveLog.e("Unable to engage '%s' event: context is null", event);
+				notifyEngageFinished(callback, false);
+				return;
+			}
+			if (!ApptentiveInternal.isApptentiveRegistered()) {
+				ApptentiveLog.e("Unable to engage '%s' event: Apptentive SDK is not initialized", event);
+				notifyEngageFinished(callback, false);
+				return;
+			}
+			Conversation conversation = ApptentiveInternal.getInstance().getConversation();
+			if (conversation == null) {
+				ApptentiveLog.w("Unable to engage '%s' event: no active conversation", event);
+				notifyEngageFinished(callback, false);
+				return;
+			}
+
+			EngagementModule.engageAsync(context, conversation, "local", "app", null, event, null, customData, callback, extendedData);
+		} catch (Exception e) {
+			ApptentiveLog.e(e, "Exception while engaging '%s' event", event);
+			notifyEngageFinished(callback, false);
+		}
+	}
+
+	private static void notifyEngageFinished(final EngageCallback callback, final boolean interactionShown) {
+		if (callback != null) {
+			DispatchQueue.mainQueue().dispatchAsync(new DispatchTask() {
+				@Override
+				protected void execute() {
+					callback.onEngageFinished(interactionShown);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Callback interface for engageAsync().
+	 */
+	public interface EngageCallback {
+		/**
+		 * Called on the main thread when the engagement is finished.
+		 *
+		 * @param interactionShown true if an interaction was shown, else false.
+		 */
+		void onEngageFinished(boolean interactionShown);
+	}
+
 	/**
 	 * @param event A unique String representing the line this method is called on. For instance, you may want to have
 	 *              the ability to target interactions to run after the user uploads a file in your app. You may then
@@ -1260,6 +1348,38 @@ public class Apptentive {
 		return false;
 	}
 
+	/**
+	 * Batch version of {@link #canShowInteraction(String)}. Use this method if you need to check
+	 * multiple events at once (for example, while building a screen with several buttons): all the
+	 * events are evaluated together, which is much faster than calling
+	 * {@link #canShowInteraction(String)} for each one of them.
+	 *
+	 * @param events A collection of unique Strings representing the events.
+	 * @return A map of event name to <code>true</code> if an immediate call to engage() with the
+	 * same event name would result in an Interaction being displayed, otherwise <code>false</code>.
+	 */
+	public static Map<String, Boolean> canShowInteractions(Collection<String> events) {
+		Map<String, Boolean> result = null;
+		try {
+			if (events != null && ApptentiveInternal.isConversationActive()) {
+				result = EngagementModule.canShowInteractions(ApptentiveInternal.getInstance().getConversation(), "app", events, "local");
+			}
+		} catch (Exception e) {
+			ApptentiveLog.w(e, "Error in Apptentive.canShowInteractions()");
+			MetricModule.sendError(e, null, null);
+		}
+
+		if (result == null) {
+			result = new HashMap<>();
+			if (events != null) {
+				for (String event : events) {
+					result.put(event, false);
+				}
+			}
+		}
+		return result;
+	}
+
 	/**
 	 * Pass in a listener. The listener will be called whenever a survey is finished.
 	 * Do not pass in an anonymous class, such as setOnSurveyFinishedListener(new OnSurveyFinishedListener() {...}).
@@ -1515,19 +1635,30 @@ public class Apptentive {
 
 		private String version;
 
+		/**
+		 * Marks a version which can't be parsed into numeric components
+		 */
+		private static final long[] INVALID_COMPONENTS = new long[0];
+
+		/**
+		 * Numeric components of the version: parsed once when the version is set.
+		 */
+		private transient long[] components = INVALID_COMPONENTS;
+
 		public Version() {
 		}
 
 		public Version(JSONObject json) throws JSONException {
-			this.version = json.optString(TYPE, null);
+			setVersion(json.optString(TYPE, null));
 		}
 
 		public Version(long version) {
-			this.version = Long.toString(version);
+			setVersion(version);
 		}
 
 		public void setVersion(String version) {
 			this.version = version;
+			this.components = parseComponents(version);
 		}
 
 		public void setVersion(long version) {
@@ -1550,8 +1681,36 @@ public class Apptentive {
 
 		@Override
 		public int compareTo(Version other) {
-			String thisVersion = getVersion();
-			String thatVersion = other.getVersion();
+			long[] thisArray = components;
+			long[] thatArray = other.components;
+			if (thisArray == INVALID_COMPONENTS || thatArray == INVALID_COMPONENTS) {
+				return compareStrings(getVersion(), other.getVersion());
+			}
+
+			int maxParts = Math.max(thisArray.length, thatArray.length);
+			for (int i = 0; i < maxParts; i++) {
+				// If one SemVer has more parts than another, pad out the short one with zeros in each slot.
+				long left = 0;
+				if (thisArray.length > i) {
+					left = thisArray[i];
+				}
+				long right = 0;
+				if (thatArray.length > i) {
+					right = thatArray[i];
+				}
+				if (left < right) {
+					return -1;
+				} else if (left > right) {
+					return 1;
+				}
+			}
+			return 0;
+		}
+
+		/**
+		 * Compares malformed versions: components are only parsed until the first difference.
+		 */
+		private static int compareStrings(String thisVersion, String thatVersion) {
 			String[] thisArray = thisVersion.split("\\.");
 			String[] thatArray = thatVersion.split("\\.");
 
@@ -1575,6 +1734,32 @@ public class Apptentive {
 			return 0;
 		}
 
+		/**
+		 * Splits the version into numeric components or returns {@link #INVALID_COMPONENTS} if any
+		 * of them is not a number.
+		 */
+		private static long[] parseComponents(String version) {
+			if (version == null) {
+				return INVALID_COMPONENTS;
+			}
+
+			try {
+				String[] parts = version.split("\\.");
+				long[] result = new long[parts.length];
+				for (int i = 0; i < parts.length; i++) {
+					result[i] = Long.parseLong(parts[i]);
+				}
+				return result;
+			} catch (NumberFormatException e) {
+				return INVALID_COMPONENTS;
+			}
+		}
+
+		private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+			in.defaultReadObject();
+			components = parseComponents(version);
+		}
+
 		@Override
 		public boolean equals(Object o) {
 			if (this == o) {
@@ -181,6 +181,7 @@ public class ApptentiveInternal implements ApptentiveNotificationObserver {
 
 		globalSharedPrefs = application.getSharedPreferences(Constants.PREF_NAME, Context.MODE_PRIVATE);
 		apptentiveHttpClient = new ApptentiveHttpClient(apptentiveKey, apptentiveSignature, getEndpointBase(globalSharedPrefs));
+		apptentiveHttpClient.setRequestCompressionThreshold(getRequestCompressionThreshold(appContext));
 		conversationManager = new ConversationManager(appContext, Util.getInternalDir(appContext, CONVERSATIONS_DIR, true));
 
 		appRelease = AppReleaseManager.generateCurrentAppRelease(application, this);
@@ -1010,6 +1011,18 @@ public class ApptentiveInternal implements ApptentiveNotificationObserver {
 		return url;
 	}
 
+	/**
+	 * Returns the size above which JSON request bodies are compressed with gzip (compression is
+	 * opt-in and should be enabled in the app's manifest)
+	 */
+	private static long getRequestCompressionThreshold(Context context) {
+		Object value = Util.getPackageMetaData(context, Constants.MANIFEST_KEY_REQUEST_COMPRESSION_THRESHOLD);
+		if (value instanceof Integer && (Integer) value >= 0) {
+			return (Integer) value;
+		}
+		return Constants.CONFIG_DEFAULT_REQUEST_COMPRESSION_THRESHOLD;
+	}
+
 	//endregion
 
 	//region Login/Logout
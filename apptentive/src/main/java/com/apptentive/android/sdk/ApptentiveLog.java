@@ -85,6 +85,38 @@ public class ApptentiveLog {
 		doLog(Level.VERY_VERBOSE, null, throwable, message, args);
 	}
 
+	// fixed arity overloads: don't allocate varargs arrays when the level is disabled
+	public static void vv(ApptentiveLogTag tag, String message) {
+		if (tag.enabled && canLog(Level.VERY_VERBOSE)) {
+			doLog(Level.VERY_VERBOSE, tag, null, message);
+		}
+	}
+	public static void vv(ApptentiveLogTag tag, String message, Object arg) {
+		if (tag.enabled && canLog(Level.VERY_VERBOSE)) {
+			doLog(Level.VERY_VERBOSE, tag, null, message, arg);
+		}
+	}
+	public static void vv(ApptentiveLogTag tag, String message, Object arg1, Object arg2) {
+		if (tag.enabled && canLog(Level.VERY_VERBOSE)) {
+			doLog(Level.VERY_VERBOSE, tag, null, message, arg1, arg2);
+		}
+	}
+	public static void vv(String message) {
+		if (canLog(Level.VERY_VERBOSE)) {
+			doLog(Level.VERY_VERBOSE, null, null, message);
+		}
+	}
+	public static void vv(String message, Object arg) {
+		if (canLog(Level.VERY_VERBOSE)) {
+			doLog(Level.VERY_VERBOSE, null, null, message, arg);
+		}
+	}
+	public static void vv(String message, Object arg1, Object arg2) {
+		if (canLog(Level.VERY_VERBOSE)) {
+			doLog(Level.VERY_VERBOSE, null, null, message, arg1, arg2);
+		}
+	}
+
 	public static void v(ApptentiveLogTag tag, String message, Object... args) {
 		if (tag.enabled) {
 			doLog(Level.VERBOSE, tag, null, message, args);
@@ -102,6 +134,38 @@ public class ApptentiveLog {
 		doLog(Level.VERBOSE, null, throwable, message, args);
 	}
 
+	// fixed arity overloads: don't allocate varargs arrays when the level is disabled
+	public static void v(ApptentiveLogTag tag, String message) {
+		if (tag.enabled && canLog(Level.VERBOSE)) {
+			doLog(Level.VERBOSE, tag, null, message);
+		}
+	}
+	public static void v(ApptentiveLogTag tag, String message, Object arg) {
+		if (tag.enabled && canLog(Level.VERBOSE)) {
+			doLog(Level.VERBOSE, tag, null, message, arg);
+		}
+	}
+	public static void v(ApptentiveLogTag tag, String message, Object arg1, Object arg2) {
+		if (tag.enabled && canLog(Level.VERBOSE)) {
+			doLog(Level.VERBOSE, tag, null, message, arg1, arg2);
+		}
+	}
+	public static void v(String message) {
+		if (canLog(Level.VERBOSE)) {
+			doLog(Level.VERBOSE, null, null, message);
+		}
+	}
+	public static void v(String message, Object arg) {
+		if (canLog(Level.VERBOSE)) {
+			doLog(Level.VERBOSE, null, null, message, arg);
+		}
+	}
+	public static void v(String message, Object arg1, Object arg2) {
+		if (canLog(Level.VERBOSE)) {
+			doLog(Level.VERBOSE, null, null, message, arg1, arg2);
+		}
+	}
+
 	public static void d(ApptentiveLogTag tag, String message, Object... args){
 		if (tag.enabled) {
 			doLog(Level.DEBUG, tag, null, message, args);
@@ -119,6 +183,38 @@ public class ApptentiveLog {
 		doLog(Level.DEBUG, null, throwable, message, args);
 	}
 
+	// fixed arity overloads: don't allocate varargs arrays when the level is disabled
+	public static void d(ApptentiveLogTag tag, String message) {
+		if (tag.enabled && canLog(Level.DEBUG)) {
+			doLog(Level.DEBUG, tag, null, message);
+		}
+	}
+	public static void d(ApptentiveLogTag tag, String message, Object arg) {
+		if (tag.enabled && canLog(Level.DEBUG)) {
+			doLog(Level.DEBUG, tag, null, message, arg);
+		}
+	}
+	public static void d(ApptentiveLogTag tag, String message, Object arg1, Object arg2) {
+		if (tag.enabled && canLog(Level.DEBUG)) {
+			doLog(Level.DEBUG, tag, null, message, arg1, arg2);
+		}
+	}
+	public static void d(String message) {
+		if (canLog(Level.DEBUG)) {
+			doLog(Level.DEBUG, null, null, message);
+		}
+	}
+	public static void d(String message, Object arg) {
+		if (canLog(Level.DEBUG)) {
+			doLog(Level.DEBUG, null, null, message, arg);
+		}
+	}
+	public static void d(String message, Object arg1, Object arg2) {
+		if (canLog(Level.DEBUG)) {
+			doLog(Level.DEBUG, null, null, message, arg1, arg2);
+		}
+	}
+
 	public static void i(ApptentiveLogTag tag, String message, Object... args){
 		if (tag.enabled) {
 			doLog(Level.INFO, tag, null, message, args);
@@ -48,6 +48,11 @@ public class ApptentiveNotifications {
 	 */
 	public static final String NOTIFICATION_PAYLOAD_DID_FINISH_SEND = "NOTIFICATION_PAYLOAD_DID_FINISH_SEND";  // { successful : boolean, payload: PayloadData, responseCode: int, responseData: JSONObject }
 
+	/**
+	 * Sent periodically while payloads are being sent (at most once a minute)
+	 */
+	public static final String NOTIFICATION_PAYLOAD_METRICS = "NOTIFICATION_PAYLOAD_METRICS"; // { payloadMetrics: PayloadMetricsSnapshot }
+
 	/**
 	 * Sent if user requested to close all interactions.
 	 */
@@ -72,4 +77,5 @@ public class ApptentiveNotifications {
 	public static final String NOTIFICATION_KEY_PAYLOAD = "payload";
 	public static final String NOTIFICATION_KEY_RESPONSE_CODE = "responseCode";
 	public static final String NOTIFICATION_KEY_RESPONSE_DATA = "responseData";
+	public static final String NOTIFICATION_KEY_PAYLOAD_METRICS = "payloadMetrics";
 }
@@ -7,7 +7,9 @@
 package com.apptentive.android.sdk.comm;
 
 import com.apptentive.android.sdk.model.ConversationTokenRequest;
+import com.apptentive.android.sdk.model.PayloadBatch;
 import com.apptentive.android.sdk.model.PayloadData;
+import com.apptentive.android.sdk.network.FileHttpRequest;
 import com.apptentive.android.sdk.network.HttpJsonRequest;
 import com.apptentive.android.sdk.network.HttpRequest;
 import com.apptentive.android.sdk.network.HttpRequestManager;
@@ -26,6 +28,8 @@ import com.apptentive.android.sdk.util.StringUtils;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.File;
+
 import static com.apptentive.android.sdk.debug.Assert.notNull;
 
 /**
@@ -38,6 +42,8 @@ public class ApptentiveHttpClient implements PayloadRequestSender {
 	private static final int DEFAULT_HTTP_CONNECT_TIMEOUT = 45000;
 	private static final int DEFAULT_HTTP_SOCKET_TIMEOUT = 45000;
 
+	private static final String CONTENT_TYPE_JSON = "application/json";
+
 	// Active API
 	private static final String ENDPOINT_CONVERSATION = "/conversation";
 	private static final String ENDPOINT_LEGACY_CONVERSATION = "/conversation/token";
@@ -50,6 +56,11 @@ public class ApptentiveHttpClient implements PayloadRequestSender {
 	private final String userAgentString;
 	private final HttpRequestManager httpRequestManager;
 
+	/**
+	 * JSON request bodies larger than this are compressed with gzip (-1 if compression is disabled)
+	 */
+	private long requestCompressionThreshold = Constants.CONFIG_DEFAULT_REQUEST_COMPRESSION_THRESHOLD;
+
 	public ApptentiveHttpClient(String apptentiveKey, String apptentiveSignature, String serverURL) {
 		if (StringUtils.isNullOrEmpty(apptentiveKey)) {
 			throw new IllegalArgumentException("Illegal Apptentive Key: '" + apptentiveKey + "'");
@@ -70,6 +81,21 @@ public class ApptentiveHttpClient implements PayloadRequestSender {
 		this.userAgentString = String.format(USER_AGENT_STRING, Constants.APPTENTIVE_SDK_VERSION);
 	}
 
+	//region Getters/Setters
+
+	/**
+	 * Enables gzip compression for JSON request bodies larger than <code>threshold</code> bytes. Pass
+	 * -1 to disable the compression.
+	 */
+	public void setRequestCompressionThreshold(long threshold) {
+		if (threshold < -1) {
+			throw new IllegalArgumentException("Invalid compression threshold: " + threshold);
+		}
+		this.requestCompressionThreshold = threshold;
+	}
+
+	//endregion
+
 	//region API Requests
 
 	public HttpJsonRequest createConversationTokenRequest(ConversationTokenRequest conversationTokenRequest, HttpRequest.Listener<HttpJsonRequest> listener) {
@@ -154,13 +180,35 @@ public class ApptentiveHttpClient implements PayloadRequestSender {
 		return request;
 	}
 
+	@Override
+	public HttpRequest createPayloadBatchSendRequest(PayloadBatch batch, HttpRequest.Listener<HttpRequest> listener) {
+		if (batch == null) {
+			throw new IllegalArgumentException("Payload batch is null");
+		}
+
+		HttpRequest request = createRawRequest(batch.getHttpRequestPath(), batch.renderData(), batch.getHttpRequestMethod(), batch.getContentType());
+
+		final String authToken = batch.getAuthToken();
+		if (!StringUtils.isNullOrEmpty(authToken)) {
+			request.setRequestProperty("Authorization", "Bearer " + authToken);
+		}
+
+		request.addListener(listener);
+		return request;
+	}
+
 	private HttpRequest createPayloadRequest(PayloadData payload) {
 		final String authToken = payload.getAuthToken();
 		final String httpPath = notNull(payload.getHttpRequestPath());
 		final HttpRequestMethod requestMethod = notNull(payload.getHttpRequestMethod());
 		final String contentType = notNull(payload.getContentType());
 
-		HttpRequest request = createRawRequest(httpPath, payload.getData(), requestMethod, contentType);
+		HttpRequest request;
+		if (payload.isStreamed()) {
+			request = createFileRequest(httpPath, payload.getDataFile(), payload.getDataOffset(), payload.getDataLength(), requestMethod, contentType);
+		} else {
+			request = createRawRequest(httpPath, payload.getData(), requestMethod, contentType);
+		}
 
 		// Encrypted requests don't use an Auth token on the request. It's stored in the encrypted body.
 		if (!StringUtils.isNullOrEmpty(authToken)) {
@@ -193,7 +241,8 @@ public class ApptentiveHttpClient implements PayloadRequestSender {
 		HttpJsonRequest request = new HttpJsonRequest(url, json);
 		setupRequestDefaults(request);
 		request.setMethod(method);
-		request.setRequestProperty("Content-Type", "application/json");
+		request.setRequestProperty("Content-Type", CONTENT_TYPE_JSON);
+		setupRequestCompression(request, CONTENT_TYPE_JSON);
 		return request;
 	}
 
@@ -216,6 +265,30 @@ public class ApptentiveHttpClient implements PayloadRequestSender {
 		setupRequestDefaults(request);
 		request.setMethod(method);
 		request.setRequestProperty("Content-Type", contentType);
+		setupRequestCompression(request, contentType);
+		return request;
+	}
+
+	private FileHttpRequest createFileRequest(String endpoint, File file, long offset, long length, HttpRequestMethod method, String contentType) {
+		if (endpoint == null) {
+			throw new IllegalArgumentException("Endpoint is null");
+		}
+		if (file == null) {
+			throw new IllegalArgumentException("File is null");
+		}
+		if (method == null) {
+			throw new IllegalArgumentException("Method is null");
+		}
+		if (contentType == null) {
+			throw new IllegalArgumentException("ContentType is null");
+		}
+
+		String url = createEndpointURL(endpoint);
+		FileHttpRequest request = new FileHttpRequest(url, file, offset, length);
+		setupRequestDefaults(request);
+		request.setMethod(method);
+		request.setRequestProperty("Content-Type", contentType);
+		setupRequestCompression(request, contentType);
 		return request;
 	}
 
@@ -232,6 +305,15 @@ public class ApptentiveHttpClient implements PayloadRequestSender {
 		request.setReadTimeout(DEFAULT_HTTP_SOCKET_TIMEOUT);
 	}
 
+	/**
+	 * Only JSON bodies are compressed: encrypted payloads and attachments won't get any smaller
+	 */
+	private void setupRequestCompression(HttpRequest request, String contentType) {
+		if (contentType.startsWith(CONTENT_TYPE_JSON)) {
+			request.setRequestCompressionThreshold(requestCompressionThreshold);
+		}
+	}
+
 	private String createEndpointURL(String uri) {
 		return serverURL + uri;
 	}
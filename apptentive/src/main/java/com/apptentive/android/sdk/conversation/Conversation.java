@@ -18,10 +18,13 @@ import com.apptentive.android.sdk.debug.Assert;
 import com.apptentive.android.sdk.model.DevicePayload;
 import com.apptentive.android.sdk.model.Payload;
 import com.apptentive.android.sdk.model.PersonPayload;
+import com.apptentive.android.sdk.module.engagement.interaction.model.ApplicableInteractionCache;
 import com.apptentive.android.sdk.module.engagement.interaction.model.Interaction;
+import com.apptentive.android.sdk.module.engagement.interaction.model.InteractionIndex;
 import com.apptentive.android.sdk.module.engagement.interaction.model.InteractionManifest;
 import com.apptentive.android.sdk.module.engagement.interaction.model.Interactions;
 import com.apptentive.android.sdk.module.engagement.interaction.model.Targets;
+import com.apptentive.android.sdk.module.engagement.logic.FieldContext;
 import com.apptentive.android.sdk.module.messagecenter.MessageManager;
 import com.apptentive.android.sdk.storage.AppRelease;
 import com.apptentive.android.sdk.storage.DataChangedListener;
@@ -48,6 +51,12 @@ import com.apptentive.android.sdk.util.threading.DispatchTask;
 import org.json.JSONException;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static com.apptentive.android.sdk.debug.Assert.assertFail;
 import static com.apptentive.android.sdk.debug.Assert.assertNotNull;
@@ -98,6 +107,17 @@ public class Conversation implements DataChangedListener, Destroyable {
 
 	private final MessageManager messageManager;
 
+	/**
+	 * Compiled targets and interactions (swapped atomically when a new manifest is stored or the
+	 * index is pruned)
+	 */
+	private final AtomicReference<InteractionIndex> interactionIndex = new AtomicReference<>();
+
+	/**
+	 * Memoized <code>canShowInteraction()</code> results (invalidated on any data change)
+	 */
+	private final ApplicableInteractionCache applicableInteractionCache = new ApplicableInteractionCache();
+
 	// we keep references to the tasks in order to dispatch them only once
 	private final DispatchTask fetchInteractionsTask = new DispatchTask() {
 		@Override
@@ -148,6 +168,7 @@ public class Conversation implements DataChangedListener, Destroyable {
 
 	public void startListeningForChanges() {
 		conversationData.setDataChangedListener(this);
+		applicableInteractionCache.invalidate();
 	}
 
 	//region Payloads
@@ -170,22 +191,132 @@ public class Conversation implements DataChangedListener, Destroyable {
 	 * Returns an Interaction for <code>eventLabel</code> if there is one that can be displayed.
 	 */
 	public Interaction getApplicableInteraction(String eventLabel) {
-		String targetsString = getTargets();
-		if (targetsString != null) {
-			try {
-				Targets targets = new Targets(getTargets());
-				String interactionId = targets.getApplicableInteraction(eventLabel);
-				if (interactionId != null) {
-					String interactionsString = getInteractions();
-					if (interactionsString != null) {
-						Interactions interactions = new Interactions(interactionsString);
-						return interactions.getInteraction(interactionId);
-					}
-				}
-			} catch (JSONException e) {
-				ApptentiveLog.e(e, "Exception while getting applicable interaction: %s", eventLabel);
+		return getApplicableInteraction(eventLabel, FieldContext.create(this));
+	}
+
+	/**
+	 * Returns <code>true</code> if there is an Interaction for <code>eventLabel</code> that can be
+	 * displayed. The result is cached until the conversation data or the manifest changes or any
+	 * time-based criteria can change its value.
+	 */
+	public boolean canShowInteraction(String eventLabel) {
+		FieldContext context = FieldContext.create(this);
+
+		Boolean cachedResult = applicableInteractionCache.get(eventLabel, context.getCurrentTime());
+		if (cachedResult != null) {
+			return cachedResult;
+		}
+
+		long generation = applicableInteractionCache.getGeneration();
+		boolean result = getApplicableInteraction(eventLabel, context) != null;
+		applicableInteractionCache.put(eventLabel, result, context.getNextTimeBoundary(), generation);
+		return result;
+	}
+
+	/**
+	 * Batch version of {@link #canShowInteraction(String)}: all the labels are evaluated against
+	 * a single field snapshot and the shared criteria are only evaluated once.
+	 *
+	 * @return "event label" => "can show interaction"
+	 */
+	public Map<String, Boolean> canShowInteractions(Collection<String> eventLabels) {
+		if (eventLabels == null) {
+			throw new IllegalArgumentException("Event labels are null");
+		}
+
+		FieldContext context = FieldContext.create(this);
+
+		Map<String, Boolean> result = new HashMap<>();
+		List<String> missingEventLabels = new ArrayList<>();
+		for (String eventLabel : eventLabels) {
+			Boolean cachedResult = applicableInteractionCache.get(eventLabel, context.getCurrentTime());
+			if (cachedResult != null) {
+				result.put(eventLabel, cachedResult);
+			} else {
+				missingEventLabels.add(eventLabel);
 			}
 		}
+
+		if (missingEventLabels.size() > 0) {
+			long generation = applicableInteractionCache.getGeneration();
+
+			InteractionIndex index = getPrunedInteractionIndex(context);
+			Map<String, Boolean> evaluatedResult = index != null ? index.canShowInteractions(missingEventLabels, context) : null;
+			for (String eventLabel : missingEventLabels) {
+				boolean canShow = evaluatedResult != null && evaluatedResult.get(eventLabel);
+				// the time boundary is shared by the whole batch, which may expire some entries a bit early
+				applicableInteractionCache.put(eventLabel, canShow, context.getNextTimeBoundary(), generation);
+				result.put(eventLabel, canShow);
+			}
+		}
+
+		return result;
+	}
+
+	private Interaction getApplicableInteraction(String eventLabel, FieldContext context) {
+		InteractionIndex index = getPrunedInteractionIndex(context);
+		return index != null ? index.getApplicableInteraction(eventLabel, context) : null;
+	}
+
+	/**
+	 * Returns the interaction index pruned for static values of a given <code>context</code> or
+	 * <code>null</code> if the manifest is missing.
+	 */
+	private InteractionIndex getPrunedInteractionIndex(FieldContext context) {
+		InteractionIndex index = getInteractionIndex();
+		if (index != null && !index.isPrunedFor(context)) {
+			index = pruneInteractionIndex(index, context);
+		}
+		return index;
+	}
+
+	/**
+	 * Returns a pre-parsed Interaction with a given <code>interactionId</code> or <code>null</code>
+	 * if not found.
+	 */
+	public Interaction getInteraction(String interactionId) {
+		InteractionIndex index = getInteractionIndex();
+		return index != null ? index.getInteraction(interactionId) : null;
+	}
+
+	/**
+	 * Returns compiled interaction index for currently stored targets and interactions. The index
+	 * is rebuilt only if the stored strings were changed since the last compilation.
+	 */
+	private InteractionIndex getInteractionIndex() {
+		String targets = getTargets();
+		String interactions = getInteractions();
+		if (targets == null || interactions == null) {
+			return null;
+		}
+
+		InteractionIndex index = interactionIndex.get();
+		if (index == null || !index.isCompiledFrom(targets, interactions)) {
+			index = compileInteractionIndex(targets, interactions);
+		}
+		return index;
+	}
+
+	/**
+	 * Resolves static criteria of the <code>index</code> (app version, SDK version, etc) so only
+	 * dynamic clauses are evaluated on each <code>engage()</code> call. The pruned index is
+	 * re-used until any of the static values change. The pruned index only replaces the one it
+	 * was built from: if a new manifest was compiled in the meantime it wins.
+	 */
+	private InteractionIndex pruneInteractionIndex(InteractionIndex index, FieldContext context) {
+		InteractionIndex prunedIndex = index.prune(context);
+		interactionIndex.compareAndSet(index, prunedIndex);
+		return prunedIndex;
+	}
+
+	private InteractionIndex compileInteractionIndex(String targets, String interactions) {
+		try {
+			InteractionIndex index = InteractionIndex.compile(targets, interactions);
+			interactionIndex.set(index);
+			return index;
+		} catch (JSONException e) {
+			ApptentiveLog.e(e, "Exception while compiling interaction index");
+		}
 		return null;
 	}
 
@@ -230,19 +361,7 @@ public class Conversation implements DataChangedListener, Destroyable {
 				cacheSeconds = Constants.CONFIG_DEFAULT_INTERACTION_CACHE_EXPIRATION_DURATION_SECONDS;
 			}
 			setInteractionExpiration(Util.currentTimeSeconds() + cacheSeconds);
-			try {
-				InteractionManifest payload = new InteractionManifest(interactionsPayloadString);
-				Interactions interactions = payload.getInteractions();
-				Targets targets = payload.getTargets();
-				if (interactions != null && targets != null) {
-					setTargets(targets.toString());
-					setInteractions(interactions.toString());
-				} else {
-					ApptentiveLog.e(CONVERSATION, "Unable to save interactionManifest.");
-				}
-			} catch (JSONException e) {
-				ApptentiveLog.e(e, "Invalid InteractionManifest received.");
-			}
+			storeInteractionManifest(interactionsPayloadString);
 		}
 		ApptentiveLog.v(CONVERSATION, "Fetching new Interactions task finished. Successful: %b", updateSuccessful);
 
@@ -274,11 +393,17 @@ public class Conversation implements DataChangedListener, Destroyable {
 			if (interactions != null && targets != null) {
 				setTargets(targets.toString());
 				setInteractions(interactions.toString());
+
+				// compile and prune the index right away so the next engage() call won't have to
+				InteractionIndex index = compileInteractionIndex(getTargets(), getInteractions());
+				if (index != null && ApptentiveInternal.isApptentiveRegistered()) {
+					pruneInteractionIndex(index, FieldContext.create(this));
+				}
 			} else {
-				ApptentiveLog.e("Unable to save InteractionManifest.");
+				ApptentiveLog.e(CONVERSATION, "Unable to save InteractionManifest.");
 			}
 		} catch (JSONException e) {
-			ApptentiveLog.w("Invalid InteractionManifest received.");
+			ApptentiveLog.e(e, "Invalid InteractionManifest received.");
 		}
 	}
 
@@ -332,6 +457,7 @@ public class Conversation implements DataChangedListener, Destroyable {
 
 		ApptentiveLog.d(CONVERSATION, "Loading %sconversation data...", hasState(LOGGED_IN) ? "encrypted " : "");
 		conversationData = (ConversationData) serializer.deserialize();
+		applicableInteractionCache.invalidate();
 		ApptentiveLog.d(CONVERSATION, "Conversation data loaded (took %d ms)", System.currentTimeMillis() - start);
 	}
 
@@ -341,6 +467,7 @@ public class Conversation implements DataChangedListener, Destroyable {
 
 	@Override
 	public void onDataChanged() {
+		applicableInteractionCache.invalidate();
 		scheduleSaveConversationData();
 	}
 
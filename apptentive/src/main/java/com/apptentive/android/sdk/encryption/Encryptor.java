@@ -6,40 +6,65 @@
 
 package com.apptentive.android.sdk.encryption;
 
+import com.apptentive.android.sdk.util.NonClosingOutputStream;
 import com.apptentive.android.sdk.util.StringUtils;
 
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
-import java.security.spec.AlgorithmParameterSpec;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+import javax.crypto.CipherOutputStream;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
+import javax.crypto.ShortBufferException;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
+/**
+ * AES/CBC encryption of payloads and files. Encrypted data is a random IV followed by the cipher
+ * text. Instances are immutable and can be shared between threads: each thread re-uses its own
+ * <code>Cipher</code> for byte array operations while each stream gets a separate one.
+ */
 public class Encryptor {
 
+	private static final String TRANSFORMATION = "AES/CBC/PKCS5Padding";
 	private static final int IV_SIZE = 16;
 
-	private SecretKeySpec key;
+	/**
+	 * <code>SecureRandom</code> is thread safe and expensive to seed
+	 */
+	private static final SecureRandom secureRandom = new SecureRandom();
+
+	/**
+	 * <code>Cipher.getInstance()</code> goes through the provider lookup each time
+	 */
+	private static final ThreadLocal<Cipher> cipherCache = new ThreadLocal<>();
+
+	private final SecretKeySpec key;
 
 	/**
 	 * Initializes the Encryptor
 	 * @param hexKey A hex encoded String with the key data.
 	 */
 	public Encryptor(String hexKey) {
-		this.key = new SecretKeySpec(StringUtils.hexToBytes(hexKey), "AES");
+		this(StringUtils.hexToBytes(hexKey));
 	}
 
 	Encryptor(byte[] keyBytes) {
 		this.key = new SecretKeySpec(keyBytes, "AES");
 	}
 
+	//region Byte arrays
+
 	public byte[] encrypt(byte[] plainText) throws UnsupportedEncodingException,
 	                                               NoSuchPaddingException,
 	                                               NoSuchAlgorithmException,
@@ -47,38 +72,22 @@ public class Encryptor {
 	                                               BadPaddingException,
 	                                               InvalidAlgorithmParameterException,
 	                                               InvalidKeyException {
-		byte[] iv = new byte[IV_SIZE];
-		new SecureRandom().nextBytes(iv);
-		byte[] cipherText = encrypt(iv, plainText);
-		byte[] ret = new byte[iv.length + cipherText.length];
-		System.arraycopy(iv, 0, ret, 0, iv.length);
-		System.arraycopy(cipherText, 0, ret, iv.length, cipherText.length);
-		return ret;
-	}
-
-	private byte[] encrypt(byte[] iv, byte[] plainText) throws NoSuchAlgorithmException,
-	                                                          NoSuchPaddingException,
-	                                                          InvalidAlgorithmParameterException,
-	                                                          InvalidKeyException,
-	                                                          BadPaddingException,
-	                                                          IllegalBlockSizeException {
-
-		AlgorithmParameterSpec ivParameterSpec = new IvParameterSpec(iv);
-		Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
-		cipher.init(Cipher.ENCRYPT_MODE, key, ivParameterSpec);
-		return cipher.doFinal(plainText);
-	}
+		byte[] iv = createIV();
+		Cipher cipher = getCachedCipher();
+		cipher.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(iv));
 
-	private byte[] decrypt(byte[] iv, byte[] cipherText) throws NoSuchPaddingException,
-	                                                           NoSuchAlgorithmException,
-	                                                           BadPaddingException,
-	                                                           IllegalBlockSizeException,
-	                                                           InvalidAlgorithmParameterException,
-	                                                           InvalidKeyException {
-		AlgorithmParameterSpec ivParameterSpec = new IvParameterSpec(iv);
-		Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
-		cipher.init(Cipher.DECRYPT_MODE, key, ivParameterSpec);
-		return cipher.doFinal(cipherText);
+		// IV and cipher text are written into the same array
+		byte[] ret = new byte[IV_SIZE + cipher.getOutputSize(plainText.length)];
+		System.arraycopy(iv, 0, ret, 0, IV_SIZE);
+		try {
+			int length = cipher.doFinal(plainText, 0, plainText.length, ret, IV_SIZE);
+			if (IV_SIZE + length != ret.length) {
+				throw new IllegalStateException("Unexpected cipher text length: " + length);
+			}
+		} catch (ShortBufferException e) {
+			throw new IllegalStateException(e); // output size is known in advance
+		}
+		return ret;
 	}
 
 	public byte[] decrypt(byte[] ivAndCipherText) throws NoSuchPaddingException,
@@ -87,10 +96,92 @@ public class Encryptor {
 	                                                     IllegalBlockSizeException,
 	                                                     BadPaddingException,
 	                                                     InvalidAlgorithmParameterException {
+		if (ivAndCipherText.length < IV_SIZE) {
+			throw new IllegalBlockSizeException("Cipher text is too short: " + ivAndCipherText.length);
+		}
+
+		Cipher cipher = getCachedCipher();
+		cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(ivAndCipherText, 0, IV_SIZE));
+		return cipher.doFinal(ivAndCipherText, IV_SIZE, ivAndCipherText.length - IV_SIZE);
+	}
+
+	//endregion
+
+	//region Streams
+
+	/**
+	 * Returns a stream which encrypts everything written to it into <code>stream</code> using the same
+	 * format as {@link #encrypt(byte[])} (random IV followed by the cipher text). Closing the returned
+	 * stream writes the final block but leaves <code>stream</code> open.
+	 */
+	public OutputStream createEncryptionStream(OutputStream stream) throws IOException,
+	                                                                       NoSuchPaddingException,
+	                                                                       NoSuchAlgorithmException,
+	                                                                       InvalidAlgorithmParameterException,
+	                                                                       InvalidKeyException {
+		if (stream == null) {
+			throw new IllegalArgumentException("Stream is null");
+		}
+
+		byte[] iv = createIV();
+		Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+		cipher.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(iv));
+
+		stream.write(iv);
+		return new CipherOutputStream(new NonClosingOutputStream(stream), cipher);
+	}
+
+	/**
+	 * Reads the IV from <code>stream</code> and returns a stream which decrypts the rest of it (data
+	 * written with {@link #encrypt(byte[])} or {@link #createEncryptionStream(OutputStream)}). Closing
+	 * the returned stream closes <code>stream</code> as well.
+	 */
+	public InputStream createDecryptionStream(InputStream stream) throws IOException,
+	                                                                     NoSuchPaddingException,
+	                                                                     NoSuchAlgorithmException,
+	                                                                     InvalidAlgorithmParameterException,
+	                                                                     InvalidKeyException {
+		if (stream == null) {
+			throw new IllegalArgumentException("Stream is null");
+		}
+
 		byte[] iv = new byte[IV_SIZE];
-		byte[] cipherText = new byte[ivAndCipherText.length - IV_SIZE];
-		System.arraycopy(ivAndCipherText, 0, iv, 0, IV_SIZE);
-		System.arraycopy(ivAndCipherText, IV_SIZE, cipherText, 0, ivAndCipherText.length - IV_SIZE);
-		return decrypt(iv, cipherText);
+		int offset = 0;
+		while (offset < IV_SIZE) {
+			int read = stream.read(iv, offset, IV_SIZE - offset);
+			if (read == -1) {
+				throw new EOFException("Unable to read IV");
+			}
+			offset += read;
+		}
+
+		Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+		cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(iv));
+		return new CipherInputStream(stream, cipher);
 	}
+
+	//endregion
+
+	//region Helpers
+
+	private static byte[] createIV() {
+		byte[] iv = new byte[IV_SIZE];
+		secureRandom.nextBytes(iv);
+		return iv;
+	}
+
+	/**
+	 * Returns the cipher of the current thread (should be initialized before each use and not kept
+	 * after the operation is complete)
+	 */
+	private static Cipher getCachedCipher() throws NoSuchPaddingException, NoSuchAlgorithmException {
+		Cipher cipher = cipherCache.get();
+		if (cipher == null) {
+			cipher = Cipher.getInstance(TRANSFORMATION);
+			cipherCache.set(cipher);
+		}
+		return cipher;
+	}
+
+	//endregion
 }
@@ -11,6 +11,7 @@ import com.apptentive.android.sdk.ApptentiveLog;
 import com.apptentive.android.sdk.encryption.Encryptor;
 import com.apptentive.android.sdk.module.messagecenter.model.MessageCenterUtil;
 import com.apptentive.android.sdk.network.HttpRequestMethod;
+import com.apptentive.android.sdk.util.NonClosingOutputStream;
 import com.apptentive.android.sdk.util.StringUtils;
 import com.apptentive.android.sdk.util.Util;
 import com.apptentive.android.sdk.util.image.ImageItem;
@@ -22,7 +23,9 @@ import org.json.JSONObject;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
@@ -282,104 +285,110 @@ public class CompoundMessage extends ApptentiveMessage implements MessageCenterU
 	 * not read again as plain text while it sits on the device.
 	 *
 	 * @return a Byte array that can be set on the payload request.
-	 * TODO: Refactor this API so that the resulting byte array is streamed to a file for later retrieval.
+	 * @see #renderData(OutputStream)
 	 */
 	@Override
 	public byte[] renderData() {
 		try {
-			boolean encrypted = encryptionKey != null;
-			Encryptor encryptor = null;
-			if (encrypted) {
-				encryptor = new Encryptor(encryptionKey);
-			}
 			ByteArrayOutputStream data = new ByteArrayOutputStream();
+			renderData(data);
+			ApptentiveLog.d(PAYLOADS, "Total payload body bytes: %d", data.size());
+			return data.toByteArray();
+		} catch (Exception e) {
+			ApptentiveLog.e(PAYLOADS, "Error assembling Message Payload.", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Streams the multipart body: each part is written (and encrypted) directly into
+	 * <code>stream</code> so attachments are never held in memory as a whole. Attachments which can't
+	 * be found are skipped.
+	 */
+	@Override
+	public void renderData(OutputStream stream) throws JSONException, IOException {
+		Encryptor encryptor = getEncryptor();
+
+		// First write the message body out as the first "part".
+		stream.write((twoHyphens + boundary + lineEnd).getBytes());
+
+		StringBuilder part = new StringBuilder();
+		part
+			.append("Content-Disposition: form-data; name=\"message\"").append(lineEnd)
+			.append("Content-Type: application/json;charset=UTF-8").append(lineEnd)
+			.append(lineEnd)
+			.append(marshallForSending().toString()).append(lineEnd);
 
-			// First write the message body out as the first "part".
-			StringBuilder header = new StringBuilder();
-			header.append(twoHyphens).append(boundary).append(lineEnd);
-
-			StringBuilder part = new StringBuilder();
-			part
-				.append("Content-Disposition: form-data; name=\"message\"").append(lineEnd)
-				.append("Content-Type: application/json;charset=UTF-8").append(lineEnd)
-				.append(lineEnd)
-				.append(marshallForSending().toString()).append(lineEnd);
-			byte[] partBytes = part.toString().getBytes();
-
-			if (encrypted) {
-				header
-					.append("Content-Disposition: form-data; name=\"message\"").append(lineEnd)
-					.append("Content-Type: application/octet-stream").append(lineEnd)
+		OutputStream partStream = beginPart(stream, encryptor, "message");
+		try {
+			partStream.write(part.toString().getBytes());
+		} finally {
+			partStream.close();
+		}
+		if (encryptor != null) {
+			stream.write(lineEnd.getBytes());
+		}
+
+		// Then append attachments
+		if (attachedFiles != null) {
+			for (StoredFile storedFile : attachedFiles) {
+				boolean image = Util.isMimeTypeImage(storedFile.getMimeType());
+				File file = new File(storedFile.getSourceUriOrPath());
+				if (!image && (!file.exists() || file.isDirectory())) {
+					ApptentiveLog.e(PAYLOADS, "Error reading Message Payload attachment: \"%s\".", storedFile.getLocalFilePath());
+					continue;
+				}
+
+				ApptentiveLog.v(PAYLOADS, "Starting to write an attachment part.");
+				stream.write((twoHyphens + boundary + lineEnd).getBytes());
+				StringBuilder attachmentEnvelope = new StringBuilder();
+				attachmentEnvelope.append(String.format("Content-Disposition: form-data; name=\"file[]\"; filename=\"%s\"", storedFile.getFileName())).append(lineEnd)
+					.append("Content-Type: ").append(storedFile.getMimeType()).append(lineEnd)
 					.append(lineEnd);
-				data.write(header.toString().getBytes());
-				data.write(encryptor.encrypt(partBytes));
-				data.write("\r\n".getBytes());
-			} else {
-				data.write(header.toString().getBytes());
-				data.write(partBytes);
-			}
 
-			// Then append attachments
-			if (attachedFiles != null) {
-				for (StoredFile storedFile : attachedFiles) {
-					ApptentiveLog.v(PAYLOADS, "Starting to write an attachment part.");
-					data.write(("--" + boundary + lineEnd).getBytes());
-					StringBuilder attachmentEnvelope = new StringBuilder();
-					attachmentEnvelope.append(String.format("Content-Disposition: form-data; name=\"file[]\"; filename=\"%s\"", storedFile.getFileName())).append(lineEnd)
-						.append("Content-Type: ").append(storedFile.getMimeType()).append(lineEnd)
-						.append(lineEnd);
-					ByteArrayOutputStream attachmentBytes = new ByteArrayOutputStream();
-					FileInputStream fileInputStream = null;
-					try {
-						ApptentiveLog.v(PAYLOADS, "Writing attachment envelope: %s", attachmentEnvelope.toString());
-						attachmentBytes.write(attachmentEnvelope.toString().getBytes());
-
-						try {
-							if (Util.isMimeTypeImage(storedFile.getMimeType())) {
-								ApptentiveLog.v(PAYLOADS, "Appending image attachment.");
-								ImageUtil.appendScaledDownImageToStream(storedFile.getSourceUriOrPath(), attachmentBytes);
-							} else {
-								ApptentiveLog.v("Appending non-image attachment.");
-								Util.appendFileToStream(new File(storedFile.getSourceUriOrPath()), attachmentBytes);
-							}
-						} catch (Exception e) {
-							ApptentiveLog.e(PAYLOADS, "Error reading Message Payload attachment: \"%s\".", e, storedFile.getLocalFilePath());
-							continue;
-						} finally {
-							Util.ensureClosed(fileInputStream);
-						}
-
-						if (encrypted) {
-							// If encrypted, each part must be encrypted, and wrapped in a plain text set of headers.
-							StringBuilder encryptionEnvelope = new StringBuilder();
-							encryptionEnvelope
-								.append("Content-Disposition: form-data; name=\"file[]\"").append(lineEnd)
-								.append("Content-Type: application/octet-stream").append(lineEnd)
-								.append(lineEnd);
-							ApptentiveLog.v(PAYLOADS, "Writing encrypted envelope: %s", encryptionEnvelope.toString());
-							data.write(encryptionEnvelope.toString().getBytes());
-							ApptentiveLog.v(PAYLOADS, "Encrypting attachment bytes: %d", attachmentBytes.size());
-							byte[] encryptedAttachment = encryptor.encrypt(attachmentBytes.toByteArray());
-							ApptentiveLog.v(PAYLOADS, "Writing encrypted attachment bytes: %d", encryptedAttachment.length);
-							data.write(encryptedAttachment);
-						} else {
-							ApptentiveLog.v(PAYLOADS, "Writing attachment bytes: %d", attachmentBytes.size());
-							data.write(attachmentBytes.toByteArray());
-						}
-						data.write("\r\n".getBytes());
-					} catch (Exception e) {
-						ApptentiveLog.e(PAYLOADS, "Error getting data for Message Payload attachments.", e);
-						return null;
+				// If encrypted, each part must be encrypted, and wrapped in a plain text set of headers.
+				partStream = beginPart(stream, encryptor, "file[]");
+				try {
+					ApptentiveLog.v(PAYLOADS, "Writing attachment envelope: %s", attachmentEnvelope.toString());
+					partStream.write(attachmentEnvelope.toString().getBytes());
+
+					if (image) {
+						ApptentiveLog.v(PAYLOADS, "Appending image attachment.");
+						ImageUtil.appendScaledDownImageToStream(storedFile.getSourceUriOrPath(), new NonClosingOutputStream(partStream));
+					} else {
+						ApptentiveLog.v("Appending non-image attachment.");
+						Util.appendFileToStream(file, partStream);
 					}
+				} finally {
+					partStream.close();
 				}
+				stream.write(lineEnd.getBytes());
 			}
-			data.write(("--" + boundary + "--").getBytes());
+		}
+		stream.write((twoHyphens + boundary + twoHyphens).getBytes());
+	}
 
-			ApptentiveLog.d(PAYLOADS, "Total payload body bytes: %d", data.size());
-			return data.toByteArray();
-		} catch (Exception e) {
-			ApptentiveLog.e(PAYLOADS, "Error assembling Message Payload.", e);
-			return null;
+	/**
+	 * Writes the headers of an encrypted part (if needed) and returns the stream for the part's
+	 * content. Closing the returned stream finishes the part but leaves <code>stream</code> open.
+	 */
+	private static OutputStream beginPart(OutputStream stream, Encryptor encryptor, String name) throws IOException {
+		if (encryptor == null) {
+			return new NonClosingOutputStream(stream);
+		}
+
+		StringBuilder encryptionEnvelope = new StringBuilder();
+		encryptionEnvelope
+			.append("Content-Disposition: form-data; name=\"").append(name).append("\"").append(lineEnd)
+			.append("Content-Type: application/octet-stream").append(lineEnd)
+			.append(lineEnd);
+		ApptentiveLog.v(PAYLOADS, "Writing encrypted envelope: %s", encryptionEnvelope.toString());
+		stream.write(encryptionEnvelope.toString().getBytes());
+
+		try {
+			return encryptor.createEncryptionStream(stream);
+		} catch (GeneralSecurityException e) {
+			throw new IOException("Unable to encrypt Message Payload part", e);
 		}
 	}
 }
@@ -10,11 +10,18 @@ import com.apptentive.android.sdk.util.Util;
 
 import org.json.JSONException;
 
+import java.util.TimeZone;
+
 public abstract class ConversationItem extends JsonPayload {
 
 	protected static final String KEY_CLIENT_CREATED_AT = "client_created_at";
 	protected static final String KEY_CLIENT_CREATED_AT_UTC_OFFSET = "client_created_at_utc_offset";
 
+	/**
+	 * Creation time of a deferred item (see {@link JsonPayload#JsonPayload(PayloadType, boolean)})
+	 */
+	private long deferredCreatedAtMillis;
+
 	protected ConversationItem(PayloadType type) {
 		super(type);
 
@@ -29,6 +36,27 @@ public abstract class ConversationItem extends JsonPayload {
 		super(type, json);
 	}
 
+	/**
+	 * Creates an item with deferred JSON: only the creation time is captured.
+	 */
+	protected ConversationItem(PayloadType type, boolean deferJson) {
+		super(type, deferJson);
+
+		if (deferJson) {
+			deferredCreatedAtMillis = System.currentTimeMillis();
+		} else {
+			setClientCreatedAt(Util.currentTimeSeconds());
+			setClientCreatedAtUtcOffset(Util.getUtcOffset());
+		}
+	}
+
+	@Override
+	protected void buildJson() {
+		super.buildJson();
+		setClientCreatedAt(deferredCreatedAtMillis / 1000.0);
+		setClientCreatedAtUtcOffset(TimeZone.getDefault().getOffset(deferredCreatedAtMillis) / 1000);
+	}
+
 	public Double getClientCreatedAt() {
 		return getDouble(KEY_CLIENT_CREATED_AT);
 	}
@@ -26,13 +26,29 @@ public class EventPayload extends ConversationItem {
 	private static final String KEY_DATA = "data";
 	private static final String KEY_TRIGGER = "trigger";
 	private static final String KEY_CUSTOM_DATA = "custom_data";
+	private static final String KEY_COUNT = "count";
+
+	/**
+	 * Indicates if repeated occurrences of the event can be collapsed into a single counted event (the
+	 * event has no custom or extended data)
+	 */
+	private final boolean aggregatable;
+
+	/**
+	 * Fields of a deferred event: rendered into JSON only when the payload is persisted.
+	 */
+	private String deferredLabel;
+	private String deferredInteractionId;
+	private String deferredData;
 
 	public EventPayload(String json) throws JSONException {
 		super(PayloadType.event, json);
+		aggregatable = false;
 	}
 
 	public EventPayload(String label, JSONObject data) {
 		super(PayloadType.event);
+		aggregatable = true;
 		put(KEY_LABEL, label);
 		if (data != null) {
 			put(KEY_DATA, data);
@@ -41,6 +57,7 @@ public class EventPayload extends ConversationItem {
 
 	public EventPayload(String label, Map<String, String> data) {
 		super(PayloadType.event);
+		aggregatable = true;
 		try {
 			put(KEY_LABEL, label);
 			if (data != null && !data.isEmpty()) {
@@ -56,7 +73,32 @@ public class EventPayload extends ConversationItem {
 	}
 
 	public EventPayload(String label, String interactionId, String data, Map<String, Object> customData, ExtendedData... extendedData) {
-		super(PayloadType.event);
+		// most events are just a label: defer the JSON until the payload is persisted (engage() hot path)
+		super(PayloadType.event, isSimpleEvent(customData, extendedData));
+		aggregatable = isJsonDeferred();
+
+		if (isJsonDeferred()) {
+			deferredLabel = label;
+			deferredInteractionId = interactionId;
+			deferredData = data;
+			return;
+		}
+
+		// custom and extended data are mutable: render them right away
+		putEventData(label, interactionId, data, customData, extendedData);
+	}
+
+	private static boolean isSimpleEvent(Map<String, Object> customData, ExtendedData... extendedData) {
+		return (customData == null || customData.isEmpty()) && (extendedData == null || extendedData.length == 0);
+	}
+
+	@Override
+	protected void buildJson() {
+		super.buildJson();
+		putEventData(deferredLabel, deferredInteractionId, deferredData, null);
+	}
+
+	private void putEventData(String label, String interactionId, String data, Map<String, Object> customData, ExtendedData... extendedData) {
 		try {
 			put(KEY_LABEL, label);
 			if (interactionId != null) {
@@ -87,6 +129,33 @@ public class EventPayload extends ConversationItem {
 		return optString(KEY_LABEL, null);
 	}
 
+	/**
+	 * Returns a key shared by the repeated occurrences of this event (same label, interaction and
+	 * data) or <code>null</code> if the event can't be aggregated
+	 */
+	public String getAggregationKey() {
+		if (!aggregatable) {
+			return null;
+		}
+
+		JSONObject data = getJSONObject(KEY_DATA);
+		return StringUtils.format("%s|%s|%s", getEventLabel(), optString(KEY_INTERACTION_ID, null), data != null ? data.toString() : null);
+	}
+
+	/**
+	 * Marks the event as an aggregate of <code>count</code> repeated occurrences
+	 */
+	public void setAggregateCount(int count) {
+		if (count < 1) {
+			throw new IllegalArgumentException("Invalid count: " + count);
+		}
+		put(KEY_COUNT, count);
+	}
+
+	public int getAggregateCount() {
+		return optInt(KEY_COUNT, 1);
+	}
+
 	private JSONObject generateCustomDataJson(Map<String, Object> customData) {
 		JSONObject ret = new JSONObject();
 		for (String key : customData.keySet()) {
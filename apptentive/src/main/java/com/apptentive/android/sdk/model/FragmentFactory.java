@@ -21,6 +21,7 @@ import com.apptentive.android.sdk.module.engagement.interaction.fragment.RatingD
 import com.apptentive.android.sdk.module.engagement.interaction.fragment.SurveyFragment;
 import com.apptentive.android.sdk.module.engagement.interaction.fragment.UpgradeMessageFragment;
 import com.apptentive.android.sdk.module.engagement.interaction.model.Interaction;
+import com.apptentive.android.sdk.module.engagement.interaction.model.InteractionRegistry;
 import com.apptentive.android.sdk.util.Constants;
 import com.apptentive.android.sdk.util.Constants.FragmentConfigKeys;
 
@@ -32,11 +33,7 @@ public class FragmentFactory {
 		Interaction interaction;
 		if (fragmentType != Constants.FragmentTypes.UNKNOWN) {
 			if (fragmentType == Constants.FragmentTypes.INTERACTION) {
-				String interactionString;
-
-				interactionString = bundle.getString(Interaction.KEY_NAME);
-
-				interaction = Interaction.Factory.parseInteraction(interactionString);
+				interaction = InteractionRegistry.getInteraction(bundle);
 				if (interaction != null) {
 					switch (interaction.getType()) {
 						case UpgradeMessage:
@@ -79,9 +76,7 @@ public class FragmentFactory {
 		boolean defaultVal = true;
 
 		if (fragmentType == Constants.FragmentTypes.INTERACTION) {
-			String interactionString;
-			interactionString = bundle.getString(Interaction.KEY_NAME);
-			interaction = Interaction.Factory.parseInteraction(interactionString);
+			interaction = InteractionRegistry.getInteraction(bundle);
 			if (interaction != null) {
 				switch (interaction.getType()) {
 					case Survey:
@@ -7,7 +7,6 @@
 package com.apptentive.android.sdk.model;
 
 import com.apptentive.android.sdk.ApptentiveLog;
-import com.apptentive.android.sdk.encryption.Encryptor;
 import com.apptentive.android.sdk.network.HttpRequestMethod;
 import com.apptentive.android.sdk.util.StringUtils;
 
@@ -22,7 +21,10 @@ public abstract class JsonPayload extends Payload {
 
 	private static final String KEY_NONCE = "nonce";
 
-	private final JSONObject jsonObject;
+	/**
+	 * Payload JSON. Might be <code>null</code> for deferred payloads: see {@link #getJsonObject()}
+	 */
+	private JSONObject jsonObject;
 
 	public JsonPayload(PayloadType type) {
 		super(type);
@@ -35,6 +37,19 @@ public abstract class JsonPayload extends Payload {
 		jsonObject = new JSONObject(json);
 	}
 
+	/**
+	 * Creates a payload with deferred JSON: the object (and the nonce) is only created when the
+	 * payload is accessed for the first time (normally when it's persisted) and then filled by
+	 * {@link #buildJson()}. Used for lightweight payloads created on hot paths.
+	 */
+	protected JsonPayload(PayloadType type, boolean deferJson) {
+		super(type);
+		if (!deferJson) {
+			jsonObject = new JSONObject();
+			setNonce(UUID.randomUUID().toString());
+		}
+	}
+
 	//region Data
 
 	@Override
@@ -44,9 +59,8 @@ public abstract class JsonPayload extends Payload {
 
 		if (encryptionKey != null) {
 			byte[] bytes = jsonString.getBytes();
-			Encryptor encryptor = new Encryptor(encryptionKey);
 			try {
-				return encryptor.encrypt(bytes);
+				return getEncryptor().encrypt(bytes);
 			} catch (Exception e) {
 				ApptentiveLog.e(PAYLOADS, "Error encrypting payload data", e);
 			}
@@ -62,7 +76,7 @@ public abstract class JsonPayload extends Payload {
 
 	protected void put(String key, String value) {
 		try {
-			jsonObject.put(key, value);
+			getJsonObject().put(key, value);
 		} catch (Exception e) {
 			ApptentiveLog.e(e, "Exception while putting json pair '%s'='%s'", key, value);
 		}
@@ -70,7 +84,7 @@ public abstract class JsonPayload extends Payload {
 
 	protected void put(String key, boolean value) {
 		try {
-			jsonObject.put(key, value);
+			getJsonObject().put(key, value);
 		} catch (Exception e) {
 			ApptentiveLog.e(e, "Exception while putting json pair '%s'='%s'", key, value);
 		}
@@ -78,7 +92,7 @@ public abstract class JsonPayload extends Payload {
 
 	protected void put(String key, int value) {
 		try {
-			jsonObject.put(key, value);
+			getJsonObject().put(key, value);
 		} catch (Exception e) {
 			ApptentiveLog.e(e, "Exception while putting json pair '%s'='%s'", key, value);
 		}
@@ -86,7 +100,7 @@ public abstract class JsonPayload extends Payload {
 
 	protected void put(String key, double value) {
 		try {
-			jsonObject.put(key, value);
+			getJsonObject().put(key, value);
 		} catch (Exception e) {
 			ApptentiveLog.e(e, "Exception while putting json pair '%s'='%s'", key, value);
 		}
@@ -94,25 +108,25 @@ public abstract class JsonPayload extends Payload {
 
 	protected void put(String key, JSONObject object) {
 		try {
-			jsonObject.put(key, object);
+			getJsonObject().put(key, object);
 		} catch (Exception e) {
 			ApptentiveLog.e(e, "Exception while putting json pair '%s'='%s'", key, object);
 		}
 	}
 
 	protected void remove(String key) { // TODO: rename to removeKey
-		jsonObject.remove(key);
+		getJsonObject().remove(key);
 	}
 
 	public String optString(String key, String fallback) {
-		if (!jsonObject.isNull(key)) {
-			return jsonObject.optString(key, fallback);
+		if (!getJsonObject().isNull(key)) {
+			return getJsonObject().optString(key, fallback);
 		}
 		return null;
 	}
 
 	public int optInt(String key, int defaultValue) {
-		return jsonObject.optInt(key, defaultValue);
+		return getJsonObject().optInt(key, defaultValue);
 	}
 
 	public boolean getBoolean(String key) {
@@ -120,12 +134,12 @@ public abstract class JsonPayload extends Payload {
 	}
 
 	public boolean getBoolean(String key, boolean defaultValue) {
-		return jsonObject.optBoolean(key, defaultValue);
+		return getJsonObject().optBoolean(key, defaultValue);
 	}
 
 	protected Double getDouble(String key) {
 		try {
-			return jsonObject.getDouble(key);
+			return getJsonObject().getDouble(key);
 		} catch (Exception e) {
 			// Ignore.
 		}
@@ -133,15 +147,15 @@ public abstract class JsonPayload extends Payload {
 	}
 
 	protected double getDouble(String key, double defaultValue) {
-		return jsonObject.optDouble(key, defaultValue);
+		return getJsonObject().optDouble(key, defaultValue);
 	}
 
 	protected JSONObject getJSONObject(String key) {
-		return jsonObject.optJSONObject(key);
+		return getJsonObject().optJSONObject(key);
 	}
 
 	protected boolean isNull(String key) { // TODO: rename to containsKey
-		return jsonObject.isNull(key);
+		return getJsonObject().isNull(key);
 	}
 
 	//endregion
@@ -150,7 +164,7 @@ public abstract class JsonPayload extends Payload {
 
 	@Override
 	public String toString() {
-		return StringUtils.format("%s %s", getClass().getSimpleName(), jsonObject);
+		return StringUtils.format("%s %s", getClass().getSimpleName(), getJsonObject());
 	}
 
 	//endregion
@@ -158,9 +172,27 @@ public abstract class JsonPayload extends Payload {
 	//region Getters/Setters
 
 	public JSONObject getJsonObject() {
+		if (jsonObject == null) {
+			jsonObject = new JSONObject();
+			setNonce(UUID.randomUUID().toString());
+			buildJson();
+		}
 		return jsonObject;
 	}
 
+	/**
+	 * Returns <code>true</code> if the JSON of a deferred payload was not created yet
+	 */
+	protected boolean isJsonDeferred() {
+		return jsonObject == null;
+	}
+
+	/**
+	 * Override to fill the JSON of a deferred payload (see {@link #JsonPayload(PayloadType, boolean)})
+	 */
+	protected void buildJson() {
+	}
+
 	@Override
 	public HttpRequestMethod getHttpRequestMethod() {
 		return HttpRequestMethod.PUT;
@@ -192,9 +224,9 @@ public abstract class JsonPayload extends Payload {
 		String container = getJsonContainer();
 		if (container != null) {
 			result = new JSONObject();
-			result.put(container, jsonObject);
+			result.put(container, getJsonObject());
 		} else {
-			result = jsonObject;
+			result = getJsonObject();
 		}
 
 		if (encryptionKey != null) {
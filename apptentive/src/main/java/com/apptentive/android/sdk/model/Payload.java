@@ -6,11 +6,14 @@
 
 package com.apptentive.android.sdk.model;
 
+import com.apptentive.android.sdk.encryption.Encryptor;
 import com.apptentive.android.sdk.network.HttpRequestMethod;
 import com.apptentive.android.sdk.util.StringUtils;
 
 import org.json.JSONException;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 
 public abstract class Payload {
@@ -21,6 +24,8 @@ public abstract class Payload {
 	 */
 	protected String encryptionKey;
 
+	private Encryptor encryptor;
+
 	/**
 	 * The Conversation ID of the payload, if known at this time.
 	 */
@@ -51,6 +56,18 @@ public abstract class Payload {
 	 */
 	public abstract byte[] renderData() throws JSONException;
 
+	/**
+	 * Writes binary data to be stored in database. Payloads which might have large bodies should
+	 * override this method and render directly into the stream.
+	 */
+	public void renderData(OutputStream stream) throws JSONException, IOException {
+		byte[] data = renderData();
+		if (data == null) {
+			throw new IOException("Unable to render payload data");
+		}
+		stream.write(data);
+	}
+
 	//region
 
 	//region Http-request
@@ -80,6 +97,17 @@ public abstract class Payload {
 
 	public void setEncryptionKey(String encryptionKey) {
 		this.encryptionKey = encryptionKey;
+		this.encryptor = null;
+	}
+
+	/**
+	 * Returns encryptor for the current encryption key (created once per payload)
+	 */
+	protected Encryptor getEncryptor() {
+		if (encryptor == null && encryptionKey != null) {
+			encryptor = new Encryptor(encryptionKey);
+		}
+		return encryptor;
 	}
 
 	public boolean hasEncryptionKey() {
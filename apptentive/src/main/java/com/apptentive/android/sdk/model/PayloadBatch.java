@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2017, Apptentive, Inc. All Rights Reserved.
+ * Please refer to the LICENSE file for the terms and conditions
+ * under which redistribution and use of this file is permitted.
+ */
+
+package com.apptentive.android.sdk.model;
+
+import com.apptentive.android.sdk.network.HttpRequestMethod;
+import com.apptentive.android.sdk.util.StringUtils;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Group of JSON payloads uploaded with a single HTTP-request (batch upload mode).
+ * <p/>
+ * Request body:
+ * <pre>
+ * {"payloads":[{"nonce":"...","type":"event","method":"POST","path":"/conversations/.../events","body":{...}}, ...]}
+ * </pre>
+ * Response body (one result per payload):
+ * <pre>
+ * {"results":[{"nonce":"...","status":201,"body":{...}}, ...]}
+ * </pre>
+ */
+public class PayloadBatch {
+	private static final String ENDPOINT_BATCH = "/conversations/%s/batch";
+	private static final String CONTENT_TYPE_JSON = "application/json";
+
+	private static final String KEY_PAYLOADS = "payloads";
+	private static final String KEY_RESULTS = "results";
+	private static final String KEY_NONCE = "nonce";
+	private static final String KEY_TYPE = "type";
+	private static final String KEY_METHOD = "method";
+	private static final String KEY_PATH = "path";
+	private static final String KEY_BODY = "body";
+	private static final String KEY_STATUS = "status";
+	private static final String KEY_ERROR = "error";
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final List<PayloadData> payloads;
+
+	public PayloadBatch(List<PayloadData> payloads) {
+		if (payloads == null || payloads.isEmpty()) {
+			throw new IllegalArgumentException("Payloads are null or empty");
+		}
+
+		PayloadData first = payloads.get(0);
+		for (PayloadData payload : payloads) {
+			if (!isBatchable(payload)) {
+				throw new IllegalArgumentException("Payload can't be batched: " + payload);
+			}
+			if (!isCompatible(first, payload)) {
+				throw new IllegalArgumentException("Payload is not compatible with the batch: " + payload);
+			}
+		}
+
+		this.payloads = Collections.unmodifiableList(new ArrayList<>(payloads));
+	}
+
+	//region Batching rules
+
+	/**
+	 * Returns <code>true</code> if payloads of the given <code>type</code> are independent JSON
+	 * objects which can be uploaded in a batch
+	 */
+	public static boolean isBatchable(PayloadType type) {
+		return type == PayloadType.event || type == PayloadType.survey;
+	}
+
+	/**
+	 * Returns <code>true</code> if <code>payload</code> can be uploaded in a batch (encrypted and
+	 * streamed payloads are sent separately)
+	 */
+	public static boolean isBatchable(PayloadData payload) {
+		return isBatchable(payload.getType()) && !payload.isEncrypted() && !payload.isStreamed() && CONTENT_TYPE_JSON.equals(payload.getContentType());
+	}
+
+	/**
+	 * Returns <code>true</code> if both payloads belong to the same conversation and can share the
+	 * same request
+	 */
+	public static boolean isCompatible(PayloadData first, PayloadData second) {
+		return StringUtils.equal(first.getConversationId(), second.getConversationId()) &&
+			StringUtils.equal(first.getAuthToken(), second.getAuthToken());
+	}
+
+	//endregion
+
+	//region Request
+
+	/**
+	 * Creates request body. Payload bodies are copied as they are (without parsing them back into
+	 * JSON objects).
+	 */
+	public byte[] renderData() {
+		int capacity = 32;
+		for (PayloadData payload : payloads) {
+			capacity += payload.getData().length + 128;
+		}
+
+		ByteArrayOutputStream stream = new ByteArrayOutputStream(capacity);
+		write(stream, "{\"" + KEY_PAYLOADS + "\":[");
+		for (int i = 0; i < payloads.size(); ++i) {
+			PayloadData payload = payloads.get(i);
+			if (i > 0) {
+				write(stream, ",");
+			}
+			write(stream, "{\"" + KEY_NONCE + "\":" + JSONObject.quote(payload.getNonce()) +
+				",\"" + KEY_TYPE + "\":" + JSONObject.quote(payload.getType().name()) +
+				",\"" + KEY_METHOD + "\":" + JSONObject.quote(payload.getHttpRequestMethod().name()) +
+				",\"" + KEY_PATH + "\":" + JSONObject.quote(payload.getHttpRequestPath()) +
+				",\"" + KEY_BODY + "\":");
+			byte[] data = payload.getData();
+			stream.write(data, 0, data.length);
+			write(stream, "}");
+		}
+		write(stream, "]}");
+		return stream.toByteArray();
+	}
+
+	private static void write(ByteArrayOutputStream stream, String str) {
+		byte[] bytes = str.getBytes(UTF_8);
+		stream.write(bytes, 0, bytes.length);
+	}
+
+	//endregion
+
+	//region Response
+
+	/**
+	 * Maps batch response items to payload nonces. Payloads without a result are missing from the map.
+	 */
+	public static Map<String, Result> parseResults(String responseData) throws JSONException {
+		Map<String, Result> results = new HashMap<>();
+		if (StringUtils.isNullOrEmpty(responseData)) {
+			return results;
+		}
+
+		JSONArray items = new JSONObject(responseData).optJSONArray(KEY_RESULTS);
+		if (items != null) {
+			for (int i = 0; i < items.length(); ++i) {
+				JSONObject item = items.optJSONObject(i);
+				String nonce = item != null ? item.optString(KEY_NONCE, null) : null;
+				if (nonce != null) {
+					results.put(nonce, new Result(item.optInt(KEY_STATUS, -1), item.optJSONObject(KEY_BODY), item.optString(KEY_ERROR, null)));
+				}
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Result of a single payload upload within a batch
+	 */
+	public static class Result {
+		private final int responseCode;
+		private final JSONObject responseData;
+		private final String error;
+
+		public Result(int responseCode, JSONObject responseData, String error) {
+			this.responseCode = responseCode;
+			this.responseData = responseData;
+			this.error = error;
+		}
+
+		public boolean isSuccessful() {
+			return responseCode >= 200 && responseCode < 300;
+		}
+
+		public int getResponseCode() {
+			return responseCode;
+		}
+
+		public JSONObject getResponseData() {
+			return responseData;
+		}
+
+		/**
+		 * Returns <code>null</code> if payload was successfully sent
+		 */
+		public String getErrorMessage() {
+			if (isSuccessful()) {
+				return null;
+			}
+			return error != null ?
+				StringUtils.format("Unexpected response code: %d (%s)", responseCode, error) :
+				StringUtils.format("Unexpected response code: %d", responseCode);
+		}
+	}
+
+	//endregion
+
+	//region String representation
+
+	@Override
+	public String toString() {
+		return StringUtils.format("size=%d conversationId=%s", payloads.size(), getConversationId());
+	}
+
+	//endregion
+
+	//region Getters
+
+	public List<PayloadData> getPayloads() {
+		return payloads;
+	}
+
+	public int size() {
+		return payloads.size();
+	}
+
+	public String getConversationId() {
+		return payloads.get(0).getConversationId();
+	}
+
+	public String getAuthToken() {
+		return payloads.get(0).getAuthToken();
+	}
+
+	public String getHttpRequestPath() {
+		return StringUtils.format(ENDPOINT_BATCH, getConversationId());
+	}
+
+	public HttpRequestMethod getHttpRequestMethod() {
+		return HttpRequestMethod.POST;
+	}
+
+	public String getContentType() {
+		return CONTENT_TYPE_JSON;
+	}
+
+	//endregion
+}
@@ -9,11 +9,16 @@ package com.apptentive.android.sdk.model;
 import com.apptentive.android.sdk.network.HttpRequestMethod;
 import com.apptentive.android.sdk.util.StringUtils;
 
+import java.io.File;
+
 public class PayloadData {
 	private final PayloadType type;
 	private final String nonce;
 	private final String conversationId;
 	private final byte[] data;
+	private final File dataFile;
+	private final long dataOffset;
+	private final long dataLength;
 	private final String authToken;
 	private final String contentType;
 	private final String httpRequestPath;
@@ -22,6 +27,24 @@ public class PayloadData {
 
 
 	public PayloadData(PayloadType type, String nonce, String conversationId, byte[] data, String authToken, String contentType, String httpRequestPath, HttpRequestMethod httpRequestMethod, boolean encrypted) {
+		this(type, nonce, conversationId, data, null, 0, data != null ? data.length : 0, authToken, contentType, httpRequestPath, httpRequestMethod, encrypted);
+	}
+
+	/**
+	 * Creates payload data which body is a region of <code>dataFile</code>: the body is streamed from
+	 * the disk when the payload is sent (see {@link #isStreamed()})
+	 */
+	public PayloadData(PayloadType type, String nonce, String conversationId, File dataFile, long dataOffset, long dataLength, String authToken, String contentType, String httpRequestPath, HttpRequestMethod httpRequestMethod, boolean encrypted) {
+		this(type, nonce, conversationId, null, dataFile, dataOffset, dataLength, authToken, contentType, httpRequestPath, httpRequestMethod, encrypted);
+		if (dataFile == null) {
+			throw new IllegalArgumentException("Data file is null");
+		}
+		if (dataOffset < 0 || dataLength < 0) {
+			throw new IllegalArgumentException("Invalid data file region: offset=" + dataOffset + " length=" + dataLength);
+		}
+	}
+
+	private PayloadData(PayloadType type, String nonce, String conversationId, byte[] data, File dataFile, long dataOffset, long dataLength, String authToken, String contentType, String httpRequestPath, HttpRequestMethod httpRequestMethod, boolean encrypted) {
 		if (type == null) {
 			throw new IllegalArgumentException("Payload type is null");
 		}
@@ -34,7 +57,7 @@ public class PayloadData {
 			throw new IllegalArgumentException("Conversation ID is null");
 		}
 
-		if (data == null) {
+		if (data == null && dataFile == null) {
 			throw new IllegalArgumentException("Data is null");
 		}
 
@@ -54,6 +77,9 @@ public class PayloadData {
 		this.nonce = nonce;
 		this.conversationId = conversationId;
 		this.data = data;
+		this.dataFile = dataFile;
+		this.dataOffset = dataOffset;
+		this.dataLength = dataLength;
 		this.authToken = authToken;
 		this.contentType = contentType;
 		this.httpRequestPath = httpRequestPath;
@@ -84,10 +110,36 @@ public class PayloadData {
 		return conversationId;
 	}
 
+	/**
+	 * Returns payload body (should not be called for streamed payloads)
+	 */
 	public byte[] getData() {
+		if (data == null) {
+			throw new IllegalStateException("Payload data is streamed from a file: " + dataFile);
+		}
 		return data;
 	}
 
+	/**
+	 * Returns <code>true</code> if the body is not loaded into memory and should be streamed from
+	 * {@link #getDataFile()}
+	 */
+	public boolean isStreamed() {
+		return data == null;
+	}
+
+	public File getDataFile() {
+		return dataFile;
+	}
+
+	public long getDataOffset() {
+		return dataOffset;
+	}
+
+	public long getDataLength() {
+		return dataLength;
+	}
+
 	public String getAuthToken() {
 		return authToken;
 	}
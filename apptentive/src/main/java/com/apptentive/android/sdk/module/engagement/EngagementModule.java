@@ -10,6 +10,7 @@ import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
 
+import com.apptentive.android.sdk.Apptentive;
 import com.apptentive.android.sdk.ApptentiveInternal;
 import com.apptentive.android.sdk.ApptentiveLog;
 import com.apptentive.android.sdk.ApptentiveViewActivity;
@@ -18,11 +19,17 @@ import com.apptentive.android.sdk.debug.Assert;
 import com.apptentive.android.sdk.model.EventPayload;
 import com.apptentive.android.sdk.model.ExtendedData;
 import com.apptentive.android.sdk.module.engagement.interaction.model.Interaction;
+import com.apptentive.android.sdk.module.engagement.interaction.model.InteractionRegistry;
 import com.apptentive.android.sdk.module.engagement.interaction.model.MessageCenterInteraction;
 import com.apptentive.android.sdk.module.metric.MetricModule;
 import com.apptentive.android.sdk.util.Constants;
 import com.apptentive.android.sdk.util.Util;
+import com.apptentive.android.sdk.util.threading.DispatchQueue;
+import com.apptentive.android.sdk.util.threading.DispatchQueueType;
+import com.apptentive.android.sdk.util.threading.DispatchTask;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -64,11 +71,11 @@ public class EngagementModule {
 			String eventLabel = generateEventLabel(vendor, interaction, eventName);
 			ApptentiveLog.d("engage(%s)", eventLabel);
 
-			String versionName = ApptentiveInternal.getInstance().getApplicationVersionName();
-			int versionCode = ApptentiveInternal.getInstance().getApplicationVersionCode();
-			conversation.getEventData().storeEventForCurrentAppVersion(Util.currentTimeSeconds(), versionCode, versionName, eventLabel);
-			conversation.addPayload(new EventPayload(eventLabel, interactionId, data, customData, extendedData));
-			return doEngage(conversation, context, eventLabel);
+			Interaction applicableInteraction = doEngage(conversation, eventLabel, interactionId, data, customData, extendedData);
+			if (applicableInteraction != null) {
+				launchInteraction(context, applicableInteraction);
+				return true;
+			}
 		} catch (Exception e) {
 			ApptentiveLog.w(e, "Error in engage()");
 			MetricModule.sendError(e, null, null);
@@ -76,17 +83,80 @@ public class EngagementModule {
 		return false;
 	}
 
-	private static boolean doEngage(Conversation conversation, Context context, String eventLabel) {
+	/**
+	 * Asynchronous version of {@link #engage(Context, Conversation, String, String, String, String, String, Map, ExtendedData...)}.
+	 * Event recording and criteria evaluation are done on a serial background queue (so events are
+	 * recorded in the same order they were engaged) and the interaction is launched on the main
+	 * queue. The <code>callback</code> (if any) is always invoked on the main queue.
+	 */
+	public static void engageAsync(final Context context, final Conversation conversation, final String vendor, final String interaction, final String interactionId, final String eventName, final String data, final Map<String, Object> customData, final Apptentive.EngageCallback callback, final ExtendedData... extendedData) {
+		if (context == null) {
+			throw new IllegalArgumentException("Context is null");
+		}
+
+		if (conversation == null) {
+			throw new IllegalArgumentException("Conversation is null");
+		}
+
+		EngagementQueueHolder.QUEUE.dispatchAsync(new DispatchTask() {
+			@Override
+			protected void execute() {
+				Interaction applicableInteraction = null;
+				try {
+					String eventLabel = generateEventLabel(vendor, interaction, eventName);
+					ApptentiveLog.d("engageAsync(%s)", eventLabel);
+
+					applicableInteraction = doEngage(conversation, eventLabel, interactionId, data, customData, extendedData);
+				} catch (Exception e) {
+					ApptentiveLog.w(e, "Error in engageAsync()");
+					MetricModule.sendError(e, null, null);
+				}
+
+				final Interaction interactionToLaunch = applicableInteraction;
+				DispatchQueue.mainQueue().dispatchAsync(new DispatchTask() {
+					@Override
+					protected void execute() {
+						boolean interactionShown = false;
+						if (interactionToLaunch != null) {
+							// conversation might have changed (logout) while we were evaluating criteria
+							if (conversation == ApptentiveInternal.getInstance().getConversation()) {
+								launchInteraction(context, interactionToLaunch);
+								interactionShown = true;
+							} else {
+								ApptentiveLog.w("Unable to launch interaction: conversation is no longer active");
+							}
+						}
+
+						if (callback != null) {
+							callback.onEngageFinished(interactionShown);
+						}
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Records the event and returns an applicable interaction for <code>eventLabel</code> (if any).
+	 * If the interaction is found - its invocation is recorded as well.
+	 */
+	private static Interaction doEngage(Conversation conversation, String eventLabel, String interactionId, String data, Map<String, Object> customData, ExtendedData... extendedData) {
+		if (!ApptentiveInternal.isApptentiveRegistered()) {
+			return null;
+		}
+
+		String versionName = ApptentiveInternal.getInstance().getApplicationVersionName();
+		int versionCode = ApptentiveInternal.getInstance().getApplicationVersionCode();
+		conversation.getEventData().storeEventForCurrentAppVersion(Util.currentTimeSeconds(), versionCode, versionName, eventLabel);
+		conversation.addPayload(new EventPayload(eventLabel, interactionId, data, customData, extendedData));
+
 		Interaction interaction = conversation.getApplicableInteraction(eventLabel);
 		if (interaction != null) {
-			String versionName = ApptentiveInternal.getInstance().getApplicationVersionName();
-			int versionCode = ApptentiveInternal.getInstance().getApplicationVersionCode();
 			conversation.getEventData().storeInteractionForCurrentAppVersion(Util.currentTimeSeconds(), versionCode, versionName, interaction.getId());
-			launchInteraction(context, interaction);
-			return true;
+			return interaction;
 		}
 		ApptentiveLog.d("No interaction to show.");
-		return false;
+		return null;
 	}
 
 	public static void launchInteraction(Context context, Interaction interaction) {
@@ -95,7 +165,7 @@ public class EngagementModule {
 			Intent intent = new Intent();
 			intent.setClass(context.getApplicationContext(), ApptentiveViewActivity.class);
 			intent.putExtra(Constants.FragmentConfigKeys.TYPE, Constants.FragmentTypes.INTERACTION);
-			intent.putExtra(Interaction.KEY_NAME, interaction.toString());
+			InteractionRegistry.putInteraction(intent, interaction); // pass the parsed interaction instead of a JSON round-trip
 			/* non-activity context start an Activity, but it requires that a new task be created.
 			 * This may fit specific use cases, but can create non-standard back stack behaviors in
 			 * hosting application. non-activity context include application context, context from Service
@@ -130,18 +200,45 @@ public class EngagementModule {
 		return canShowInteraction(conversation, eventLabel);
 	}
 
+	/**
+	 * Batch version of {@link #canShowInteraction(Conversation, String, String, String)}.
+	 *
+	 * @return "event name" => "can show interaction"
+	 */
+	public static Map<String, Boolean> canShowInteractions(Conversation conversation, String interaction, Collection<String> eventNames, String vendor) {
+		if (conversation == null) {
+			throw new IllegalArgumentException("Conversation is null");
+		}
+
+		Map<String, String> eventLabels = new HashMap<>(); // event label => event name
+		for (String eventName : eventNames) {
+			eventLabels.put(generateEventLabel(vendor, interaction, eventName), eventName);
+		}
+
+		Map<String, Boolean> labelResults = conversation.canShowInteractions(eventLabels.keySet());
+
+		Map<String, Boolean> result = new HashMap<>();
+		for (Map.Entry<String, Boolean> entry : labelResults.entrySet()) {
+			result.put(eventLabels.get(entry.getKey()), entry.getValue());
+		}
+		return result;
+	}
+
 	private static boolean canShowInteraction(Conversation conversation, String eventLabel) {
 		if (conversation == null) {
 			throw new IllegalArgumentException("Conversation is null");
 		}
 
-		Interaction interaction = conversation.getApplicableInteraction(eventLabel);
-		return interaction != null;
+		return conversation.canShowInteraction(eventLabel);
 	}
 
 
 	public static String generateEventLabel(String vendor, String interaction, String eventName) {
-		return String.format("%s#%s#%s", encodeEventLabelPart(vendor), encodeEventLabelPart(interaction), encodeEventLabelPart(eventName));
+		return EventLabelCacheHolder.CACHE.get(vendor, interaction, eventName);
+	}
+
+	private static String encodeEventLabel(String vendor, String interaction, String eventName) {
+		return encodeEventLabelPart(vendor) + '#' + encodeEventLabelPart(interaction) + '#' + encodeEventLabelPart(eventName);
 	}
 
 	/**
@@ -150,4 +247,63 @@ public class EngagementModule {
 	private static String encodeEventLabelPart(String input) {
 		return input.replace("%", "%25").replace("/", "%2F").replace("#", "%23");
 	}
+
+	/**
+	 * Encoded event labels: "vendor" => "interaction" => "event name" => "label". The same events
+	 * are engaged over and over again so the labels are only encoded once. Lookups don't allocate.
+	 */
+	private static class EventLabelCache {
+		/**
+		 * Protects the cache from growing unbounded if the event names are generated dynamically.
+		 */
+		private static final int MAX_SIZE = 512;
+
+		private final Map<String, Map<String, Map<String, String>>> labels = new HashMap<>();
+		private int size;
+
+		synchronized String get(String vendor, String interaction, String eventName) {
+			if (vendor == null || interaction == null || eventName == null) {
+				return encodeEventLabel(vendor, interaction, eventName); // don't cache invalid parts
+			}
+
+			Map<String, Map<String, String>> interactionLabels = labels.get(vendor);
+			if (interactionLabels == null) {
+				interactionLabels = new HashMap<>();
+				labels.put(vendor, interactionLabels);
+			}
+
+			Map<String, String> eventLabels = interactionLabels.get(interaction);
+			if (eventLabels == null) {
+				eventLabels = new HashMap<>();
+				interactionLabels.put(interaction, eventLabels);
+			}
+
+			String label = eventLabels.get(eventName);
+			if (label == null) {
+				label = encodeEventLabel(vendor, interaction, eventName);
+				if (size >= MAX_SIZE) {
+					labels.clear();
+					size = 0;
+					return label;
+				}
+				eventLabels.put(eventName, label);
+				++size;
+			}
+			return label;
+		}
+	}
+
+	/**
+	 * Thread safe singleton trick
+	 */
+	private static class EventLabelCacheHolder {
+		private static final EventLabelCache CACHE = new EventLabelCache();
+	}
+
+	/**
+	 * Thread safe singleton trick (the queue thread is only started on the first async engage)
+	 */
+	private static class EngagementQueueHolder {
+		private static final DispatchQueue QUEUE = DispatchQueue.createBackgroundQueue("Apptentive Engagement Queue", DispatchQueueType.Serial);
+	}
 }
@@ -40,6 +40,7 @@ import com.apptentive.android.sdk.model.ExtendedData;
 import com.apptentive.android.sdk.module.engagement.EngagementModule;
 import com.apptentive.android.sdk.module.engagement.interaction.InteractionManager;
 import com.apptentive.android.sdk.module.engagement.interaction.model.Interaction;
+import com.apptentive.android.sdk.module.engagement.interaction.model.InteractionRegistry;
 import com.apptentive.android.sdk.util.Constants;
 import com.apptentive.android.sdk.util.StringUtils;
 import com.apptentive.android.sdk.util.Util;
@@ -139,6 +140,7 @@ public abstract class ApptentiveBaseFragment<T extends Interaction> extends Dial
 	public void onSaveInstanceState(Bundle outState) {
 		super.onSaveInstanceState(outState);
 		outState.putBoolean(HAS_LAUNCHED, hasLaunched);
+		InteractionRegistry.saveInteraction(outState, interaction);
 	}
 
 	@Override
@@ -218,10 +220,7 @@ public abstract class ApptentiveBaseFragment<T extends Interaction> extends Dial
 		if (bundle != null) {
 			toolbarLayoutId = bundle.getInt(Constants.FragmentConfigKeys.TOOLBAR_ID);
 			bShownAsModal = bundle.getBoolean(Constants.FragmentConfigKeys.MODAL, false);
-			String interactionString = bundle.getString("interaction");
-			if (!TextUtils.isEmpty(interactionString)) {
-				interaction = (T) Interaction.Factory.parseInteraction(interactionString);
-			}
+			interaction = (T) InteractionRegistry.getInteraction(bundle, savedInstanceState);
 		}
 
 		if (interaction != null) {
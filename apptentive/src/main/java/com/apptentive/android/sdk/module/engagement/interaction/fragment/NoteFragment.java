@@ -20,7 +20,6 @@ import com.apptentive.android.sdk.R;
 import com.apptentive.android.sdk.conversation.Conversation;
 import com.apptentive.android.sdk.module.engagement.EngagementModule;
 import com.apptentive.android.sdk.module.engagement.interaction.model.Interaction;
-import com.apptentive.android.sdk.module.engagement.interaction.model.Interactions;
 import com.apptentive.android.sdk.module.engagement.interaction.model.Invocation;
 import com.apptentive.android.sdk.module.engagement.interaction.model.TextModalInteraction;
 import com.apptentive.android.sdk.module.engagement.interaction.model.common.Action;
@@ -133,15 +132,7 @@ public class NoteFragment extends ApptentiveBaseFragment<TextModalInteraction> {
 								if (interactionIdToLaunch != null) {
 									Conversation conversation = getConversation();
 									if (conversation != null) {
-										String interactionsString = conversation.getInteractions();
-										if (interactionsString != null) {
-											try {
-												Interactions interactions = new Interactions(interactionsString);
-												invokedInteraction = interactions.getInteraction(interactionIdToLaunch);
-											}catch (JSONException e) {
-												// Should never happen.
-											}
-										}
+										invokedInteraction = conversation.getInteraction(interactionIdToLaunch);
 									}
 								}
 
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2017, Apptentive, Inc. All Rights Reserved.
+ * Please refer to the LICENSE file for the terms and conditions
+ * under which redistribution and use of this file is permitted.
+ */
+
+package com.apptentive.android.sdk.module.engagement.interaction.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Memoized results of criteria evaluation: "event_label" => "can show interaction". An entry stays
+ * valid until the cache is invalidated (any conversation data change or a new manifest) or its
+ * time boundary is reached (the earliest instant at which a time-based clause can flip).
+ * <p/>
+ * Results computed concurrently with an invalidation are discarded: callers obtain a generation
+ * with {@link #getGeneration()} <b>before</b> the evaluation and pass it to {@link #put}.
+ */
+public class ApplicableInteractionCache {
+
+	private final Map<String, Entry> entries = new HashMap<>();
+	private long generation;
+
+	/**
+	 * Returns a cached value for <code>eventLabel</code> or <code>null</code> if the value is
+	 * missing or expired at <code>currentTime</code>.
+	 */
+	public synchronized Boolean get(String eventLabel, double currentTime) {
+		Entry entry = entries.get(eventLabel);
+		if (entry == null) {
+			return null;
+		}
+		if (currentTime >= entry.expirationTime) {
+			entries.remove(eventLabel);
+			return null;
+		}
+		return entry.value;
+	}
+
+	/**
+	 * Stores <code>value</code> until <code>expirationTime</code> unless the cache was
+	 * invalidated since the <code>generation</code> was obtained.
+	 */
+	public synchronized void put(String eventLabel, boolean value, double expirationTime, long generation) {
+		if (this.generation == generation) {
+			entries.put(eventLabel, new Entry(value, expirationTime));
+		}
+	}
+
+	public synchronized long getGeneration() {
+		return generation;
+	}
+
+	public synchronized void invalidate() {
+		++generation;
+		entries.clear();
+	}
+
+	private static class Entry {
+		final boolean value;
+		final double expirationTime;
+
+		Entry(boolean value, double expirationTime) {
+			this.value = value;
+			this.expirationTime = expirationTime;
+		}
+	}
+}
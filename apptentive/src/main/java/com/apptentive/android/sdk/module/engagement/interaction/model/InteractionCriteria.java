@@ -9,6 +9,8 @@ package com.apptentive.android.sdk.module.engagement.interaction.model;
 import com.apptentive.android.sdk.ApptentiveLog;
 import com.apptentive.android.sdk.module.engagement.logic.Clause;
 import com.apptentive.android.sdk.module.engagement.logic.ClauseParser;
+import com.apptentive.android.sdk.module.engagement.logic.ConstantClause;
+import com.apptentive.android.sdk.module.engagement.logic.FieldContext;
 
 import org.json.JSONException;
 
@@ -17,27 +19,75 @@ import org.json.JSONException;
  */
 public class InteractionCriteria {
 
-	private String json;
+	/**
+	 * Root clause parsed once at construction time (<code>null</code> if criteria is invalid)
+	 */
+	private final Clause rootClause;
 
 	public InteractionCriteria(String json) throws JSONException {
-		this.json = json;
+		this.rootClause = parseClause(json);
+	}
+
+	private InteractionCriteria(Clause rootClause) {
+		this.rootClause = rootClause;
+	}
+
+	private static Clause parseClause(String json) {
+		try {
+			return ClauseParser.parse(json);
+		} catch (JSONException e) {
+			ApptentiveLog.w(e, "Error parsing InteractionCriteria predicate logic.");
+		} catch (Exception e) {
+			ApptentiveLog.w(e, "Error parsing InteractionCriteria predicate logic.");
+		}
+		return null;
 	}
 
 	public boolean isMet() {
+		return isMet(FieldContext.create());
+	}
+
+	/**
+	 * Evaluates criteria against a pre-built <code>context</code> (one context should be shared
+	 * across all invocations checked during a single <code>engage()</code> call).
+	 */
+	public boolean isMet(FieldContext context) {
 		try {
-			Clause rootClause = ClauseParser.parse(json);
-			ApptentiveLog.i("Evaluating Criteria");
+			ApptentiveLog.v("Evaluating Criteria");
 			boolean ret = false;
 			if (rootClause != null) {
-				ret = rootClause.evaluate();
+				ret = rootClause.evaluate(context);
 			}
-			ApptentiveLog.i("- => %b", ret);
+			ApptentiveLog.v("- => %b", ret);
 			return ret;
-		} catch (JSONException e) {
-			ApptentiveLog.w(e, "Error parsing and running InteractionCriteria predicate logic.");
 		} catch (Exception e) {
-			ApptentiveLog.w(e, "Error parsing and running InteractionCriteria predicate logic.");
+			ApptentiveLog.w(e, "Error running InteractionCriteria predicate logic.");
 		}
 		return false;
 	}
+
+	/**
+	 * Returns a copy of this criteria with all the static sub-clauses resolved against
+	 * <code>context</code>. Returns <code>this</code> if nothing could be simplified.
+	 */
+	public InteractionCriteria partiallyEvaluate(FieldContext context) {
+		if (rootClause == null) {
+			return this;
+		}
+
+		try {
+			Clause clause = rootClause.partiallyEvaluate(context);
+			return clause != rootClause ? new InteractionCriteria(clause) : this;
+		} catch (Exception e) {
+			ApptentiveLog.w(e, "Error partially evaluating InteractionCriteria predicate logic.");
+		}
+		return this;
+	}
+
+	/**
+	 * Returns <code>true</code> if the criteria can't be met regardless of dynamic values.
+	 */
+	public boolean isNeverMet() {
+		return rootClause == null || rootClause == ConstantClause.FALSE;
+	}
 }
@@ -0,0 +1,324 @@
+/*
+ * Copyright (c) 2017, Apptentive, Inc. All Rights Reserved.
+ * Please refer to the LICENSE file for the terms and conditions
+ * under which redistribution and use of this file is permitted.
+ */
+
+package com.apptentive.android.sdk.module.engagement.interaction.model;
+
+import com.apptentive.android.sdk.ApptentiveLog;
+import com.apptentive.android.sdk.module.engagement.logic.FieldContext;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable, pre-compiled representation of the interaction manifest: a map of
+ * "event_label" => [ordered list of invocations with pre-parsed criteria] and a map of
+ * "interaction_id" => {pre-parsed Interaction}. The index is built once when the manifest is
+ * stored (or first loaded from disk) so <code>engage()</code> doesn't need to re-parse JSON.
+ * <p/>
+ * The index can be further pruned against a {@link FieldContext}: all criteria sub-trees which
+ * only depend on static values (app version, SDK version, etc) are resolved once and the
+ * invocations which can never match are dropped, so <code>engage()</code> only evaluates the
+ * dynamic remainder.
+ */
+public class InteractionIndex {
+
+	/**
+	 * Targets string this index was compiled from (used to detect stale indexes)
+	 */
+	private final String targetsJson;
+
+	/**
+	 * Interactions string this index was compiled from (used to detect stale indexes)
+	 */
+	private final String interactionsJson;
+
+	/**
+	 * Event label => ordered list of all compiled candidates (before pruning)
+	 */
+	private final Map<String, List<Candidate>> compiledCandidatesByEventLabel;
+
+	/**
+	 * Interaction id => interaction
+	 */
+	private final Map<String, Interaction> interactionsById;
+
+	/**
+	 * Context used for pruning static criteria (<code>null</code> if the index is not pruned)
+	 */
+	private final FieldContext staticContext;
+
+	/**
+	 * Event label => ordered list of candidates left after pruning
+	 */
+	private final Map<String, List<Candidate>> candidatesByEventLabel;
+
+	private InteractionIndex(String targetsJson, String interactionsJson, Map<String, List<Candidate>> compiledCandidatesByEventLabel, Map<String, Interaction> interactionsById, FieldContext staticContext) {
+		this.targetsJson = targetsJson;
+		this.interactionsJson = interactionsJson;
+		this.compiledCandidatesByEventLabel = compiledCandidatesByEventLabel;
+		this.interactionsById = interactionsById;
+		this.staticContext = staticContext;
+		this.candidatesByEventLabel = pruneCandidates(compiledCandidatesByEventLabel, staticContext);
+	}
+
+	//region Compilation
+
+	/**
+	 * Compiles targets and interactions JSON-strings into an index.
+	 *
+	 * @throws JSONException if any of the strings is not a valid JSON object
+	 */
+	public static InteractionIndex compile(String targetsJson, String interactionsJson) throws JSONException {
+		if (targetsJson == null) {
+			throw new IllegalArgumentException("Targets are null");
+		}
+		if (interactionsJson == null) {
+			throw new IllegalArgumentException("Interactions are null");
+		}
+
+		long start = System.currentTimeMillis();
+
+		Map<String, List<Candidate>> compiledCandidatesByEventLabel = compileTargets(new Targets(targetsJson));
+		Map<String, Interaction> interactionsById = compileInteractions(new Interactions(interactionsJson));
+
+		ApptentiveLog.v("Compiled interaction index: %d event(s), %d interaction(s) (took %d ms)", compiledCandidatesByEventLabel.size(), interactionsById.size(), System.currentTimeMillis() - start);
+		return new InteractionIndex(targetsJson, interactionsJson, compiledCandidatesByEventLabel, interactionsById, null);
+	}
+
+	/**
+	 * Returns a copy of this index with all the static criteria resolved against
+	 * <code>context</code>.
+	 */
+	public InteractionIndex prune(FieldContext context) {
+		if (context == null) {
+			throw new IllegalArgumentException("Context is null");
+		}
+		return new InteractionIndex(targetsJson, interactionsJson, compiledCandidatesByEventLabel, interactionsById, context);
+	}
+
+	private static Map<String, List<Candidate>> pruneCandidates(Map<String, List<Candidate>> compiledCandidatesByEventLabel, FieldContext staticContext) {
+		long start = System.currentTimeMillis();
+		int totalCount = 0;
+		int prunedCount = 0;
+
+		// shared criteria are only partially evaluated once
+		Map<InteractionCriteria, InteractionCriteria> prunedCriteriaLookup = new IdentityHashMap<>();
+
+		Map<String, List<Candidate>> result = new HashMap<>();
+		for (Map.Entry<String, List<Candidate>> entry : compiledCandidatesByEventLabel.entrySet()) {
+			List<Candidate> compiledCandidates = entry.getValue();
+			List<Candidate> candidates = new ArrayList<>(compiledCandidates.size());
+			for (Candidate candidate : compiledCandidates) {
+				++totalCount;
+
+				InteractionCriteria criteria = candidate.criteria;
+				if (criteria != null && staticContext != null) {
+					InteractionCriteria prunedCriteria = prunedCriteriaLookup.get(criteria);
+					if (prunedCriteria == null) {
+						prunedCriteria = criteria.partiallyEvaluate(staticContext);
+						prunedCriteriaLookup.put(criteria, prunedCriteria);
+					}
+					criteria = prunedCriteria;
+				}
+				if (criteria == null || criteria.isNeverMet()) {
+					++prunedCount;
+					continue;
+				}
+				candidates.add(criteria == candidate.criteria ? candidate : new Candidate(candidate.interactionId, criteria));
+			}
+			if (!candidates.isEmpty()) {
+				result.put(entry.getKey(), Collections.unmodifiableList(candidates));
+			}
+		}
+
+		if (staticContext != null) {
+			ApptentiveLog.v("Pruned interaction index: %d of %d invocation(s) can never match (took %d ms)", prunedCount, totalCount, System.currentTimeMillis() - start);
+		}
+		return result;
+	}
+
+	private static Map<String, List<Candidate>> compileTargets(Targets targets) {
+		Map<String, List<Candidate>> result = new HashMap<>();
+
+		// invocations with identical criteria share a single instance (criteria JSON => criteria)
+		Map<String, InteractionCriteria> criteriaLookup = new HashMap<>();
+
+		Iterator<String> eventLabels = targets.keys();
+		while (eventLabels.hasNext()) {
+			String eventLabel = eventLabels.next();
+			JSONArray invocationsArray = targets.optJSONArray(eventLabel);
+			if (invocationsArray == null) {
+				continue;
+			}
+
+			List<Candidate> candidates = new ArrayList<>(invocationsArray.length());
+			for (int i = 0; i < invocationsArray.length(); i++) {
+				JSONObject invocationObject = invocationsArray.optJSONObject(i);
+				if (invocationObject != null) {
+					candidates.add(compileCandidate(invocationObject, criteriaLookup));
+				}
+			}
+			result.put(eventLabel, Collections.unmodifiableList(candidates));
+		}
+		return result;
+	}
+
+	private static Candidate compileCandidate(JSONObject invocationObject, Map<String, InteractionCriteria> criteriaLookup) {
+		String interactionId = invocationObject.isNull(Invocation.KEY_INTERACTION_ID) ? null : invocationObject.optString(Invocation.KEY_INTERACTION_ID, null);
+
+		InteractionCriteria criteria = null;
+		JSONObject criteriaObject = invocationObject.optJSONObject(Invocation.KEY_CRITERIA);
+		if (criteriaObject != null) {
+			String criteriaJson = criteriaObject.toString();
+			criteria = criteriaLookup.get(criteriaJson);
+			if (criteria == null) {
+				try {
+					criteria = new InteractionCriteria(criteriaJson);
+					criteriaLookup.put(criteriaJson, criteria);
+				} catch (JSONException e) {
+					ApptentiveLog.w(e, "Unable to compile criteria for interaction: %s", interactionId);
+				}
+			}
+		}
+		return new Candidate(interactionId, criteria);
+	}
+
+	private static Map<String, Interaction> compileInteractions(Interactions interactions) {
+		Map<String, Interaction> result = new HashMap<>();
+		for (Interaction interaction : interactions.getInteractionList()) {
+			String id = interaction.getId();
+			if (id != null) {
+				result.put(id, interaction);
+			}
+		}
+		return result;
+	}
+
+	//endregion
+
+	//region Lookup
+
+	/**
+	 * Returns an id of the first interaction which criteria are met for <code>eventLabel</code> or
+	 * <code>null</code> if none. All the invocations are evaluated against the same
+	 * <code>context</code>.
+	 */
+	public String getApplicableInteractionId(String eventLabel, FieldContext context) {
+		return findApplicableInteractionId(eventLabel, context, null);
+	}
+
+	/**
+	 * Checks multiple event labels at once. All the labels are evaluated against the same
+	 * <code>context</code> and each shared criteria is evaluated at most once.
+	 *
+	 * @return "event label" => "can show interaction"
+	 */
+	public Map<String, Boolean> canShowInteractions(Collection<String> eventLabels, FieldContext context) {
+		Map<InteractionCriteria, Boolean> evaluatedCriteria = new IdentityHashMap<>();
+		Map<String, Boolean> result = new HashMap<>();
+		for (String eventLabel : eventLabels) {
+			if (!result.containsKey(eventLabel)) {
+				String interactionId = findApplicableInteractionId(eventLabel, context, evaluatedCriteria);
+				result.put(eventLabel, getInteraction(interactionId) != null);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param evaluatedCriteria optional lookup of already evaluated criteria (criteria => is met)
+	 */
+	private String findApplicableInteractionId(String eventLabel, FieldContext context, Map<InteractionCriteria, Boolean> evaluatedCriteria) {
+		List<Candidate> candidates = candidatesByEventLabel.get(eventLabel);
+		if (candidates != null) {
+			for (int i = 0; i < candidates.size(); ++i) { // don't allocate an iterator on the engage() path
+				Candidate candidate = candidates.get(i);
+				if (isMet(candidate.criteria, context, evaluatedCriteria)) {
+					return candidate.interactionId;
+				}
+			}
+		}
+		ApptentiveLog.v("No runnable Interactions for EventLabel: %s", eventLabel);
+		return null;
+	}
+
+	private static boolean isMet(InteractionCriteria criteria, FieldContext context, Map<InteractionCriteria, Boolean> evaluatedCriteria) {
+		if (evaluatedCriteria == null) {
+			return criteria.isMet(context);
+		}
+
+		Boolean met = evaluatedCriteria.get(criteria);
+		if (met == null) {
+			met = criteria.isMet(context);
+			evaluatedCriteria.put(criteria, met);
+		}
+		return met;
+	}
+
+	/**
+	 * Returns the first interaction which criteria are met for <code>eventLabel</code> or
+	 * <code>null</code> if none.
+	 */
+	public Interaction getApplicableInteraction(String eventLabel, FieldContext context) {
+		String interactionId = getApplicableInteractionId(eventLabel, context);
+		return interactionId != null ? getInteraction(interactionId) : null;
+	}
+
+	/**
+	 * Returns a pre-parsed interaction with a given <code>id</code> or <code>null</code> if not found.
+	 */
+	public Interaction getInteraction(String id) {
+		return id != null ? interactionsById.get(id) : null;
+	}
+
+	/**
+	 * Returns <code>true</code> if the index was compiled from the exact same targets and
+	 * interactions strings (reference comparison).
+	 */
+	public boolean isCompiledFrom(String targetsJson, String interactionsJson) {
+		return this.targetsJson == targetsJson && this.interactionsJson == interactionsJson;
+	}
+
+	/**
+	 * Returns <code>true</code> if the index was pruned against a context with the same static
+	 * values as <code>context</code>.
+	 */
+	public boolean isPrunedFor(FieldContext context) {
+		return staticContext != null && staticContext.hasSameStaticValues(context);
+	}
+
+	/* For unit testing */
+	int getInvocationCount(String eventLabel) {
+		List<Candidate> candidates = candidatesByEventLabel.get(eventLabel);
+		return candidates != null ? candidates.size() : 0;
+	}
+
+	//endregion
+
+	//region Candidate
+
+	private static class Candidate {
+		final String interactionId;
+		final InteractionCriteria criteria;
+
+		Candidate(String interactionId, InteractionCriteria criteria) {
+			this.interactionId = interactionId;
+			this.criteria = criteria;
+		}
+	}
+
+	//endregion
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2017, Apptentive, Inc. All Rights Reserved.
+ * Please refer to the LICENSE file for the terms and conditions
+ * under which redistribution and use of this file is permitted.
+ */
+
+package com.apptentive.android.sdk.module.engagement.interaction.model;
+
+import android.content.Intent;
+import android.os.Bundle;
+
+import com.apptentive.android.sdk.ApptentiveInternal;
+import com.apptentive.android.sdk.ApptentiveLog;
+import com.apptentive.android.sdk.conversation.Conversation;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Process-local storage for interactions which are being launched. Instead of serializing the
+ * whole interaction into the launch {@link Intent} (and parsing it back on the UI thread) only a
+ * small handle (interaction id and registration generation) is passed along.
+ * <p/>
+ * If the handle can't be resolved (the process was killed while the interaction was on screen)
+ * the interaction is parsed from the JSON saved with the instance state (see
+ * {@link #saveInteraction(Bundle, Interaction)}) or looked up in the interaction manifest of the
+ * active conversation.
+ */
+public class InteractionRegistry {
+
+	private static final String KEY_INTERACTION_ID = "interaction_id";
+	private static final String KEY_INTERACTION_GENERATION = "interaction_generation";
+
+	/**
+	 * Only a few interactions can be on the screen at the same time: keep the recent ones.
+	 */
+	private static final int MAX_ENTRIES = 8;
+
+	private final Map<Long, Interaction> interactions = new LinkedHashMap<Long, Interaction>(MAX_ENTRIES, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, Interaction> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	};
+	private long nextGeneration = 1;
+
+	InteractionRegistry() {
+	}
+
+	//region Registration
+
+	/**
+	 * Stores the <code>interaction</code> and returns its generation.
+	 */
+	synchronized long register(Interaction interaction) {
+		if (interaction == null) {
+			throw new IllegalArgumentException("Interaction is null");
+		}
+
+		long generation = nextGeneration++;
+		interactions.put(generation, interaction);
+		return generation;
+	}
+
+	/**
+	 * Returns a registered interaction or <code>null</code> if the interaction is missing (was
+	 * evicted or the process was restarted).
+	 */
+	synchronized Interaction get(String interactionId, long generation) {
+		Interaction interaction = interactions.get(generation);
+		if (interaction != null && interactionId != null && interactionId.equals(interaction.getId())) {
+			return interaction;
+		}
+		return null;
+	}
+
+	//endregion
+
+	//region Intent
+
+	/**
+	 * Registers the <code>interaction</code> and puts its handle into the <code>intent</code>.
+	 */
+	public static void putInteraction(Intent intent, Interaction interaction) {
+		if (intent == null) {
+			throw new IllegalArgumentException("Intent is null");
+		}
+
+		long generation = getInstance().register(interaction);
+		intent.putExtra(KEY_INTERACTION_ID, interaction.getId());
+		intent.putExtra(KEY_INTERACTION_GENERATION, generation);
+	}
+
+	/**
+	 * Puts the <code>interaction</code> JSON into the instance state so it survives the process
+	 * death. The interaction is only serialized when the state is actually saved.
+	 */
+	public static void saveInteraction(Bundle outState, Interaction interaction) {
+		if (outState != null && interaction != null) {
+			outState.putString(Interaction.KEY_NAME, interaction.toString());
+		}
+	}
+
+	/**
+	 * Resolves an interaction stored with {@link #putInteraction(Intent, Interaction)}. Returns
+	 * <code>null</code> if the interaction can't be resolved.
+	 */
+	public static Interaction getInteraction(Bundle bundle) {
+		return getInteraction(bundle, null);
+	}
+
+	/**
+	 * Resolves an interaction stored with {@link #putInteraction(Intent, Interaction)} and (if the
+	 * process was restarted) {@link #saveInteraction(Bundle, Interaction)}. Returns
+	 * <code>null</code> if the interaction can't be resolved.
+	 */
+	public static Interaction getInteraction(Bundle bundle, Bundle savedInstanceState) {
+		if (bundle == null) {
+			return null;
+		}
+
+		String interactionId = bundle.getString(KEY_INTERACTION_ID);
+		if (interactionId != null) {
+			long generation = bundle.getLong(KEY_INTERACTION_GENERATION);
+			Interaction interaction = getInstance().get(interactionId, generation);
+			if (interaction != null) {
+				return interaction;
+			}
+		}
+
+		// the process was restarted while the interaction was on screen
+		String json = savedInstanceState != null ? savedInstanceState.getString(Interaction.KEY_NAME) : null;
+		if (json == null) {
+			json = bundle.getString(Interaction.KEY_NAME); // interaction launched by an older SDK version
+		}
+		if (json != null) {
+			return Interaction.Factory.parseInteraction(json);
+		}
+
+		if (interactionId != null) {
+			ApptentiveLog.v("Interaction '%s' is not registered: looking up the manifest", interactionId);
+			Conversation conversation = ApptentiveInternal.isApptentiveRegistered() ? ApptentiveInternal.getInstance().getConversation() : null;
+			return conversation != null ? conversation.getInteraction(interactionId) : null;
+		}
+		return null;
+	}
+
+	//endregion
+
+	//region Singleton
+
+	private static InteractionRegistry getInstance() {
+		return Holder.INSTANCE;
+	}
+
+	/**
+	 * Thread safe singleton trick
+	 */
+	private static class Holder {
+		private static final InteractionRegistry INSTANCE = new InteractionRegistry();
+	}
+
+	//endregion
+}
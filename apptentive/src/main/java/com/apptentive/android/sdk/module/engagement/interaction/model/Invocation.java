@@ -6,6 +6,8 @@
 
 package com.apptentive.android.sdk.module.engagement.interaction.model;
 
+import com.apptentive.android.sdk.module.engagement.logic.FieldContext;
+
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -14,11 +16,17 @@ import org.json.JSONObject;
  */
 public class Invocation extends JSONObject {
 
-	private static final String KEY_INTERACTION_ID = "interaction_id";
-	private static final String KEY_CRITERIA = "criteria";
+	static final String KEY_INTERACTION_ID = "interaction_id";
+	static final String KEY_CRITERIA = "criteria";
+
+	/**
+	 * Pre-parsed criteria (<code>null</code> if missing or invalid)
+	 */
+	private final InteractionCriteria criteria;
 
 	public Invocation(String json) throws JSONException {
 		super(json);
+		criteria = parseCriteria();
 	}
 
 	public String getInteractionId() {
@@ -33,15 +41,22 @@ public class Invocation extends JSONObject {
 	}
 
 	public boolean isCriteriaMet() {
+		return isCriteriaMet(FieldContext.create());
+	}
+
+	public boolean isCriteriaMet(FieldContext context) {
+		return criteria != null && criteria.isMet(context);
+	}
+
+	private InteractionCriteria parseCriteria() {
 		try {
 			if (!isNull(KEY_CRITERIA)) {
 				JSONObject criteriaObject = getJSONObject(KEY_CRITERIA);
-				InteractionCriteria criteria = new InteractionCriteria(criteriaObject.toString());
-				return criteria.isMet();
+				return new InteractionCriteria(criteriaObject.toString());
 			}
 		} catch (JSONException e) {
 			// Ignore
 		}
-		return false;
+		return null;
 	}
 }
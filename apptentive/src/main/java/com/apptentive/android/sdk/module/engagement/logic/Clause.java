@@ -8,5 +8,12 @@ package com.apptentive.android.sdk.module.engagement.logic;
 
 public interface Clause {
 
-	boolean evaluate();
+	boolean evaluate(FieldContext context);
+
+	/**
+	 * Evaluates all the sub-clauses which only depend on static values (see
+	 * {@link FieldAccessor#isStatic()}) and returns the remaining clause. Returns a
+	 * {@link ConstantClause} if the whole clause could be resolved.
+	 */
+	Clause partiallyEvaluate(FieldContext context);
 }
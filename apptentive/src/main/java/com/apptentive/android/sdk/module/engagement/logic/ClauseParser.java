@@ -13,8 +13,6 @@ import com.apptentive.android.sdk.util.Util;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.math.BigDecimal;
-
 /**
  * @author Sky Kelsey
  */
@@ -54,8 +52,9 @@ public class ClauseParser {
 	}
 
 	/**
-	 * Constructs complex types values from the JSONObjects that represent them. Turns all Numbers
-	 * into BigDecimal for easier comparison. All fields and parameters must be run through this
+	 * Constructs complex types values from the JSONObjects that represent them. Turns all integral
+	 * Numbers into Long and all floating point Numbers into Double: {@link ConditionalOperator}
+	 * compares them exactly without allocating. All fields and parameters must be run through this
 	 * method.
 	 *
 	 * @param value
@@ -65,16 +64,16 @@ public class ClauseParser {
 		if (value == null) {
 			return null;
 		}
-		if (value instanceof Double) {
-			return new BigDecimal((Double) value);
+		if (value instanceof Double || value instanceof Float) {
+			double doubleValue = ((Number) value).doubleValue();
+			if (Double.isNaN(doubleValue) || Double.isInfinite(doubleValue)) {
+				throw new NumberFormatException("Infinite or NaN");
+			}
+			return value instanceof Double ? value : doubleValue;
 		} else if (value instanceof Long) {
-			return new BigDecimal((Long) value);
-		} else if (value instanceof Integer) {
-			return new BigDecimal((Integer) value);
-		} else if (value instanceof Float) {
-			return new BigDecimal((Float) value);
-		} else if (value instanceof Short) {
-			return new BigDecimal((Short) value);
+			return value;
+		} else if (value instanceof Integer || value instanceof Short) {
+			return ((Number) value).longValue();
 		} else if (value instanceof String) {
 			return ((String) value).trim();
 		} else if (value instanceof Apptentive.Version) {
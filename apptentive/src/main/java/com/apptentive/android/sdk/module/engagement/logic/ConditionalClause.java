@@ -7,6 +7,7 @@
 package com.apptentive.android.sdk.module.engagement.logic;
 
 
+import com.apptentive.android.sdk.Apptentive;
 import com.apptentive.android.sdk.ApptentiveLog;
 import com.apptentive.android.sdk.util.Util;
 
@@ -24,10 +25,12 @@ public class ConditionalClause implements Clause {
 	private static final String KEY_COMPLEX_TYPE = "_type";
 
 	String fieldName;
+	FieldAccessor field;
 	List<ConditionalTest> conditionalTests;
 
 	public ConditionalClause(String field, Object inputValue) {
 		this.fieldName = field.trim();
+		this.field = FieldManager.compile(fieldName);
 		conditionalTests = new ArrayList<ConditionalTest>();
 
 		ApptentiveLog.v("    + ConditionalClause for query: \"%s\"", fieldName);
@@ -62,15 +65,60 @@ public class ConditionalClause implements Clause {
 	 * @return
 	 */
 	@Override
-	public boolean evaluate() {
+	public boolean evaluate(FieldContext context) {
 		ApptentiveLog.v("    - %s", fieldName);
-		Comparable fieldValue = FieldManager.getValue(fieldName);
-		for (ConditionalTest test : conditionalTests) {
-			ApptentiveLog.v("      - %s %s %s?", Util.classToString(fieldValue), test.operator, Util.classToString(test.parameter));
-			if (!test.operator.apply(fieldValue, test.parameter)) {
+		Comparable fieldValue = field.getValue(context);
+		for (int i = 0; i < conditionalTests.size(); ++i) { // don't allocate an iterator
+			ConditionalTest test = conditionalTests.get(i);
+			if (ApptentiveLog.canLog(ApptentiveLog.Level.VERBOSE)) {
+				ApptentiveLog.v("      - %s %s %s?", Util.classToString(fieldValue), test.operator, Util.classToString(test.parameter));
+			}
+			updateTimeBoundary(context, fieldValue, test);
+			if (!test.operator.apply(context, fieldValue, test.parameter)) {
 				return false;
 			}
 		}
 		return true;
 	}
+
+	/**
+	 * Records the instant at which a time-based test may change its result.
+	 */
+	private static void updateTimeBoundary(FieldContext context, Comparable fieldValue, ConditionalTest test) {
+		if (!(fieldValue instanceof Apptentive.DateTime)) {
+			return;
+		}
+
+		switch (test.operator) {
+			case $before:
+			case $after:
+				// "field $before offset" is "field < now + offset": flips at "field - offset"
+				if (test.parameter instanceof Number) {
+					double offset = ((Number) test.parameter).doubleValue();
+					context.updateTimeBoundary(((Apptentive.DateTime) fieldValue).getDateTime() - offset);
+				}
+				break;
+			case $eq:
+			case $ne:
+			case $lt:
+			case $lte:
+			case $gt:
+			case $gte:
+				// the field might be the current time: flips at the parameter
+				if (test.parameter instanceof Apptentive.DateTime) {
+					context.updateTimeBoundary(((Apptentive.DateTime) test.parameter).getDateTime());
+				}
+				break;
+			default:
+				break;
+		}
+	}
+
+	@Override
+	public Clause partiallyEvaluate(FieldContext context) {
+		if (!field.isStatic() || context.getConversation() == null) {
+			return this;
+		}
+		return ConstantClause.valueOf(evaluate(context));
+	}
 }
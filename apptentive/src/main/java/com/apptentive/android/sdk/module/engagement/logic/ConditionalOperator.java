@@ -15,7 +15,7 @@ import java.math.BigDecimal;
 public enum ConditionalOperator {
 	$exists {
 		@Override
-		public boolean apply(Comparable first, Comparable second) {
+		public boolean apply(FieldContext context, Comparable first, Comparable second) {
 			if (second == null) {
 				return false;
 			}
@@ -29,90 +29,90 @@ public enum ConditionalOperator {
 
 	$ne {
 		@Override
-		public boolean apply(Comparable first, Comparable second) {
+		public boolean apply(FieldContext context, Comparable first, Comparable second) {
 			if (first == null || second == null) {
 				return false;
 			}
-			if (first.getClass() != second.getClass()) {
+			if (!isComparable(first, second)) {
 				return false;
 			}
 			if (first instanceof String && second instanceof String) {
 				return !((String) first).toLowerCase().equals(((String) second).toLowerCase());
 			}
-			return first.compareTo(second) != 0;
+			return compare(first, second) != 0;
 		}
 	},
 	$eq {
 		@Override
-		public boolean apply(Comparable first, Comparable second) {
+		public boolean apply(FieldContext context, Comparable first, Comparable second) {
 			if (first == null && second == null) {
 				return true;
 			}
 			if (first == null || second == null) {
 				return false;
 			}
-			if (first.getClass() != second.getClass()) {
+			if (!isComparable(first, second)) {
 				return false;
 			}
 			if (first instanceof String && second instanceof String) {
 				return ((String) first).toLowerCase().equals(((String) second).toLowerCase());
 			}
-			return first.compareTo(second) == 0;
+			return compare(first, second) == 0;
 		}
 	},
 
 	$lt {
 		@Override
-		public boolean apply(Comparable first, Comparable second) {
+		public boolean apply(FieldContext context, Comparable first, Comparable second) {
 			if (first == null || second == null) {
 				return false;
 			}
-			if (first.getClass() != second.getClass()) {
+			if (!isComparable(first, second)) {
 				return false;
 			}
-			return first.compareTo(second) < 0;
+			return compare(first, second) < 0;
 		}
 	},
 	$lte {
 		@Override
-		public boolean apply(Comparable first, Comparable second) {
+		public boolean apply(FieldContext context, Comparable first, Comparable second) {
 			if (first == null || second == null) {
 				return false;
 			}
-			if (first.getClass() != second.getClass()) {
+			if (!isComparable(first, second)) {
 				return false;
 			}
-			return first.compareTo(second) <= 0;
+			return compare(first, second) <= 0;
 		}
 	},
 	$gte {
 		@Override
-		public boolean apply(Comparable first, Comparable second) {
+		public boolean apply(FieldContext context, Comparable first, Comparable second) {
 			if (first == null || second == null) {
 				return false;
 			}
-			if (first.getClass() != second.getClass()) {
+			if (!isComparable(first, second)) {
 				return false;
 			}
-			return first.compareTo(second) >= 0;
+			return compare(first, second) >= 0;
 		}
 	},
 	$gt {
 		@Override
-		public boolean apply(Comparable first, Comparable second) {
+		public boolean apply(FieldContext context, Comparable first, Comparable second) {
 			if (first == null || second == null) {
 				return false;
 			}
-			if (first.getClass() != second.getClass()) {
+			if (!isComparable(first, second)) {
 				return false;
 			}
-			return first.compareTo(second) > 0;
+			return compare(first, second) > 0;
 		}
 	},
 
 	$contains {
 		@Override
-		public boolean apply(Comparable first, Comparable second) {
+		public boolean apply(FieldContext context, Comparable first, Comparable second) {
 			if (first == null || second == null) {
 				return false;
 			}
@@ -124,7 +124,7 @@ public enum ConditionalOperator {
 	},
 	$starts_with {
 		@Override
-		public boolean apply(Comparable first, Comparable second) {
+		public boolean apply(FieldContext context, Comparable first, Comparable second) {
 			if (!(first instanceof String) || !(second instanceof String)) {
 				return false;
 			}
@@ -133,7 +133,7 @@ public enum ConditionalOperator {
 	},
 	$ends_with {
 		@Override
-		public boolean apply(Comparable first, Comparable second) {
+		public boolean apply(FieldContext context, Comparable first, Comparable second) {
 			if (!(first instanceof String) || !(second instanceof String)) {
 				return false;
 			}
@@ -143,42 +143,42 @@ public enum ConditionalOperator {
 
 	$before {
 		@Override
-		public boolean apply(Comparable first, Comparable second) {
+		public boolean apply(FieldContext context, Comparable first, Comparable second) {
 			if (!(first instanceof Apptentive.DateTime)) {
 				return false;
 			}
 			// The parameter for $before is an offset in seconds added to the current time.
-			if (!(second instanceof BigDecimal)) {
+			if (!isNumber(second)) {
 				return false;
 			}
-			Double offset = ((BigDecimal) second).doubleValue();
-			Double currentTime = Util.currentTimeSeconds();
-			Apptentive.DateTime offsetDateTime = new Apptentive.DateTime(currentTime + offset);
-			ApptentiveLog.v("      		- %s?", Util.classToString(offsetDateTime));
-			return ((Apptentive.DateTime) first).compareTo(offsetDateTime) < 0;
+			double offsetTime = context.getCurrentTime() + ((Number) second).doubleValue();
+			if (ApptentiveLog.canLog(ApptentiveLog.Level.VERBOSE)) {
+				ApptentiveLog.v("      		- %s?", Util.classToString(new Apptentive.DateTime(offsetTime)));
+			}
+			return Double.compare(((Apptentive.DateTime) first).getDateTime(), offsetTime) < 0;
 		}
 	},
 	$after {
 		@Override
-		public boolean apply(Comparable first, Comparable second) {
+		public boolean apply(FieldContext context, Comparable first, Comparable second) {
 			if (!(first instanceof Apptentive.DateTime)) {
 				return false;
 			}
 			// The parameter for $after is an offset in seconds added to the current time.
-			if (!(second instanceof BigDecimal)) {
+			if (!isNumber(second)) {
 				return false;
 			}
-			Double offset = ((BigDecimal) second).doubleValue();
-			Double currentTime = Util.currentTimeSeconds();
-			Apptentive.DateTime offsetDateTime = new Apptentive.DateTime(currentTime + offset);
-			ApptentiveLog.v("      		- %s?", Util.classToString(offsetDateTime));
-			return ((Apptentive.DateTime) first).compareTo(offsetDateTime) > 0;
+			double offsetTime = context.getCurrentTime() + ((Number) second).doubleValue();
+			if (ApptentiveLog.canLog(ApptentiveLog.Level.VERBOSE)) {
+				ApptentiveLog.v("      		- %s?", Util.classToString(new Apptentive.DateTime(offsetTime)));
+			}
+			return Double.compare(((Apptentive.DateTime) first).getDateTime(), offsetTime) > 0;
 		}
 	},
 
 	unknown {
 		@Override
-		public boolean apply(Comparable first, Comparable second) {
+		public boolean apply(FieldContext context, Comparable first, Comparable second) {
 			return false;
 		}
 	};
@@ -194,5 +194,91 @@ public enum ConditionalOperator {
 		return unknown;
 	}
 
-	public abstract boolean apply(Comparable first, Comparable second);
+	/**
+	 * Applies the operator to the field value (<code>first</code>) and the parameter (<code>second</code>).
+	 * Time-based operators compare against the current time of the <code>context</code>.
+	 */
+	public abstract boolean apply(FieldContext context, Comparable first, Comparable second);
+
+	//region Comparison
+
+	/**
+	 * Returns <code>true</code> if the values can be compared with {@link #compare(Comparable, Comparable)}:
+	 * both are numbers or both have the same type.
+	 */
+	private static boolean isComparable(Comparable first, Comparable second) {
+		return first.getClass() == second.getClass() || isNumber(first) && isNumber(second);
+	}
+
+	/**
+	 * Compares values without allocating: numeric values (see {@link ClauseParser#parseValue(Object)})
+	 * are compared exactly by their mathematical values, the same way {@link BigDecimal#compareTo(BigDecimal)}
+	 * would compare them.
+	 */
+	@SuppressWarnings("unchecked")
+	private static int compare(Comparable first, Comparable second) {
+		if (first instanceof Long) {
+			if (second instanceof Long) {
+				return compare((long) (Long) first, (long) (Long) second);
+			}
+			if (second instanceof Double) {
+				return compare((long) (Long) first, (double) (Double) second);
+			}
+		} else if (first instanceof Double) {
+			if (second instanceof Double) {
+				return compare((double) (Double) first, (double) (Double) second);
+			}
+			if (second instanceof Long) {
+				return -compare((long) (Long) second, (double) (Double) first);
+			}
+		}
+
+		if (isNumber(first) && isNumber(second)) {
+			return toBigDecimal(first).compareTo(toBigDecimal(second)); // rare case: neither value was parsed by ClauseParser
+		}
+
+		return first.compareTo(second);
+	}
+
+	private static int compare(long first, long second) {
+		return first < second ? -1 : (first == second ? 0 : 1);
+	}
+
+	private static int compare(double first, double second) {
+		// unlike Double.compare() treats 0.0 and -0.0 as equal
+		return first < second ? -1 : (first > second ? 1 : 0);
+	}
+
+	private static int compare(long first, double second) {
+		if (second >= 0x1p63) {
+			return -1;
+		}
+		if (second < -0x1p63) {
+			return 1;
+		}
+
+		// the integral part of the double fits into a long: compare it first and then the fraction
+		long integral = (long) second;
+		if (first != integral) {
+			return first < integral ? -1 : 1;
+		}
+		double fraction = second - integral;
+		return fraction > 0 ? -1 : (fraction < 0 ? 1 : 0);
+	}
+
+	private static boolean isNumber(Object value) {
+		return value instanceof Long || value instanceof Double || value instanceof BigDecimal;
+	}
+
+	private static BigDecimal toBigDecimal(Comparable value) {
+		if (value instanceof BigDecimal) {
+			return (BigDecimal) value;
+		}
+		if (value instanceof Long) {
+			return BigDecimal.valueOf((Long) value);
+		}
+		return new BigDecimal((Double) value);
+	}
+
+	//endregion
 }
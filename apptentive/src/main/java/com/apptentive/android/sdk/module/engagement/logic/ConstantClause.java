@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2017, Apptentive, Inc. All Rights Reserved.
+ * Please refer to the LICENSE file for the terms and conditions
+ * under which redistribution and use of this file is permitted.
+ */
+
+package com.apptentive.android.sdk.module.engagement.logic;
+
+/**
+ * Result of a partially evaluated clause which doesn't depend on any dynamic values.
+ */
+public final class ConstantClause implements Clause {
+
+	public static final ConstantClause TRUE = new ConstantClause(true);
+	public static final ConstantClause FALSE = new ConstantClause(false);
+
+	private final boolean value;
+
+	private ConstantClause(boolean value) {
+		this.value = value;
+	}
+
+	public static ConstantClause valueOf(boolean value) {
+		return value ? TRUE : FALSE;
+	}
+
+	@Override
+	public boolean evaluate(FieldContext context) {
+		return value;
+	}
+
+	@Override
+	public Clause partiallyEvaluate(FieldContext context) {
+		return this;
+	}
+
+	public boolean getValue() {
+		return value;
+	}
+
+	@Override
+	public String toString() {
+		return String.valueOf(value);
+	}
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2017, Apptentive, Inc. All Rights Reserved.
+ * Please refer to the LICENSE file for the terms and conditions
+ * under which redistribution and use of this file is permitted.
+ */
+
+package com.apptentive.android.sdk.module.engagement.logic;
+
+import com.apptentive.android.sdk.conversation.Conversation;
+
+/**
+ * Pre-resolved field query (like "code_point/local#app#init/invokes/total"). The query string is
+ * tokenized once by {@link FieldManager#compile(String)} and evaluation only reads values from a
+ * {@link FieldContext}.
+ */
+public abstract class FieldAccessor {
+
+	private final String query;
+
+	protected FieldAccessor(String query) {
+		if (query == null) {
+			throw new IllegalArgumentException("Query is null");
+		}
+		this.query = query;
+	}
+
+	/**
+	 * Returns the value of the field for a given <code>context</code> or <code>null</code> if
+	 * the value is missing.
+	 */
+	public Comparable getValue(FieldContext context) {
+		if (context == null) {
+			throw new IllegalArgumentException("Context is null");
+		}
+
+		Conversation conversation = context.getConversation();
+		if (conversation == null) {
+			return null;
+		}
+
+		Object rawValue = getRawValue(context, conversation);
+		return (Comparable) ClauseParser.parseValue(rawValue);
+	}
+
+	protected abstract Object getRawValue(FieldContext context, Conversation conversation);
+
+	/**
+	 * Returns <code>true</code> if the value doesn't change between <code>engage()</code> calls (app
+	 * version, SDK version, update status) and can be resolved once when the manifest is loaded.
+	 * See {@link FieldContext#hasSameStaticValues(FieldContext)}.
+	 */
+	public boolean isStatic() {
+		return false;
+	}
+
+	public String getQuery() {
+		return query;
+	}
+
+	@Override
+	public String toString() {
+		return query;
+	}
+}
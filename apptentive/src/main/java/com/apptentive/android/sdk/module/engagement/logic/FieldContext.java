@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2017, Apptentive, Inc. All Rights Reserved.
+ * Please refer to the LICENSE file for the terms and conditions
+ * under which redistribution and use of this file is permitted.
+ */
+
+package com.apptentive.android.sdk.module.engagement.logic;
+
+import com.apptentive.android.sdk.Apptentive;
+import com.apptentive.android.sdk.ApptentiveInternal;
+import com.apptentive.android.sdk.BuildConfig;
+import com.apptentive.android.sdk.conversation.Conversation;
+import com.apptentive.android.sdk.storage.VersionHistory;
+import com.apptentive.android.sdk.util.Constants;
+import com.apptentive.android.sdk.util.Util;
+
+/**
+ * Snapshot of the values criteria evaluation depends on. A single context is created for each
+ * <code>engage()</code> call so the app version, SDK version, debug flag, current time and the
+ * conversation reference are resolved once and not once per clause.
+ */
+public class FieldContext {
+
+	/**
+	 * SDK version never changes while the process is alive
+	 */
+	private static final Apptentive.Version SDK_VERSION = createVersion(Constants.APPTENTIVE_SDK_VERSION);
+
+	/**
+	 * Parsed app version of the last created context (the app version name only changes on update)
+	 */
+	private static volatile Apptentive.Version cachedAppVersion;
+
+	private final Conversation conversation;
+	private final int versionCode;
+	private final String versionName;
+	private final Apptentive.Version version;
+	private final boolean debug;
+	private final boolean updateForVersionCode;
+	private final boolean updateForVersionName;
+	private final double currentTime;
+
+	/**
+	 * The earliest instant (after {@link #currentTime}) at which any of the evaluated time-based
+	 * clauses may change its value
+	 */
+	private double nextTimeBoundary = Double.POSITIVE_INFINITY;
+
+	public FieldContext(Conversation conversation, int versionCode, String versionName, boolean debug, double currentTime) {
+		this.conversation = conversation;
+		this.versionCode = versionCode != -1 ? versionCode : 0; // Default
+		this.versionName = versionName != null ? versionName : "0"; // Default
+		this.version = getAppVersion(this.versionName);
+		this.debug = debug;
+		this.currentTime = currentTime;
+
+		VersionHistory versionHistory = conversation != null ? conversation.getVersionHistory() : null;
+		this.updateForVersionCode = versionHistory != null && versionHistory.isUpdateForVersionCode();
+		this.updateForVersionName = versionHistory != null && versionHistory.isUpdateForVersionName();
+	}
+
+	/**
+	 * Creates a context for a given <code>conversation</code> using the current app release info.
+	 */
+	public static FieldContext create(Conversation conversation) {
+		ApptentiveInternal instance = ApptentiveInternal.getInstance();
+		return new FieldContext(conversation,
+			instance.getApplicationVersionCode(),
+			instance.getApplicationVersionName(),
+			BuildConfig.DEBUG,
+			Util.currentTimeSeconds());
+	}
+
+	/**
+	 * Creates a context for the currently active conversation.
+	 */
+	public static FieldContext create() {
+		return create(ApptentiveInternal.getInstance().getConversation());
+	}
+
+	/**
+	 * Returns <code>true</code> if both contexts have the same values for all the static fields
+	 * (see {@link FieldAccessor#isStatic()}) so any criteria partially evaluated against one
+	 * context stays valid for another.
+	 */
+	public boolean hasSameStaticValues(FieldContext other) {
+		return other != null &&
+			conversation == other.conversation &&
+			versionCode == other.versionCode &&
+			versionName.equals(other.versionName) &&
+			debug == other.debug &&
+			updateForVersionCode == other.updateForVersionCode &&
+			updateForVersionName == other.updateForVersionName;
+	}
+
+	/**
+	 * Returns a parsed app version for <code>versionName</code> re-using the cached one if the
+	 * version name hasn't changed.
+	 */
+	private static Apptentive.Version getAppVersion(String versionName) {
+		Apptentive.Version version = cachedAppVersion;
+		if (version == null || !versionName.equals(version.getVersion())) {
+			version = createVersion(versionName);
+			cachedAppVersion = version;
+		}
+		return version;
+	}
+
+	private static Apptentive.Version createVersion(String value) {
+		Apptentive.Version version = new Apptentive.Version();
+		version.setVersion(value);
+		return version;
+	}
+
+	//region Time boundaries
+
+	/**
+	 * Records an instant at which an evaluated clause may flip its value. Instants which are
+	 * already in the past are ignored.
+	 */
+	void updateTimeBoundary(double time) {
+		if (time > currentTime && time < nextTimeBoundary) {
+			nextTimeBoundary = time;
+		}
+	}
+
+	/**
+	 * Returns the earliest instant at which the result of the evaluation may change without any
+	 * data changes or {@link Double#POSITIVE_INFINITY} if the result doesn't depend on time.
+	 */
+	public double getNextTimeBoundary() {
+		return nextTimeBoundary;
+	}
+
+	//endregion
+
+	//region Getters
+
+	public Conversation getConversation() {
+		return conversation;
+	}
+
+	public int getVersionCode() {
+		return versionCode;
+	}
+
+	public String getVersionName() {
+		return versionName;
+	}
+
+	public Apptentive.Version getVersion() {
+		return version;
+	}
+
+	public Apptentive.Version getSdkVersion() {
+		return SDK_VERSION;
+	}
+
+	public boolean isDebug() {
+		return debug;
+	}
+
+	public boolean isUpdateForVersionCode() {
+		return updateForVersionCode;
+	}
+
+	public boolean isUpdateForVersionName() {
+		return updateForVersionName;
+	}
+
+	public double getCurrentTime() {
+		return currentTime;
+	}
+
+	//endregion
+}
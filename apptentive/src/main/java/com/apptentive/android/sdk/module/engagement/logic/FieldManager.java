@@ -7,17 +7,12 @@
 package com.apptentive.android.sdk.module.engagement.logic;
 
 import com.apptentive.android.sdk.Apptentive;
-import com.apptentive.android.sdk.ApptentiveInternal;
 import com.apptentive.android.sdk.ApptentiveLog;
-import com.apptentive.android.sdk.BuildConfig;
 import com.apptentive.android.sdk.conversation.Conversation;
 import com.apptentive.android.sdk.storage.CustomData;
 import com.apptentive.android.sdk.storage.Device;
 import com.apptentive.android.sdk.storage.Person;
-import com.apptentive.android.sdk.util.Constants;
-import com.apptentive.android.sdk.util.Util;
 
-import java.math.BigDecimal;
 
 public class FieldManager {
 
@@ -25,247 +20,296 @@ public class FieldManager {
 		return getValue(query) != null;
 	}
 
+	/**
+	 * Resolves <code>query</code> against the current conversation. Prefer
+	 * {@link #compile(String)} + {@link FieldAccessor#getValue(FieldContext)} when the same query
+	 * is evaluated more than once.
+	 */
 	public static Comparable getValue(String query) {
-		Object rawValue = doGetValue(query);
-		return (Comparable) ClauseParser.parseValue(rawValue);
+		return compile(query).getValue(FieldContext.create());
 	}
 
 	public static Object doGetValue(String query) {
-		Conversation conversation = ApptentiveInternal.getInstance().getConversation(); // FIXME: get rid of singleton
+		FieldContext context = FieldContext.create();
+		Conversation conversation = context.getConversation();
 		if (conversation == null) {
 			return null;
 		}
-		query = query.trim();
-		String[] tokens = query.split("/");
-		QueryPart topLevelQuery = QueryPart.parse(tokens[0]);
+		return compile(query).getRawValue(context, conversation);
+	}
 
-		switch (topLevelQuery) {
-			case application: {
-				QueryPart applicationQuery = QueryPart.parse(tokens[1]);
-				switch (applicationQuery) {
-					case version_code: {
-						int version = Util.getAppVersionCode(ApptentiveInternal.getInstance().getApplicationContext());
-						if (version == -1) {
-							version = 0; // Default
-						}
-						return version;
-					}
-					case version_name: {
-						String version = Util.getAppVersionName(ApptentiveInternal.getInstance().getApplicationContext());
-						if (version == null) {
-							version = "0"; // Default
-						}
-						Apptentive.Version ret = new Apptentive.Version();
-						ret.setVersion(version);
-						return ret;
+	/**
+	 * Tokenizes <code>query</code> once and returns an accessor which can be evaluated multiple
+	 * times without any string processing.
+	 */
+	public static FieldAccessor compile(String query) {
+		if (query == null) {
+			throw new IllegalArgumentException("Query is null");
+		}
+		return new QueryAccessor(query.trim());
+	}
+
+	private static class QueryAccessor extends FieldAccessor {
+
+		private final QueryPart topLevelQuery;
+		private final QueryPart subQuery;
+		private final String key;
+		private final QueryPart queryPart1;
+		private final QueryPart queryPart2;
+
+		QueryAccessor(String query) {
+			super(query);
+
+			String[] tokens = query.split("/");
+			topLevelQuery = QueryPart.parse(tokens[0]);
+
+			QueryPart subQuery = null;
+			String key = null;
+			QueryPart queryPart1 = null;
+			QueryPart queryPart2 = null;
+
+			switch (topLevelQuery) {
+				case application:
+				case sdk:
+				case is_update:
+				case time_at_install:
+					subQuery = QueryPart.parse(tokens[1]);
+					break;
+				case interactions:
+				case code_point:
+					key = tokens[1];
+					queryPart1 = QueryPart.parse(tokens[2]);
+					if (queryPart1 == QueryPart.invokes || queryPart1 == QueryPart.last_invoked_at) {
+						queryPart2 = QueryPart.parse(tokens[3]);
 					}
-					case debug: {
-						return BuildConfig.DEBUG;
+					break;
+				case person:
+				case device:
+					subQuery = QueryPart.parse(tokens[1]);
+					if (subQuery == QueryPart.custom_data) {
+						key = tokens[2].trim();
 					}
-				}
-				return null; // Default value
+					break;
+				default:
+					break;
 			}
-			case sdk: {
-				QueryPart sdkQuery = QueryPart.parse(tokens[1]);
-				switch (sdkQuery) {
-					case version:
-						Apptentive.Version ret = new Apptentive.Version();
-						ret.setVersion(Constants.APPTENTIVE_SDK_VERSION);
-						return ret;
-				}
+
+			this.subQuery = subQuery;
+			this.key = key;
+			this.queryPart1 = queryPart1;
+			this.queryPart2 = queryPart2;
+		}
+
+		@Override
+		public boolean isStatic() {
+			switch (topLevelQuery) {
+				case application:
+				case is_update:
+					return true;
+				case sdk:
+					return subQuery == QueryPart.version;
+				default:
+					return false;
 			}
-			case current_time:
-				return new Apptentive.DateTime(Util.currentTimeSeconds());
-			case is_update: {
-				QueryPart subQuery = QueryPart.parse(tokens[1]);
-				switch (subQuery) {
-					case version_code:
-						return conversation.getVersionHistory().isUpdateForVersionCode();
-					case version_name:
-						return conversation.getVersionHistory().isUpdateForVersionName();
-					default:
-						break;
+		}
+
+		@Override
+		protected Object getRawValue(FieldContext context, Conversation conversation) {
+			switch (topLevelQuery) {
+				case application: {
+					switch (subQuery) {
+						case version_code:
+							return context.getVersionCode();
+						case version_name:
+							return context.getVersion();
+						case debug:
+							return context.isDebug();
+					}
+					return null; // Default value
 				}
-				return false;
-			}
-			case time_at_install: {
-				QueryPart subQuery = QueryPart.parse(tokens[1]);
-				switch (subQuery) {
-					case total:
-						return conversation.getVersionHistory().getTimeAtInstallTotal();
-					case version_code:
-						return conversation.getVersionHistory().getTimeAtInstallForCurrentVersionCode();
-					case version_name:
-						return conversation.getVersionHistory().getTimeAtInstallForCurrentVersionName();
+				case sdk: {
+					switch (subQuery) {
+						case version:
+							return context.getSdkVersion();
+					}
 				}
-				return new Apptentive.DateTime(Util.currentTimeSeconds());
-			}
-			case interactions: {
-				String interactionId = tokens[1];
-				QueryPart queryPart1 = QueryPart.parse(tokens[2]);
-				switch (queryPart1) {
-					case invokes:
-						QueryPart queryPart2 = QueryPart.parse(tokens[3]);
-						switch (queryPart2) {
-							case total: // Get total for all versions of the app.
-								return new BigDecimal(conversation.getEventData().getInteractionCountTotal(interactionId));
-							case version_code:
-								Integer appVersionCode = Util.getAppVersionCode(ApptentiveInternal.getInstance().getApplicationContext());
-								return new BigDecimal(conversation.getEventData().getInteractionCountForVersionCode(interactionId, appVersionCode));
-							case version_name:
-								String appVersionName = Util.getAppVersionName(ApptentiveInternal.getInstance().getApplicationContext());
-								return new BigDecimal(conversation.getEventData().getInteractionCountForVersionName(interactionId, appVersionName));
-							default:
-								break;
-						}
-						break;
-					case last_invoked_at:
-						QueryPart queryPart3 = QueryPart.parse(tokens[3]);
-						switch (queryPart3) {
-							case total:
-								Double lastInvoke = conversation.getEventData().getTimeOfLastInteractionInvocation(interactionId);
-								if (lastInvoke != null) {
-									return new Apptentive.DateTime(lastInvoke);
-								}
-							default:
-								break;
-						}
-					default:
-						break;
+				case current_time:
+					return new Apptentive.DateTime(context.getCurrentTime());
+				case is_update: {
+					switch (subQuery) {
+						case version_code:
+							return context.isUpdateForVersionCode();
+						case version_name:
+							return context.isUpdateForVersionName();
+						default:
+							break;
+					}
+					return false;
 				}
-				break;
-			}
-			case code_point: {
-				String eventLabel = tokens[1];
-				QueryPart queryPart1 = QueryPart.parse(tokens[2]);
-				switch (queryPart1) {
-					case invokes:
-						QueryPart queryPart2 = QueryPart.parse(tokens[3]);
-						switch (queryPart2) {
-							case total: // Get total for all versions of the app.
-								return new BigDecimal(conversation.getEventData().getEventCountTotal(eventLabel));
-							case version_code:
-								Integer appVersionCode = Util.getAppVersionCode(ApptentiveInternal.getInstance().getApplicationContext());
-								return new BigDecimal(conversation.getEventData().getEventCountForVersionCode(eventLabel, appVersionCode));
-							case version_name:
-								String appVersionName = Util.getAppVersionName(ApptentiveInternal.getInstance().getApplicationContext());
-								return new BigDecimal(conversation.getEventData().getEventCountForVersionName(eventLabel, appVersionName));
-							default:
-								break;
-						}
-						break;
-					case last_invoked_at:
-						QueryPart queryPart3 = QueryPart.parse(tokens[3]);
-						switch (queryPart3) {
-							case total:
-								Double lastInvoke = conversation.getEventData().getTimeOfLastEventInvocation(eventLabel);
-								if (lastInvoke != null) {
-									return new Apptentive.DateTime(lastInvoke);
-								}
-							default:
-								break;
-						}
-					default:
-						break;
+				case time_at_install: {
+					switch (subQuery) {
+						case total:
+							return conversation.getVersionHistory().getTimeAtInstallTotal();
+						case version_code:
+							return conversation.getVersionHistory().getTimeAtInstallForVersionCode(context.getVersionCode());
+						case version_name:
+							return conversation.getVersionHistory().getTimeAtInstallForVersionName(context.getVersionName());
+					}
+					return new Apptentive.DateTime(context.getCurrentTime());
 				}
-				return null; // Default Value
-			}
-			case person: {
-				QueryPart subQuery = QueryPart.parse(tokens[1]);
-				Person person = conversation.getPerson();
-				if (person == null) {
-					return null;
+				case interactions: {
+					String interactionId = key;
+					switch (queryPart1) {
+						case invokes:
+							switch (queryPart2) {
+								case total: // Get total for all versions of the app.
+									return conversation.getEventData().getInteractionCountTotal(interactionId);
+								case version_code:
+									return conversation.getEventData().getInteractionCountForVersionCode(interactionId, context.getVersionCode());
+								case version_name:
+									return conversation.getEventData().getInteractionCountForVersionName(interactionId, context.getVersionName());
+								default:
+									break;
+							}
+							break;
+						case last_invoked_at:
+							switch (queryPart2) {
+								case total:
+									Double lastInvoke = conversation.getEventData().getTimeOfLastInteractionInvocation(interactionId);
+									if (lastInvoke != null) {
+										return new Apptentive.DateTime(lastInvoke);
+									}
+								default:
+									break;
+							}
+						default:
+							break;
+					}
+					break;
 				}
-				switch (subQuery) {
-					case custom_data:
-						String customDataKey = tokens[2].trim();
-						CustomData customData = person.getCustomData();
-						if (customData != null) {
-							return customData.get(customDataKey);
-						}
-						break;
-					case name:
-						return person.getName();
-					case email:
-						return person.getEmail();
-					case other:
-						return null;
+				case code_point: {
+					String eventLabel = key;
+					switch (queryPart1) {
+						case invokes:
+							switch (queryPart2) {
+								case total: // Get total for all versions of the app.
+									return conversation.getEventData().getEventCountTotal(eventLabel);
+								case version_code:
+									return conversation.getEventData().getEventCountForVersionCode(eventLabel, context.getVersionCode());
+								case version_name:
+									return conversation.getEventData().getEventCountForVersionName(eventLabel, context.getVersionName());
+								default:
+									break;
+							}
+							break;
+						case last_invoked_at:
+							switch (queryPart2) {
+								case total:
+									Double lastInvoke = conversation.getEventData().getTimeOfLastEventInvocation(eventLabel);
+									if (lastInvoke != null) {
+										return new Apptentive.DateTime(lastInvoke);
+									}
+								default:
+									break;
+							}
+						default:
+							break;
+					}
+					return null; // Default Value
 				}
-			}
-			case device: {
-				QueryPart subQuery = QueryPart.parse(tokens[1]);
-				Device device = conversation.getDevice();
-				if (device == null) {
-					return null;
+				case person: {
+					Person person = conversation.getPerson();
+					if (person == null) {
+						return null;
+					}
+					switch (subQuery) {
+						case custom_data:
+							CustomData customData = person.getCustomData();
+							if (customData != null) {
+								return customData.get(key);
+							}
+							break;
+						case name:
+							return person.getName();
+						case email:
+							return person.getEmail();
+						case other:
+							return null;
+					}
 				}
-				switch (subQuery) {
-					case custom_data:
-						String customDataKey = tokens[2].trim();
-						CustomData customData = device.getCustomData();
-						if (customData != null) {
-							return customData.get(customDataKey);
-						}
-						break;
-					case os_version:
-						String osVersion = device.getOsVersion();
-						if (osVersion == null) {
-							osVersion = "0";
-						}
-						Apptentive.Version ret = new Apptentive.Version();
-						ret.setVersion(osVersion);
-						return ret;
-					case os_api_level:
-						return device.getOsApiLevel();
-					case board:
-						return device.getBoard();
-					case bootloader_version:
-						return device.getBootloaderVersion();
-					case brand:
-						return device.getBrand();
-					case build_id:
-						return device.getBuildId();
-					case build_type:
-						return device.getBuildType();
-					case carrier:
-						return device.getCarrier();
-					case cpu:
-						return device.getCpu();
-					case current_carrier:
-						return device.getCurrentCarrier();
-					case device:
-						return device.getDevice();
-					case hardware:
-						return null; // What is this key?
-					case locale_country_code:
-						return device.getLocaleCountryCode();
-					case locale_language_code:
-						return device.getLocaleLanguageCode();
-					case locale_raw:
-						return device.getLocaleRaw();
-					case manufacturer:
-						return device.getManufacturer();
-					case model:
-						return device.getModel();
-					case network_type:
-						return device.getNetworkType();
-					case os_name:
-						return device.getOsName();
-					case os_build:
-						return device.getOsBuild();
-					case product:
-						return device.getProduct();
-					case radio_version:
-						return device.getRadioVersion();
-					case uuid:
-						return device.getUuid();
-					case other:
+				case device: {
+					Device device = conversation.getDevice();
+					if (device == null) {
 						return null;
+					}
+					switch (subQuery) {
+						case custom_data:
+							CustomData customData = device.getCustomData();
+							if (customData != null) {
+								return customData.get(key);
+							}
+							break;
+						case os_version:
+							String osVersion = device.getOsVersion();
+							if (osVersion == null) {
+								osVersion = "0";
+							}
+							Apptentive.Version ret = new Apptentive.Version();
+							ret.setVersion(osVersion);
+							return ret;
+						case os_api_level:
+							return device.getOsApiLevel();
+						case board:
+							return device.getBoard();
+						case bootloader_version:
+							return device.getBootloaderVersion();
+						case brand:
+							return device.getBrand();
+						case build_id:
+							return device.getBuildId();
+						case build_type:
+							return device.getBuildType();
+						case carrier:
+							return device.getCarrier();
+						case cpu:
+							return device.getCpu();
+						case current_carrier:
+							return device.getCurrentCarrier();
+						case device:
+							return device.getDevice();
+						case hardware:
+							return null; // What is this key?
+						case locale_country_code:
+							return device.getLocaleCountryCode();
+						case locale_language_code:
+							return device.getLocaleLanguageCode();
+						case locale_raw:
+							return device.getLocaleRaw();
+						case manufacturer:
+							return device.getManufacturer();
+						case model:
+							return device.getModel();
+						case network_type:
+							return device.getNetworkType();
+						case os_name:
+							return device.getOsName();
+						case os_build:
+							return device.getOsBuild();
+						case product:
+							return device.getProduct();
+						case radio_version:
+							return device.getRadioVersion();
+						case uuid:
+							return device.getUuid();
+						case other:
+							return null;
+					}
 				}
+				default:
+					break;
 			}
-			default:
-				break;
+			return null;
 		}
-		return null;
 	}
 
 	private enum QueryPart {
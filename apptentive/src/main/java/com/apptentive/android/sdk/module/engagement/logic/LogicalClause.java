@@ -53,12 +53,18 @@ public class LogicalClause implements Clause {
 		}
 	}
 
+	private LogicalClause(String operatorName, LogicalOperator operator, List<Clause> children) {
+		this.operatorName = operatorName;
+		this.operator = operator;
+		this.children = children;
+	}
+
 	@Override
-	public boolean evaluate() {
+	public boolean evaluate(FieldContext context) {
 		ApptentiveLog.v("  - <%s>", operator.name());
 		if (operator == LogicalOperator.$and) {
-			for (Clause clause : children) {
-				boolean ret = clause.evaluate();
+			for (int i = 0; i < children.size(); ++i) { // don't allocate an iterator
+				boolean ret = children.get(i).evaluate(context);
 				ApptentiveLog.v("        - => %b", ret);
 				if (!ret) {
 					ApptentiveLog.v("  - </%s>", operator.name());
@@ -68,8 +74,8 @@ public class LogicalClause implements Clause {
 			ApptentiveLog.v("  - </%s>", operator.name());
 			return true;
 		} else if (operator == LogicalOperator.$or) {
-			for (Clause clause : children) {
-				boolean ret = clause.evaluate();
+			for (int i = 0; i < children.size(); ++i) { // don't allocate an iterator
+				boolean ret = children.get(i).evaluate(context);
 				ApptentiveLog.v("        - => %b", ret);
 				if (ret) {
 					ApptentiveLog.v("  - </%s>", operator.name());
@@ -83,7 +89,7 @@ public class LogicalClause implements Clause {
 				throw new IllegalArgumentException("$not condition must have exactly one child, has ." + children.size());
 			}
 			Clause clause = children.get(0);
-			boolean ret = clause.evaluate();
+			boolean ret = clause.evaluate(context);
 			ApptentiveLog.v("        - => %b", ret);
 			ApptentiveLog.v("  - </%s>", operator.name());
 			return !ret;
@@ -96,4 +102,48 @@ public class LogicalClause implements Clause {
 
 	}
 
+	@Override
+	public Clause partiallyEvaluate(FieldContext context) {
+		if (operator == LogicalOperator.$and || operator == LogicalOperator.$or) {
+			// $and is resolved by the first false child, $or - by the first true child
+			final boolean terminalValue = operator == LogicalOperator.$or;
+
+			List<Clause> remaining = new ArrayList<>(children.size());
+			for (Clause child : children) {
+				Clause clause = child.partiallyEvaluate(context);
+				if (clause instanceof ConstantClause) {
+					if (((ConstantClause) clause).getValue() == terminalValue) {
+						return ConstantClause.valueOf(terminalValue);
+					}
+					continue; // neutral value can be dropped
+				}
+				remaining.add(clause);
+			}
+
+			if (remaining.isEmpty()) {
+				return ConstantClause.valueOf(!terminalValue);
+			}
+			if (remaining.size() == 1) {
+				return remaining.get(0);
+			}
+			return new LogicalClause(operatorName, operator, remaining);
+		}
+
+		if (operator == LogicalOperator.$not) {
+			if (children.size() != 1) {
+				return this; // let evaluation report the error
+			}
+			Clause clause = children.get(0).partiallyEvaluate(context);
+			if (clause instanceof ConstantClause) {
+				return ConstantClause.valueOf(!((ConstantClause) clause).getValue());
+			}
+			List<Clause> remaining = new ArrayList<>(1);
+			remaining.add(clause);
+			return new LogicalClause(operatorName, operator, remaining);
+		}
+
+		// Unsupported operations are always evaluated to false
+		return ConstantClause.FALSE;
+	}
+
 }
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2017, Apptentive, Inc. All Rights Reserved.
+ * Please refer to the LICENSE file for the terms and conditions
+ * under which redistribution and use of this file is permitted.
+ */
+
+package com.apptentive.android.sdk.network;
+
+import com.apptentive.android.sdk.util.Util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+
+/**
+ * Http-request which uploads a region of a file. The body is streamed from the disk to the
+ * connection with a fixed content length and is never loaded into memory as a whole.
+ */
+public class FileHttpRequest extends HttpRequest {
+	private static final int BUFFER_SIZE = 8192;
+
+	private final File file;
+	private final long offset;
+	private final long length;
+
+	public FileHttpRequest(String urlString, File file, long offset, long length) {
+		super(urlString);
+
+		if (file == null) {
+			throw new IllegalArgumentException("File is null");
+		}
+		if (offset < 0 || length < 0) {
+			throw new IllegalArgumentException("Invalid file region: offset=" + offset + " length=" + length);
+		}
+		this.file = file;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	@Override
+	protected long getStreamingRequestDataLength() throws IOException {
+		return length;
+	}
+
+	@Override
+	protected void writeRequestData(OutputStream stream) throws IOException {
+		RandomAccessFile input = null;
+		try {
+			input = openFile();
+
+			byte[] buffer = new byte[(int) Math.min(BUFFER_SIZE, Math.max(1, length))];
+			long remaining = length;
+			while (remaining > 0) {
+				int read = input.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+				if (read == -1) {
+					throw new IOException("Unexpected end of file: " + file);
+				}
+				stream.write(buffer, 0, read);
+				remaining -= read;
+			}
+		} finally {
+			Util.ensureClosed(input);
+		}
+	}
+
+	/**
+	 * Reads the whole region (only used for logging)
+	 */
+	@Override
+	protected byte[] createRequestData() throws IOException {
+		RandomAccessFile input = null;
+		try {
+			input = openFile();
+
+			byte[] data = new byte[(int) length];
+			input.readFully(data);
+			return data;
+		} finally {
+			Util.ensureClosed(input);
+		}
+	}
+
+	private RandomAccessFile openFile() throws IOException {
+		RandomAccessFile input = new RandomAccessFile(file, "r");
+		if (offset + length > input.length()) {
+			Util.ensureClosed(input);
+			throw new IOException("File region is out of bounds: " + file + " offset=" + offset + " length=" + length);
+		}
+		input.seek(offset);
+		return input;
+	}
+}
@@ -11,6 +11,7 @@ import android.util.Base64;
 import com.apptentive.android.sdk.Apptentive;
 import com.apptentive.android.sdk.ApptentiveLog;
 import com.apptentive.android.sdk.util.Constants;
+import com.apptentive.android.sdk.util.CountingOutputStream;
 import com.apptentive.android.sdk.util.StringUtils;
 import com.apptentive.android.sdk.util.Util;
 import com.apptentive.android.sdk.util.threading.DispatchQueue;
@@ -24,13 +25,20 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TimeZone;
+import java.util.TreeMap;
 import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import static com.apptentive.android.sdk.ApptentiveLog.Level.VERY_VERBOSE;
 import static com.apptentive.android.sdk.ApptentiveLogTag.*;
@@ -126,6 +134,22 @@ public class HttpRequest {
 	 */
 	private String errorMessage;
 
+	/**
+	 * Duration of the last attempt in milliseconds (-1 until the request is performed)
+	 */
+	private long durationMillis = -1;
+
+	/**
+	 * Request bodies larger than this are compressed with gzip (-1 if compression is disabled)
+	 */
+	private long requestCompressionThreshold = -1;
+
+	/**
+	 * Size of the request body before and after the compression (-1 until the body is sent)
+	 */
+	private long requestDataLength = -1;
+	private long requestDataBytesSent = -1;
+
 	/**
 	 * Retry policy for this request
 	 */
@@ -212,6 +236,22 @@ public class HttpRequest {
 		return null;
 	}
 
+	/**
+	 * Override this method to stream request data directly to the connection (see
+	 * {@link #writeRequestData(OutputStream)}). Returns -1 if request data is created with
+	 * {@link #createRequestData()}
+	 */
+	protected long getStreamingRequestDataLength() throws IOException {
+		return -1;
+	}
+
+	/**
+	 * Override this method to write streaming request data on a background thread (exactly
+	 * {@link #getStreamingRequestDataLength()} bytes should be written)
+	 */
+	protected void writeRequestData(OutputStream stream) throws IOException {
+	}
+
 	/**
 	 * Override this method in a subclass to create data from response bytes
 	 */
@@ -243,7 +283,8 @@ public class HttpRequest {
 			}
 		}
 
-		ApptentiveLog.d(NETWORK, "Request finished in %d ms", System.currentTimeMillis() - requestStartTime);
+		durationMillis = System.currentTimeMillis() - requestStartTime;
+		ApptentiveLog.d(NETWORK, "Request finished in %d ms", durationMillis);
 
 		// attempt a retry if request failed
 		if (isFailed() && retryRequest(networkQueue, responseCode)) { // we schedule request retry on the same queue as it was originally dispatched
@@ -299,14 +340,16 @@ public class HttpRequest {
 				connection.setDoOutput(true);
 				connection.setUseCaches(false);
 
-				byte[] requestData = createRequestData();
-				if (requestData != null && requestData.length > 0) {
-					OutputStream outputStream = null;
-					try {
-						outputStream = connection.getOutputStream();
-						outputStream.write(requestData);
-					} finally {
-						Util.ensureClosed(outputStream);
+				long streamingRequestDataLength = getStreamingRequestDataLength();
+				if (streamingRequestDataLength >= 0) {
+					if (streamingRequestDataLength > Integer.MAX_VALUE) {
+						throw new IOException("Request data is too large: " + streamingRequestDataLength);
+					}
+					sendRequestData(connection, null, streamingRequestDataLength);
+				} else {
+					byte[] requestData = createRequestData();
+					if (requestData != null && requestData.length > 0) {
+						sendRequestData(connection, requestData, requestData.length);
 					}
 				}
 			}
@@ -348,6 +391,55 @@ public class HttpRequest {
 		}
 	}
 
+	/**
+	 * Writes the request body to the connection (streamed with {@link #writeRequestData(OutputStream)}
+	 * if <code>requestData</code> is <code>null</code>). Bodies above the compression threshold are
+	 * compressed on the fly while being written.
+	 */
+	private void sendRequestData(HttpURLConnection connection, byte[] requestData, long length) throws IOException {
+		final boolean compressed = shouldCompressRequestData(length);
+		if (compressed) {
+			// compressed length is not known in advance: send in chunks so the connection won't buffer the data
+			connection.setRequestProperty("Content-Encoding", "gzip");
+			connection.setChunkedStreamingMode(0);
+		} else if (requestData == null) {
+			// the connection won't buffer the data if its length is known in advance
+			connection.setFixedLengthStreamingMode((int) length);
+		}
+
+		OutputStream outputStream = null;
+		try {
+			CountingOutputStream countingStream = new CountingOutputStream(connection.getOutputStream());
+			outputStream = countingStream;
+			if (compressed) {
+				outputStream = new GZIPOutputStream(countingStream);
+			}
+
+			if (requestData != null) {
+				outputStream.write(requestData);
+			} else {
+				writeRequestData(outputStream);
+			}
+
+			if (compressed) {
+				((GZIPOutputStream) outputStream).finish();
+			}
+			countingStream.flush();
+
+			requestDataLength = length;
+			requestDataBytesSent = countingStream.getBytesWritten();
+			if (compressed) {
+				ApptentiveLog.v(NETWORK, "Compressed request data: %d -> %d bytes", requestDataLength, requestDataBytesSent);
+			}
+		} finally {
+			Util.ensureClosed(outputStream);
+		}
+	}
+
+	private boolean shouldCompressRequestData(long length) {
+		return requestCompressionThreshold >= 0 && length > requestCompressionThreshold;
+	}
+
 	protected boolean isNetworkConnectionPresent() {
 		return Util.isNetworkConnectionPresent();
 	}
@@ -373,8 +465,14 @@ public class HttpRequest {
 			return false;
 		}
 
+		// an overloaded server might tell how long to wait
+		long retryTimeoutMillis = retryPolicy.getRetryTimeoutMillis(retryAttempt);
+		if (responseCode == HttpURLConnection.HTTP_UNAVAILABLE) {
+			retryTimeoutMillis = Math.max(retryTimeoutMillis, getRetryAfterMillis());
+		}
+
 		retrying = true;
-		networkQueue.dispatchAsyncOnce(retryDispatchTask, retryPolicy.getRetryTimeoutMillis(retryAttempt));
+		networkQueue.dispatchAsyncOnce(retryDispatchTask, retryTimeoutMillis);
 
 		return true;
 	}
@@ -407,11 +505,16 @@ public class HttpRequest {
 		}
 	}
 
+	/**
+	 * Returns response headers with case-insensitive names (multiple values are comma-separated)
+	 */
 	private static Map<String, String> getResponseHeaders(HttpURLConnection connection) {
-		Map<String, String> headers = new HashMap<>();
+		Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
 		Map<String, List<String>> map = connection.getHeaderFields();
 		for (Entry<String, List<String>> entry : map.entrySet()) {
-			headers.put(entry.getKey(), entry.getValue().toString());
+			if (entry.getKey() != null) { // status line
+				headers.put(entry.getKey(), StringUtils.join(entry.getValue(), ","));
+			}
 		}
 		return headers;
 	}
@@ -419,11 +522,39 @@ public class HttpRequest {
 	private static boolean isGzipContentEncoding(Map<String, String> responseHeaders) {
 		if (responseHeaders != null) {
 			String contentEncoding = responseHeaders.get("Content-Encoding");
-			return contentEncoding != null && contentEncoding.equalsIgnoreCase("[gzip]");
+			return contentEncoding != null && contentEncoding.equalsIgnoreCase("gzip");
 		}
 		return false;
 	}
 
+	/**
+	 * Parses the value of a 'Retry-After' header: either a number of seconds or an HTTP-date.
+	 * Returns -1 if the value is missing or invalid.
+	 */
+	static long parseRetryAfterMillis(String value, long currentTimeMillis) {
+		if (StringUtils.isNullOrEmpty(value)) {
+			return -1;
+		}
+
+		value = value.trim();
+		try {
+			long seconds = Long.parseLong(value);
+			return seconds >= 0 ? seconds * 1000 : -1;
+		} catch (NumberFormatException e) {
+			// not a number
+		}
+
+		try {
+			SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+			format.setTimeZone(TimeZone.getTimeZone("GMT"));
+			Date date = format.parse(value);
+			return Math.max(0, date.getTime() - currentTimeMillis);
+		} catch (ParseException e) {
+			ApptentiveLog.w(NETWORK, "Unable to parse 'Retry-After' header: %s", value);
+			return -1;
+		}
+	}
+
 	private static String readResponse(InputStream is, boolean gzipped) throws IOException {
 		if (is == null) {
 			return null;
@@ -583,10 +714,50 @@ public class HttpRequest {
 		return responseData;
 	}
 
+	/**
+	 * Returns the value of the 'Retry-After' response header in milliseconds or -1 if it's missing
+	 */
+	public long getRetryAfterMillis() {
+		return responseHeaders != null ? parseRetryAfterMillis(responseHeaders.get("Retry-After"), System.currentTimeMillis()) : -1;
+	}
+
 	public int getResponseCode() {
 		return responseCode;
 	}
 
+	/**
+	 * Returns how long the last attempt took in milliseconds or -1 if the request was not performed
+	 */
+	public long getDurationMillis() {
+		return durationMillis;
+	}
+
+	/**
+	 * Enables gzip compression for request bodies larger than <code>threshold</code> bytes (the
+	 * server should accept 'Content-Encoding: gzip'). Pass -1 to disable the compression.
+	 */
+	public void setRequestCompressionThreshold(long threshold) {
+		if (threshold < -1) {
+			throw new IllegalArgumentException("Invalid compression threshold: " + threshold);
+		}
+		this.requestCompressionThreshold = threshold;
+	}
+
+	/**
+	 * Returns the size of the request body before the compression (-1 if the body was not sent)
+	 */
+	public long getRequestDataLength() {
+		return requestDataLength;
+	}
+
+	/**
+	 * Returns the number of the request body bytes written to the connection: less than
+	 * {@link #getRequestDataLength()} if the body was compressed (-1 if the body was not sent)
+	 */
+	public long getRequestDataBytesSent() {
+		return requestDataBytesSent;
+	}
+
 	public boolean isAuthenticationFailure() {
 		return responseCode == 401;
 	}
@@ -6,22 +6,39 @@
 
 package com.apptentive.android.sdk.network;
 
+import java.util.Random;
+
 public class HttpRequestRetryPolicyDefault implements HttpRequestRetryPolicy {
 	public static final int RETRY_COUNT_INFINITE = -1;
 
 	public static final long DEFAULT_RETRY_TIMEOUT_MILLIS = 5 * 1000;
+	public static final long DEFAULT_MAX_RETRY_TIMEOUT_MILLIS = 5 * 60 * 1000;
+	public static final float DEFAULT_RETRY_TIMEOUT_JITTER = 0.5f;
 	public static final int DEFAULT_RETRY_COUNT = 5;
 
+	private final Random random = new Random();
+
 	/**
 	 * How many times should request retry before giving up
 	 */
 	private int maxRetryCount = DEFAULT_RETRY_COUNT;
 
 	/**
-	 * How long should we wait before retrying again
+	 * How long should we wait before the first retry (the delay doubles with each attempt)
 	 */
 	private long retryTimeoutMillis = DEFAULT_RETRY_TIMEOUT_MILLIS;
 
+	/**
+	 * Max delay between retries
+	 */
+	private long maxRetryTimeoutMillis = DEFAULT_MAX_RETRY_TIMEOUT_MILLIS;
+
+	/**
+	 * Fraction of the delay which is randomized (so that clients failing at the same time don't
+	 * retry at the same time)
+	 */
+	private float retryTimeoutJitter = DEFAULT_RETRY_TIMEOUT_JITTER;
+
 	/**
 	 * Returns <code>true</code> is request should be retried.
 	 *
@@ -41,13 +58,32 @@ public class HttpRequestRetryPolicyDefault implements HttpRequestRetryPolicy {
 	}
 
 	/**
-	 * Returns the delay in millis for the next retry
+	 * Returns the delay in millis for the next retry: grows exponentially with the number of attempts
+	 * (up to the max timeout) and is randomly reduced by up to the jitter fraction.
 	 *
 	 * @param retryAttempt - number of retries attempted already
 	 */
 	@Override
 	public long getRetryTimeoutMillis(int retryAttempt) {
-		return retryTimeoutMillis;
+		long timeoutMillis = retryTimeoutMillis;
+		for (int i = 1; i < retryAttempt && timeoutMillis < maxRetryTimeoutMillis; ++i) {
+			timeoutMillis *= 2;
+		}
+		timeoutMillis = Math.min(timeoutMillis, maxRetryTimeoutMillis);
+
+		if (retryTimeoutJitter > 0) {
+			timeoutMillis -= (long) (timeoutMillis * retryTimeoutJitter * nextRandom());
+		}
+		return timeoutMillis;
+	}
+
+	/**
+	 * Returns a random value between 0.0 and 1.0
+	 */
+	protected float nextRandom() {
+		synchronized (random) {
+			return random.nextFloat();
+		}
 	}
 
 	public void setMaxRetryCount(int maxRetryCount) {
@@ -57,4 +93,15 @@ public class HttpRequestRetryPolicyDefault implements HttpRequestRetryPolicy {
 	public void setRetryTimeoutMillis(long retryTimeoutMillis) {
 		this.retryTimeoutMillis = retryTimeoutMillis;
 	}
+
+	public void setMaxRetryTimeoutMillis(long maxRetryTimeoutMillis) {
+		this.maxRetryTimeoutMillis = maxRetryTimeoutMillis;
+	}
+
+	public void setRetryTimeoutJitter(float retryTimeoutJitter) {
+		if (retryTimeoutJitter < 0 || retryTimeoutJitter > 1) {
+			throw new IllegalArgumentException("Invalid jitter: " + retryTimeoutJitter);
+		}
+		this.retryTimeoutJitter = retryTimeoutJitter;
+	}
 }
@@ -18,6 +18,7 @@ import com.apptentive.android.sdk.ApptentiveInternal;
 import com.apptentive.android.sdk.ApptentiveLog;
 import com.apptentive.android.sdk.model.ApptentiveMessage;
 import com.apptentive.android.sdk.model.CompoundMessage;
+import com.apptentive.android.sdk.model.EventPayload;
 import com.apptentive.android.sdk.model.JsonPayload;
 import com.apptentive.android.sdk.model.Payload;
 import com.apptentive.android.sdk.model.PayloadData;
@@ -36,9 +37,20 @@ import com.apptentive.android.sdk.util.threading.DispatchTask;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import static com.apptentive.android.sdk.ApptentiveLogTag.DATABASE;
@@ -53,7 +65,7 @@ import static com.apptentive.android.sdk.util.Constants.PAYLOAD_DATA_FILE_SUFFIX
  */
 public class ApptentiveDatabaseHelper extends SQLiteOpenHelper {
 
-	private static final int DATABASE_VERSION = 3;
+	private static final int DATABASE_VERSION = 5;
 	public static final String DATABASE_NAME = "apptentive";
 	private static final int TRUE = 1;
 	private static final int FALSE = 0;
@@ -61,6 +73,85 @@ public class ApptentiveDatabaseHelper extends SQLiteOpenHelper {
 
 	private final File payloadDataDir;
 
+	/**
+	 * Max size of a payload body segment file
+	 */
+	private static final long PAYLOAD_SEGMENT_MAX_SIZE = 256 * 1024;
+
+	/**
+	 * A payload body segment is compacted once the ratio of its live bytes drops below this value
+	 */
+	private static final float PAYLOAD_SEGMENT_MIN_LIVE_RATIO = 0.5f;
+
+	/**
+	 * Payload bodies larger than this are not loaded into memory: they are streamed from the disk
+	 * when the payload is sent
+	 */
+	private static final int PAYLOAD_STREAMING_MIN_SIZE = 64 * 1024;
+
+	/**
+	 * Payload bodies storage (opened lazily: see {@link #getPayloadSegmentLog()})
+	 */
+	private final PayloadSegmentLog payloadSegmentLog;
+
+	/**
+	 * Max number of payload rows read from the database at once
+	 */
+	private static final int PAYLOAD_PREFETCH_WINDOW_SIZE = 32;
+
+	/**
+	 * A lower priority lane is served first once this many payloads from higher priority lanes were
+	 * picked while it was waiting
+	 */
+	private static final int PAYLOAD_LANE_STARVATION_LIMIT = 8;
+
+	/**
+	 * Payload queue partitions by local conversation id (<code>null</code> until loaded). Each
+	 * partition has its own priority lanes and each lane holds a window of its oldest payload rows:
+	 * the send loop reads rows from memory and only queries the database when it runs past the end of
+	 * the window. Like the rest of the payload operations, partitions are only accessed on the
+	 * ApptentiveTaskManager executor thread.
+	 */
+	private Map<String, PayloadPartition> payloadPartitions;
+
+	/**
+	 * Number of payloads picked from higher priority lanes while the lane was waiting (indexed by
+	 * {@link PayloadSender.SendPriority} ordinal)
+	 */
+	private final int[] payloadLaneStarvationCounts = new int[PayloadSender.SendPriority.values().length];
+
+	/**
+	 * Max number of queued payloads and max total size of their bodies. Once the queue reaches
+	 * either limit repeated events are aggregated and the oldest analytics payloads are dropped.
+	 */
+	private int payloadQueueMaxRows = Constants.CONFIG_DEFAULT_PAYLOAD_QUEUE_MAX_ROWS;
+	private long payloadQueueMaxBytes = Constants.CONFIG_DEFAULT_PAYLOAD_QUEUE_MAX_BYTES;
+
+	/**
+	 * Number of queued payloads and total size of their bodies (-1 until queried)
+	 */
+	private long payloadQueueRowCount = -1;
+	private long payloadQueueByteCount = -1;
+
+	/**
+	 * Events which collect repeated occurrences once the queue is full (by aggregation key and by
+	 * nonce)
+	 */
+	private final Map<String, PayloadAggregate> payloadAggregates = new HashMap<>();
+	private final Map<String, PayloadAggregate> payloadAggregatesByNonce = new HashMap<>();
+
+	private final PayloadQueueOverflow payloadQueueOverflow = new PayloadQueueOverflow();
+
+	/**
+	 * Collects the persisting stage metrics and the queue size
+	 */
+	private PayloadMetrics payloadMetrics = new PayloadMetrics();
+
+	/**
+	 * Tells which payloads are being sent (<code>null</code> if there's no sender)
+	 */
+	private PayloadInFlightFilter payloadInFlightFilter;
+
 	//region Payload SQL
 
 	static final class PayloadEntry {
@@ -75,6 +166,10 @@ public class ApptentiveDatabaseHelper extends SQLiteOpenHelper {
 		static final DatabaseColumn COLUMN_PATH = new DatabaseColumn(7, "path");
 		static final DatabaseColumn COLUMN_ENCRYPTED = new DatabaseColumn(8, "encrypted");
 		static final DatabaseColumn COLUMN_LOCAL_CONVERSATION_ID = new DatabaseColumn(9, "localConversationId");
+		static final DatabaseColumn COLUMN_BODY_SEGMENT = new DatabaseColumn(10, "bodySegment");
+		static final DatabaseColumn COLUMN_BODY_OFFSET = new DatabaseColumn(11, "bodyOffset");
+		static final DatabaseColumn COLUMN_BODY_LENGTH = new DatabaseColumn(12, "bodyLength");
+		static final DatabaseColumn COLUMN_PRIORITY = new DatabaseColumn(13, "priority");
 	}
 
 	private static final class LegacyPayloadEntry {
@@ -88,6 +183,28 @@ public class ApptentiveDatabaseHelper extends SQLiteOpenHelper {
 	private static final String DELETE_LEGACY_PAYLOAD_TABLE = String.format("DROP TABLE %s;", LegacyPayloadEntry.TABLE_NAME);
 
 	private static final String TABLE_CREATE_PAYLOAD =
+		"CREATE TABLE " + PayloadEntry.TABLE_NAME +
+			" (" +
+			PayloadEntry.COLUMN_PRIMARY_KEY + " INTEGER PRIMARY KEY, " +
+			PayloadEntry.COLUMN_PAYLOAD_TYPE + " TEXT, " +
+			PayloadEntry.COLUMN_IDENTIFIER + " TEXT, " +
+			PayloadEntry.COLUMN_CONTENT_TYPE + " TEXT," +
+			PayloadEntry.COLUMN_AUTH_TOKEN + " TEXT," +
+			PayloadEntry.COLUMN_CONVERSATION_ID + " TEXT," +
+			PayloadEntry.COLUMN_REQUEST_METHOD + " TEXT," +
+			PayloadEntry.COLUMN_PATH + " TEXT," +
+			PayloadEntry.COLUMN_ENCRYPTED + " INTEGER," +
+			PayloadEntry.COLUMN_LOCAL_CONVERSATION_ID + " TEXT," +
+			PayloadEntry.COLUMN_BODY_SEGMENT + " INTEGER," +
+			PayloadEntry.COLUMN_BODY_OFFSET + " INTEGER," +
+			PayloadEntry.COLUMN_BODY_LENGTH + " INTEGER," +
+			PayloadEntry.COLUMN_PRIORITY + " INTEGER" +
+			");";
+
+	/**
+	 * Payload table as it was created in v3 (later versions alter it)
+	 */
+	private static final String TABLE_CREATE_PAYLOAD_V3 =
 		"CREATE TABLE " + PayloadEntry.TABLE_NAME +
 			" (" +
 			PayloadEntry.COLUMN_PRIMARY_KEY + " INTEGER PRIMARY KEY, " +
@@ -102,15 +219,85 @@ public class ApptentiveDatabaseHelper extends SQLiteOpenHelper {
 			PayloadEntry.COLUMN_LOCAL_CONVERSATION_ID + " TEXT" +
 			");";
 
+	private static final String TABLE_ALTER_PAYLOAD_ADD_BODY_SEGMENT = "ALTER TABLE " + PayloadEntry.TABLE_NAME + " ADD COLUMN " + PayloadEntry.COLUMN_BODY_SEGMENT + " INTEGER;";
+	private static final String TABLE_ALTER_PAYLOAD_ADD_BODY_OFFSET = "ALTER TABLE " + PayloadEntry.TABLE_NAME + " ADD COLUMN " + PayloadEntry.COLUMN_BODY_OFFSET + " INTEGER;";
+	private static final String TABLE_ALTER_PAYLOAD_ADD_BODY_LENGTH = "ALTER TABLE " + PayloadEntry.TABLE_NAME + " ADD COLUMN " + PayloadEntry.COLUMN_BODY_LENGTH + " INTEGER;";
+	private static final String TABLE_ALTER_PAYLOAD_ADD_PRIORITY = "ALTER TABLE " + PayloadEntry.TABLE_NAME + " ADD COLUMN " + PayloadEntry.COLUMN_PRIORITY + " INTEGER;";
+
 	private static final String SQL_QUERY_PAYLOAD_LIST_LEGACY =
 		"SELECT * FROM " + LegacyPayloadEntry.TABLE_NAME +
 			" ORDER BY " + LegacyPayloadEntry.PAYLOAD_KEY_DB_ID;
 
+	private static final String TABLE_CREATE_PAYLOAD_IDENTIFIER_INDEX =
+		"CREATE INDEX IF NOT EXISTS " + PayloadEntry.TABLE_NAME + "_" + PayloadEntry.COLUMN_IDENTIFIER + "_index" +
+			" ON " + PayloadEntry.TABLE_NAME + " (" + PayloadEntry.COLUMN_IDENTIFIER + ");";
+
+	private static final String TABLE_CREATE_PAYLOAD_PARTITION_INDEX =
+		"CREATE INDEX IF NOT EXISTS " + PayloadEntry.TABLE_NAME + "_partition_index" +
+			" ON " + PayloadEntry.TABLE_NAME + " (" + PayloadEntry.COLUMN_LOCAL_CONVERSATION_ID + ", " + PayloadEntry.COLUMN_PRIORITY + ", " + PayloadEntry.COLUMN_PRIMARY_KEY + ");";
+
 	private static final String SQL_QUERY_PAYLOAD_GET_IN_SEND_ORDER =
 		"SELECT * FROM " + PayloadEntry.TABLE_NAME +
 			" ORDER BY " + PayloadEntry.COLUMN_PRIMARY_KEY +
 			" ASC";
 
+	private static final String SQL_QUERY_PAYLOAD_GET_NEXT_IN_LANE =
+		"SELECT * FROM " + PayloadEntry.TABLE_NAME +
+			" WHERE " + PayloadEntry.COLUMN_LOCAL_CONVERSATION_ID + " = ? AND " + PayloadEntry.COLUMN_PRIORITY + " = ? AND " + PayloadEntry.COLUMN_PRIMARY_KEY + " > ?" +
+			" ORDER BY " + PayloadEntry.COLUMN_PRIMARY_KEY +
+			" ASC LIMIT " + PAYLOAD_PREFETCH_WINDOW_SIZE;
+
+	private static final String SQL_QUERY_PAYLOAD_GET_NEXT_IN_LANE_WITHOUT_LOCAL_CONVERSATION_ID =
+		"SELECT * FROM " + PayloadEntry.TABLE_NAME +
+			" WHERE " + PayloadEntry.COLUMN_LOCAL_CONVERSATION_ID + " IS NULL AND " + PayloadEntry.COLUMN_PRIORITY + " = ? AND " + PayloadEntry.COLUMN_PRIMARY_KEY + " > ?" +
+			" ORDER BY " + PayloadEntry.COLUMN_PRIMARY_KEY +
+			" ASC LIMIT " + PAYLOAD_PREFETCH_WINDOW_SIZE;
+
+	private static final String SQL_QUERY_PAYLOAD_GET_PARTITIONS =
+		"SELECT DISTINCT " + PayloadEntry.COLUMN_LOCAL_CONVERSATION_ID + " FROM " + PayloadEntry.TABLE_NAME;
+
+	private static final String SQL_QUERY_UPDATE_PAYLOAD_PRIORITY =
+		"UPDATE " + PayloadEntry.TABLE_NAME + " SET " +
+			PayloadEntry.COLUMN_PRIORITY + " = ?" +
+			" WHERE " + PayloadEntry.COLUMN_PAYLOAD_TYPE + " = ?";
+
+	private static final String SQL_QUERY_UPDATE_MISSING_PAYLOAD_PRIORITY =
+		"UPDATE " + PayloadEntry.TABLE_NAME + " SET " +
+			PayloadEntry.COLUMN_PRIORITY + " = ?" +
+			" WHERE " + PayloadEntry.COLUMN_PRIORITY + " IS NULL";
+
+	private static final String SQL_QUERY_PAYLOAD_BODY_LOCATION =
+		"SELECT " + PayloadEntry.COLUMN_BODY_SEGMENT + ", " + PayloadEntry.COLUMN_BODY_OFFSET + ", " + PayloadEntry.COLUMN_BODY_LENGTH +
+			" FROM " + PayloadEntry.TABLE_NAME +
+			" WHERE " + PayloadEntry.COLUMN_IDENTIFIER + " = ?";
+
+	private static final String SQL_QUERY_PAYLOAD_NONCES_IN_SEGMENT =
+		"SELECT " + PayloadEntry.COLUMN_IDENTIFIER +
+			" FROM " + PayloadEntry.TABLE_NAME +
+			" WHERE " + PayloadEntry.COLUMN_BODY_SEGMENT + " = ?";
+
+	private static final String SQL_QUERY_PAYLOAD_BODIES_IN_SEGMENT =
+		"SELECT " + PayloadEntry.COLUMN_PRIMARY_KEY + ", " + PayloadEntry.COLUMN_BODY_OFFSET + ", " + PayloadEntry.COLUMN_BODY_LENGTH +
+			" FROM " + PayloadEntry.TABLE_NAME +
+			" WHERE " + PayloadEntry.COLUMN_BODY_SEGMENT + " = ?";
+
+	private static final String SQL_QUERY_PAYLOAD_QUEUE_SIZE =
+		"SELECT COUNT(*), SUM(" + PayloadEntry.COLUMN_BODY_LENGTH + ")" +
+			" FROM " + PayloadEntry.TABLE_NAME;
+
+	private static final String SQL_QUERY_PAYLOAD_GET_DROPPABLE =
+		"SELECT " + PayloadEntry.COLUMN_PRIMARY_KEY + ", " + PayloadEntry.COLUMN_IDENTIFIER + ", " + PayloadEntry.COLUMN_BODY_SEGMENT + ", " + PayloadEntry.COLUMN_BODY_OFFSET + ", " + PayloadEntry.COLUMN_BODY_LENGTH +
+			" FROM " + PayloadEntry.TABLE_NAME +
+			" WHERE " + PayloadEntry.COLUMN_PRIORITY + " = ? AND " + PayloadEntry.COLUMN_PRIMARY_KEY + " > ? AND " + PayloadEntry.COLUMN_BODY_SEGMENT + " IS NOT NULL" +
+			" ORDER BY " + PayloadEntry.COLUMN_PRIMARY_KEY +
+			" ASC LIMIT " + PAYLOAD_PREFETCH_WINDOW_SIZE;
+
+	private static final String SQL_QUERY_PAYLOAD_SEGMENT_LIVE_BYTES =
+		"SELECT " + PayloadEntry.COLUMN_BODY_SEGMENT + ", SUM(" + PayloadEntry.COLUMN_BODY_LENGTH + ")" +
+			" FROM " + PayloadEntry.TABLE_NAME +
+			" WHERE " + PayloadEntry.COLUMN_BODY_SEGMENT + " IS NOT NULL" +
+			" GROUP BY " + PayloadEntry.COLUMN_BODY_SEGMENT;
+
 	private static final String SQL_QUERY_UPDATE_INCOMPLETE_PAYLOADS =
 		"UPDATE " + PayloadEntry.TABLE_NAME + " SET " +
 			PayloadEntry.COLUMN_AUTH_TOKEN + " = ?, " +
@@ -218,6 +405,8 @@ public class ApptentiveDatabaseHelper extends SQLiteOpenHelper {
 		super(context, DATABASE_NAME, null, DATABASE_VERSION);
 		this.fileDir = context.getFilesDir();
 		this.payloadDataDir = new File(fileDir, Constants.PAYLOAD_DATA_DIR);
+		this.payloadSegmentLog = new PayloadSegmentLog(payloadDataDir, PAYLOAD_SEGMENT_MAX_SIZE);
+
 	}
 
 	//region Create & Upgrade
@@ -230,6 +419,8 @@ public class ApptentiveDatabaseHelper extends SQLiteOpenHelper {
 	public void onCreate(SQLiteDatabase db) {
 		ApptentiveLog.d(DATABASE, "ApptentiveDatabase.onCreate(db)");
 		db.execSQL(TABLE_CREATE_PAYLOAD);
+		db.execSQL(TABLE_CREATE_PAYLOAD_IDENTIFIER_INDEX);
+		db.execSQL(TABLE_CREATE_PAYLOAD_PARTITION_INDEX);
 
 		// Leave legacy tables in place for now.
 		db.execSQL(TABLE_CREATE_MESSAGE);
@@ -249,6 +440,10 @@ public class ApptentiveDatabaseHelper extends SQLiteOpenHelper {
 				upgradeVersion1to2(db);
 			case 2:
 				upgradeVersion2to3(db);
+			case 3:
+				upgradeVersion3to4(db);
+			case 4:
+				upgradeVersion4to5(db);
 		}
 	}
 
@@ -405,7 +600,7 @@ public class ApptentiveDatabaseHelper extends SQLiteOpenHelper {
 
 			// 2. Create new Payload table as "payload"
 			ApptentiveLog.vv(DATABASE, "\t2. Creating new \"payloads\" database.");
-			db.execSQL(TABLE_CREATE_PAYLOAD);
+			db.execSQL(TABLE_CREATE_PAYLOAD_V3);
 
 			// 3. Load legacy payloads
 			ApptentiveLog.vv(DATABASE, "\t3. Loading legacy payloads.");
@@ -448,7 +643,7 @@ public class ApptentiveDatabaseHelper extends SQLiteOpenHelper {
 
 				File dest = getPayloadBodyFile(payload.getNonce());
 				ApptentiveLog.v(DATABASE, "Saving payload body to: %s", dest);
-				Util.writeBytes(dest, payload.renderData());
+				writePayloadBody(dest, payload);
 
 				values.put(PayloadEntry.COLUMN_ENCRYPTED.name, payload.hasEncryptionKey() ? TRUE : FALSE);
 
@@ -473,6 +668,51 @@ public class ApptentiveDatabaseHelper extends SQLiteOpenHelper {
 		}
 	}
 
+	/**
+	 * Adds an index for payload lookups by nonce.
+	 */
+	private void upgradeVersion3to4(SQLiteDatabase db) {
+		ApptentiveLog.i(DATABASE, "Upgrading Database from v3 to v4");
+		try {
+			db.execSQL(TABLE_CREATE_PAYLOAD_IDENTIFIER_INDEX);
+		} catch (Exception e) {
+			ApptentiveLog.e(DATABASE, e, "Error in upgradeVersion3to4()");
+		}
+	}
+
+	/**
+	 * Adds payload body location columns (new payload bodies are stored in segment files; existing
+	 * payloads keep their bodies in separate files) and payload priority lane column (filled for the
+	 * existing payloads based on their types). Payloads are looked up by their partitions: local
+	 * conversation id, priority and send order.
+	 */
+	private void upgradeVersion4to5(SQLiteDatabase db) {
+		ApptentiveLog.i(DATABASE, "Upgrading Database from v4 to v5");
+		try {
+			db.beginTransaction();
+			db.execSQL(TABLE_ALTER_PAYLOAD_ADD_BODY_SEGMENT);
+			db.execSQL(TABLE_ALTER_PAYLOAD_ADD_BODY_OFFSET);
+			db.execSQL(TABLE_ALTER_PAYLOAD_ADD_BODY_LENGTH);
+			db.execSQL(TABLE_ALTER_PAYLOAD_ADD_PRIORITY);
+			for (PayloadType type : PayloadType.values()) {
+				db.execSQL(SQL_QUERY_UPDATE_PAYLOAD_PRIORITY, new Object[]{
+					PayloadSender.getSendPriority(type).ordinal(), type.name()
+				});
+			}
+			// unrecognized types are read as 'unknown': otherwise these payloads would never be picked up
+			db.execSQL(SQL_QUERY_UPDATE_MISSING_PAYLOAD_PRIORITY, new Object[]{
+				PayloadSender.getSendPriority(PayloadType.unknown).ordinal()
+			});
+			db.execSQL(TABLE_CREATE_PAYLOAD_IDENTIFIER_INDEX);
+			db.execSQL(TABLE_CREATE_PAYLOAD_PARTITION_INDEX);
+			db.setTransactionSuccessful();
+		} catch (Exception e) {
+			ApptentiveLog.e(DATABASE, e, "Error in upgradeVersion4to5()");
+		} finally {
+			db.endTransaction();
+		}
+	}
+
 	private void migrateMessages(SQLiteDatabase db) {
 		try {
 			final List<ApptentiveMessage> messages = getAllMessages(db);
@@ -526,44 +766,162 @@ public class ApptentiveDatabaseHelper extends SQLiteOpenHelper {
 	 * a new message is added.
 	 */
 	void addPayload(Payload payload) {
+		addPayloads(Collections.singletonList(payload));
+	}
+
+	/**
+	 * Adds a group of payloads with a single transaction (group commit). A payload which fails to
+	 * be stored doesn't prevent the rest of the group from being added. Payload bodies are appended
+	 * to the segment log and synced to the disk once per group.
+	 */
+	void addPayloads(List<Payload> payloads) {
+		addPayloads(payloads, null);
+	}
+
+	/**
+	 * Adds a group of payloads (see {@link #addPayloads(List)}). Once the queue is full, repeated
+	 * events are aggregated and the oldest analytics payloads are dropped to make room: payloads
+	 * accepted by <code>inFlightFilter</code> are never touched.
+	 */
+	void addPayloads(List<Payload> payloads, PayloadInFlightFilter inFlightFilter) {
+		List<PayloadSegmentLog.Location> bodyLocations = new ArrayList<>(payloads.size());
+		List<PayloadSegmentLog.Location> replacedBodyLocations = new ArrayList<>();
+		List<Payload> persistedPayloads = new ArrayList<>(payloads.size());
+		List<Integer> persistedBodyLengths = new ArrayList<>(payloads.size());
+		List<String> discardedNonces = new ArrayList<>();
+
+		// original nonces (an aggregated payload takes the nonce of its aggregate)
+		List<String> nonces = new ArrayList<>(payloads.size());
+		for (Payload payload : payloads) {
+			nonces.add(payload.getNonce());
+		}
+
+		boolean succeed = false;
 		SQLiteDatabase db = null;
 		try {
 			db = getWritableDatabase();
 			db.beginTransaction();
 
-			ContentValues values = new ContentValues();
-			values.put(PayloadEntry.COLUMN_IDENTIFIER.name, notNull(payload.getNonce()));
-			values.put(PayloadEntry.COLUMN_PAYLOAD_TYPE.name, notNull(payload.getPayloadType().name()));
-			values.put(PayloadEntry.COLUMN_CONTENT_TYPE.name, notNull(payload.getHttpRequestContentType()));
-			// The token is encrypted inside the payload body for Logged In Conversations. In that case, don't store it here.
-			if (!payload.hasEncryptionKey()) {
-				values.put(PayloadEntry.COLUMN_AUTH_TOKEN.name, payload.getToken()); // might be null
-			}
-			values.put(PayloadEntry.COLUMN_CONVERSATION_ID.name, payload.getConversationId()); // might be null
-			values.put(PayloadEntry.COLUMN_REQUEST_METHOD.name, payload.getHttpRequestMethod().name());
-			values.put(PayloadEntry.COLUMN_PATH.name, payload.getHttpEndPoint(
-				StringUtils.isNullOrEmpty(payload.getConversationId()) ? "${conversationId}" : payload.getConversationId()) // if conversation id is missing we replace it with a place holder and update it later
-			);
+			PayloadSegmentLog segmentLog = getPayloadSegmentLog();
+			for (int i = 0; i < payloads.size(); ++i) {
+				final Payload payload = payloads.get(i);
+				final String nonce = nonces.get(i);
+				PayloadSegmentLog.Location bodyLocation = null;
+				try {
+					PayloadSender.SendPriority priority = PayloadSender.getSendPriority(payload.getPayloadType());
+					final boolean queueFull = isPayloadQueueFull(db);
+					if (queueFull) {
+						if (aggregatePayload(db, segmentLog, payload, inFlightFilter, bodyLocations, replacedBodyLocations)) {
+							discardedNonces.add(nonce);
+							continue;
+						}
+
+						if (!dropOldestPayloads(db, inFlightFilter, replacedBodyLocations)) {
+							if (priority == PayloadSender.SendPriority.LOW) {
+								ApptentiveLog.w(DATABASE, "Payload queue is full: dropped %s", payload);
+								payloadQueueOverflow.onDropped();
+								discardedNonces.add(nonce);
+								continue;
+							}
+
+							ApptentiveLog.w(DATABASE, "Payload queue is full: %s is added over the quota", payload);
+							payloadQueueOverflow.onOverQuota();
+						}
+					}
 
-			File dest = getPayloadBodyFile(payload.getNonce());
-			ApptentiveLog.v(DATABASE, "Saving payload body to: %s", dest);
-			Util.writeBytes(dest, payload.renderData());
+					ContentValues values = new ContentValues();
+					values.put(PayloadEntry.COLUMN_IDENTIFIER.name, notNull(payload.getNonce()));
+					values.put(PayloadEntry.COLUMN_PAYLOAD_TYPE.name, notNull(payload.getPayloadType().name()));
+					values.put(PayloadEntry.COLUMN_CONTENT_TYPE.name, notNull(payload.getHttpRequestContentType()));
+					// The token is encrypted inside the payload body for Logged In Conversations. In that case, don't store it here.
+					if (!payload.hasEncryptionKey()) {
+						values.put(PayloadEntry.COLUMN_AUTH_TOKEN.name, payload.getToken()); // might be null
+					}
+					values.put(PayloadEntry.COLUMN_CONVERSATION_ID.name, payload.getConversationId()); // might be null
+					values.put(PayloadEntry.COLUMN_REQUEST_METHOD.name, payload.getHttpRequestMethod().name());
+					values.put(PayloadEntry.COLUMN_PATH.name, payload.getHttpEndPoint(
+						StringUtils.isNullOrEmpty(payload.getConversationId()) ? "${conversationId}" : payload.getConversationId()) // if conversation id is missing we replace it with a place holder and update it later
+					);
+
+					values.put(PayloadEntry.COLUMN_ENCRYPTED.name, payload.hasEncryptionKey() ? TRUE : FALSE);
+					values.put(PayloadEntry.COLUMN_LOCAL_CONVERSATION_ID.name, notNull(payload.getLocalConversationIdentifier()));
+
+					bodyLocation = segmentLog.append(new PayloadSegmentLog.BodyWriter() {
+						@Override
+						public void write(OutputStream stream) throws Exception {
+							payload.renderData(stream);
+						}
+					});
+					ApptentiveLog.v(DATABASE, "Saving payload body to: %s", bodyLocation);
+					values.put(PayloadEntry.COLUMN_BODY_SEGMENT.name, bodyLocation.segment);
+					values.put(PayloadEntry.COLUMN_BODY_OFFSET.name, bodyLocation.offset);
+					values.put(PayloadEntry.COLUMN_BODY_LENGTH.name, bodyLocation.length);
+					values.put(PayloadEntry.COLUMN_PRIORITY.name, priority.ordinal());
+
+					long rowId = db.insertOrThrow(PayloadEntry.TABLE_NAME, null, values);
+					bodyLocations.add(bodyLocation);
+					updatePayloadQueueSize(1, bodyLocation.length);
+					persistedPayloads.add(payload);
+					persistedBodyLengths.add(bodyLocation.length);
+
+					// repeated occurrences of the event would be added to this one
+					if (queueFull) {
+						addPayloadAggregate(payload);
+					}
 
-			values.put(PayloadEntry.COLUMN_ENCRYPTED.name, payload.hasEncryptionKey() ? TRUE : FALSE);
-			values.put(PayloadEntry.COLUMN_LOCAL_CONVERSATION_ID.name, notNull(payload.getLocalConversationIdentifier()));
+					// partitions are loaded from the database along with the new rows if they're not loaded yet
+					if (payloadPartitions != null) {
+						PayloadLane lane = getPayloadPartition(payload.getLocalConversationIdentifier()).getLane(priority);
 
-			db.insert(PayloadEntry.TABLE_NAME, null, values);
+						// SQLite might reuse the id of the last deleted row: the new row would be missed by the window
+						if (rowId <= lane.lastPrefetchedId) {
+							lane.invalidate();
+						}
+						lane.exhausted = false;
+					}
+				} catch (Exception e) {
+					ApptentiveLog.e(DATABASE, e, "Error adding payload: %s", payload);
+					discardedNonces.add(nonce);
+					if (bodyLocation != null) {
+						segmentLog.release(bodyLocation.segment, bodyLocation.length);
+					}
+				}
+			}
+
+			segmentLog.sync();
 			db.setTransactionSuccessful();
+			succeed = true;
 		} catch (Exception e) {
-			ApptentiveLog.e(DATABASE, e, "Error adding payload.");
+			ApptentiveLog.e(DATABASE, e, "Error adding payloads.");
 		} finally {
 			if (db != null) {
 				db.endTransaction();
 			}
 		}
 
+		// bodies of the rows which were rolled back are no longer referenced
+		if (succeed) {
+			if (!replacedBodyLocations.isEmpty()) {
+				releasePayloadBodies(replacedBodyLocations); // dropped or aggregated payloads
+			}
+			for (int i = 0; i < persistedPayloads.size(); ++i) {
+				Payload payload = persistedPayloads.get(i);
+				payloadMetrics.onPayloadPersisted(payload.getNonce(), payload.getPayloadType(), persistedBodyLengths.get(i));
+			}
+			for (String nonce : discardedNonces) {
+				payloadMetrics.onPayloadDiscarded(nonce);
+			}
+		} else {
+			invalidatePrefetchedPayloads();
+			invalidatePayloadQueueSize();
+			releasePayloadBodies(bodyLocations);
+			for (String nonce : nonces) {
+				payloadMetrics.onPayloadDiscarded(nonce);
+			}
+		}
+
 		if (ApptentiveLog.canLog(ApptentiveLog.Level.VERY_VERBOSE)) {
-			printPayloadTable("Added payload");
+			printPayloadTable("Added payloads");
 		}
 	}
 
@@ -571,22 +929,46 @@ public class ApptentiveDatabaseHelper extends SQLiteOpenHelper {
 		if (payloadIdentifier == null) {
 			throw new IllegalArgumentException("Payload identifier is null");
 		}
-		// First delete the row
+		// First delete the row (remember where its body is stored)
+		PayloadSegmentLog.Location bodyLocation = null;
 		SQLiteDatabase db;
+		Cursor cursor = null;
 		try {
 			db = getWritableDatabase();
-			db.delete(
+			getPayloadSegmentLog(); // open the log before the row is gone so the body is still accounted for
+
+			cursor = db.rawQuery(SQL_QUERY_PAYLOAD_BODY_LOCATION, new String[]{payloadIdentifier});
+			if (cursor.moveToFirst() && !cursor.isNull(0)) {
+				bodyLocation = new PayloadSegmentLog.Location(cursor.getInt(0), cursor.getLong(1), cursor.getInt(2));
+			}
+
+			int deletedCount = db.delete(
 				PayloadEntry.TABLE_NAME,
 				PayloadEntry.COLUMN_IDENTIFIER + " = ?",
 				new String[]{payloadIdentifier}
 			);
-		} catch (SQLException sqe) {
-			ApptentiveLog.e(DATABASE, "deletePayload EXCEPTION: " + sqe.getMessage());
+			if (deletedCount > 0) {
+				updatePayloadQueueSize(-deletedCount, bodyLocation != null ? -bodyLocation.length : 0);
+			}
+		} catch (Exception e) {
+			ApptentiveLog.e(DATABASE, "deletePayload EXCEPTION: " + e.getMessage());
+		} finally {
+			ensureClosed(cursor);
+		}
+		removePrefetchedPayload(payloadIdentifier);
+		removePayloadAggregate(payloadIdentifier);
+		payloadMetrics.onPayloadDiscarded(payloadIdentifier);
+
+		// Then release the body
+		if (bodyLocation != null) {
+			releasePayloadBodies(Collections.singletonList(bodyLocation));
+		} else {
+			// payloads stored before the segment log have separate data files
+			File dest = getPayloadBodyFile(payloadIdentifier);
+			if (dest.exists()) {
+				ApptentiveLog.v(DATABASE, "Deleted payload \"%s\" data file successfully? %b", payloadIdentifier, dest.delete());
+			}
 		}
-
-		// Then delete the data file
-		File dest = getPayloadBodyFile(payloadIdentifier);
-		ApptentiveLog.v(DATABASE, "Deleted payload \"%s\" data file successfully? %b", payloadIdentifier, dest.delete());
 
 		if (ApptentiveLog.canLog(ApptentiveLog.Level.VERY_VERBOSE)) {
 			printPayloadTable("Deleted payload");
@@ -594,7 +976,6 @@ public class ApptentiveDatabaseHelper extends SQLiteOpenHelper {
 	}
 
 	void deleteAllPayloads() {
-		// FIXME: Delete files too.
 		SQLiteDatabase db;
 		try {
 			db = getWritableDatabase();
@@ -602,64 +983,387 @@ public class ApptentiveDatabaseHelper extends SQLiteOpenHelper {
 		} catch (SQLException sqe) {
 			ApptentiveLog.e(DATABASE, "deleteAllPayloads EXCEPTION: " + sqe.getMessage());
 		}
+		invalidatePrefetchedPayloads();
+		invalidatePayloadQueueSize();
+		payloadSegmentLog.clear();
+		payloadMetrics.onQueueCleared();
 	}
 
 	PayloadData getOldestUnsentPayload() {
+		return getOldestUnsentPayload(null);
+	}
+
+	/**
+	 * Returns the oldest unsent payload accepted by the <code>filter</code> (or <code>null</code> if
+	 * there's nothing to send right now). Payloads are passed to the filter in the send order.
+	 */
+	PayloadData getOldestUnsentPayload(PayloadFilter filter) {
+		List<PayloadData> payloads = getUnsentPayloads(filter, 1);
+		return payloads.isEmpty() ? null : payloads.get(0);
+	}
+
+	/**
+	 * Returns up to <code>maxCount</code> oldest unsent payloads accepted by the <code>filter</code>
+	 * (in the send order). Higher priority lanes are drained first (unless a lower priority lane has
+	 * waited for too long) and the order is preserved within each lane of each conversation.
+	 */
+	List<PayloadData> getUnsentPayloads(PayloadFilter filter, int maxCount) {
 		if (ApptentiveLog.canLog(ApptentiveLog.Level.VERY_VERBOSE)) {
-			printPayloadTable("getOldestUnsentPayload");
+			printPayloadTable("getUnsentPayloads");
 		}
 
-		SQLiteDatabase db;
-		Cursor cursor = null;
+		List<PayloadData> payloads = new ArrayList<>(maxCount);
 		try {
-			db = getWritableDatabase();
-			cursor = db.rawQuery(SQL_QUERY_PAYLOAD_GET_IN_SEND_ORDER, null);
-			int count = cursor.getCount();
-			ApptentiveLog.v(PAYLOADS, "Unsent payloads count: %d", count);
+			Collection<PayloadPartition> partitions = getPayloadPartitions().values();
+
+			boolean stopped = false;
+			for (PayloadSender.SendPriority priority : getPayloadLanesInServiceOrder()) {
+				if (priority != PayloadSender.SendPriority.EXCLUSIVE) {
+					stopped = !collectUnsentPayloads(partitions, priority, filter, maxCount, payloads);
+					if (stopped || payloads.size() >= maxCount) {
+						break;
+					}
+				}
+			}
 
-			while(cursor.moveToNext()) {
-				final String conversationId = cursor.getString(PayloadEntry.COLUMN_CONVERSATION_ID.index);
-				if (conversationId == null) {
-					ApptentiveLog.d(PAYLOADS, "Oldest unsent payload is missing a conversation id");
-					return null;
+			// exclusive payloads are sent alone
+			if (!stopped && payloads.isEmpty()) {
+				collectUnsentPayloads(partitions, PayloadSender.SendPriority.EXCLUSIVE, filter, 1, payloads);
+			}
+
+			updatePayloadLaneStarvation(partitions, payloads);
+		} catch (Exception e) {
+			ApptentiveLog.e(e, "Error getting unsent payloads.");
+		}
+		return payloads;
+	}
+
+	/**
+	 * Adds unsent payloads from the <code>priority</code> lane of each partition to the
+	 * <code>payloads</code> list (oldest first). Each partition has its own cursor so a conversation
+	 * waiting for its id doesn't block the others. Returns <code>false</code> if the filter stopped
+	 * the search.
+	 */
+	private boolean collectUnsentPayloads(Collection<PayloadPartition> partitions, PayloadSender.SendPriority priority, PayloadFilter filter, int maxCount, List<PayloadData> payloads) throws IOException {
+		List<PayloadCursor> cursors = new ArrayList<>(partitions.size());
+		for (PayloadPartition partition : partitions) {
+			cursors.add(new PayloadCursor(partition.getLane(priority), getPayloadLimit(partition, priority)));
+		}
+
+		while (payloads.size() < maxCount) {
+			// pick the oldest row among the partitions
+			PayloadCursor cursor = null;
+			PayloadRow row = null;
+			for (PayloadCursor candidate : cursors) {
+				PayloadRow candidateRow = candidate.peek();
+				if (candidateRow != null && (row == null || candidateRow.id < row.id)) {
+					cursor = candidate;
+					row = candidateRow;
 				}
+			}
+
+			if (row == null) {
+				break;
+			}
+
+			if (row.conversationId == null) {
+				ApptentiveLog.d(PAYLOADS, "Oldest unsent payload of the local conversation '%s' is missing a conversation id", cursor.lane.localConversationId);
+				cursor.blocked = true; // the rest of the partition waits as well
+				continue;
+			}
 
-				final String authToken = cursor.getString(PayloadEntry.COLUMN_AUTH_TOKEN.index);
-				final String nonce = notNull(cursor.getString(PayloadEntry.COLUMN_IDENTIFIER.index));
+			assertFalse(PayloadType.unknown.equals(row.payloadType), "Oldest unsent payload has unknown type");
 
-				final PayloadType payloadType = PayloadType.parse(cursor.getString(PayloadEntry.COLUMN_PAYLOAD_TYPE.index));
-				assertFalse(PayloadType.unknown.equals(payloadType), "Oldest unsent payload has unknown type");
+			if (PayloadType.unknown.equals(row.payloadType)) {
+				deletePayload(row.nonce); // removes the prefetched row as well
+				continue;
+			}
 
-				if (PayloadType.unknown.equals(payloadType)) {
-					deletePayload(nonce);
+			if (filter != null) {
+				PayloadSender.SendDecision decision = filter.getSendDecision(row.nonce, row.payloadType);
+				if (decision == PayloadSender.SendDecision.STOP) {
+					return false;
+				}
+				if (decision == PayloadSender.SendDecision.SKIP) {
+					++cursor.index;
 					continue;
 				}
+			}
 
-				final String httpRequestPath = updatePayloadRequestPath(cursor.getString(PayloadEntry.COLUMN_PATH.index), conversationId);
+			PayloadData payload = createPayloadData(row);
+			if (payload == null) {
+				ApptentiveLog.w("Oldest unsent payload had no data. Deleting.");
+				deletePayload(row.nonce);
+				continue;
+			}
+			payloads.add(payload);
+			++cursor.index;
+		}
+		return true;
+	}
 
-				// TODO: We need a migration for existing payload bodies to put them into files.
+	/**
+	 * Returns the id of the first row the partition lane can't pass: nothing passes an exclusive
+	 * payload and the exclusive payload itself goes out once all the payloads of the conversation
+	 * created before it are gone.
+	 */
+	private long getPayloadLimit(PayloadPartition partition, PayloadSender.SendPriority priority) {
+		PayloadRow barrier = peekPayloadRow(partition.getLane(PayloadSender.SendPriority.EXCLUSIVE), 0);
+		if (barrier == null) {
+			return Long.MAX_VALUE;
+		}
 
-				File file = getPayloadBodyFile(nonce);
-				if (!file.exists()) {
-					ApptentiveLog.w("Oldest unsent payload had no data file. Deleting.");
-					deletePayload(nonce);
-					continue;
+		if (priority == PayloadSender.SendPriority.EXCLUSIVE) {
+			return hasPayloadsBefore(partition, barrier.id) ? barrier.id : barrier.id + 1;
+		}
+
+		return barrier.id;
+	}
+
+	/**
+	 * Returns lane priorities with the starving lanes moved to the front
+	 */
+	private List<PayloadSender.SendPriority> getPayloadLanesInServiceOrder() {
+		PayloadSender.SendPriority[] priorities = PayloadSender.SendPriority.values();
+		List<PayloadSender.SendPriority> lanes = new ArrayList<>(priorities.length);
+		for (PayloadSender.SendPriority priority : priorities) {
+			if (payloadLaneStarvationCounts[priority.ordinal()] >= PAYLOAD_LANE_STARVATION_LIMIT) {
+				lanes.add(priority);
+			}
+		}
+		for (PayloadSender.SendPriority priority : priorities) {
+			if (payloadLaneStarvationCounts[priority.ordinal()] < PAYLOAD_LANE_STARVATION_LIMIT) {
+				lanes.add(priority);
+			}
+		}
+		return lanes;
+	}
+
+	/**
+	 * Lanes which were served are reset. Lower priority lanes which had payloads waiting get one
+	 * step closer to being served first.
+	 */
+	private void updatePayloadLaneStarvation(Collection<PayloadPartition> partitions, List<PayloadData> payloads) {
+		PayloadSender.SendPriority[] priorities = PayloadSender.SendPriority.values();
+		for (PayloadData payload : payloads) {
+			int servedPriority = PayloadSender.getSendPriority(payload.getType()).ordinal();
+			payloadLaneStarvationCounts[servedPriority] = 0;
+
+			for (int priority = servedPriority + 1; priority < priorities.length; ++priority) {
+				if (hasWaitingPayloads(partitions, priorities[priority])) {
+					++payloadLaneStarvationCounts[priority];
 				}
-				byte[] data = Util.readBytes(file);
-				final String contentType = notNull(cursor.getString(PayloadEntry.COLUMN_CONTENT_TYPE.index));
-				final HttpRequestMethod httpRequestMethod = HttpRequestMethod.valueOf(notNull(cursor.getString(PayloadEntry.COLUMN_REQUEST_METHOD.index)));
-				final boolean encrypted = cursor.getInt(PayloadEntry.COLUMN_ENCRYPTED.index) == TRUE;
-				return new PayloadData(payloadType, nonce, conversationId, data, authToken, contentType, httpRequestPath, httpRequestMethod, encrypted);
 			}
-			return null;
-		} catch (Exception e) {
-			ApptentiveLog.e(e, "Error getting oldest unsent payload.");
-			return null;
+		}
+	}
+
+	/**
+	 * Returns <code>true</code> if any of the partitions has a payload waiting in the lane
+	 */
+	private boolean hasWaitingPayloads(Collection<PayloadPartition> partitions, PayloadSender.SendPriority priority) {
+		for (PayloadPartition partition : partitions) {
+			PayloadRow head = peekPayloadRow(partition.getLane(priority), 0);
+			if (head != null && head.id < getPayloadLimit(partition, priority)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns <code>true</code> if any of the partition lanes has a payload created before <code>id</code>
+	 */
+	private boolean hasPayloadsBefore(PayloadPartition partition, long id) {
+		for (PayloadLane lane : partition.lanes) {
+			PayloadRow head = peekPayloadRow(lane, 0);
+			if (head != null && head.id < id) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns payload partitions (loads the list from the database on the first call)
+	 */
+	private Map<String, PayloadPartition> getPayloadPartitions() {
+		if (payloadPartitions == null) {
+			Map<String, PayloadPartition> partitions = new LinkedHashMap<>();
+			Cursor cursor = null;
+			try {
+				SQLiteDatabase db = getWritableDatabase();
+				cursor = db.rawQuery(SQL_QUERY_PAYLOAD_GET_PARTITIONS, null);
+				while (cursor.moveToNext()) {
+					String localConversationId = cursor.getString(0);
+					partitions.put(localConversationId, new PayloadPartition(localConversationId));
+				}
+			} finally {
+				ensureClosed(cursor);
+			}
+			payloadPartitions = partitions;
+		}
+		return payloadPartitions;
+	}
+
+	private PayloadPartition getPayloadPartition(String localConversationId) {
+		Map<String, PayloadPartition> partitions = getPayloadPartitions();
+		PayloadPartition partition = partitions.get(localConversationId);
+		if (partition == null) {
+			partition = new PayloadPartition(localConversationId);
+			partitions.put(localConversationId, partition);
+		}
+		return partition;
+	}
+
+	/**
+	 * Returns a prefetched row of the lane (reads the next window of rows if <code>index</code> is
+	 * past the prefetched ones) or <code>null</code> if the lane has no more rows
+	 */
+	private PayloadRow peekPayloadRow(PayloadLane lane, int index) {
+		while (index >= lane.rows.size()) {
+			if (lane.exhausted || prefetchPayloads(lane) == 0) {
+				return null;
+			}
+		}
+		return lane.rows.get(index);
+	}
+
+	/**
+	 * Reads the next window of lane payload rows (in the send order) and appends them to the
+	 * prefetched rows. Returns the number of rows read.
+	 */
+	private int prefetchPayloads(PayloadLane lane) {
+		Cursor cursor = null;
+		try {
+			SQLiteDatabase db = getWritableDatabase();
+			if (lane.localConversationId != null) {
+				cursor = db.rawQuery(SQL_QUERY_PAYLOAD_GET_NEXT_IN_LANE, new String[] {
+					lane.localConversationId,
+					String.valueOf(lane.priority.ordinal()),
+					String.valueOf(lane.lastPrefetchedId)
+				});
+			} else {
+				cursor = db.rawQuery(SQL_QUERY_PAYLOAD_GET_NEXT_IN_LANE_WITHOUT_LOCAL_CONVERSATION_ID, new String[] {
+					String.valueOf(lane.priority.ordinal()),
+					String.valueOf(lane.lastPrefetchedId)
+				});
+			}
+
+			int count = 0;
+			while (cursor.moveToNext()) {
+				PayloadRow row = new PayloadRow(cursor);
+				lane.rows.add(row);
+				lane.lastPrefetchedId = row.id;
+				++count;
+			}
+			lane.exhausted = count < PAYLOAD_PREFETCH_WINDOW_SIZE; // new rows reset this flag
+			ApptentiveLog.v(PAYLOADS, "Prefetched %s payloads of the local conversation '%s': %d", lane.priority, lane.localConversationId, count);
+			return count;
 		} finally {
 			ensureClosed(cursor);
 		}
 	}
 
+	/**
+	 * Returns payload data or <code>null</code> if its body is missing. Large bodies are not read:
+	 * the payload references the region of the file they are stored in.
+	 */
+	private PayloadData createPayloadData(PayloadRow row) throws IOException {
+		File bodyFile = null;
+		long bodyOffset = 0;
+		long bodyLength = 0;
+		if (row.bodySegment == -1) {
+			File file = getPayloadBodyFile(row.nonce);
+			if (file.exists() && file.length() >= PAYLOAD_STREAMING_MIN_SIZE) {
+				bodyFile = file;
+				bodyLength = file.length();
+			}
+		} else if (row.bodyLength >= PAYLOAD_STREAMING_MIN_SIZE) {
+			try {
+				bodyFile = getPayloadSegmentLog().getSegmentFile(row.bodySegment, row.bodyOffset, row.bodyLength);
+				bodyOffset = row.bodyOffset;
+				bodyLength = row.bodyLength;
+			} catch (IOException e) {
+				ApptentiveLog.e(DATABASE, e, "Unable to locate payload body: %s", row.nonce);
+				return null;
+			}
+		}
+
+		if (bodyFile != null) {
+			return new PayloadData(row.payloadType, row.nonce, row.conversationId, bodyFile, bodyOffset, bodyLength, row.authToken, row.contentType, row.httpRequestPath, row.httpRequestMethod, row.encrypted);
+		}
+
+		byte[] data = readPayloadBody(row);
+		return data != null ? new PayloadData(row.payloadType, row.nonce, row.conversationId, data, row.authToken, row.contentType, row.httpRequestPath, row.httpRequestMethod, row.encrypted) : null;
+	}
+
+	/**
+	 * Returns payload body or <code>null</code> if it's missing
+	 */
+	private byte[] readPayloadBody(PayloadRow row) throws IOException {
+		if (row.bodySegment == -1) {
+			// payloads stored before the segment log have separate data files
+			File file = getPayloadBodyFile(row.nonce);
+			return file.exists() ? Util.readBytes(file) : null;
+		}
+
+		try {
+			return getPayloadSegmentLog().read(row.bodySegment, row.bodyOffset, row.bodyLength);
+		} catch (IOException e) {
+			ApptentiveLog.e(DATABASE, e, "Unable to read payload body: %s", row.nonce);
+			return null;
+		}
+	}
+
+	private void removePrefetchedPayload(String nonce) {
+		if (payloadPartitions != null) {
+			for (PayloadPartition partition : payloadPartitions.values()) {
+				for (PayloadLane lane : partition.lanes) {
+					for (int i = 0; i < lane.rows.size(); ++i) {
+						if (lane.rows.get(i).nonce.equals(nonce)) {
+							lane.rows.remove(i);
+							return;
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Drops the prefetched rows of the lane which holds the payload (the lane is prefetched again
+	 * when needed)
+	 */
+	private void invalidatePrefetchedPayload(String nonce) {
+		if (payloadPartitions != null) {
+			for (PayloadPartition partition : payloadPartitions.values()) {
+				for (PayloadLane lane : partition.lanes) {
+					for (PayloadRow row : lane.rows) {
+						if (row.nonce.equals(nonce)) {
+							lane.invalidate();
+							return;
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Drops prefetched payload rows (should be called each time existing rows are modified)
+	 */
+	private void invalidatePrefetchedPayloads() {
+		if (payloadPartitions != null) {
+			// lanes might be in use by the current getUnsentPayloads() call
+			for (PayloadPartition partition : payloadPartitions.values()) {
+				for (PayloadLane lane : partition.lanes) {
+					lane.invalidate();
+				}
+			}
+			payloadPartitions = null;
+		}
+	}
+
 	private String updatePayloadRequestPath(String path, String conversationId) {
 		return path.replace("${conversationId}", conversationId);
 	}
@@ -692,6 +1396,20 @@ public class ApptentiveDatabaseHelper extends SQLiteOpenHelper {
 		// remove incomplete payloads which don't belong to an active conversation
 		removeCorruptedPayloads();
 
+		// bodies of the removed payloads are no longer referenced
+		if (payloadSegmentLog.isOpen()) {
+			try {
+				payloadSegmentLog.updateLiveBytes(queryPayloadSegmentLiveBytes());
+				compactPayloadSegments();
+			} catch (Exception e) {
+				ApptentiveLog.e(DATABASE, e, "Exception while updating payload segments");
+			}
+		}
+
+		// prefetched rows are now outdated
+		invalidatePrefetchedPayloads();
+		invalidatePayloadQueueSize();
+
 		if (ApptentiveLog.canLog(ApptentiveLog.Level.VERY_VERBOSE)) {
 			printPayloadTable("updateIncompletePayloads AFTER");
 		}
@@ -713,6 +1431,362 @@ public class ApptentiveDatabaseHelper extends SQLiteOpenHelper {
 
 	//endregion
 
+	//region Payload Queue Quota
+
+	void setPayloadQueueQuota(int maxRows, long maxBytes) {
+		if (maxRows <= 0) {
+			throw new IllegalArgumentException("Invalid max rows: " + maxRows);
+		}
+		if (maxBytes <= 0) {
+			throw new IllegalArgumentException("Invalid max bytes: " + maxBytes);
+		}
+		payloadQueueMaxRows = maxRows;
+		payloadQueueMaxBytes = maxBytes;
+	}
+
+	PayloadQueueOverflow getPayloadQueueOverflow() {
+		return payloadQueueOverflow;
+	}
+
+	/**
+	 * Sets the filter which tells which payloads are being sent (segments with their bodies are not
+	 * compacted)
+	 */
+	void setPayloadInFlightFilter(PayloadInFlightFilter payloadInFlightFilter) {
+		this.payloadInFlightFilter = payloadInFlightFilter;
+	}
+
+	void setPayloadMetrics(PayloadMetrics payloadMetrics) {
+		if (payloadMetrics == null) {
+			throw new IllegalArgumentException("Payload metrics is null");
+		}
+		this.payloadMetrics = payloadMetrics;
+	}
+
+	private boolean isPayloadQueueFull(SQLiteDatabase db) {
+		if (payloadQueueRowCount == -1) {
+			Cursor cursor = null;
+			try {
+				cursor = db.rawQuery(SQL_QUERY_PAYLOAD_QUEUE_SIZE, null);
+				if (cursor.moveToFirst()) {
+					payloadQueueRowCount = cursor.getLong(0);
+					payloadQueueByteCount = cursor.getLong(1); // legacy bodies are not counted
+					payloadMetrics.onQueueSizeChanged(payloadQueueRowCount, payloadQueueByteCount);
+				}
+			} finally {
+				ensureClosed(cursor);
+			}
+		}
+		return payloadQueueRowCount >= payloadQueueMaxRows || payloadQueueByteCount >= payloadQueueMaxBytes;
+	}
+
+	private void updatePayloadQueueSize(long rowDelta, long byteDelta) {
+		if (payloadQueueRowCount != -1) {
+			payloadQueueRowCount += rowDelta;
+			payloadQueueByteCount += byteDelta;
+			payloadMetrics.onQueueSizeChanged(payloadQueueRowCount, payloadQueueByteCount);
+		}
+	}
+
+	/**
+	 * Should be called each time rows are modified outside of the add/delete calls (the size would be
+	 * queried again when needed)
+	 */
+	private void invalidatePayloadQueueSize() {
+		payloadQueueRowCount = -1;
+		payloadQueueByteCount = -1;
+		payloadAggregates.clear();
+		payloadAggregatesByNonce.clear();
+	}
+
+	/**
+	 * Drops the oldest analytics payloads which are not being sent until there's room for one more
+	 * payload. Returns <code>false</code> if nothing was dropped.
+	 */
+	private boolean dropOldestPayloads(SQLiteDatabase db, PayloadInFlightFilter inFlightFilter, List<PayloadSegmentLog.Location> droppedBodyLocations) {
+		boolean dropped = false;
+		long lastId = -1;
+		while (isPayloadQueueFull(db)) {
+			Cursor cursor = null;
+			try {
+				cursor = db.rawQuery(SQL_QUERY_PAYLOAD_GET_DROPPABLE, new String[]{
+					String.valueOf(PayloadSender.SendPriority.LOW.ordinal()),
+					String.valueOf(lastId)
+				});
+				if (!cursor.moveToFirst()) {
+					break; // nothing else to drop
+				}
+
+				do {
+					lastId = cursor.getLong(0);
+					String nonce = cursor.getString(1);
+					if (inFlightFilter != null && inFlightFilter.isInFlight(nonce)) {
+						continue;
+					}
+
+					db.delete(PayloadEntry.TABLE_NAME, PayloadEntry.COLUMN_PRIMARY_KEY + " = ?", new String[]{String.valueOf(lastId)});
+					PayloadSegmentLog.Location bodyLocation = new PayloadSegmentLog.Location(cursor.getInt(2), cursor.getLong(3), cursor.getInt(4));
+					droppedBodyLocations.add(bodyLocation);
+					updatePayloadQueueSize(-1, -bodyLocation.length);
+
+					removePrefetchedPayload(nonce);
+					removePayloadAggregate(nonce);
+					payloadQueueOverflow.onDropped();
+					payloadMetrics.onPayloadDiscarded(nonce);
+					dropped = true;
+
+					ApptentiveLog.v(DATABASE, "Payload queue is full: dropped payload %s", nonce);
+				} while (isPayloadQueueFull(db) && cursor.moveToNext());
+			} finally {
+				ensureClosed(cursor);
+			}
+		}
+		return dropped;
+	}
+
+	/**
+	 * Adds a repeated event to its existing aggregate (the aggregate body is replaced with the new
+	 * event body which carries the updated count). Returns <code>false</code> if the payload can't be
+	 * aggregated.
+	 */
+	private boolean aggregatePayload(SQLiteDatabase db, PayloadSegmentLog segmentLog, final Payload payload, PayloadInFlightFilter inFlightFilter, List<PayloadSegmentLog.Location> addedBodyLocations, List<PayloadSegmentLog.Location> replacedBodyLocations) throws Exception {
+		String key = getPayloadAggregationKey(payload);
+		if (key == null) {
+			return false;
+		}
+
+		PayloadAggregate aggregate = payloadAggregates.get(key);
+		if (aggregate == null) {
+			return false;
+		}
+
+		// the body of the payload being sent can't be replaced
+		if (inFlightFilter != null && inFlightFilter.isInFlight(aggregate.nonce)) {
+			removePayloadAggregate(aggregate.nonce);
+			return false;
+		}
+
+		PayloadSegmentLog.Location oldBodyLocation = queryPayloadBodyLocation(db, aggregate.nonce);
+		if (oldBodyLocation == null) {
+			removePayloadAggregate(aggregate.nonce);
+			return false;
+		}
+
+		EventPayload event = (EventPayload) payload;
+		event.setNonce(aggregate.nonce);
+		event.setAggregateCount(aggregate.count + 1);
+
+		PayloadSegmentLog.Location bodyLocation = segmentLog.append(new PayloadSegmentLog.BodyWriter() {
+			@Override
+			public void write(OutputStream stream) throws Exception {
+				payload.renderData(stream);
+			}
+		});
+
+		try {
+			ContentValues values = new ContentValues();
+			values.put(PayloadEntry.COLUMN_BODY_SEGMENT.name, bodyLocation.segment);
+			values.put(PayloadEntry.COLUMN_BODY_OFFSET.name, bodyLocation.offset);
+			values.put(PayloadEntry.COLUMN_BODY_LENGTH.name, bodyLocation.length);
+			db.update(PayloadEntry.TABLE_NAME, values, PayloadEntry.COLUMN_IDENTIFIER + " = ?", new String[]{aggregate.nonce});
+		} catch (Exception e) {
+			segmentLog.release(bodyLocation.segment, bodyLocation.length);
+			throw e;
+		}
+
+		addedBodyLocations.add(bodyLocation);
+		replacedBodyLocations.add(oldBodyLocation);
+		updatePayloadQueueSize(0, bodyLocation.length - oldBodyLocation.length);
+		++aggregate.count;
+
+		invalidatePrefetchedPayload(aggregate.nonce); // prefetched row points to the old body
+		payloadQueueOverflow.onAggregated();
+
+		ApptentiveLog.v(DATABASE, "Payload queue is full: aggregated %s (count: %d)", payload, aggregate.count);
+		return true;
+	}
+
+	private void addPayloadAggregate(Payload payload) {
+		String key = getPayloadAggregationKey(payload);
+		if (key != null && !payloadAggregates.containsKey(key)) {
+			PayloadAggregate aggregate = new PayloadAggregate(key, payload.getNonce());
+			payloadAggregates.put(key, aggregate);
+			payloadAggregatesByNonce.put(aggregate.nonce, aggregate);
+		}
+	}
+
+	private void removePayloadAggregate(String nonce) {
+		PayloadAggregate aggregate = payloadAggregatesByNonce.remove(nonce);
+		if (aggregate != null) {
+			payloadAggregates.remove(aggregate.key);
+		}
+	}
+
+	private static String getPayloadAggregationKey(Payload payload) {
+		if (!(payload instanceof EventPayload)) {
+			return null;
+		}
+
+		String eventKey = ((EventPayload) payload).getAggregationKey();
+		if (eventKey == null) {
+			return null;
+		}
+
+		// events of different conversations are never aggregated
+		return StringUtils.format("%s|%b|%s", payload.getLocalConversationIdentifier(), payload.hasEncryptionKey(), eventKey);
+	}
+
+	private PayloadSegmentLog.Location queryPayloadBodyLocation(SQLiteDatabase db, String nonce) {
+		Cursor cursor = null;
+		try {
+			cursor = db.rawQuery(SQL_QUERY_PAYLOAD_BODY_LOCATION, new String[]{nonce});
+			if (cursor.moveToFirst() && !cursor.isNull(0)) {
+				return new PayloadSegmentLog.Location(cursor.getInt(0), cursor.getLong(1), cursor.getInt(2));
+			}
+			return null;
+		} finally {
+			ensureClosed(cursor);
+		}
+	}
+
+	//endregion
+
+	//region Payload Segments
+
+	/**
+	 * Returns payload bodies storage (opens it on the first call)
+	 */
+	private PayloadSegmentLog getPayloadSegmentLog() {
+		if (!payloadSegmentLog.isOpen()) {
+			payloadSegmentLog.open(queryPayloadSegmentLiveBytes());
+			compactPayloadSegments();
+		}
+		return payloadSegmentLog;
+	}
+
+	/**
+	 * Returns number of bytes referenced by the payload table for each segment
+	 */
+	private Map<Integer, Long> queryPayloadSegmentLiveBytes() {
+		Map<Integer, Long> liveBytes = new HashMap<>();
+		Cursor cursor = null;
+		try {
+			SQLiteDatabase db = getWritableDatabase();
+			cursor = db.rawQuery(SQL_QUERY_PAYLOAD_SEGMENT_LIVE_BYTES, null);
+			while (cursor.moveToNext()) {
+				liveBytes.put(cursor.getInt(0), cursor.getLong(1));
+			}
+			return liveBytes;
+		} finally {
+			ensureClosed(cursor);
+		}
+	}
+
+	private void releasePayloadBodies(List<PayloadSegmentLog.Location> bodyLocations) {
+		try {
+			for (PayloadSegmentLog.Location bodyLocation : bodyLocations) {
+				payloadSegmentLog.release(bodyLocation.segment, bodyLocation.length);
+			}
+			compactPayloadSegments();
+		} catch (Exception e) {
+			ApptentiveLog.e(DATABASE, e, "Exception while releasing payload bodies");
+		}
+	}
+
+	/**
+	 * Copies live bodies of mostly dead segments to the active segment and deletes these segments
+	 */
+	private void compactPayloadSegments() {
+		Set<Integer> pinnedSegmentIds = new HashSet<>();
+		int segmentId;
+		while ((segmentId = payloadSegmentLog.findSegmentToCompact(PAYLOAD_SEGMENT_MIN_LIVE_RATIO, pinnedSegmentIds)) != -1) {
+			// streamed bodies are read from the segment file while the request is running: the segment is
+			// compacted once its payloads are no longer in flight
+			if (isPayloadSegmentInFlight(segmentId)) {
+				ApptentiveLog.v(DATABASE, "Payload segment %d is in flight: skip compaction", segmentId);
+				pinnedSegmentIds.add(segmentId);
+				continue;
+			}
+
+			if (!compactPayloadSegment(segmentId)) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Returns <code>true</code> if the segment contains a body of a payload which is being sent
+	 */
+	private boolean isPayloadSegmentInFlight(int segmentId) {
+		PayloadInFlightFilter inFlightFilter = payloadInFlightFilter;
+		if (inFlightFilter == null) {
+			return false;
+		}
+
+		Cursor cursor = null;
+		try {
+			SQLiteDatabase db = getWritableDatabase();
+			cursor = db.rawQuery(SQL_QUERY_PAYLOAD_NONCES_IN_SEGMENT, new String[]{String.valueOf(segmentId)});
+			while (cursor.moveToNext()) {
+				if (inFlightFilter.isInFlight(cursor.getString(0))) {
+					return true;
+				}
+			}
+			return false;
+		} finally {
+			ensureClosed(cursor);
+		}
+	}
+
+	private boolean compactPayloadSegment(int segmentId) {
+		ApptentiveLog.v(DATABASE, "Compacting payload segment %d", segmentId);
+
+		List<PayloadSegmentLog.Location> movedBodies = new ArrayList<>();
+		boolean succeed = false;
+		SQLiteDatabase db = null;
+		Cursor cursor = null;
+		try {
+			db = getWritableDatabase();
+			db.beginTransaction();
+
+			cursor = db.rawQuery(SQL_QUERY_PAYLOAD_BODIES_IN_SEGMENT, new String[]{String.valueOf(segmentId)});
+			while (cursor.moveToNext()) {
+				byte[] data = payloadSegmentLog.read(segmentId, cursor.getLong(1), cursor.getInt(2));
+				PayloadSegmentLog.Location bodyLocation = payloadSegmentLog.append(data);
+				movedBodies.add(bodyLocation);
+
+				ContentValues values = new ContentValues();
+				values.put(PayloadEntry.COLUMN_BODY_SEGMENT.name, bodyLocation.segment);
+				values.put(PayloadEntry.COLUMN_BODY_OFFSET.name, bodyLocation.offset);
+				values.put(PayloadEntry.COLUMN_BODY_LENGTH.name, bodyLocation.length);
+				db.update(PayloadEntry.TABLE_NAME, values, PayloadEntry.COLUMN_PRIMARY_KEY + " = ?", new String[]{String.valueOf(cursor.getLong(0))});
+			}
+
+			payloadSegmentLog.sync();
+			db.setTransactionSuccessful();
+			succeed = true;
+		} catch (Exception e) {
+			ApptentiveLog.e(DATABASE, e, "Exception while compacting payload segment %d", segmentId);
+		} finally {
+			ensureClosed(cursor);
+			if (db != null) {
+				db.endTransaction();
+			}
+		}
+
+		if (succeed) {
+			payloadSegmentLog.deleteSegment(segmentId);
+			invalidatePrefetchedPayloads(); // prefetched rows point to the old locations
+		} else {
+			for (PayloadSegmentLog.Location bodyLocation : movedBodies) {
+				payloadSegmentLog.release(bodyLocation.segment, bodyLocation.length);
+			}
+		}
+		return succeed;
+	}
+
+	//endregion
+
 	//region Files
 
 	void deleteAssociatedFiles(String messageNonce) {
@@ -793,6 +1867,21 @@ public class ApptentiveDatabaseHelper extends SQLiteOpenHelper {
 
 	// region Helpers
 
+	private static void writePayloadBody(File file, Payload payload) throws IOException, JSONException {
+		File parentFile = file.getParentFile();
+		if (!parentFile.exists() && !parentFile.mkdirs()) {
+			throw new IOException("Parent file could not be created: " + parentFile);
+		}
+
+		OutputStream output = null;
+		try {
+			output = new BufferedOutputStream(new FileOutputStream(file));
+			payload.renderData(output);
+		} finally {
+			Util.ensureClosed(output);
+		}
+	}
+
 	private File getPayloadBodyFile(String nonce) {
 		return new File(payloadDataDir, nonce + PAYLOAD_DATA_FILE_SUFFIX);
 	}
@@ -813,12 +1902,151 @@ public class ApptentiveDatabaseHelper extends SQLiteOpenHelper {
 	 */
 	void reset(Context context) {
 		context.deleteDatabase(DATABASE_NAME);
+		invalidatePrefetchedPayloads();
+		invalidatePayloadQueueSize();
+		payloadSegmentLog.clear();
+		payloadMetrics.onQueueCleared();
 	}
 
 	//endregion
 
 	//region Helper classes
 
+	/**
+	 * Decides which unsent payloads can be sent right now
+	 */
+	interface PayloadFilter {
+		PayloadSender.SendDecision getSendDecision(String nonce, PayloadType type);
+	}
+
+	/**
+	 * Tells which queued payloads are being sent (those can't be dropped or modified)
+	 */
+	interface PayloadInFlightFilter {
+		boolean isInFlight(String nonce);
+	}
+
+	/**
+	 * Queued event which collects repeated occurrences of the same event
+	 */
+	private static final class PayloadAggregate {
+		final String key;
+		final String nonce;
+		int count = 1;
+
+		PayloadAggregate(String key, String nonce) {
+			this.key = key;
+			this.nonce = nonce;
+		}
+	}
+
+	/**
+	 * Payload row without the payload body (bodies are only read for the payloads being sent)
+	 */
+	private final class PayloadRow {
+		final long id;
+		final PayloadType payloadType;
+		final String nonce;
+		final String conversationId;
+		final String authToken;
+		final String contentType;
+		final String httpRequestPath;
+		final HttpRequestMethod httpRequestMethod;
+		final boolean encrypted;
+		final int bodySegment; // -1 if the body is stored in a separate file
+		final long bodyOffset;
+		final int bodyLength;
+
+		PayloadRow(Cursor cursor) {
+			id = cursor.getLong(PayloadEntry.COLUMN_PRIMARY_KEY.index);
+			payloadType = PayloadType.parse(cursor.getString(PayloadEntry.COLUMN_PAYLOAD_TYPE.index));
+			nonce = notNull(cursor.getString(PayloadEntry.COLUMN_IDENTIFIER.index));
+			conversationId = cursor.getString(PayloadEntry.COLUMN_CONVERSATION_ID.index);
+			authToken = cursor.getString(PayloadEntry.COLUMN_AUTH_TOKEN.index);
+			contentType = notNull(cursor.getString(PayloadEntry.COLUMN_CONTENT_TYPE.index));
+			String path = cursor.getString(PayloadEntry.COLUMN_PATH.index);
+			httpRequestPath = conversationId != null ? updatePayloadRequestPath(path, conversationId) : path;
+			httpRequestMethod = HttpRequestMethod.valueOf(notNull(cursor.getString(PayloadEntry.COLUMN_REQUEST_METHOD.index)));
+			encrypted = cursor.getInt(PayloadEntry.COLUMN_ENCRYPTED.index) == TRUE;
+			bodySegment = cursor.isNull(PayloadEntry.COLUMN_BODY_SEGMENT.index) ? -1 : cursor.getInt(PayloadEntry.COLUMN_BODY_SEGMENT.index);
+			bodyOffset = cursor.getLong(PayloadEntry.COLUMN_BODY_OFFSET.index);
+			bodyLength = cursor.getInt(PayloadEntry.COLUMN_BODY_LENGTH.index);
+		}
+	}
+
+	/**
+	 * Payloads of a single conversation (identified by the local conversation id)
+	 */
+	private static final class PayloadPartition {
+		final PayloadLane[] lanes;
+
+		PayloadPartition(String localConversationId) {
+			PayloadSender.SendPriority[] priorities = PayloadSender.SendPriority.values();
+			lanes = new PayloadLane[priorities.length];
+			for (PayloadSender.SendPriority priority : priorities) {
+				lanes[priority.ordinal()] = new PayloadLane(localConversationId, priority);
+			}
+		}
+
+		PayloadLane getLane(PayloadSender.SendPriority priority) {
+			return lanes[priority.ordinal()];
+		}
+	}
+
+	/**
+	 * Payload priority lane of a partition: a window of its oldest payload rows
+	 */
+	private static final class PayloadLane {
+		final String localConversationId;
+		final PayloadSender.SendPriority priority;
+		final List<PayloadRow> rows = new ArrayList<>(PAYLOAD_PREFETCH_WINDOW_SIZE);
+
+		/**
+		 * Primary key of the last prefetched row (or -1 if nothing was prefetched)
+		 */
+		long lastPrefetchedId = -1;
+
+		/**
+		 * Indicates that all the lane rows are prefetched (no need to query the database until a new
+		 * row is added)
+		 */
+		boolean exhausted;
+
+		PayloadLane(String localConversationId, PayloadSender.SendPriority priority) {
+			this.localConversationId = localConversationId;
+			this.priority = priority;
+		}
+
+		void invalidate() {
+			rows.clear();
+			lastPrefetchedId = -1;
+			exhausted = false;
+		}
+	}
+
+	/**
+	 * Position of a single <code>getUnsentPayloads()</code> call in a partition lane
+	 */
+	private final class PayloadCursor {
+		final PayloadLane lane;
+		final long limit;
+		int index;
+		boolean blocked;
+
+		PayloadCursor(PayloadLane lane, long limit) {
+			this.lane = lane;
+			this.limit = limit;
+		}
+
+		PayloadRow peek() {
+			if (blocked) {
+				return null;
+			}
+			PayloadRow row = peekPayloadRow(lane, index);
+			return row != null && row.id < limit ? row : null;
+		}
+	}
+
 	private static final class DatabaseColumn {
 		public final String name;
 		final int index;
@@ -6,29 +6,45 @@
 
 package com.apptentive.android.sdk.storage;
 
+import android.content.BroadcastReceiver;
 import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.os.Build;
 
 import com.apptentive.android.sdk.ApptentiveLog;
 import com.apptentive.android.sdk.comm.ApptentiveHttpClient;
 import com.apptentive.android.sdk.conversation.Conversation;
 import com.apptentive.android.sdk.model.Payload;
+import com.apptentive.android.sdk.model.PayloadBatch;
 import com.apptentive.android.sdk.model.PayloadData;
+import com.apptentive.android.sdk.model.PayloadType;
 import com.apptentive.android.sdk.model.StoredFile;
 import com.apptentive.android.sdk.network.HttpRequestRetryPolicyDefault;
 import com.apptentive.android.sdk.notifications.ApptentiveNotification;
 import com.apptentive.android.sdk.notifications.ApptentiveNotificationCenter;
 import com.apptentive.android.sdk.notifications.ApptentiveNotificationObserver;
+import com.apptentive.android.sdk.util.Constants;
+import com.apptentive.android.sdk.util.Util;
 import com.apptentive.android.sdk.util.threading.DispatchQueue;
 import com.apptentive.android.sdk.util.threading.DispatchTask;
 
 import org.json.JSONObject;
 
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static com.apptentive.android.sdk.ApptentiveLogTag.PAYLOADS;
 import static com.apptentive.android.sdk.ApptentiveNotifications.NOTIFICATION_APP_ENTERED_BACKGROUND;
@@ -36,10 +52,12 @@ import static com.apptentive.android.sdk.ApptentiveNotifications.NOTIFICATION_AP
 import static com.apptentive.android.sdk.ApptentiveNotifications.NOTIFICATION_CONVERSATION_STATE_DID_CHANGE;
 import static com.apptentive.android.sdk.ApptentiveNotifications.NOTIFICATION_KEY_CONVERSATION;
 import static com.apptentive.android.sdk.ApptentiveNotifications.NOTIFICATION_KEY_PAYLOAD;
+import static com.apptentive.android.sdk.ApptentiveNotifications.NOTIFICATION_KEY_PAYLOAD_METRICS;
 import static com.apptentive.android.sdk.ApptentiveNotifications.NOTIFICATION_KEY_RESPONSE_CODE;
 import static com.apptentive.android.sdk.ApptentiveNotifications.NOTIFICATION_KEY_RESPONSE_DATA;
 import static com.apptentive.android.sdk.ApptentiveNotifications.NOTIFICATION_KEY_SUCCESSFUL;
 import static com.apptentive.android.sdk.ApptentiveNotifications.NOTIFICATION_PAYLOAD_DID_FINISH_SEND;
+import static com.apptentive.android.sdk.ApptentiveNotifications.NOTIFICATION_PAYLOAD_METRICS;
 import static com.apptentive.android.sdk.ApptentiveNotifications.NOTIFICATION_PAYLOAD_WILL_START_SEND;
 import static com.apptentive.android.sdk.conversation.ConversationState.ANONYMOUS;
 import static com.apptentive.android.sdk.conversation.ConversationState.UNDEFINED;
@@ -51,17 +69,152 @@ import static java.lang.Boolean.TRUE;
 
 public class ApptentiveTaskManager implements PayloadStore, EventStore, ApptentiveNotificationObserver, PayloadSender.Listener {
 
-	private final ApptentiveDatabaseHelper dbHelper;
+	/**
+	 * Min time between two payload metrics notifications
+	 */
+	private static final long PAYLOAD_METRICS_NOTIFICATION_INTERVAL_MILLIS = 60 * 1000;
+
+	private final Context appContext;
+	private final ApptentiveDatabaseHelper dbHelper; // not thread safe: only accessed on the executor thread
 	private final ThreadPoolExecutor singleThreadExecutor; // TODO: replace with a private concurrent dispatch queue
 
 	private final PayloadSender payloadSender;
 	private boolean appInBackground;
 
+	/**
+	 * Collects payload pipeline stage metrics (shared with the database helper and the payload sender)
+	 */
+	private final PayloadMetrics payloadMetrics = new PayloadMetrics();
+
+	/**
+	 * Posts the payload metrics notification
+	 */
+	private final DispatchTask postPayloadMetricsTask = new DispatchTask() {
+		@Override
+		protected void execute() {
+			ApptentiveNotificationCenter.defaultCenter()
+				.postNotification(NOTIFICATION_PAYLOAD_METRICS, NOTIFICATION_KEY_PAYLOAD_METRICS, getPayloadMetrics());
+		}
+	};
+
+	/**
+	 * Notified once the background flush is over (<code>null</code> if there's no flush in progress)
+	 */
+	private final AtomicReference<BackgroundFlushListener> backgroundFlushListener = new AtomicReference<>();
+
+	/**
+	 * Max number of payloads uploaded with a single request (batch upload mode is disabled if less than 2)
+	 */
+	private final int payloadBatchSize;
+
+	/**
+	 * Indicates whenever batch upload mode was turned off for the rest of the session (the server
+	 * rejected a batch request as a whole)
+	 */
+	private final AtomicBoolean batchUploadDisabled = new AtomicBoolean();
+
+	/**
+	 * Nonces of the payloads which were sent but not yet removed from the database
+	 */
+	private final Set<String> deletingPayloads = Collections.synchronizedSet(new HashSet<String>());
+
+	/**
+	 * Indicates whenever payload sending is paused until the scheduled retry (or until the network
+	 * connection is restored)
+	 */
+	private final AtomicBoolean retryScheduled = new AtomicBoolean();
+
+	/**
+	 * Guards the state of the scheduled retry
+	 */
+	private final Object retryLock = new Object();
+
+	/**
+	 * Incremented each time sending is paused: a scheduled retry is ignored if sending was resumed
+	 * (and maybe paused again) before it fires
+	 */
+	private int retryGeneration;
+
+	/**
+	 * Class of the failure sending is paused for (<code>null</code> if waiting for connectivity)
+	 */
+	private PayloadRetryBackoff.FailureClass retryFailureClass;
+
+	/**
+	 * Computes retry delays for payload sending failures
+	 */
+	private final PayloadRetryBackoff retryBackoff;
+
+	/**
+	 * Resumes payload sending as soon as the network connection is restored
+	 */
+	private final BroadcastReceiver connectivityReceiver = new BroadcastReceiver() {
+		@Override
+		public void onReceive(Context context, Intent intent) {
+			if (isNetworkConnectionPresent()) {
+				onNetworkConnectionRestored();
+			}
+		}
+	};
+
+	/**
+	 * Payloads waiting to be written to the database with a single transaction (group commit)
+	 */
+	private final List<Payload> pendingPayloads = new ArrayList<>();
+
+	/**
+	 * Max time a payload can wait for other payloads before being written to the database (group
+	 * commit is disabled if 0)
+	 */
+	private final long payloadGroupCommitWindowMillis;
+
+	/**
+	 * Max number of payloads written with a single transaction
+	 */
+	private final int payloadGroupCommitMaxSize;
+
+	/**
+	 * Writes pending payloads once the group commit window is over
+	 */
+	private final DispatchTask flushPendingPayloadsTask = new DispatchTask() {
+		@Override
+		protected void execute() {
+			flushPendingPayloads();
+		}
+	};
+
+	/**
+	 * Protects the payloads being sent from the queue overflow policy
+	 */
+	private final ApptentiveDatabaseHelper.PayloadInFlightFilter payloadInFlightFilter = new ApptentiveDatabaseHelper.PayloadInFlightFilter() {
+		@Override
+		public boolean isInFlight(String nonce) {
+			return deletingPayloads.contains(nonce) || payloadSender.isSendingPayload(nonce);
+		}
+	};
+
+	/**
+	 * Picks the next unsent payload which can go out without breaking the send order
+	 */
+	private final ApptentiveDatabaseHelper.PayloadFilter payloadFilter = new ApptentiveDatabaseHelper.PayloadFilter() {
+		@Override
+		public PayloadSender.SendDecision getSendDecision(String nonce, PayloadType type) {
+			if (deletingPayloads.contains(nonce)) {
+				return PayloadSender.SendDecision.SKIP; // already sent
+			}
+			return payloadSender.getSendDecision(nonce, type);
+		}
+	};
+
 	/*
 	 * Creates an asynchronous task manager with one worker thread. This constructor must be invoked on the UI thread.
 	 */
 	public ApptentiveTaskManager(Context context, ApptentiveHttpClient apptentiveHttpClient) {
+		appContext = context.getApplicationContext();
 		dbHelper = new ApptentiveDatabaseHelper(context);
+		dbHelper.setPayloadQueueQuota(getPayloadQueueMaxRows(context), getPayloadQueueMaxBytes(context));
+		dbHelper.setPayloadMetrics(payloadMetrics);
+		dbHelper.setPayloadInFlightFilter(payloadInFlightFilter);
 		/* When a new database task is submitted, the executor has the following behaviors:
 		 * 1. If the thread pool has no thread yet, it creates a single worker thread.
 		 * 2. If the single worker thread is running with tasks, it queues tasks.
@@ -83,8 +236,23 @@ public class ApptentiveTaskManager implements PayloadStore, EventStore, Apptenti
 				return false; // don't use built-in retry logic for payloads since payload sender listener
 											// would handle it properly
 			}
-		});
+		}, getMaxConcurrentPayloadRequests(context));
+		payloadBatchSize = getPayloadBatchSize(context);
+		payloadGroupCommitWindowMillis = getPayloadGroupCommitWindowMillis(context);
+		payloadGroupCommitMaxSize = getPayloadGroupCommitMaxSize(context);
 		payloadSender.setListener(this);
+		payloadSender.setMetrics(payloadMetrics);
+
+		HttpRequestRetryPolicyDefault retryPolicy = new HttpRequestRetryPolicyDefault();
+		retryPolicy.setRetryTimeoutMillis(Constants.CONFIG_DEFAULT_PAYLOAD_RETRY_TIMEOUT_MILLIS);
+		retryPolicy.setMaxRetryTimeoutMillis(Constants.CONFIG_DEFAULT_PAYLOAD_MAX_RETRY_TIMEOUT_MILLIS);
+		retryBackoff = new PayloadRetryBackoff(retryPolicy);
+
+		try {
+			appContext.registerReceiver(connectivityReceiver, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+		} catch (Exception e) {
+			ApptentiveLog.e(PAYLOADS, e, "Unable to register connectivity receiver");
+		}
 
 		ApptentiveNotificationCenter.defaultCenter()
 			.addObserver(NOTIFICATION_CONVERSATION_STATE_DID_CHANGE, this)
@@ -98,26 +266,72 @@ public class ApptentiveTaskManager implements PayloadStore, EventStore, Apptenti
 	 */
 	public void addPayload(final Payload payload) {
 		ApptentiveLog.v(PAYLOADS, "Adding payload: %s", payload);
+		payloadMetrics.onPayloadEnqueued(payload.getNonce());
+
+		// payloads arriving within a short window are written with a single transaction
+		final boolean flushNow;
+		synchronized (pendingPayloads) {
+			pendingPayloads.add(payload);
+			flushNow = payloadGroupCommitWindowMillis <= 0 || pendingPayloads.size() >= payloadGroupCommitMaxSize;
+		}
+
+		if (flushNow) {
+			flushPendingPayloads();
+		} else {
+			DispatchQueue.backgroundQueue().dispatchAsyncOnce(flushPendingPayloadsTask, payloadGroupCommitWindowMillis);
+		}
+	}
+
+	/**
+	 * Writes all the pending payloads to the database and tries to send them
+	 */
+	private void flushPendingPayloads() {
 		singleThreadExecutor.execute(new Runnable() {
 			@Override
 			public void run() {
 				try {
-					dbHelper.addPayload(payload);
-					sendNextPayloadSync();
+					if (flushPendingPayloadsSync()) {
+						sendNextPayloadSync();
+					}
 				} catch (Exception e) {
-					ApptentiveLog.e(e, "Exception while adding a payload: %s", payload);
+					ApptentiveLog.e(e, "Exception while adding pending payloads");
 				}
 			}
 		});
 	}
 
+	/**
+	 * Writes all the pending payloads to the database with a single transaction. Returns
+	 * <code>false</code> if there was nothing to write.
+	 */
+	private boolean flushPendingPayloadsSync() {
+		final List<Payload> payloads;
+		synchronized (pendingPayloads) {
+			if (pendingPayloads.isEmpty()) {
+				return false;
+			}
+			payloads = new ArrayList<>(pendingPayloads);
+			pendingPayloads.clear();
+		}
+
+		ApptentiveLog.v(PAYLOADS, "Adding %d pending payload(s)", payloads.size());
+		dbHelper.addPayloads(payloads, payloadInFlightFilter);
+		return true;
+	}
+
 	public void deletePayload(final String payloadIdentifier) {
 		if (payloadIdentifier != null) {
+			// the payload should not be picked up for sending while it's waiting to be deleted
+			deletingPayloads.add(payloadIdentifier);
 			singleThreadExecutor.execute(new Runnable() {
 				@Override
 				public void run() {
 					try {
-						dbHelper.deletePayload(payloadIdentifier);
+						try {
+							dbHelper.deletePayload(payloadIdentifier);
+						} finally {
+							deletingPayloads.remove(payloadIdentifier);
+						}
 						sendNextPayloadSync();
 					} catch (Exception e) {
 						ApptentiveLog.e(e, "Exception while deleting a payload: %s", payloadIdentifier);
@@ -128,6 +342,9 @@ public class ApptentiveTaskManager implements PayloadStore, EventStore, Apptenti
 	}
 
 	public void deleteAllPayloads() {
+		synchronized (pendingPayloads) {
+			pendingPayloads.clear();
+		}
 		singleThreadExecutor.execute(new Runnable() {
 			@Override
 			public void run() {
@@ -141,7 +358,51 @@ public class ApptentiveTaskManager implements PayloadStore, EventStore, Apptenti
 	}
 
 	private PayloadData getOldestUnsentPayloadSync() {
-		return dbHelper.getOldestUnsentPayload();
+		return dbHelper.getOldestUnsentPayload(payloadFilter);
+	}
+
+	/**
+	 * Returns the next payloads which should be sent with a single request: either a single payload
+	 * or a group of compatible independent payloads (batch upload mode)
+	 */
+	private List<PayloadData> getNextUnsentPayloadsSync() {
+		if (payloadBatchSize < 2 || batchUploadDisabled.get()) {
+			PayloadData payload = getOldestUnsentPayloadSync();
+			return payload != null ? Collections.singletonList(payload) : Collections.<PayloadData>emptyList();
+		}
+
+		List<PayloadData> payloads = dbHelper.getUnsentPayloads(new BatchPayloadFilter(), payloadBatchSize);
+		if (payloads.size() < 2) {
+			return payloads;
+		}
+
+		PayloadData first = payloads.get(0);
+		if (!PayloadBatch.isBatchable(first)) {
+			return Collections.singletonList(first);
+		}
+
+		List<PayloadData> batch = new ArrayList<>(payloads.size());
+		for (PayloadData payload : payloads) {
+			if (PayloadBatch.isBatchable(payload) && PayloadBatch.isCompatible(first, payload)) {
+				batch.add(payload);
+			}
+		}
+		return batch;
+	}
+
+	/**
+	 * Returns the counters of the payloads which arrived after the queue had reached its quota
+	 */
+	public PayloadQueueOverflow getPayloadQueueOverflow() {
+		return dbHelper.getPayloadQueueOverflow();
+	}
+
+	/**
+	 * Returns a read-only copy of the payload pipeline metrics (the same snapshot is periodically
+	 * posted with {@link com.apptentive.android.sdk.ApptentiveNotifications#NOTIFICATION_PAYLOAD_METRICS})
+	 */
+	public PayloadMetricsSnapshot getPayloadMetrics() {
+		return payloadMetrics.snapshot();
 	}
 
 	public void deleteAssociatedFiles(final String messageNonce) {
@@ -175,14 +436,28 @@ public class ApptentiveTaskManager implements PayloadStore, EventStore, Apptenti
 		});
 	}
 
-	public void reset(Context context) {
-		dbHelper.reset(context);
+	public void reset(final Context context) {
+		synchronized (pendingPayloads) {
+			pendingPayloads.clear();
+		}
+		// wait for the reset so the caller would not see the old database
+		Future<?> future = singleThreadExecutor.submit(new Runnable() {
+			@Override
+			public void run() {
+				dbHelper.reset(context);
+			}
+		});
+		try {
+			future.get();
+		} catch (Exception e) {
+			ApptentiveLog.e(e, "Exception while resetting the database");
+		}
 	}
 
 	//region PayloadSender.Listener
 
 	@Override
-	public void onFinishSending(PayloadSender sender, PayloadData payload, boolean cancelled, String errorMessage, int responseCode, JSONObject responseData) {
+	public void onFinishSending(PayloadSender sender, PayloadData payload, boolean cancelled, String errorMessage, int responseCode, JSONObject responseData, long retryAfterMillis) {
 		ApptentiveNotificationCenter.defaultCenter()
 			.postNotification(NOTIFICATION_PAYLOAD_DID_FINISH_SEND,
 				NOTIFICATION_KEY_PAYLOAD, payload,
@@ -190,6 +465,9 @@ public class ApptentiveTaskManager implements PayloadStore, EventStore, Apptenti
 				NOTIFICATION_KEY_RESPONSE_CODE, responseCode,
 				NOTIFICATION_KEY_RESPONSE_DATA, responseData);
 
+		// metrics are posted with a delay so that a single notification covers a bunch of payloads
+		DispatchQueue.backgroundQueue().dispatchAsyncOnce(postPayloadMetricsTask, PAYLOAD_METRICS_NOTIFICATION_INTERVAL_MILLIS);
+
 		if (cancelled) {
 			ApptentiveLog.v(PAYLOADS, "Payload sending was cancelled: %s", payload);
 			return; // don't remove cancelled payloads from the queue
@@ -197,89 +475,418 @@ public class ApptentiveTaskManager implements PayloadStore, EventStore, Apptenti
 
 		if (errorMessage != null) {
 			ApptentiveLog.e(PAYLOADS, "Payload sending failed: %s\n%s", payload, errorMessage);
-			if (appInBackground) {
+			if (appInBackground && backgroundFlushListener.get() == null) {
+				// sending resumes with the next flush job or once the app is back in the foreground: no need
+				// to wake up for a retry
 				ApptentiveLog.v(PAYLOADS, "The app went to the background so we won't remove the payload from the queue");
-				retrySending(5000);
+				return;
+			} else if (appInBackground && (responseCode == -1 || responseCode > 500)) {
+				// the flush job would be retried by the system with its own backoff
+				ApptentiveLog.v(PAYLOADS, "Payload failed to send during the background flush.");
+				finishBackgroundFlush(true);
 				return;
 			} else if (responseCode == -1) {
-				ApptentiveLog.v(PAYLOADS, "Payload failed to send due to a connection error.");
-				retrySending(5000);
+				if (!isNetworkConnectionPresent()) {
+					ApptentiveLog.v(PAYLOADS, "Payload failed to send due to a missing network connection.");
+					waitForNetworkConnection();
+				} else {
+					ApptentiveLog.v(PAYLOADS, "Payload failed to send due to a connection error.");
+					retrySending(PayloadRetryBackoff.FailureClass.CONNECTION, -1);
+				}
 				return;
 			} else if (responseCode > 500) {
 				ApptentiveLog.v(PAYLOADS, "Payload failed to send due to a server error.");
-				retrySending(5000);
+				retrySending(PayloadRetryBackoff.FailureClass.SERVER, responseCode == HttpURLConnection.HTTP_UNAVAILABLE ? retryAfterMillis : -1);
 				return;
 			}
 		} else {
 			ApptentiveLog.v(PAYLOADS, "Payload was successfully sent: %s", payload);
+			retryBackoff.onSuccess();
 		}
 
 		// Only let the payload be deleted if it was successfully sent, or got an unrecoverable client error.
 		deletePayload(payload.getNonce());
 	}
 
-	private void retrySending(long delayMillis) {
-		ApptentiveLog.d(PAYLOADS, "Retry sending payloads in %d ms", delayMillis);
+	@Override
+	public void onRejectBatch(PayloadSender sender, PayloadBatch batch, int responseCode) {
+		// the payloads were not handled by the server: fall back to sending them one by one
+		if (batchUploadDisabled.compareAndSet(false, true)) {
+			ApptentiveLog.w(PAYLOADS, "Batch upload mode is disabled for this session (response code %d)", responseCode);
+		}
+		sendNextPayload();
+	}
+
+	/**
+	 * Pauses payload sending for a delay which depends on how many times in a row this class of
+	 * failures has happened
+	 */
+	private void retrySending(PayloadRetryBackoff.FailureClass failureClass, long retryAfterMillis) {
+		final int generation;
+		final long delayMillis;
+		synchronized (retryLock) {
+			// other payloads in flight might fail as well: only schedule a single retry
+			if (!retryScheduled.compareAndSet(false, true)) {
+				ApptentiveLog.v(PAYLOADS, "Payload sending retry is already scheduled");
+				return;
+			}
+
+			generation = ++retryGeneration;
+			retryFailureClass = failureClass;
+			delayMillis = retryBackoff.onFailure(failureClass, retryAfterMillis);
+		}
+		payloadMetrics.onRetryScheduled();
+
+		ApptentiveLog.d(PAYLOADS, "Retry sending payloads in %d ms (%s failures: %d)", delayMillis, failureClass, retryBackoff.getFailureCount(failureClass));
 		DispatchQueue.backgroundQueue().dispatchAsync(new DispatchTask() {
 			@Override
 			protected void execute() {
-				singleThreadExecutor.execute(new Runnable() {
-					@Override
-					public void run() {
-						try {
-							ApptentiveLog.d(PAYLOADS, "Retrying sending payloads");
-							sendNextPayloadSync();
-						} catch (Exception e) {
-							ApptentiveLog.e(e, "Exception while trying to retry sending payloads");
+				resumeSending(generation);
+			}
+		}, delayMillis);
+	}
+
+	/**
+	 * Pauses payload sending until the connectivity receiver reports the network connection is back
+	 * (a retry would fail anyway)
+	 */
+	private void waitForNetworkConnection() {
+		synchronized (retryLock) {
+			if (!retryScheduled.compareAndSet(false, true)) {
+				ApptentiveLog.v(PAYLOADS, "Payload sending retry is already scheduled");
+				return;
+			}
+
+			++retryGeneration;
+			retryFailureClass = null;
+		}
+		payloadMetrics.onRetryScheduled();
+
+		ApptentiveLog.d(PAYLOADS, "Payload sending is paused until the network connection is restored");
+
+		// the connection might have been restored before the receiver was able to see sending paused
+		if (isNetworkConnectionPresent()) {
+			onNetworkConnectionRestored();
+		}
+	}
+
+	/**
+	 * Connection failures are no longer relevant once the network is back: retry right away
+	 */
+	private void onNetworkConnectionRestored() {
+		int generation;
+		synchronized (retryLock) {
+			if (!retryScheduled.get() || retryFailureClass == PayloadRetryBackoff.FailureClass.SERVER) {
+				return;
+			}
+			generation = retryGeneration;
+		}
+
+		ApptentiveLog.d(PAYLOADS, "Network connection restored: resume sending payloads");
+		resumeSending(generation);
+	}
+
+	private void resumeSending(final int generation) {
+		singleThreadExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					synchronized (retryLock) {
+						if (generation != retryGeneration || !retryScheduled.get()) {
+							return; // sending was already resumed
 						}
+						retryScheduled.set(false);
+						retryFailureClass = null;
 					}
-				});
+
+					ApptentiveLog.d(PAYLOADS, "Retrying sending payloads");
+					sendNextPayloadSync();
+				} catch (Exception e) {
+					ApptentiveLog.e(e, "Exception while trying to retry sending payloads");
+				}
 			}
-		}, delayMillis);
+		});
+	}
+
+	private boolean isNetworkConnectionPresent() {
+		try {
+			return Util.isNetworkConnectionPresent();
+		} catch (Exception e) {
+			ApptentiveLog.w(PAYLOADS, "Unable to check network connection: %s", e.getMessage());
+			return true; // don't wait for a broadcast which might never come
+		}
+	}
+
+	//endregion
+
+	//region Background Flush
+
+	/**
+	 * Sends all the queued payloads while the app is in the background. The listener is notified once
+	 * the queue is empty or a payload fails to send (sending stops until the next flush or until the
+	 * app is back in the foreground).
+	 */
+	public void flushInBackground(BackgroundFlushListener listener) {
+		if (listener == null) {
+			throw new IllegalArgumentException("Listener is null");
+		}
+
+		BackgroundFlushListener oldListener = backgroundFlushListener.getAndSet(listener);
+		if (oldListener != null) {
+			notifyFinishBackgroundFlush(oldListener, false); // superseded by the new flush
+		}
+
+		singleThreadExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					flushPendingPayloadsSync();
+					sendNextPayloadSync();
+				} catch (Exception e) {
+					ApptentiveLog.e(e, "Exception while flushing payloads in the background");
+					finishBackgroundFlush(true);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Stops the background flush without notifying its listener (payloads which are already being
+	 * sent are not cancelled)
+	 */
+	public void cancelBackgroundFlush() {
+		if (backgroundFlushListener.getAndSet(null) != null) {
+			ApptentiveLog.v(PAYLOADS, "Background payload flush cancelled");
+		}
+	}
+
+	private void checkBackgroundFlushFinishedSync() {
+		// payloads which are still being sent would trigger another check once they're removed from the queue
+		PayloadData payload = dbHelper.getOldestUnsentPayload(new ApptentiveDatabaseHelper.PayloadFilter() {
+			@Override
+			public PayloadSender.SendDecision getSendDecision(String nonce, PayloadType type) {
+				return deletingPayloads.contains(nonce) ? PayloadSender.SendDecision.SKIP : PayloadSender.SendDecision.SEND;
+			}
+		});
+		if (payload == null) {
+			finishBackgroundFlush(false);
+		}
+	}
+
+	private void finishBackgroundFlush(boolean needsReschedule) {
+		BackgroundFlushListener listener = backgroundFlushListener.getAndSet(null);
+		if (listener != null) {
+			notifyFinishBackgroundFlush(listener, needsReschedule);
+		}
+	}
+
+	private void notifyFinishBackgroundFlush(BackgroundFlushListener listener, boolean needsReschedule) {
+		try {
+			listener.onFinishBackgroundFlush(needsReschedule);
+		} catch (Exception e) {
+			ApptentiveLog.e(e, "Exception while notifying background flush listener");
+		}
+	}
+
+	/**
+	 * Schedules the flush job which runs as soon as there's a network connection. Before Lollipop
+	 * there's no job scheduler: the queue is drained right away if the network is available.
+	 */
+	private void scheduleBackgroundFlushJob() {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+			PayloadFlushJobService.schedule(appContext);
+		} else if (isNetworkConnectionPresent()) {
+			flushInBackground(new BackgroundFlushListener() {
+				@Override
+				public void onFinishBackgroundFlush(boolean needsReschedule) {
+					ApptentiveLog.v(PAYLOADS, "Background payload flush finished (success: %b)", !needsReschedule);
+				}
+			});
+		}
+	}
+
+	private void cancelBackgroundFlushJob() {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+			PayloadFlushJobService.cancel(appContext);
+		}
+	}
+
+	public interface BackgroundFlushListener {
+		/**
+		 * @param needsReschedule - <code>true</code> if some payloads failed to send and the flush should
+		 *                        be retried later
+		 */
+		void onFinishBackgroundFlush(boolean needsReschedule);
 	}
 
 	//endregion
 
 	//region Payload Sending
 	private void sendNextPayload() {
-		DispatchQueue.backgroundQueue().dispatchAsync(new DispatchTask() {
+		singleThreadExecutor.execute(new Runnable() {
 			@Override
-			protected void execute() {
-				sendNextPayloadSync();
+			public void run() {
+				try {
+					sendNextPayloadSync();
+				} catch (Exception e) {
+					ApptentiveLog.e(e, "Exception while trying to send the next payload");
+				}
 			}
 		});
 	}
 
 	private void sendNextPayloadSync() {
-		if (appInBackground) {
+		final boolean flushingInBackground = backgroundFlushListener.get() != null;
+		if (appInBackground && !flushingInBackground) {
 			ApptentiveLog.v(PAYLOADS, "Can't send the next payload: the app is in the background");
 			return;
 		}
 
-		if (payloadSender.isSendingPayload()) {
-			ApptentiveLog.v(PAYLOADS, "Can't send the next payload: payload sender is busy");
-			return;
+		// fill all the available request slots
+		while (true) {
+			if (retryScheduled.get()) {
+				ApptentiveLog.v(PAYLOADS, "Can't send the next payload: waiting for a retry");
+				return;
+			}
+
+			if (payloadSender.isBusy()) {
+				ApptentiveLog.v(PAYLOADS, "Can't send the next payload: payload sender is busy");
+				return;
+			}
+
+			final List<PayloadData> payloads;
+			try {
+				payloads = getNextUnsentPayloadsSync();
+			} catch (Exception e) {
+				ApptentiveLog.e(e, "Exception while peeking the next payload for sending");
+				return;
+			}
+
+			if (payloads.isEmpty()) {
+				if (flushingInBackground) {
+					checkBackgroundFlushFinishedSync();
+				}
+				return;
+			}
+
+			boolean scheduled = payloads.size() > 1 ?
+				payloadSender.sendPayloads(new PayloadBatch(payloads)) :
+				payloadSender.sendPayload(payloads.get(0));
+			if (!scheduled) {
+				return;
+			}
+
+			// if payload sending was scheduled - notify the rest of the SDK
+			for (PayloadData payload : payloads) {
+				ApptentiveNotificationCenter.defaultCenter()
+					.postNotification(NOTIFICATION_PAYLOAD_WILL_START_SEND, NOTIFICATION_KEY_PAYLOAD, payload);
+			}
 		}
+	}
 
-		final PayloadData payload;
-		try {
-			payload = getOldestUnsentPayloadSync();
-		} catch (Exception e) {
-			ApptentiveLog.e(e, "Exception while peeking the next payload for sending");
-			return;
+	/**
+	 * Picks a group of independent payloads which can be uploaded with a single request. If the oldest
+	 * unsent payload can't be batched - it's the only one picked.
+	 */
+	private class BatchPayloadFilter implements ApptentiveDatabaseHelper.PayloadFilter {
+		private int acceptedCount;
+		private boolean batchable;
+
+		@Override
+		public PayloadSender.SendDecision getSendDecision(String nonce, PayloadType type) {
+			PayloadSender.SendDecision decision = payloadFilter.getSendDecision(nonce, type);
+			if (acceptedCount == 0) {
+				if (decision == PayloadSender.SendDecision.SEND) {
+					++acceptedCount;
+					batchable = PayloadBatch.isBatchable(type);
+				}
+				return decision;
+			}
+
+			if (!batchable || decision == PayloadSender.SendDecision.STOP) {
+				return PayloadSender.SendDecision.STOP;
+			}
+
+			// independent payloads may pass serial payloads but not exclusive ones
+			if (!PayloadBatch.isBatchable(type)) {
+				return PayloadSender.getSendOrder(type) == PayloadSender.SendOrder.EXCLUSIVE ?
+					PayloadSender.SendDecision.STOP :
+					PayloadSender.SendDecision.SKIP;
+			}
+
+			if (decision == PayloadSender.SendDecision.SEND) {
+				++acceptedCount;
+			}
+			return decision;
 		}
+	}
 
-		if (payload == null) {
-			return;
+	/**
+	 * Returns the max number of payload requests in flight (can be overridden in the app's manifest)
+	 */
+	private static int getMaxConcurrentPayloadRequests(Context context) {
+		Object value = Util.getPackageMetaData(context, Constants.MANIFEST_KEY_MAX_CONCURRENT_PAYLOAD_REQUESTS);
+		if (value instanceof Integer && (Integer) value > 0) {
+			return (Integer) value;
 		}
+		return Constants.CONFIG_DEFAULT_MAX_CONCURRENT_PAYLOAD_REQUESTS;
+	}
 
-		boolean scheduled = payloadSender.sendPayload(payload);
+	/**
+	 * Returns the max number of payloads in a batch request (batch upload mode is opt-in and should
+	 * be enabled in the app's manifest)
+	 */
+	private static int getPayloadBatchSize(Context context) {
+		Object value = Util.getPackageMetaData(context, Constants.MANIFEST_KEY_PAYLOAD_BATCH_SIZE);
+		if (value instanceof Integer && (Integer) value > 0) {
+			return (Integer) value;
+		}
+		return Constants.CONFIG_DEFAULT_PAYLOAD_BATCH_SIZE;
+	}
 
-		// if payload sending was scheduled - notify the rest of the SDK
-		if (scheduled) {
-			ApptentiveNotificationCenter.defaultCenter()
-				.postNotification(NOTIFICATION_PAYLOAD_WILL_START_SEND, NOTIFICATION_KEY_PAYLOAD, payload);
+	/**
+	 * Returns the group commit window for added payloads (can be overridden in the app's manifest)
+	 */
+	private static long getPayloadGroupCommitWindowMillis(Context context) {
+		Object value = Util.getPackageMetaData(context, Constants.MANIFEST_KEY_PAYLOAD_GROUP_COMMIT_WINDOW_MILLIS);
+		if (value instanceof Integer && (Integer) value >= 0) {
+			return (Integer) value;
+		}
+		return Constants.CONFIG_DEFAULT_PAYLOAD_GROUP_COMMIT_WINDOW_MILLIS;
+	}
+
+	/**
+	 * Returns the max number of payloads written with a single transaction (can be overridden in the
+	 * app's manifest)
+	 */
+	private static int getPayloadGroupCommitMaxSize(Context context) {
+		Object value = Util.getPackageMetaData(context, Constants.MANIFEST_KEY_PAYLOAD_GROUP_COMMIT_MAX_SIZE);
+		if (value instanceof Integer && (Integer) value > 0) {
+			return (Integer) value;
+		}
+		return Constants.CONFIG_DEFAULT_PAYLOAD_GROUP_COMMIT_MAX_SIZE;
+	}
+
+	/**
+	 * Returns the max number of queued payloads (can be overridden in the app's manifest)
+	 */
+	private static int getPayloadQueueMaxRows(Context context) {
+		Object value = Util.getPackageMetaData(context, Constants.MANIFEST_KEY_PAYLOAD_QUEUE_MAX_ROWS);
+		if (value instanceof Integer && (Integer) value > 0) {
+			return (Integer) value;
+		}
+		return Constants.CONFIG_DEFAULT_PAYLOAD_QUEUE_MAX_ROWS;
+	}
+
+	/**
+	 * Returns the max total size of queued payload bodies (can be overridden in the app's manifest)
+	 */
+	private static long getPayloadQueueMaxBytes(Context context) {
+		Object value = Util.getPackageMetaData(context, Constants.MANIFEST_KEY_PAYLOAD_QUEUE_MAX_BYTES);
+		if (value instanceof Integer && (Integer) value > 0) {
+			return (Integer) value;
 		}
+		return Constants.CONFIG_DEFAULT_PAYLOAD_QUEUE_MAX_BYTES;
 	}
 
 	//endregion
@@ -304,6 +911,7 @@ public class ApptentiveTaskManager implements PayloadStore, EventStore, Apptenti
 						@Override
 						public void run() {
 							try {
+								flushPendingPayloadsSync(); // pending payloads need to be updated as well
 								dbHelper.updateIncompletePayloads(conversationId, conversationToken, conversationLocalIdentifier);
 								sendNextPayloadSync(); // after we've updated payloads - we need to send them
 							} catch (Exception e) {
@@ -315,9 +923,13 @@ public class ApptentiveTaskManager implements PayloadStore, EventStore, Apptenti
 			}
 		} else if (notification.hasName(NOTIFICATION_APP_ENTERED_FOREGROUND)) {
 			appInBackground = false;
+			cancelBackgroundFlushJob();
+			finishBackgroundFlush(false); // regular sending takes over
 			sendNextPayload(); // when the app comes back from the background - we need to resume sending payloads
 		} else if (notification.hasName(NOTIFICATION_APP_ENTERED_BACKGROUND)) {
 			appInBackground = true;
+			flushPendingPayloads(); // the process might be killed in the background: don't wait for the group commit window
+			scheduleBackgroundFlushJob();
 		}
 	}
 }
\ No newline at end of file
@@ -6,17 +6,25 @@
 
 package com.apptentive.android.sdk.storage;
 
+import com.apptentive.android.sdk.ApptentiveLog;
 import com.apptentive.android.sdk.encryption.Encryptor;
 import com.apptentive.android.sdk.util.Util;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 
 public class EncryptedFileSerializer extends FileSerializer {
-	private final String encryptionKey;
+	private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+	private final Encryptor encryptor;
 
 	public EncryptedFileSerializer(File file, String encryptionKey) {
 		super(file);
@@ -25,50 +33,53 @@ public class EncryptedFileSerializer extends FileSerializer {
 			throw new IllegalArgumentException("'encryptionKey' is null");
 		}
 
-		this.encryptionKey = encryptionKey;
+		this.encryptor = new Encryptor(encryptionKey);
 	}
 
 	@Override
 	protected void serialize(File file, Object object) throws SerializerException {
-		ByteArrayOutputStream bos = null;
+		// the object is streamed into a temporary file first: a failure in the middle should not leave
+		// the existing file truncated
+		File tempFile = new File(file.getPath() + TEMP_FILE_SUFFIX);
+		OutputStream fos = null;
 		ObjectOutputStream oos = null;
+		boolean succeed = false;
 		try {
-			bos = new ByteArrayOutputStream();
-			oos = new ObjectOutputStream(bos);
+			fos = new BufferedOutputStream(new FileOutputStream(tempFile));
+			oos = new ObjectOutputStream(encryptor.createEncryptionStream(fos));
 			oos.writeObject(object);
-			final byte[] unencryptedBytes = bos.toByteArray();
-			Encryptor encryptor = new Encryptor(encryptionKey);
-			final byte[] encryptedBytes = encryptor.encrypt(unencryptedBytes);
-			Util.writeBytes(file, encryptedBytes);
+			oos.close(); // writes the final cipher block and closes the file
+			oos = null;
+			fos = null;
+
+			if (!tempFile.renameTo(file)) {
+				throw new IOException("Unable to rename " + tempFile + " to " + file);
+			}
+			succeed = true;
 		} catch (Exception e) {
 			throw new SerializerException(e);
 		} finally {
-			Util.ensureClosed(bos);
 			Util.ensureClosed(oos);
+			Util.ensureClosed(fos);
+			if (!succeed && tempFile.exists() && !tempFile.delete()) {
+				ApptentiveLog.w("Unable to delete temporary file: %s", tempFile);
+			}
 		}
 	}
 
 	@Override
 	protected Object deserialize(File file) throws SerializerException {
+		InputStream fis = null;
+		ObjectInputStream ois = null;
 		try {
-			final byte[] encryptedBytes = Util.readBytes(file);
-			Encryptor encryptor = new Encryptor(encryptionKey);
-			final byte[] unencryptedBytes = encryptor.decrypt(encryptedBytes);
-
-			ByteArrayInputStream bis = null;
-			ObjectInputStream ois = null;
-			try {
-				bis = new ByteArrayInputStream(unencryptedBytes);
-				ois = new ObjectInputStream(bis);
-				return ois.readObject();
-			} catch (Exception e) {
-				throw new SerializerException(e);
-			} finally {
-				Util.ensureClosed(bis);
-				Util.ensureClosed(ois);
-			}
+			fis = new BufferedInputStream(new FileInputStream(file));
+			ois = new ObjectInputStream(encryptor.createDecryptionStream(fis));
+			return ois.readObject();
 		} catch (Exception e) {
 			throw new SerializerException(e);
+		} finally {
+			Util.ensureClosed(fis);
+			Util.ensureClosed(ois);
 		}
 	}
 }
@@ -6,22 +6,64 @@
 
 package com.apptentive.android.sdk.storage;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
  * Stores a record of when events and interactions were triggered, as well as the number of times per versionName or versionCode.
+ * <p/>
+ * Counters are kept in a compact form: version names are interned into a table shared by all the
+ * records and each record stores primitive counters in {@link IntLongMap}s keyed by version code
+ * and by version name index. The data is serialized with a purpose-built binary encoding (see
+ * {@link #writeObject(ObjectOutputStream)}); the legacy format (maps of {@link EventRecord}) is
+ * still readable.
  */
 public class EventData implements Saveable {
 
 	private static final long serialVersionUID = 1L;
 
-	private Map<String, EventRecord> events; // we need a synchronized access to the map to avoid concurrent modification exceptions
-	private Map<String, EventRecord> interactions; // we need a synchronized access to the map to avoid concurrent modification exceptions
+	/**
+	 * Legacy serialized fields: only used for reading data saved by the older SDK versions. Both
+	 * are written as <code>null</code> and followed by the binary encoding.
+	 */
+	private static final ObjectStreamField[] serialPersistentFields = {
+		new ObjectStreamField("events", Map.class),
+		new ObjectStreamField("interactions", Map.class)
+	};
+
+	private static final int BINARY_FORMAT_VERSION = 1;
+
+	private transient Map<String, Record> events; // we need a synchronized access to the map to avoid concurrent modification exceptions
+	private transient Map<String, Record> interactions; // we need a synchronized access to the map to avoid concurrent modification exceptions
+
+	/**
+	 * Interned version names: index => version name
+	 */
+	private transient List<String> versionNames;
+
+	/**
+	 * Interned version names: version name => index
+	 */
+	private transient Map<String, Integer> versionNameIndices;
 
 	public EventData() {
-		events = new HashMap<String, EventRecord>();
-		interactions = new HashMap<String, EventRecord>();
+		init();
+	}
+
+	private void init() {
+		events = new HashMap<>();
+		interactions = new HashMap<>();
+		versionNames = new ArrayList<>();
+		versionNameIndices = new HashMap<>();
 	}
 
 	//region Listeners
@@ -44,111 +86,133 @@ public class EventData implements Saveable {
 
 	// FIXME: Find all usage of this and ensure they use the same timestamp for saving events and runnign interaction queries.
 	public synchronized void storeEventForCurrentAppVersion(double timestamp, int versionCode, String versionName, String eventLabel) {
-		EventRecord eventRecord = events.get(eventLabel);
-		if (eventRecord == null) {
-			eventRecord = new EventRecord();
-			events.put(eventLabel, eventRecord);
-		}
-		eventRecord.update(timestamp, versionName, versionCode);
+		updateRecord(events, eventLabel, timestamp, versionCode, versionName);
 		notifyDataChanged();
 	}
 
 	// FIXME: Find all usage of this and ensure they use the same timestamp for saving events and runnign interaction queries.
 	public synchronized void storeInteractionForCurrentAppVersion(double timestamp, int versionCode, String versionName, String interactionId) {
-		EventRecord eventRecord = interactions.get(interactionId);
-		if (eventRecord == null) {
-			eventRecord = new EventRecord();
-			interactions.put(interactionId, eventRecord);
-		}
-		eventRecord.update(timestamp, versionName, versionCode);
+		updateRecord(interactions, interactionId, timestamp, versionCode, versionName);
 		notifyDataChanged();
 	}
 
-	public synchronized Long getEventCountTotal(String eventLabel) {
-		EventRecord eventRecord = events.get(eventLabel);
-		if (eventRecord == null) {
-			return 0L;
+	private void updateRecord(Map<String, Record> records, String key, double timestamp, int versionCode, String versionName) {
+		Record record = records.get(key);
+		if (record == null) {
+			record = new Record();
+			records.put(key, record);
 		}
-		return eventRecord.getTotal();
+		record.last = timestamp;
+		record.total++;
+		record.versionCodeCounts.add(versionCode, 1);
+		record.versionNameCounts.add(internVersionName(versionName), 1);
+	}
+
+	public synchronized Long getEventCountTotal(String eventLabel) {
+		return getTotal(events.get(eventLabel));
 	}
 
 	public synchronized Long getInteractionCountTotal(String interactionId) {
-		EventRecord eventRecord = interactions.get(interactionId);
-		if (eventRecord != null) {
-			return eventRecord.getTotal();
-		}
-		return 0L;
+		return getTotal(interactions.get(interactionId));
 	}
 
 	public synchronized Double getTimeOfLastEventInvocation(String eventLabel) {
-		EventRecord eventRecord = events.get(eventLabel);
-		if (eventRecord != null) {
-			return eventRecord.getLast();
-		}
-		return null;
+		return getLast(events.get(eventLabel));
 	}
 
 	public synchronized Double getTimeOfLastInteractionInvocation(String interactionId) {
-		EventRecord eventRecord = interactions.get(interactionId);
-		if (eventRecord != null) {
-			return eventRecord.getLast();
-		}
-		return null;
+		return getLast(interactions.get(interactionId));
 	}
 
 	public synchronized Long getEventCountForVersionCode(String eventLabel, Integer versionCode) {
-		EventRecord eventRecord = events.get(eventLabel);
-		if (eventRecord != null) {
-			return eventRecord.getCountForVersionCode(versionCode);
-		}
-		return 0L;
+		return getCountForVersionCode(events.get(eventLabel), versionCode);
 	}
 
 	public synchronized Long getInteractionCountForVersionCode(String interactionId, Integer versionCode) {
-		EventRecord eventRecord = interactions.get(interactionId);
-		if (eventRecord != null) {
-			return eventRecord.getCountForVersionCode(versionCode);
-		}
-		return 0L;
+		return getCountForVersionCode(interactions.get(interactionId), versionCode);
 	}
 
 	public synchronized Long getEventCountForVersionName(String eventLabel, String versionName) {
-		EventRecord eventRecord = events.get(eventLabel);
-		if (eventRecord != null) {
-			return eventRecord.getCountForVersionName(versionName);
-		}
-		return 0L;
+		return getCountForVersionName(events.get(eventLabel), versionName);
 	}
 
 	public synchronized Long getInteractionCountForVersionName(String interactionId, String versionName) {
-		EventRecord eventRecord = interactions.get(interactionId);
-		if (eventRecord != null) {
-			return eventRecord.getCountForVersionName(versionName);
+		return getCountForVersionName(interactions.get(interactionId), versionName);
+	}
+
+	private static long getTotal(Record record) {
+		return record != null ? record.total : 0L;
+	}
+
+	private static Double getLast(Record record) {
+		return record != null ? record.last : null;
+	}
+
+	private static long getCountForVersionCode(Record record, Integer versionCode) {
+		return record != null && versionCode != null ? record.versionCodeCounts.get(versionCode) : 0L;
+	}
+
+	private long getCountForVersionName(Record record, String versionName) {
+		if (record != null) {
+			Integer versionNameIndex = versionNameIndices.get(versionName);
+			if (versionNameIndex != null) {
+				return record.versionNameCounts.get(versionNameIndex);
+			}
 		}
 		return 0L;
 	}
 
+	private int internVersionName(String versionName) {
+		Integer index = versionNameIndices.get(versionName);
+		if (index == null) {
+			index = versionNames.size();
+			versionNames.add(versionName);
+			versionNameIndices.put(versionName, index);
+		}
+		return index;
+	}
 
 	public synchronized String toString() {
 		StringBuilder builder = new StringBuilder();
 		builder.append("Events: ");
-		for (String key : events.keySet()) {
-			builder.append("\n\t").append(key).append(": ").append(events.get(key).toString());
+		for (Map.Entry<String, Record> entry : events.entrySet()) {
+			builder.append("\n\t").append(entry.getKey()).append(": ").append(toString(entry.getValue()));
 		}
 		builder.append("\nInteractions: ");
-		for (String key : interactions.keySet()) {
-			builder.append("\n\t").append(key).append(": ").append(interactions.get(key).toString());
+		for (Map.Entry<String, Record> entry : interactions.entrySet()) {
+			builder.append("\n\t").append(entry.getKey()).append(": ").append(toString(entry.getValue()));
 		}
 		return builder.toString();
 	}
 
+	private String toString(Record record) {
+		StringBuilder versionNameCounts = new StringBuilder("{");
+		IntLongMap counts = record.versionNameCounts;
+		for (int i = 0; i < counts.capacity(); ++i) {
+			if (counts.isOccupied(i)) {
+				if (versionNameCounts.length() > 1) {
+					versionNameCounts.append(", ");
+				}
+				versionNameCounts.append(versionNames.get(counts.keyAt(i))).append('=').append(counts.valueAt(i));
+			}
+		}
+		versionNameCounts.append('}');
+
+		return "EventRecord{" +
+			"last=" + record.last +
+			", total=" + record.total +
+			", versionNames=" + versionNameCounts +
+			", versionCodes=" + record.versionCodeCounts +
+			'}';
+	}
+
 	//region Getters & Setters
 
 	/**
 	 * Used for migration only.
 	 */
 	public synchronized void setEvents(Map<String, EventRecord> events) {
-		this.events = events;
+		this.events = importRecords(events);
 		notifyDataChanged();
 	}
 
@@ -156,8 +220,173 @@ public class EventData implements Saveable {
 	 * Used for migration only.
 	 */
 	public synchronized void setInteractions(Map<String, EventRecord> interactions) {
-		this.interactions = interactions;
+		this.interactions = importRecords(interactions);
 		notifyDataChanged();
 	}
+
+	//endregion
+
+	//region Migration
+
+	private Map<String, Record> importRecords(Map<String, EventRecord> eventRecords) {
+		Map<String, Record> records = new HashMap<>();
+		if (eventRecords != null) {
+			for (Map.Entry<String, EventRecord> entry : eventRecords.entrySet()) {
+				records.put(entry.getKey(), importRecord(entry.getValue()));
+			}
+		}
+		return records;
+	}
+
+	private Record importRecord(EventRecord eventRecord) {
+		Record record = new Record();
+		record.last = eventRecord.getLast();
+		record.total = eventRecord.getTotal();
+
+		Map<Integer, Long> versionCodes = eventRecord.getVersionCodes();
+		if (versionCodes != null) {
+			for (Map.Entry<Integer, Long> entry : versionCodes.entrySet()) {
+				Long count = entry.getValue();
+				if (entry.getKey() != null && count != null && count > 0) {
+					record.versionCodeCounts.add(entry.getKey(), count);
+				}
+			}
+		}
+
+		Map<String, Long> versionNames = eventRecord.getVersionNames();
+		if (versionNames != null) {
+			for (Map.Entry<String, Long> entry : versionNames.entrySet()) {
+				Long count = entry.getValue();
+				if (count != null && count > 0) {
+					record.versionNameCounts.add(internVersionName(entry.getKey()), count);
+				}
+			}
+		}
+
+		return record;
+	}
+
+	//endregion
+
+	//region Serialization
+
+	private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+		ObjectOutputStream.PutField fields = out.putFields();
+		fields.put("events", null);
+		fields.put("interactions", null);
+		out.writeFields();
+
+		out.writeInt(BINARY_FORMAT_VERSION);
+		out.writeInt(versionNames.size());
+		for (String versionName : versionNames) {
+			writeNullableString(out, versionName);
+		}
+		writeRecords(out, events);
+		writeRecords(out, interactions);
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		init();
+
+		ObjectInputStream.GetField fields = in.readFields();
+		@SuppressWarnings("unchecked")
+		Map<String, EventRecord> legacyEvents = (Map<String, EventRecord>) fields.get("events", null);
+		@SuppressWarnings("unchecked")
+		Map<String, EventRecord> legacyInteractions = (Map<String, EventRecord>) fields.get("interactions", null);
+
+		// data saved by the older SDK versions only contains maps of EventRecord objects
+		if (legacyEvents != null || legacyInteractions != null) {
+			events = importRecords(legacyEvents);
+			interactions = importRecords(legacyInteractions);
+			return;
+		}
+
+		int formatVersion = in.readInt();
+		if (formatVersion != BINARY_FORMAT_VERSION) {
+			throw new InvalidObjectException("Unsupported event data format: " + formatVersion);
+		}
+
+		int versionNameCount = in.readInt();
+		for (int i = 0; i < versionNameCount; ++i) {
+			internVersionName(readNullableString(in));
+		}
+		events = readRecords(in);
+		interactions = readRecords(in);
+	}
+
+	private static void writeRecords(DataOutput out, Map<String, Record> records) throws IOException {
+		out.writeInt(records.size());
+		for (Map.Entry<String, Record> entry : records.entrySet()) {
+			Record record = entry.getValue();
+			writeNullableString(out, entry.getKey());
+			out.writeDouble(record.last);
+			out.writeLong(record.total);
+			writeCounts(out, record.versionCodeCounts);
+			writeCounts(out, record.versionNameCounts);
+		}
+	}
+
+	private static Map<String, Record> readRecords(DataInput in) throws IOException {
+		int count = in.readInt();
+		Map<String, Record> records = new HashMap<>(count * 4 / 3 + 1);
+		for (int i = 0; i < count; ++i) {
+			String key = readNullableString(in);
+			Record record = new Record();
+			record.last = in.readDouble();
+			record.total = in.readLong();
+			readCounts(in, record.versionCodeCounts);
+			readCounts(in, record.versionNameCounts);
+			records.put(key, record);
+		}
+		return records;
+	}
+
+	private static void writeCounts(DataOutput out, IntLongMap counts) throws IOException {
+		out.writeInt(counts.size());
+		for (int i = 0; i < counts.capacity(); ++i) {
+			if (counts.isOccupied(i)) {
+				out.writeInt(counts.keyAt(i));
+				out.writeLong(counts.valueAt(i));
+			}
+		}
+	}
+
+	private static void readCounts(DataInput in, IntLongMap counts) throws IOException {
+		int size = in.readInt();
+		for (int i = 0; i < size; ++i) {
+			int key = in.readInt();
+			long value = in.readLong();
+			if (value <= 0) {
+				throw new InvalidObjectException("Invalid counter value: " + value);
+			}
+			counts.add(key, value);
+		}
+	}
+
+	private static void writeNullableString(DataOutput out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeUTF(value);
+		}
+	}
+
+	private static String readNullableString(DataInput in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	//endregion
+
+	//region Record
+
+	/**
+	 * Compact version of {@link EventRecord}
+	 */
+	private static class Record {
+		double last;
+		long total;
+		final IntLongMap versionCodeCounts = new IntLongMap(); // version code => count
+		final IntLongMap versionNameCounts = new IntLongMap(); // version name index => count
+	}
+
 	//endregion
 }
@@ -11,9 +11,16 @@ import java.util.HashMap;
 import java.util.Map;
 
 /**
- * Stores a record of an event occurring.
+ * Stores a record of an event occurring. {@link EventData} keeps its own compact representation:
+ * this class is only used for migration and for reading data saved by the older SDK versions.
  */
 public class EventRecord implements Serializable {
+	/**
+	 * Matches the implicit value computed for the original class so previously serialized
+	 * records can still be deserialized.
+	 */
+	private static final long serialVersionUID = -5197053275560820312L;
+
 	private double last;
 	private long total;
 	private Map<Integer, Long> versionCodes;
@@ -89,6 +96,20 @@ public class EventRecord implements Serializable {
 		this.total = total;
 	}
 
+	/**
+	 * Only access directly for migration.
+	 */
+	public Map<Integer, Long> getVersionCodes() {
+		return versionCodes;
+	}
+
+	/**
+	 * Only access directly for migration.
+	 */
+	public Map<String, Long> getVersionNames() {
+		return versionNames;
+	}
+
 	/**
 	 * Only access directly for migration.
 	 */
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2017, Apptentive, Inc. All Rights Reserved.
+ * Please refer to the LICENSE file for the terms and conditions
+ * under which redistribution and use of this file is permitted.
+ */
+
+package com.apptentive.android.sdk.storage;
+
+/**
+ * Compact open-addressing (linear probing) map of primitive <code>int</code> keys to primitive
+ * <code>long</code> counters. A zero value is used as an empty slot marker so zero counters are
+ * never stored: {@link #get(int)} returns 0 for missing keys.
+ * <p/>
+ * This class is not thread safe.
+ */
+final class IntLongMap {
+
+	private static final int DEFAULT_CAPACITY = 4; // must be a power of two
+
+	private int[] keys;
+	private long[] values;
+	private int size;
+
+	IntLongMap() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	IntLongMap(int expectedSize) {
+		int capacity = DEFAULT_CAPACITY;
+		while (capacity * 3 < expectedSize * 4) { // load factor 0.75
+			capacity <<= 1;
+		}
+		keys = new int[capacity];
+		values = new long[capacity];
+	}
+
+	/**
+	 * Returns a value for a given <code>key</code> or 0 if the key is missing.
+	 */
+	long get(int key) {
+		int mask = keys.length - 1;
+		for (int index = hash(key) & mask; values[index] != 0; index = (index + 1) & mask) {
+			if (keys[index] == key) {
+				return values[index];
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Adds a positive <code>delta</code> to the value for a given <code>key</code>.
+	 */
+	void add(int key, long delta) {
+		if (delta <= 0) {
+			throw new IllegalArgumentException("Invalid delta: " + delta);
+		}
+
+		int mask = keys.length - 1;
+		int index = hash(key) & mask;
+		while (values[index] != 0) {
+			if (keys[index] == key) {
+				values[index] += delta;
+				return;
+			}
+			index = (index + 1) & mask;
+		}
+
+		keys[index] = key;
+		values[index] = delta;
+		if (++size * 4 > keys.length * 3) {
+			resize(keys.length << 1);
+		}
+	}
+
+	int size() {
+		return size;
+	}
+
+	//region Iteration
+
+	/**
+	 * Number of slots available for iteration with {@link #keyAt(int)} and {@link #valueAt(int)}
+	 */
+	int capacity() {
+		return keys.length;
+	}
+
+	/**
+	 * Returns <code>true</code> if the slot at a given <code>index</code> holds a value.
+	 */
+	boolean isOccupied(int index) {
+		return values[index] != 0;
+	}
+
+	int keyAt(int index) {
+		return keys[index];
+	}
+
+	long valueAt(int index) {
+		return values[index];
+	}
+
+	//endregion
+
+	private void resize(int capacity) {
+		int[] oldKeys = keys;
+		long[] oldValues = values;
+
+		keys = new int[capacity];
+		values = new long[capacity];
+		size = 0;
+
+		int mask = capacity - 1;
+		for (int i = 0; i < oldKeys.length; ++i) {
+			if (oldValues[i] != 0) {
+				int index = hash(oldKeys[i]) & mask;
+				while (values[index] != 0) {
+					index = (index + 1) & mask;
+				}
+				keys[index] = oldKeys[i];
+				values[index] = oldValues[i];
+				++size;
+			}
+		}
+	}
+
+	private static int hash(int key) {
+		int h = key * 0x9E3779B9; // spread sequential keys (version codes) across slots
+		return h ^ (h >>> 16);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder("{");
+		for (int i = 0; i < keys.length; ++i) {
+			if (values[i] != 0) {
+				if (result.length() > 1) {
+					result.append(", ");
+				}
+				result.append(keys[i]).append('=').append(values[i]);
+			}
+		}
+		return result.append('}').toString();
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof IntLongMap)) {
+			return false;
+		}
+
+		IntLongMap other = (IntLongMap) o;
+		if (size != other.size) {
+			return false;
+		}
+		for (int i = 0; i < keys.length; ++i) {
+			if (values[i] != 0 && other.get(keys[i]) != values[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		int result = 0;
+		for (int i = 0; i < keys.length; ++i) {
+			if (values[i] != 0) {
+				result += keys[i] ^ (int) (values[i] ^ (values[i] >>> 32));
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2017, Apptentive, Inc. All Rights Reserved.
+ * Please refer to the LICENSE file for the terms and conditions
+ * under which redistribution and use of this file is permitted.
+ */
+
+package com.apptentive.android.sdk.storage;
+
+import android.annotation.TargetApi;
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Build;
+
+import com.apptentive.android.sdk.ApptentiveInternal;
+import com.apptentive.android.sdk.ApptentiveLog;
+import com.apptentive.android.sdk.util.Constants;
+import com.apptentive.android.sdk.util.Util;
+
+import static com.apptentive.android.sdk.ApptentiveLogTag.PAYLOADS;
+
+/**
+ * Drains the payload queue while the app is in the background. The job is scheduled once the app
+ * goes to the background and runs when the network is available: all the queued payloads go out in
+ * a single radio session and the job stops.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class PayloadFlushJobService extends JobService {
+
+	/**
+	 * Delay before retrying the flush if the battery is low
+	 */
+	private static final long LOW_BATTERY_DELAY_MILLIS = 30 * 60 * 1000;
+
+	/**
+	 * Initial backoff if the flush fails (the system doubles it with each attempt)
+	 */
+	private static final long FAILURE_BACKOFF_MILLIS = 30 * 1000;
+
+	//region Scheduling
+
+	/**
+	 * Schedules the flush job (replaces the job which is already scheduled)
+	 */
+	static boolean schedule(Context context) {
+		return schedule(context, 0);
+	}
+
+	private static boolean schedule(Context context, long delayMillis) {
+		try {
+			JobInfo job = new JobInfo.Builder(getJobId(context), new ComponentName(context, PayloadFlushJobService.class))
+				.setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY)
+				.setMinimumLatency(delayMillis)
+				.setBackoffCriteria(FAILURE_BACKOFF_MILLIS, JobInfo.BACKOFF_POLICY_EXPONENTIAL)
+				.build();
+
+			JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+			if (scheduler.schedule(job) != JobScheduler.RESULT_SUCCESS) {
+				ApptentiveLog.w(PAYLOADS, "Unable to schedule payload flush job");
+				return false;
+			}
+			ApptentiveLog.v(PAYLOADS, "Scheduled payload flush job");
+			return true;
+		} catch (Exception e) {
+			ApptentiveLog.e(PAYLOADS, e, "Exception while scheduling payload flush job");
+			return false;
+		}
+	}
+
+	/**
+	 * Cancels the flush job (if scheduled)
+	 */
+	static void cancel(Context context) {
+		try {
+			JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+			scheduler.cancel(getJobId(context));
+		} catch (Exception e) {
+			ApptentiveLog.e(PAYLOADS, e, "Exception while cancelling payload flush job");
+		}
+	}
+
+	/**
+	 * Returns the job id (can be overridden in the app's manifest if it conflicts with the app's own
+	 * jobs)
+	 */
+	private static int getJobId(Context context) {
+		Object value = Util.getPackageMetaData(context, Constants.MANIFEST_KEY_PAYLOAD_FLUSH_JOB_ID);
+		if (value instanceof Integer) {
+			return (Integer) value;
+		}
+		return Constants.CONFIG_DEFAULT_PAYLOAD_FLUSH_JOB_ID;
+	}
+
+	//endregion
+
+	//region JobService
+
+	@Override
+	public boolean onStartJob(final JobParameters params) {
+		ApptentiveTaskManager taskManager = getTaskManager();
+		if (taskManager == null) {
+			ApptentiveLog.w(PAYLOADS, "Can't flush payloads: Apptentive is not registered");
+			return false;
+		}
+
+		if (Util.isBatteryLow(this)) {
+			ApptentiveLog.v(PAYLOADS, "Battery is low: postpone payload flush");
+			schedule(this, LOW_BATTERY_DELAY_MILLIS);
+			return false;
+		}
+
+		ApptentiveLog.d(PAYLOADS, "Started payload flush job");
+		taskManager.flushInBackground(new ApptentiveTaskManager.BackgroundFlushListener() {
+			@Override
+			public void onFinishBackgroundFlush(boolean needsReschedule) {
+				ApptentiveLog.d(PAYLOADS, "Finished payload flush job (reschedule: %b)", needsReschedule);
+				jobFinished(params, needsReschedule);
+			}
+		});
+		return true; // the flush is asynchronous
+	}
+
+	@Override
+	public boolean onStopJob(JobParameters params) {
+		ApptentiveLog.d(PAYLOADS, "Payload flush job was stopped");
+		ApptentiveTaskManager taskManager = getTaskManager();
+		if (taskManager != null) {
+			taskManager.cancelBackgroundFlush();
+		}
+		return true; // try again later
+	}
+
+	//endregion
+
+	private static ApptentiveTaskManager getTaskManager() {
+		ApptentiveInternal instance = ApptentiveInternal.getInstance();
+		return instance != null ? instance.getApptentiveTaskManager() : null;
+	}
+}
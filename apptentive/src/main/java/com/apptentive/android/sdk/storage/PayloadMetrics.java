@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2017, Apptentive, Inc. All Rights Reserved.
+ * Please refer to the LICENSE file for the terms and conditions
+ * under which redistribution and use of this file is permitted.
+ */
+
+package com.apptentive.android.sdk.storage;
+
+import com.apptentive.android.sdk.model.PayloadType;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Collects payload pipeline metrics for each stage (see {@link PayloadMetricsSnapshot}). The stages
+ * are reported by the task manager, the database helper and the payload sender from different
+ * threads so all the methods are synchronized (each of them only does a few map operations).
+ */
+class PayloadMetrics {
+	/**
+	 * Inclusive upper bounds (in milliseconds) of the histogram buckets
+	 */
+	static final long[] HISTOGRAM_BUCKET_UPPER_BOUNDS = {
+		1, 2, 5, 10, 20, 50, 100, 200, 500,
+		1000, 2000, 5000, 10000, 30000, 60000,
+		5 * 60000, 30 * 60000, 60 * 60000
+	};
+
+	/**
+	 * Max number of payloads the stage timestamps are kept for (payloads above the limit are not
+	 * counted in the latency histograms)
+	 */
+	static final int MAX_TRACKED_PAYLOADS = 10000;
+
+	private final HistogramRecorder enqueueLatency = new HistogramRecorder();
+	private final HistogramRecorder queueingDelay = new HistogramRecorder();
+	private final HistogramRecorder httpDuration = new HistogramRecorder();
+
+	/**
+	 * Times when the payloads which are not persisted yet were enqueued (by nonce)
+	 */
+	private final Map<String, Long> enqueueTimes = new HashMap<>();
+
+	/**
+	 * Times when the payloads which are not being sent yet were persisted (by nonce)
+	 */
+	private final Map<String, Long> persistTimes = new HashMap<>();
+
+	private final EnumMap<PayloadType, Long> persistedBytes = new EnumMap<>(PayloadType.class);
+	private final EnumMap<PayloadType, Long> sentBytes = new EnumMap<>(PayloadType.class);
+	private final EnumMap<PayloadType, Long> sentCounts = new EnumMap<>(PayloadType.class);
+	private final Map<Integer, Long> failureCounts = new HashMap<>();
+	private long retryCount;
+	private long queueDepth = -1;
+	private long queueBytes = -1;
+	private long maxQueueDepth;
+
+	//region Stages
+
+	/**
+	 * Payload was handed over to the task manager
+	 */
+	synchronized void onPayloadEnqueued(String nonce) {
+		if (nonce != null && enqueueTimes.size() < MAX_TRACKED_PAYLOADS) {
+			enqueueTimes.put(nonce, getCurrentTimeMillis());
+		}
+	}
+
+	/**
+	 * Payload was written to the database (the transaction is committed)
+	 */
+	synchronized void onPayloadPersisted(String nonce, PayloadType type, long bytes) {
+		long now = getCurrentTimeMillis();
+		Long enqueueTime = enqueueTimes.remove(nonce);
+		if (enqueueTime != null) {
+			enqueueLatency.record(now - enqueueTime);
+		}
+		if (persistTimes.size() < MAX_TRACKED_PAYLOADS) {
+			persistTimes.put(nonce, now);
+		}
+		add(persistedBytes, type, bytes);
+	}
+
+	/**
+	 * Payload was removed from the pipeline without being sent (aggregated, dropped, failed to
+	 * persist, etc) or its row was deleted
+	 */
+	synchronized void onPayloadDiscarded(String nonce) {
+		enqueueTimes.remove(nonce);
+		persistTimes.remove(nonce);
+	}
+
+	/**
+	 * All the payloads were removed from the pipeline
+	 */
+	synchronized void onQueueCleared() {
+		enqueueTimes.clear();
+		persistTimes.clear();
+		queueDepth = 0;
+		queueBytes = 0;
+	}
+
+	/**
+	 * Payload request is about to start
+	 */
+	synchronized void onPayloadSendStarted(String nonce) {
+		Long persistTime = persistTimes.remove(nonce);
+		if (persistTime != null) {
+			queueingDelay.record(getCurrentTimeMillis() - persistTime);
+		}
+	}
+
+	/**
+	 * Payload HTTP-request is finished (either successfully or not)
+	 *
+	 * @param durationMillis - request duration (or -1 if the request was never performed)
+	 */
+	synchronized void onRequestFinished(long durationMillis) {
+		if (durationMillis >= 0) {
+			httpDuration.record(durationMillis);
+		}
+	}
+
+	/**
+	 * Payload response was handled
+	 *
+	 * @param responseCode - HTTP response code (or -1 for connection errors)
+	 */
+	synchronized void onPayloadSendFinished(PayloadType type, long bytes, int responseCode, boolean successful) {
+		if (successful) {
+			add(sentBytes, type, bytes);
+			add(sentCounts, type, 1);
+		} else {
+			add(failureCounts, responseCode, 1);
+		}
+	}
+
+	/**
+	 * Payload sending was paused until a retry
+	 */
+	synchronized void onRetryScheduled() {
+		++retryCount;
+	}
+
+	/**
+	 * Number of the queued payloads or total size of their bodies has changed
+	 */
+	synchronized void onQueueSizeChanged(long depth, long bytes) {
+		queueDepth = depth;
+		queueBytes = bytes;
+		maxQueueDepth = Math.max(maxQueueDepth, depth);
+	}
+
+	//endregion
+
+	/**
+	 * Returns a read-only copy of the metrics
+	 */
+	synchronized PayloadMetricsSnapshot snapshot() {
+		return new PayloadMetricsSnapshot(
+			enqueueLatency.snapshot(),
+			queueingDelay.snapshot(),
+			httpDuration.snapshot(),
+			persistedBytes, sentBytes, sentCounts, failureCounts,
+			retryCount, queueDepth, queueBytes, maxQueueDepth
+		);
+	}
+
+	/**
+	 * Returns a monotonic time in milliseconds (the stage timestamps are only compared with each
+	 * other)
+	 */
+	long getCurrentTimeMillis() {
+		return System.nanoTime() / 1000000;
+	}
+
+	//region Helpers
+
+	private static <K> void add(Map<K, Long> map, K key, long value) {
+		Long oldValue = map.get(key);
+		map.put(key, oldValue != null ? oldValue + value : value);
+	}
+
+	/**
+	 * Mutable histogram (guarded by the metrics lock)
+	 */
+	private static class HistogramRecorder {
+		private final long[] bucketCounts = new long[HISTOGRAM_BUCKET_UPPER_BOUNDS.length + 1];
+		private long count;
+		private long sum;
+		private long min;
+		private long max;
+
+		void record(long value) {
+			value = Math.max(0, value); // the clock is monotonic but let's be safe
+			int index = Arrays.binarySearch(HISTOGRAM_BUCKET_UPPER_BOUNDS, value);
+			if (index < 0) {
+				index = -index - 1; // insertion point: the first bound greater than the value
+			}
+			++bucketCounts[index];
+
+			min = count > 0 ? Math.min(min, value) : value;
+			max = Math.max(max, value);
+			sum += value;
+			++count;
+		}
+
+		PayloadMetricsSnapshot.Histogram snapshot() {
+			return new PayloadMetricsSnapshot.Histogram(HISTOGRAM_BUCKET_UPPER_BOUNDS, bucketCounts, count, sum, min, max);
+		}
+	}
+
+	//endregion
+}
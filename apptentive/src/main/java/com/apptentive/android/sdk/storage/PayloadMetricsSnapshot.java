@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2017, Apptentive, Inc. All Rights Reserved.
+ * Please refer to the LICENSE file for the terms and conditions
+ * under which redistribution and use of this file is permitted.
+ */
+
+package com.apptentive.android.sdk.storage;
+
+import com.apptentive.android.sdk.model.PayloadType;
+import com.apptentive.android.sdk.util.StringUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Read-only copy of the payload pipeline metrics (since the SDK was started) taken at a single
+ * point in time. Payloads go through the following stages: enqueued by the SDK, persisted to the
+ * database, picked up for sending and sent with an HTTP-request.
+ */
+public class PayloadMetricsSnapshot {
+	private final Histogram enqueueLatency;
+	private final Histogram queueingDelay;
+	private final Histogram httpDuration;
+	private final Map<PayloadType, Long> persistedBytes;
+	private final Map<PayloadType, Long> sentBytes;
+	private final Map<PayloadType, Long> sentCounts;
+	private final Map<Integer, Long> failureCounts;
+	private final long retryCount;
+	private final long queueDepth;
+	private final long queueBytes;
+	private final long maxQueueDepth;
+
+	PayloadMetricsSnapshot(Histogram enqueueLatency, Histogram queueingDelay, Histogram httpDuration,
+	                       EnumMap<PayloadType, Long> persistedBytes, EnumMap<PayloadType, Long> sentBytes,
+	                       EnumMap<PayloadType, Long> sentCounts, Map<Integer, Long> failureCounts,
+	                       long retryCount, long queueDepth, long queueBytes, long maxQueueDepth) {
+		this.enqueueLatency = enqueueLatency;
+		this.queueingDelay = queueingDelay;
+		this.httpDuration = httpDuration;
+		this.persistedBytes = Collections.unmodifiableMap(new EnumMap<>(persistedBytes));
+		this.sentBytes = Collections.unmodifiableMap(new EnumMap<>(sentBytes));
+		this.sentCounts = Collections.unmodifiableMap(new EnumMap<>(sentCounts));
+		this.failureCounts = Collections.unmodifiableMap(new TreeMap<>(failureCounts));
+		this.retryCount = retryCount;
+		this.queueDepth = queueDepth;
+		this.queueBytes = queueBytes;
+		this.maxQueueDepth = maxQueueDepth;
+	}
+
+	//region Getters
+
+	/**
+	 * Time between a payload being enqueued and being persisted to the database
+	 */
+	public Histogram getEnqueueLatency() {
+		return enqueueLatency;
+	}
+
+	/**
+	 * Time between a payload being persisted and its request being started (payloads persisted
+	 * before the SDK was started are not counted)
+	 */
+	public Histogram getQueueingDelay() {
+		return queueingDelay;
+	}
+
+	/**
+	 * Duration of payload HTTP-requests (a batch request is counted once)
+	 */
+	public Histogram getHttpDuration() {
+		return httpDuration;
+	}
+
+	/**
+	 * Size of the payload bodies written to the database by payload type
+	 */
+	public Map<PayloadType, Long> getPersistedBytes() {
+		return persistedBytes;
+	}
+
+	/**
+	 * Size of the payload bodies which were successfully sent by payload type
+	 */
+	public Map<PayloadType, Long> getSentBytes() {
+		return sentBytes;
+	}
+
+	/**
+	 * Number of payloads which were successfully sent by payload type
+	 */
+	public Map<PayloadType, Long> getSentCounts() {
+		return sentCounts;
+	}
+
+	/**
+	 * Number of payloads which failed to send by HTTP response code (-1 for connection errors)
+	 */
+	public Map<Integer, Long> getFailureCounts() {
+		return failureCounts;
+	}
+
+	/**
+	 * Number of times payload sending was paused until a retry
+	 */
+	public long getRetryCount() {
+		return retryCount;
+	}
+
+	/**
+	 * Number of queued payloads (-1 if the queue was not queried yet)
+	 */
+	public long getQueueDepth() {
+		return queueDepth;
+	}
+
+	/**
+	 * Total size of the queued payload bodies (-1 if the queue was not queried yet)
+	 */
+	public long getQueueBytes() {
+		return queueBytes;
+	}
+
+	/**
+	 * Max number of queued payloads seen so far
+	 */
+	public long getMaxQueueDepth() {
+		return maxQueueDepth;
+	}
+
+	//endregion
+
+	@Override
+	public String toString() {
+		return StringUtils.format("%s enqueueLatency={%s} queueingDelay={%s} httpDuration={%s} persistedBytes=%s sentBytes=%s sentCounts=%s failures=%s retries=%d queueDepth=%d queueBytes=%d maxQueueDepth=%d",
+			getClass().getSimpleName(), enqueueLatency, queueingDelay, httpDuration,
+			persistedBytes, sentBytes, sentCounts, failureCounts, retryCount, queueDepth, queueBytes, maxQueueDepth);
+	}
+
+	/**
+	 * Distribution of durations (in milliseconds) over fixed buckets
+	 */
+	public static class Histogram {
+		private final long[] bucketUpperBounds;
+		private final long[] bucketCounts;
+		private final long count;
+		private final long sum;
+		private final long min;
+		private final long max;
+
+		Histogram(long[] bucketUpperBounds, long[] bucketCounts, long count, long sum, long min, long max) {
+			if (bucketCounts.length != bucketUpperBounds.length + 1) {
+				throw new IllegalArgumentException("Invalid bucket count: " + bucketCounts.length);
+			}
+			this.bucketUpperBounds = bucketUpperBounds.clone();
+			this.bucketCounts = bucketCounts.clone();
+			this.count = count;
+			this.sum = sum;
+			this.min = min;
+			this.max = max;
+		}
+
+		/**
+		 * Returns the approximate value below which the given fraction of the samples falls (the upper
+		 * bound of the matching bucket or the max value for the last bucket)
+		 *
+		 * @param fraction - value between 0.0 and 1.0 (0.5 for median, 0.99 for 99th percentile, etc)
+		 */
+		public long getPercentile(double fraction) {
+			if (fraction < 0 || fraction > 1) {
+				throw new IllegalArgumentException("Invalid fraction: " + fraction);
+			}
+
+			if (count == 0) {
+				return 0;
+			}
+
+			long rank = Math.max(1, (long) Math.ceil(fraction * count));
+			long total = 0;
+			for (int i = 0; i < bucketUpperBounds.length; ++i) {
+				total += bucketCounts[i];
+				if (total >= rank) {
+					return Math.min(bucketUpperBounds[i], max);
+				}
+			}
+			return max;
+		}
+
+		/**
+		 * Returns the mean value (0 if there are no samples)
+		 */
+		public long getMean() {
+			return count > 0 ? sum / count : 0;
+		}
+
+		//region Getters
+
+		/**
+		 * Inclusive upper bounds of the buckets (the last bucket has no upper bound)
+		 */
+		public long[] getBucketUpperBounds() {
+			return bucketUpperBounds.clone();
+		}
+
+		/**
+		 * Number of samples in each bucket (has one more element than the upper bounds)
+		 */
+		public long[] getBucketCounts() {
+			return bucketCounts.clone();
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getSum() {
+			return sum;
+		}
+
+		public long getMin() {
+			return min;
+		}
+
+		public long getMax() {
+			return max;
+		}
+
+		//endregion
+
+		@Override
+		public String toString() {
+			return StringUtils.format("count=%d min=%d mean=%d p50=%d p90=%d p99=%d max=%d buckets=%s",
+				count, min, getMean(), getPercentile(0.5), getPercentile(0.9), getPercentile(0.99), max, Arrays.toString(bucketCounts));
+		}
+	}
+}
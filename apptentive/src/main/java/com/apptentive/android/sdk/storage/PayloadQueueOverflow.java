@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2017, Apptentive, Inc. All Rights Reserved.
+ * Please refer to the LICENSE file for the terms and conditions
+ * under which redistribution and use of this file is permitted.
+ */
+
+package com.apptentive.android.sdk.storage;
+
+import com.apptentive.android.sdk.util.StringUtils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts what happened to the payloads which arrived after the payload queue had reached its quota
+ * (since the SDK was started).
+ */
+public class PayloadQueueOverflow {
+	private final AtomicLong aggregatedCount = new AtomicLong();
+	private final AtomicLong droppedCount = new AtomicLong();
+	private final AtomicLong overQuotaCount = new AtomicLong();
+
+	void onAggregated() {
+		aggregatedCount.incrementAndGet();
+	}
+
+	void onDropped() {
+		droppedCount.incrementAndGet();
+	}
+
+	void onOverQuota() {
+		overQuotaCount.incrementAndGet();
+	}
+
+	//region Getters
+
+	/**
+	 * Number of repeated events which were collapsed into an existing counted event
+	 */
+	public long getAggregatedCount() {
+		return aggregatedCount.get();
+	}
+
+	/**
+	 * Number of analytics payloads which were dropped (either the oldest queued ones or the new ones
+	 * if nothing else could be dropped)
+	 */
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	/**
+	 * Number of payloads which are never dropped (messages, survey responses, etc) and were queued
+	 * above the quota
+	 */
+	public long getOverQuotaCount() {
+		return overQuotaCount.get();
+	}
+
+	//endregion
+
+	@Override
+	public String toString() {
+		return StringUtils.format("%s aggregated=%d dropped=%d overQuota=%d", getClass().getSimpleName(), getAggregatedCount(), getDroppedCount(), getOverQuotaCount());
+	}
+}
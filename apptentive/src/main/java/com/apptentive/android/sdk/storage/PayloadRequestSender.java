@@ -6,6 +6,7 @@
 
 package com.apptentive.android.sdk.storage;
 
+import com.apptentive.android.sdk.model.PayloadBatch;
 import com.apptentive.android.sdk.model.PayloadData;
 import com.apptentive.android.sdk.network.HttpRequest;
 
@@ -21,4 +22,12 @@ public interface PayloadRequestSender {
 	 * @param listener Http-request listener for the payload request
 	 */
 	HttpRequest createPayloadSendRequest(PayloadData payload, HttpRequest.Listener<HttpRequest> listener);
+
+	/**
+	 * Creates and sends a single {@link HttpRequest} for a group of payloads
+	 *
+	 * @param batch    to be sent
+	 * @param listener Http-request listener for the batch request
+	 */
+	HttpRequest createPayloadBatchSendRequest(PayloadBatch batch, HttpRequest.Listener<HttpRequest> listener);
 }
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2017, Apptentive, Inc. All Rights Reserved.
+ * Please refer to the LICENSE file for the terms and conditions
+ * under which redistribution and use of this file is permitted.
+ */
+
+package com.apptentive.android.sdk.storage;
+
+import com.apptentive.android.sdk.network.HttpRequestRetryPolicy;
+
+import java.util.Arrays;
+
+/**
+ * Decides how long payload sending should be paused after a failure. Each failure class backs off
+ * separately (a flaky connection doesn't make server errors wait longer and vice versa) and any
+ * successful response resets all of them.
+ */
+class PayloadRetryBackoff {
+	/**
+	 * 'Retry-After' values above this are considered bogus
+	 */
+	static final long MAX_RETRY_AFTER_MILLIS = 60 * 60 * 1000;
+
+	enum FailureClass {
+		/**
+		 * Request didn't reach the server (the device is online)
+		 */
+		CONNECTION,
+
+		/**
+		 * Server responded with a 5xx error
+		 */
+		SERVER
+	}
+
+	private final HttpRequestRetryPolicy retryPolicy;
+	private final int[] failureCounts = new int[FailureClass.values().length];
+
+	PayloadRetryBackoff(HttpRequestRetryPolicy retryPolicy) {
+		if (retryPolicy == null) {
+			throw new IllegalArgumentException("Retry policy is null");
+		}
+		this.retryPolicy = retryPolicy;
+	}
+
+	/**
+	 * Records a failure and returns the delay before the next attempt
+	 *
+	 * @param retryAfterMillis delay requested by the server or -1
+	 */
+	synchronized long onFailure(FailureClass failureClass, long retryAfterMillis) {
+		if (failureClass == null) {
+			throw new IllegalArgumentException("Failure class is null");
+		}
+
+		int failureCount = ++failureCounts[failureClass.ordinal()];
+		long delayMillis = retryPolicy.getRetryTimeoutMillis(failureCount);
+		if (retryAfterMillis > delayMillis) {
+			delayMillis = Math.min(retryAfterMillis, MAX_RETRY_AFTER_MILLIS);
+		}
+		return delayMillis;
+	}
+
+	/**
+	 * Resets all failure classes
+	 */
+	synchronized void onSuccess() {
+		Arrays.fill(failureCounts, 0);
+	}
+
+	synchronized int getFailureCount(FailureClass failureClass) {
+		return failureCounts[failureClass.ordinal()];
+	}
+}
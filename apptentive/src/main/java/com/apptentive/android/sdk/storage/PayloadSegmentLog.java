@@ -0,0 +1,446 @@
+/*
+ * Copyright (c) 2017, Apptentive, Inc. All Rights Reserved.
+ * Please refer to the LICENSE file for the terms and conditions
+ * under which redistribution and use of this file is permitted.
+ */
+
+package com.apptentive.android.sdk.storage;
+
+import com.apptentive.android.sdk.ApptentiveLog;
+import com.apptentive.android.sdk.util.StringUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static com.apptentive.android.sdk.ApptentiveLogTag.DATABASE;
+
+/**
+ * Stores payload bodies in append-only segment files. Each body is addressed by its segment id,
+ * offset and length (kept in the payload table). Bodies are never modified in place: deleting a
+ * payload only marks its bytes as dead and a segment file is removed once it has no live bytes left
+ * (or compacted by copying its live bodies to the active segment).
+ * <p/>
+ * This class is not thread safe and should only be used on the payload database thread.
+ */
+class PayloadSegmentLog {
+	private static final String SEGMENT_FILE_PREFIX = "segment-";
+	private static final String SEGMENT_FILE_SUFFIX = ".log";
+	private static final int APPEND_BUFFER_SIZE = 8192;
+
+	private final File directory;
+	private final long maxSegmentSize;
+
+	/**
+	 * Segments by their ids (<code>null</code> until the log is opened)
+	 */
+	private Map<Integer, Segment> segments;
+
+	/**
+	 * Segment new bodies are appended to (<code>null</code> until the first append)
+	 */
+	private Segment activeSegment;
+
+	/**
+	 * Id of the next segment to be created
+	 */
+	private int nextSegmentId;
+
+	PayloadSegmentLog(File directory, long maxSegmentSize) {
+		if (directory == null) {
+			throw new IllegalArgumentException("Directory is null");
+		}
+		if (maxSegmentSize <= 0) {
+			throw new IllegalArgumentException("Invalid max segment size: " + maxSegmentSize);
+		}
+		this.directory = directory;
+		this.maxSegmentSize = maxSegmentSize;
+	}
+
+	//region Lifecycle
+
+	/**
+	 * Loads existing segments. New bodies always go to a new segment so a partially written tail of
+	 * a previous session is never appended to.
+	 *
+	 * @param liveBytes number of bytes referenced by the payload table for each segment id
+	 */
+	void open(Map<Integer, Long> liveBytes) {
+		close();
+
+		segments = new HashMap<>();
+		nextSegmentId = 0;
+
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				int id = parseSegmentId(file.getName());
+				if (id != -1) {
+					Segment segment = new Segment(id, file, file.length());
+					segments.put(id, segment);
+					nextSegmentId = Math.max(nextSegmentId, id + 1);
+				}
+			}
+		}
+
+		updateLiveBytes(liveBytes);
+	}
+
+	boolean isOpen() {
+		return segments != null;
+	}
+
+	/**
+	 * Replaces live byte counts (should be called after payload rows were removed in bulk) and
+	 * deletes segments which have no live bytes left.
+	 */
+	void updateLiveBytes(Map<Integer, Long> liveBytes) {
+		checkOpen();
+
+		for (Segment segment : segments.values().toArray(new Segment[segments.size()])) {
+			Long bytes = liveBytes.get(segment.id);
+			segment.liveBytes = bytes != null ? bytes : 0L;
+			if (segment.liveBytes == 0 && segment != activeSegment) {
+				deleteSegment(segment.id);
+			}
+		}
+	}
+
+	/**
+	 * Closes all segment files (the log can be re-opened later)
+	 */
+	void close() {
+		if (segments != null) {
+			for (Segment segment : segments.values()) {
+				segment.close();
+			}
+			segments = null;
+		}
+		activeSegment = null;
+	}
+
+	/**
+	 * Deletes all the files in the log directory (including payload bodies stored in separate files)
+	 */
+	void clear() {
+		close();
+
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (!file.delete()) {
+					ApptentiveLog.w(DATABASE, "Unable to delete payload file: %s", file);
+				}
+			}
+		}
+	}
+
+	//endregion
+
+	//region Read/Write
+
+	/**
+	 * Appends body to the active segment (a new segment is started once the active one is full).
+	 * Appended bytes might not be on the disk until <code>{@link #sync()}</code> is called.
+	 */
+	Location append(byte[] data) throws IOException {
+		if (data == null) {
+			throw new IllegalArgumentException("Data is null");
+		}
+
+		Segment segment = getActiveSegment();
+		long offset = segment.size;
+		FileChannel channel = segment.getChannel();
+		ByteBuffer buffer = ByteBuffer.wrap(data);
+		while (buffer.hasRemaining()) {
+			channel.write(buffer, offset + buffer.position());
+		}
+
+		segment.size += data.length;
+		segment.liveBytes += data.length;
+		segment.dirty = true;
+
+		return new Location(segment.id, offset, data.length);
+	}
+
+	/**
+	 * Appends body rendered by <code>writer</code> to the active segment without holding it in
+	 * memory. If the writer fails, the bytes it has written are discarded.
+	 */
+	Location append(BodyWriter writer) throws IOException {
+		if (writer == null) {
+			throw new IllegalArgumentException("Writer is null");
+		}
+
+		Segment segment = getActiveSegment();
+		long offset = segment.size;
+		FileChannel channel = segment.getChannel();
+		try {
+			channel.position(offset);
+			OutputStream stream = new BufferedOutputStream(Channels.newOutputStream(channel), APPEND_BUFFER_SIZE);
+			writer.write(stream);
+			stream.flush(); // the stream is not closed: it would close the channel as well
+
+			long length = channel.position() - offset;
+			if (length > Integer.MAX_VALUE) {
+				throw new IOException("Payload body is too large: " + length);
+			}
+
+			segment.size += length;
+			segment.liveBytes += length;
+			segment.dirty = true;
+
+			return new Location(segment.id, offset, (int) length);
+		} catch (Exception e) {
+			channel.truncate(offset);
+			throw e instanceof IOException ? (IOException) e : new IOException("Unable to write payload body", e);
+		}
+	}
+
+	/**
+	 * Forces appended bytes to the disk
+	 */
+	void sync() throws IOException {
+		checkOpen();
+		if (activeSegment != null) {
+			activeSegment.sync();
+		}
+	}
+
+	/**
+	 * Reads a body with a positional read
+	 */
+	byte[] read(int segmentId, long offset, int length) throws IOException {
+		Segment segment = getSegment(segmentId, offset, length);
+
+		byte[] data = new byte[length];
+		ByteBuffer buffer = ByteBuffer.wrap(data);
+		FileChannel channel = segment.getChannel();
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, offset + buffer.position());
+			if (read == -1) {
+				throw new IOException("Unexpected end of payload segment: " + segmentId);
+			}
+		}
+		return data;
+	}
+
+	/**
+	 * Returns the file of a segment containing the body so it can be streamed without loading into
+	 * memory. The body stays in the file until it's released and its segment is compacted or deleted.
+	 */
+	File getSegmentFile(int segmentId, long offset, int length) throws IOException {
+		Segment segment = getSegment(segmentId, offset, length);
+		segment.sync(); // the body should be on the disk before anyone else reads the file
+		return segment.file;
+	}
+
+	private Segment getSegment(int segmentId, long offset, int length) throws IOException {
+		checkOpen();
+
+		Segment segment = segments.get(segmentId);
+		if (segment == null) {
+			throw new IOException("Payload segment not found: " + segmentId);
+		}
+		if (offset < 0 || length < 0 || offset + length > segment.size) {
+			throw new IOException(StringUtils.format("Invalid payload body location: segment=%d offset=%d length=%d size=%d", segmentId, offset, length, segment.size));
+		}
+		return segment;
+	}
+
+	/**
+	 * Marks body bytes as dead. A segment which is no longer appended to is deleted once it has no
+	 * live bytes left.
+	 */
+	void release(int segmentId, int length) {
+		checkOpen();
+
+		Segment segment = segments.get(segmentId);
+		if (segment == null) {
+			return;
+		}
+
+		segment.liveBytes = Math.max(0, segment.liveBytes - length);
+		if (segment.liveBytes == 0 && segment != activeSegment) {
+			deleteSegment(segmentId);
+		}
+	}
+
+	//endregion
+
+	//region Compaction
+
+	/**
+	 * Returns the id of a segment (other than the active one and the <code>pinnedSegmentIds</code>)
+	 * which has live ratio below <code>minLiveRatio</code> or -1 if there is nothing to compact. Live
+	 * bodies of such a segment should be appended again and the segment deleted.
+	 */
+	int findSegmentToCompact(float minLiveRatio, Set<Integer> pinnedSegmentIds) {
+		checkOpen();
+
+		for (Segment segment : segments.values()) {
+			if (segment != activeSegment && !pinnedSegmentIds.contains(segment.id) &&
+				segment.size > 0 && segment.liveBytes < minLiveRatio * segment.size) {
+				return segment.id;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Closes and deletes segment file
+	 */
+	void deleteSegment(int segmentId) {
+		checkOpen();
+
+		Segment segment = segments.remove(segmentId);
+		if (segment != null) {
+			if (segment == activeSegment) {
+				activeSegment = null;
+			}
+			segment.close();
+			boolean deleted = segment.file.delete();
+			ApptentiveLog.v(DATABASE, "Deleted payload segment %d successfully? %b", segmentId, deleted);
+		}
+	}
+
+	private void closeActiveSegment() throws IOException {
+		Segment segment = activeSegment;
+		segment.sync();
+		activeSegment = null;
+		if (segment.liveBytes == 0) {
+			deleteSegment(segment.id);
+		}
+	}
+
+	//endregion
+
+	//region Helpers
+
+	private Segment getActiveSegment() throws IOException {
+		checkOpen();
+
+		if (activeSegment != null && activeSegment.size >= maxSegmentSize) {
+			closeActiveSegment();
+		}
+		if (activeSegment == null) {
+			int id = nextSegmentId++;
+			activeSegment = new Segment(id, new File(directory, SEGMENT_FILE_PREFIX + id + SEGMENT_FILE_SUFFIX), 0);
+			segments.put(id, activeSegment);
+			if (!directory.exists() && !directory.mkdirs()) {
+				throw new IOException("Unable to create payload directory: " + directory);
+			}
+		}
+		return activeSegment;
+	}
+
+	private void checkOpen() {
+		if (segments == null) {
+			throw new IllegalStateException("Payload segment log is not open");
+		}
+	}
+
+	private static int parseSegmentId(String filename) {
+		if (filename.startsWith(SEGMENT_FILE_PREFIX) && filename.endsWith(SEGMENT_FILE_SUFFIX)) {
+			try {
+				return Integer.parseInt(filename.substring(SEGMENT_FILE_PREFIX.length(), filename.length() - SEGMENT_FILE_SUFFIX.length()));
+			} catch (NumberFormatException e) {
+				return -1;
+			}
+		}
+		return -1;
+	}
+
+	//endregion
+
+	//region Getters
+
+	/**
+	 * Returns the number of segment files
+	 */
+	int getSegmentCount() {
+		checkOpen();
+		return segments.size();
+	}
+
+	//endregion
+
+	//region Helper classes
+
+	/**
+	 * Renders a payload body directly into the log
+	 */
+	interface BodyWriter {
+		void write(OutputStream stream) throws Exception;
+	}
+
+	/**
+	 * Location of a payload body in the log
+	 */
+	static class Location {
+		final int segment;
+		final long offset;
+		final int length;
+
+		Location(int segment, long offset, int length) {
+			this.segment = segment;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		@Override
+		public String toString() {
+			return StringUtils.format("segment=%d offset=%d length=%d", segment, offset, length);
+		}
+	}
+
+	private static class Segment {
+		final int id;
+		final File file;
+		long size;
+		long liveBytes;
+		boolean dirty;
+		private RandomAccessFile randomAccessFile;
+
+		Segment(int id, File file, long size) {
+			this.id = id;
+			this.file = file;
+			this.size = size;
+		}
+
+		FileChannel getChannel() throws IOException {
+			if (randomAccessFile == null) {
+				randomAccessFile = new RandomAccessFile(file, "rw");
+			}
+			return randomAccessFile.getChannel();
+		}
+
+		void sync() throws IOException {
+			if (dirty) {
+				getChannel().force(false);
+				dirty = false;
+			}
+		}
+
+		void close() {
+			if (randomAccessFile != null) {
+				try {
+					randomAccessFile.close();
+				} catch (IOException e) {
+					ApptentiveLog.w(DATABASE, "Unable to close payload segment: %s", file);
+				}
+				randomAccessFile = null;
+			}
+		}
+	}
+
+	//endregion
+}
@@ -7,7 +7,9 @@
 package com.apptentive.android.sdk.storage;
 
 import com.apptentive.android.sdk.ApptentiveLog;
+import com.apptentive.android.sdk.model.PayloadBatch;
 import com.apptentive.android.sdk.model.PayloadData;
+import com.apptentive.android.sdk.model.PayloadType;
 import com.apptentive.android.sdk.network.HttpRequest;
 import com.apptentive.android.sdk.network.HttpRequestRetryPolicy;
 import com.apptentive.android.sdk.notifications.ApptentiveNotificationCenter;
@@ -15,15 +17,93 @@ import com.apptentive.android.sdk.util.StringUtils;
 
 import org.json.JSONObject;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import static com.apptentive.android.sdk.ApptentiveLogTag.PAYLOADS;
 import static com.apptentive.android.sdk.ApptentiveNotifications.NOTIFICATION_AUTHENTICATION_FAILED;
 import static com.apptentive.android.sdk.ApptentiveNotifications.NOTIFICATION_KEY_AUTHENTICATION_FAILED_REASON;
 import static com.apptentive.android.sdk.ApptentiveNotifications.NOTIFICATION_KEY_CONVERSATION_ID;
 
 /**
- * Class responsible for a serial payload sending (one at a time)
+ * Class responsible for a pipelined payload sending: up to <code>maxConcurrentRequests</code>
+ * payload requests are in flight at the same time. Payloads which depend on each other are still
+ * sent one at a time (see {@link SendOrder}). Independent payloads can also be uploaded in batches
+ * (see {@link PayloadBatch}).
  */
 class PayloadSender {
+	/**
+	 * Describes how a payload can be sent relatively to other payloads
+	 */
+	enum SendOrder {
+		/**
+		 * Independent payload (events, survey responses): sent in parallel with any other payload
+		 */
+		CONCURRENT,
+
+		/**
+		 * Payload which should be received by the server in the order it was created within its
+		 * priority lane (messages, person/device/sdk/app release updates): only one serial payload is
+		 * in flight at a time
+		 */
+		SERIAL,
+
+		/**
+		 * Payload which changes the conversation state (logout): waits for all the payloads created
+		 * before and blocks all the payloads created after until it's sent
+		 */
+		EXCLUSIVE
+	}
+
+	/**
+	 * Priority lanes of the payload queue: higher priority lanes are drained first while the order
+	 * is preserved within each lane (lower priority lanes are still served from time to time so they
+	 * don't wait forever)
+	 */
+	enum SendPriority {
+		/**
+		 * Exclusive payloads (see {@link SendOrder#EXCLUSIVE}): nothing can pass them so the lane only
+		 * marks where the other lanes stop
+		 */
+		EXCLUSIVE,
+
+		/**
+		 * Payloads created by the user who waits for them (messages, survey responses)
+		 */
+		HIGH,
+
+		/**
+		 * Conversation metadata (person/device/sdk/app release updates)
+		 */
+		NORMAL,
+
+		/**
+		 * Analytics (events)
+		 */
+		LOW
+	}
+
+	/**
+	 * Decision made for an unsent payload while looking for the next payload to send
+	 */
+	enum SendDecision {
+		/**
+		 * Payload can be sent right away
+		 */
+		SEND,
+
+		/**
+		 * Payload can't be sent right now but the payloads after it can
+		 */
+		SKIP,
+
+		/**
+		 * Neither this payload nor the payloads after it can be sent right now
+		 */
+		STOP
+	}
+
 	/**
 	 * Object which creates and send Http-request for payloads
 	 */
@@ -34,14 +114,43 @@ class PayloadSender {
 	 */
 	private final HttpRequestRetryPolicy requestRetryPolicy;
 
+	/**
+	 * Max number of payload requests in flight
+	 */
+	private final int maxConcurrentRequests;
+
 	private Listener listener;
 
 	/**
-	 * Indicates whenever the sender is busy sending a payload
+	 * Collects payload request stage metrics
+	 */
+	private PayloadMetrics metrics = new PayloadMetrics();
+
+	/**
+	 * Payloads which are currently being sent (mapped by nonce)
 	 */
-	private boolean sendingFlag; // this variable is only accessed in a synchronized context
+	private final Map<String, PayloadData> sendingPayloads; // this variable is only accessed in a synchronized context
+
+	/**
+	 * Number of payload requests in flight (a batch request carries multiple payloads)
+	 */
+	private int activeRequestCount; // this variable is only accessed in a synchronized context
+
+	/**
+	 * Number of serial payloads in flight
+	 */
+	private int sendingSerialCount; // this variable is only accessed in a synchronized context
+
+	/**
+	 * Number of exclusive payloads in flight
+	 */
+	private int sendingExclusiveCount; // this variable is only accessed in a synchronized context
 
 	PayloadSender(PayloadRequestSender requestSender, HttpRequestRetryPolicy retryPolicy) {
+		this(requestSender, retryPolicy, 1);
+	}
+
+	PayloadSender(PayloadRequestSender requestSender, HttpRequestRetryPolicy retryPolicy, int maxConcurrentRequests) {
 		if (requestSender == null) {
 			throw new IllegalArgumentException("Payload request sender is null");
 		}
@@ -50,8 +159,14 @@ class PayloadSender {
 			throw new IllegalArgumentException("Retry policy is null");
 		}
 
+		if (maxConcurrentRequests < 1) {
+			throw new IllegalArgumentException("Illegal max concurrent requests: " + maxConcurrentRequests);
+		}
+
 		this.requestSender = requestSender;
 		this.requestRetryPolicy = retryPolicy;
+		this.maxConcurrentRequests = maxConcurrentRequests;
+		this.sendingPayloads = new HashMap<>();
 	}
 
 	//region Payloads
@@ -67,28 +182,59 @@ class PayloadSender {
 			throw new IllegalArgumentException("Payload is null");
 		}
 
-		// we don't allow concurrent payload sending
-		if (isSendingPayload()) {
+		// we don't allow sending payloads past the window or out of order
+		if (getSendDecision(payload.getNonce(), payload.getType()) != SendDecision.SEND) {
 			return false;
 		}
 
-		// we mark the sender as "busy" so no other payloads would be sent until we're done
-		sendingFlag = true;
+		// we mark the payload as "in flight" so it won't be sent twice
+		markSending(payload, true);
+		metrics.onPayloadSendStarted(payload.getNonce());
+		++activeRequestCount;
 
 		try {
 			sendPayloadRequest(payload);
 		} catch (Exception e) {
 			ApptentiveLog.e(e, "Exception while sending payload: %s", payload);
 
-			// for NullPointerException, the message object would be null, we should handle it separately
-			// TODO: add a helper class for handling that
-			String message = e.getMessage();
-			if (message == null) {
-				message = StringUtils.format("%s is thrown", e.getClass().getSimpleName());
+			// if an exception was thrown - mark payload as failed
+			handleFinishSendingPayload(payload, false, getErrorMessage(e), -1, null, -1); // FIXME: a better approach
+		}
+
+		return true;
+	}
+
+	/**
+	 * Sends a batch of independent payloads with a single request asynchronously. Returns boolean
+	 * flag immediately indicating if batch send was scheduled. The listener is notified for each
+	 * payload separately (or once for the whole batch if the request is rejected with a client error).
+	 *
+	 * @throws IllegalArgumentException is batch is null
+	 */
+	synchronized boolean sendPayloads(final PayloadBatch batch) {
+		if (batch == null) {
+			throw new IllegalArgumentException("Payload batch is null");
+		}
+
+		List<PayloadData> payloads = batch.getPayloads();
+		for (PayloadData payload : payloads) {
+			if (getSendOrder(payload.getType()) != SendOrder.CONCURRENT ||
+				getSendDecision(payload.getNonce(), payload.getType()) != SendDecision.SEND) {
+				return false;
 			}
+		}
 
-			// if an exception was thrown - mark payload as failed
-			handleFinishSendingPayload(payload, false, message, -1, null); // FIXME: a better approach
+		for (PayloadData payload : payloads) {
+			markSending(payload, true);
+			metrics.onPayloadSendStarted(payload.getNonce());
+		}
+		++activeRequestCount;
+
+		try {
+			sendPayloadBatchRequest(batch);
+		} catch (Exception e) {
+			ApptentiveLog.e(e, "Exception while sending payload batch: %s", batch);
+			handleFinishSendingBatch(batch, null, false, getErrorMessage(e), -1, -1);
 		}
 
 		return true;
@@ -105,28 +251,30 @@ class PayloadSender {
 		final HttpRequest payloadRequest = requestSender.createPayloadSendRequest(payload, new HttpRequest.Listener<HttpRequest>() {
 			@Override
 			public void onFinish(HttpRequest request) {
+				metrics.onRequestFinished(request.getDurationMillis());
 				try {
 					String json = StringUtils.isNullOrEmpty(request.getResponseData()) ? "{}" : request.getResponseData();
 					final JSONObject responseData = new JSONObject(json);
-					handleFinishSendingPayload(payload, false, null, request.getResponseCode(), responseData);
+					handleFinishSendingPayload(payload, false, null, request.getResponseCode(), responseData, -1);
 				} catch (Exception e) {
 					// TODO: Stop assuming the response is JSON. In fact, just send bytes back, and whatever part of the SDK needs it can try to convert it to the desired format.
 					ApptentiveLog.e(PAYLOADS, e, "Exception while handling payload send response");
-					handleFinishSendingPayload(payload, false, null, -1, null);
+					handleFinishSendingPayload(payload, false, null, -1, null, -1);
 				}
 			}
 
 			@Override
 			public void onCancel(HttpRequest request) {
-				handleFinishSendingPayload(payload, true, null, request.getResponseCode(), null);
+				handleFinishSendingPayload(payload, true, null, request.getResponseCode(), null, -1);
 			}
 
 			@Override
 			public void onFail(HttpRequest request, String reason) {
+				metrics.onRequestFinished(request.getDurationMillis());
 				if (request.isAuthenticationFailure()) {
 					ApptentiveNotificationCenter.defaultCenter().postNotification(NOTIFICATION_AUTHENTICATION_FAILED, NOTIFICATION_KEY_CONVERSATION_ID, payload.getConversationId(), NOTIFICATION_KEY_AUTHENTICATION_FAILED_REASON, request.getAuthenticationFailedReason());
 				}
-				handleFinishSendingPayload(payload, false, reason, request.getResponseCode(), null);
+				handleFinishSendingPayload(payload, false, reason, request.getResponseCode(), null, request.getRetryAfterMillis());
 			}
 		});
 
@@ -135,6 +283,121 @@ class PayloadSender {
 		payloadRequest.start();
 	}
 
+	/**
+	 * Creates and sends batch Http-request asynchronously (returns immediately)
+	 */
+	private synchronized void sendPayloadBatchRequest(final PayloadBatch batch) {
+		ApptentiveLog.v(PAYLOADS, "Sending payload batch: %s", batch);
+
+		final HttpRequest batchRequest = requestSender.createPayloadBatchSendRequest(batch, new HttpRequest.Listener<HttpRequest>() {
+			@Override
+			public void onFinish(HttpRequest request) {
+				metrics.onRequestFinished(request.getDurationMillis());
+				Map<String, PayloadBatch.Result> results;
+				try {
+					results = PayloadBatch.parseResults(request.getResponseData());
+				} catch (Exception e) {
+					ApptentiveLog.e(PAYLOADS, e, "Exception while handling payload batch response");
+					handleFinishSendingBatch(batch, null, false, getErrorMessage(e), -1, -1);
+					return;
+				}
+				handleFinishSendingBatch(batch, results, false, null, request.getResponseCode(), -1);
+			}
+
+			@Override
+			public void onCancel(HttpRequest request) {
+				handleFinishSendingBatch(batch, null, true, null, request.getResponseCode(), -1);
+			}
+
+			@Override
+			public void onFail(HttpRequest request, String reason) {
+				metrics.onRequestFinished(request.getDurationMillis());
+				if (request.isAuthenticationFailure()) {
+					ApptentiveNotificationCenter.defaultCenter().postNotification(NOTIFICATION_AUTHENTICATION_FAILED, NOTIFICATION_KEY_CONVERSATION_ID, batch.getConversationId(), NOTIFICATION_KEY_AUTHENTICATION_FAILED_REASON, request.getAuthenticationFailedReason());
+				}
+				handleFinishSendingBatch(batch, null, false, reason, request.getResponseCode(), request.getRetryAfterMillis());
+			}
+		});
+
+		batchRequest.setRetryPolicy(requestRetryPolicy);
+		batchRequest.start();
+	}
+
+	//endregion
+
+	//region Ordering
+
+	/**
+	 * Decides if the payload with the given <code>nonce</code> and <code>type</code> can be sent now.
+	 * Unsent payloads are expected to be checked in the order they were created.
+	 */
+	synchronized SendDecision getSendDecision(String nonce, PayloadType type) {
+		if (sendingExclusiveCount > 0 || activeRequestCount >= maxConcurrentRequests) {
+			return SendDecision.STOP;
+		}
+
+		if (sendingPayloads.containsKey(nonce)) {
+			return SendDecision.SKIP;
+		}
+
+		switch (getSendOrder(type)) {
+			case EXCLUSIVE:
+				return sendingPayloads.isEmpty() ? SendDecision.SEND : SendDecision.STOP;
+			case SERIAL:
+				return sendingSerialCount == 0 ? SendDecision.SEND : SendDecision.SKIP;
+			default:
+				return SendDecision.SEND;
+		}
+	}
+
+	static SendPriority getSendPriority(PayloadType type) {
+		if (getSendOrder(type) == SendOrder.EXCLUSIVE) {
+			return SendPriority.EXCLUSIVE;
+		}
+
+		switch (type) {
+			case message:
+			case survey:
+				return SendPriority.HIGH;
+			case event:
+				return SendPriority.LOW;
+			default:
+				return SendPriority.NORMAL;
+		}
+	}
+
+	static SendOrder getSendOrder(PayloadType type) {
+		switch (type) {
+			case logout:
+				return SendOrder.EXCLUSIVE;
+			case message:
+			case person:
+			case device:
+			case sdk:
+			case app_release:
+			case sdk_and_app_release:
+				return SendOrder.SERIAL;
+			default:
+				return SendOrder.CONCURRENT;
+		}
+	}
+
+	private void markSending(PayloadData payload, boolean sending) {
+		boolean changed = sending ?
+			sendingPayloads.put(payload.getNonce(), payload) == null :
+			sendingPayloads.remove(payload.getNonce()) != null;
+
+		if (changed) {
+			int delta = sending ? 1 : -1;
+			SendOrder order = getSendOrder(payload.getType());
+			if (order == SendOrder.SERIAL) {
+				sendingSerialCount += delta;
+			} else if (order == SendOrder.EXCLUSIVE) {
+				sendingExclusiveCount += delta;
+			}
+		}
+	}
+
 	//endregion
 
 	//region Listener notification
@@ -146,17 +409,104 @@ class PayloadSender {
 	 * @param errorMessage - if not <code>null</code> - payload request failed
 	 * @param responseCode - http-request response code
 	 * @param responseData - http-reqeust response json (or null if failed)
+	 * @param retryAfterMillis - delay requested by the server with a 'Retry-After' header (or -1)
+	 */
+	private synchronized void handleFinishSendingPayload(PayloadData payload, boolean cancelled, String errorMessage, int responseCode, JSONObject responseData, long retryAfterMillis) {
+		try {
+			notifyFinishSending(payload, cancelled, errorMessage, responseCode, responseData, retryAfterMillis);
+		} finally {
+			--activeRequestCount; // free the request slot
+		}
+	}
+
+	/**
+	 * Executed when we're done with the batch request: maps per-payload results back to the payloads
+	 * @param batch        - current batch
+	 * @param results      - per-payload results (or <code>null</code> if the whole request failed)
+	 * @param cancelled    - flag indicating if batch Http-request was cancelled
+	 * @param errorMessage - if not <code>null</code> - batch request failed
+	 * @param responseCode - http-request response code
+	 * @param retryAfterMillis - delay requested by the server with a 'Retry-After' header (or -1)
 	 */
-	private synchronized void handleFinishSendingPayload(PayloadData payload, boolean cancelled, String errorMessage, int responseCode, JSONObject responseData) {
-		sendingFlag = false; // mark sender as 'not busy'
+	private synchronized void handleFinishSendingBatch(PayloadBatch batch, Map<String, PayloadBatch.Result> results, boolean cancelled, String errorMessage, int responseCode, long retryAfterMillis) {
+		try {
+			if (results == null && !cancelled && isClientError(responseCode)) {
+				// the whole request was rejected (the server might not support batch uploads): that's not
+				// a verdict on the payloads themselves so they should be sent again
+				handleRejectedBatch(batch, responseCode);
+				return;
+			}
+
+			for (PayloadData payload : batch.getPayloads()) {
+				if (results == null) {
+					notifyFinishSending(payload, cancelled, errorMessage, responseCode, null, retryAfterMillis);
+					continue;
+				}
+
+				PayloadBatch.Result result = results.get(payload.getNonce());
+				if (result != null) {
+					notifyFinishSending(payload, false, result.getErrorMessage(), result.getResponseCode(), result.getResponseData(), -1);
+				} else {
+					// treat as a connection error so the payload would be sent again
+					notifyFinishSending(payload, false, "Missing payload batch result", -1, null, -1);
+				}
+			}
+		} finally {
+			--activeRequestCount; // free the request slot
+		}
+	}
+
+	private void handleRejectedBatch(PayloadBatch batch, int responseCode) {
+		ApptentiveLog.w(PAYLOADS, "Payload batch request was rejected with response code %d: %s", responseCode, batch);
+
+		for (PayloadData payload : batch.getPayloads()) {
+			metrics.onPayloadSendFinished(payload.getType(), payload.getDataLength(), responseCode, false);
+			markSending(payload, false);
+		}
+
+		try {
+			if (listener != null) {
+				listener.onRejectBatch(this, batch, responseCode);
+			}
+		} catch (Exception e) {
+			ApptentiveLog.e(e, "Exception while notifying payload listener");
+		}
+	}
+
+	private void notifyFinishSending(PayloadData payload, boolean cancelled, String errorMessage, int responseCode, JSONObject responseData, long retryAfterMillis) {
+		if (!cancelled) {
+			metrics.onPayloadSendFinished(payload.getType(), payload.getDataLength(), responseCode, errorMessage == null);
+		}
 
 		try {
 			if (listener != null) {
-				listener.onFinishSending(this, payload, cancelled, errorMessage, responseCode, responseData);
+				listener.onFinishSending(this, payload, cancelled, errorMessage, responseCode, responseData, retryAfterMillis);
 			}
 		} catch (Exception e) {
 			ApptentiveLog.e(e, "Exception while notifying payload listener");
+		} finally {
+			// free the slot only after the listener has handled the payload: otherwise a sent payload might
+			// be picked up again before it's removed from the queue (responses might arrive in any order)
+			markSending(payload, false);
+		}
+	}
+
+	//endregion
+
+	//region Helpers
+
+	private static boolean isClientError(int responseCode) {
+		return responseCode >= 400 && responseCode < 500;
+	}
+
+	private static String getErrorMessage(Exception e) {
+		// for NullPointerException, the message object would be null, we should handle it separately
+		// TODO: add a helper class for handling that
+		String message = e.getMessage();
+		if (message == null) {
+			message = StringUtils.format("%s is thrown", e.getClass().getSimpleName());
 		}
+		return message;
 	}
 
 	//endregion
@@ -164,22 +514,49 @@ class PayloadSender {
 	//region Getters/Setters
 
 	/**
-	 * Returns <code>true</code> if sender is currently busy with a payload
+	 * Returns <code>true</code> if sender is currently busy with at least one payload
 	 */
 	synchronized boolean isSendingPayload() {
-		return sendingFlag;
+		return !sendingPayloads.isEmpty();
+	}
+
+	/**
+	 * Returns <code>true</code> if the payload with the given <code>nonce</code> is being sent
+	 */
+	synchronized boolean isSendingPayload(String nonce) {
+		return sendingPayloads.containsKey(nonce);
+	}
+
+	/**
+	 * Returns <code>true</code> if sender can't accept any more payloads right now
+	 */
+	synchronized boolean isBusy() {
+		return sendingExclusiveCount > 0 || activeRequestCount >= maxConcurrentRequests;
 	}
 
 	public void setListener(Listener listener) {
 		this.listener = listener;
 	}
 
+	void setMetrics(PayloadMetrics metrics) {
+		if (metrics == null) {
+			throw new IllegalArgumentException("Metrics is null");
+		}
+		this.metrics = metrics;
+	}
+
 	//endregion
 
 	//region Listener
 
 	public interface Listener {
-		void onFinishSending(PayloadSender sender, PayloadData payload, boolean cancelled, String errorMessage, int responseCode, JSONObject responseData);
+		void onFinishSending(PayloadSender sender, PayloadData payload, boolean cancelled, String errorMessage, int responseCode, JSONObject responseData, long retryAfterMillis);
+
+		/**
+		 * Called when a batch request was rejected as a whole with a client error. Its payloads are no
+		 * longer in flight and should be sent again (none of them was handled by the server).
+		 */
+		void onRejectBatch(PayloadSender sender, PayloadBatch batch, int responseCode);
 	}
 
 	//endregion
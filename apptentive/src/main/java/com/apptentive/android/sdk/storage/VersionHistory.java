@@ -24,6 +24,13 @@ public class VersionHistory implements Saveable {
 	 */
 	private List<VersionHistoryItem> versionHistoryItems;
 
+	/**
+	 * Cached results of {@link #isUpdateForVersionCode()} and {@link #isUpdateForVersionName()}
+	 * (<code>null</code> until computed: reset each time a new version is added)
+	 */
+	private transient Boolean updateForVersionCode;
+	private transient Boolean updateForVersionName;
+
 	public VersionHistory() {
 		versionHistoryItems = new ArrayList<>();
 	}
@@ -56,6 +63,8 @@ public class VersionHistory implements Saveable {
 		if (!exists) {
 			VersionHistoryItem newVersionHistoryItem = new VersionHistoryItem(timestamp, newVersionCode, newVersionName);
 			versionHistoryItems.add(newVersionHistoryItem);
+			updateForVersionCode = null;
+			updateForVersionName = null;
 			notifyDataChanged();
 		}
 	}
@@ -75,8 +84,15 @@ public class VersionHistory implements Saveable {
 	 * Returns the timestamp at the first install of the current versionCode of this app that Apptentive was aware of.
 	 */
 	public Apptentive.DateTime getTimeAtInstallForCurrentVersionCode() {
+		return getTimeAtInstallForVersionCode(Util.getAppVersionCode(ApptentiveInternal.getInstance().getApplicationContext()));
+	}
+
+	/**
+	 * Returns the timestamp at the first install of a given versionCode of this app that Apptentive was aware of.
+	 */
+	public Apptentive.DateTime getTimeAtInstallForVersionCode(int versionCode) {
 		for (VersionHistoryItem item : versionHistoryItems) {
-			if (item.getVersionCode() == Util.getAppVersionCode(ApptentiveInternal.getInstance().getApplicationContext())) {
+			if (item.getVersionCode() == versionCode) {
 				return new Apptentive.DateTime(item.getTimestamp());
 			}
 		}
@@ -87,11 +103,18 @@ public class VersionHistory implements Saveable {
 	 * Returns the timestamp at the first install of the current versionName of this app that Apptentive was aware of.
 	 */
 	public Apptentive.DateTime getTimeAtInstallForCurrentVersionName() {
+		return getTimeAtInstallForVersionName(Util.getAppVersionName(ApptentiveInternal.getInstance().getApplicationContext()));
+	}
+
+	/**
+	 * Returns the timestamp at the first install of a given versionName of this app that Apptentive was aware of.
+	 */
+	public Apptentive.DateTime getTimeAtInstallForVersionName(String versionName) {
+		Apptentive.Version currentVersionName = new Apptentive.Version();
+		currentVersionName.setVersion(versionName);
 		for (VersionHistoryItem item : versionHistoryItems) {
 			Apptentive.Version entryVersionName = new Apptentive.Version();
-			Apptentive.Version currentVersionName = new Apptentive.Version();
 			entryVersionName.setVersion(item.getVersionName());
-			currentVersionName.setVersion(Util.getAppVersionName(ApptentiveInternal.getInstance().getApplicationContext()));
 			if (entryVersionName.equals(currentVersionName)) {
 				return new Apptentive.DateTime(item.getTimestamp());
 			}
@@ -106,11 +129,16 @@ public class VersionHistory implements Saveable {
 	 * @return True if this is not the first versionCode of the app we've seen.
 	 */
 	public boolean isUpdateForVersionCode() {
-		Set<Integer> uniques = new HashSet<Integer>();
-		for (VersionHistoryItem item : versionHistoryItems) {
-			uniques.add(item.getVersionCode());
+		Boolean result = updateForVersionCode;
+		if (result == null) {
+			Set<Integer> uniques = new HashSet<Integer>();
+			for (VersionHistoryItem item : versionHistoryItems) {
+				uniques.add(item.getVersionCode());
+			}
+			result = uniques.size() > 1;
+			updateForVersionCode = result;
 		}
-		return uniques.size() > 1;
+		return result;
 	}
 
 	/**
@@ -120,11 +148,16 @@ public class VersionHistory implements Saveable {
 	 * @return True if this is not the first versionName of the app we've seen.
 	 */
 	public boolean isUpdateForVersionName() {
-		Set<String> uniques = new HashSet<String>();
-		for (VersionHistoryItem item : versionHistoryItems) {
-			uniques.add(item.getVersionName());
+		Boolean result = updateForVersionName;
+		if (result == null) {
+			Set<String> uniques = new HashSet<String>();
+			for (VersionHistoryItem item : versionHistoryItems) {
+				uniques.add(item.getVersionName());
+			}
+			result = uniques.size() > 1;
+			updateForVersionName = result;
 		}
-		return uniques.size() > 1;
+		return result;
 	}
 
 	public VersionHistoryItem getLastVersionSeen() {
@@ -52,6 +52,16 @@ public class Constants {
 	public static final boolean CONFIG_DEFAULT_MESSAGE_CENTER_ENABLED = false;
 	public static final boolean CONFIG_DEFAULT_MESSAGE_CENTER_NOTIFICATION_POPUP_ENABLED = false;
 	public static final boolean CONFIG_DEFAULT_HIDE_BRANDING = false;
+	public static final int CONFIG_DEFAULT_MAX_CONCURRENT_PAYLOAD_REQUESTS = 4;
+	public static final int CONFIG_DEFAULT_PAYLOAD_BATCH_SIZE = 1; // batch upload is disabled by default
+	public static final int CONFIG_DEFAULT_PAYLOAD_GROUP_COMMIT_WINDOW_MILLIS = 100;
+	public static final int CONFIG_DEFAULT_PAYLOAD_GROUP_COMMIT_MAX_SIZE = 32;
+	public static final long CONFIG_DEFAULT_PAYLOAD_RETRY_TIMEOUT_MILLIS = 5 * 1000;
+	public static final long CONFIG_DEFAULT_PAYLOAD_MAX_RETRY_TIMEOUT_MILLIS = 10 * 60 * 1000;
+	public static final int CONFIG_DEFAULT_PAYLOAD_QUEUE_MAX_ROWS = 5000;
+	public static final long CONFIG_DEFAULT_PAYLOAD_QUEUE_MAX_BYTES = 10 * 1024 * 1024;
+	public static final int CONFIG_DEFAULT_PAYLOAD_FLUSH_JOB_ID = 0x41505446; // job ids are shared with the host app
+	public static final int CONFIG_DEFAULT_REQUEST_COMPRESSION_THRESHOLD = -1; // request compression is disabled by default
 	//endregion
 
 	// region Android Manifest Keys
@@ -62,6 +72,14 @@ public class Constants {
 	public static final String MANIFEST_KEY_SDK_DISTRIBUTION_VERSION = "apptentive_sdk_distribution_version";
 	public static final String MANIFEST_KEY_INITIALLY_HIDE_BRANDING = "apptentive_initially_hide_branding";
 	public static final String MANIFEST_KEY_APPTENTIVE_DEBUG = "apptentive_debug";
+	public static final String MANIFEST_KEY_MAX_CONCURRENT_PAYLOAD_REQUESTS = "apptentive_max_concurrent_payload_requests";
+	public static final String MANIFEST_KEY_PAYLOAD_BATCH_SIZE = "apptentive_payload_batch_size";
+	public static final String MANIFEST_KEY_PAYLOAD_GROUP_COMMIT_WINDOW_MILLIS = "apptentive_payload_group_commit_window_millis";
+	public static final String MANIFEST_KEY_PAYLOAD_GROUP_COMMIT_MAX_SIZE = "apptentive_payload_group_commit_max_size";
+	public static final String MANIFEST_KEY_PAYLOAD_QUEUE_MAX_ROWS = "apptentive_payload_queue_max_rows";
+	public static final String MANIFEST_KEY_PAYLOAD_QUEUE_MAX_BYTES = "apptentive_payload_queue_max_bytes";
+	public static final String MANIFEST_KEY_PAYLOAD_FLUSH_JOB_ID = "apptentive_payload_flush_job_id";
+	public static final String MANIFEST_KEY_REQUEST_COMPRESSION_THRESHOLD = "apptentive_request_compression_threshold";
 	//endregion
 
 	//region Database and File Storage
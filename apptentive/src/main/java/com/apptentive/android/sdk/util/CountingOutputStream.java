@@ -29,12 +29,6 @@ public class CountingOutputStream extends BufferedOutputStream {
 		super.write(i);
 	}
 
-	@Override
-	public void write(byte[] buffer) throws IOException {
-		bytesWritten += buffer.length;
-		super.write(buffer);
-	}
-
 	@Override
 	public void write(byte[] buffer, int offset, int count) throws IOException {
 		bytesWritten += count;
@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2017, Apptentive, Inc. All Rights Reserved.
+ * Please refer to the LICENSE file for the terms and conditions
+ * under which redistribution and use of this file is permitted.
+ */
+
+package com.apptentive.android.sdk.util;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Passes everything to the wrapped OutputStream but only flushes it on close. Useful when a part of
+ * a larger stream is handed over to code which closes its output when done.
+ */
+public class NonClosingOutputStream extends FilterOutputStream {
+
+	public NonClosingOutputStream(OutputStream out) {
+		super(out);
+		if (out == null) {
+			throw new IllegalArgumentException("Output stream is null");
+		}
+	}
+
+	@Override
+	public void write(byte[] buffer, int offset, int count) throws IOException {
+		out.write(buffer, offset, count); // FilterOutputStream writes byte by byte
+	}
+
+	@Override
+	public void close() throws IOException {
+		flush();
+	}
+}
@@ -13,6 +13,7 @@ import android.content.ComponentName;
 import android.content.Context;
 import android.content.ContextWrapper;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.content.res.Resources;
@@ -27,6 +28,7 @@ import android.graphics.drawable.StateListDrawable;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.net.Uri;
+import android.os.BatteryManager;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Environment;
@@ -102,6 +104,25 @@ public class Util {
 		return false;
 	}
 
+	/**
+	 * Returns <code>true</code> if the device is running on a low battery (the same 15% threshold the
+	 * system uses for its low battery warning)
+	 */
+	public static boolean isBatteryLow(Context context) {
+		Intent battery = context.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+		if (battery == null) {
+			return false;
+		}
+
+		if (battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0) {
+			return false; // charging
+		}
+
+		int level = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+		int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+		return level >= 0 && scale > 0 && level * 100 < scale * 15;
+	}
+
 	public static void ensureClosed(Closeable stream) {
 		if (stream != null) {
 			try {
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2017, Apptentive, Inc. All Rights Reserved.
+ * Please refer to the LICENSE file for the terms and conditions
+ * under which redistribution and use of this file is permitted.
+ */
+
+package com.apptentive.android.sdk.module.engagement;
+
+import android.content.ContextWrapper;
+import android.content.Intent;
+
+import com.apptentive.android.sdk.Apptentive;
+import com.apptentive.android.sdk.ApptentiveInternal;
+import com.apptentive.android.sdk.ApptentiveInternalMock;
+import com.apptentive.android.sdk.TestCaseBase;
+import com.apptentive.android.sdk.conversation.Conversation;
+import com.apptentive.android.sdk.model.Payload;
+import com.apptentive.android.sdk.module.engagement.interaction.model.Interaction;
+import com.apptentive.android.sdk.storage.EventData;
+import com.apptentive.android.sdk.util.threading.MockDispatchQueue;
+
+import org.json.JSONException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+public class EngagementModuleAsyncTest extends TestCaseBase {
+	private static final String EVENT_SHOW = "show";
+	private static final String EVENT_CRASH = "crash";
+
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+
+	private MockDispatchQueue mainQueue;
+	private MockDispatchQueue engagementQueue;
+	private MockContext context;
+	private Conversation activeConversation;
+
+	@Before
+	public void setUp() {
+		super.setUp();
+
+		mainQueue = MockDispatchQueue.overrideMainQueue(false);
+		engagementQueue = MockDispatchQueue.overrideQueue(EngagementModule.class.getName() + "$EngagementQueueHolder", "QUEUE", false);
+		context = new MockContext();
+
+		ApptentiveInternal.setInstance(new ApptentiveInternalMock() {
+			@Override
+			public int getApplicationVersionCode() {
+				return 10;
+			}
+
+			@Override
+			public String getApplicationVersionName() {
+				return "1.0";
+			}
+
+			@Override
+			public Conversation getConversation() {
+				return activeConversation;
+			}
+		});
+	}
+
+	@After
+	public void tearDown() {
+		super.tearDown();
+		ApptentiveInternal.setInstance(null);
+	}
+
+	@Test
+	public void testEventsAreRecordedInOrder() throws Exception {
+		Conversation conversation = createConversation();
+		activeConversation = conversation;
+
+		engageAsync(conversation, "first");
+		engageAsync(conversation, "second");
+		engageAsync(conversation, "third");
+		assertResult(); // nothing is recorded on the calling thread
+
+		engagementQueue.dispatchTasks();
+		assertResult("event: local#app#first", "event: local#app#second", "event: local#app#third");
+
+		mainQueue.dispatchTasks();
+		assertResult("callback: first false", "callback: second false", "callback: third false");
+	}
+
+	@Test
+	public void testInteractionIsLaunched() throws Exception {
+		Conversation conversation = createConversation();
+		activeConversation = conversation;
+
+		engageAsync(conversation, EVENT_SHOW);
+		engagementQueue.dispatchTasks();
+		assertResult("event: local#app#show");
+
+		// the interaction is launched on the main queue
+		mainQueue.dispatchTasks();
+		assertResult("launch", "callback: show true");
+	}
+
+	@Test
+	public void testInteractionIsNotLaunchedForInactiveConversation() throws Exception {
+		Conversation conversation = createConversation();
+		activeConversation = conversation;
+
+		engageAsync(conversation, EVENT_SHOW);
+		engagementQueue.dispatchTasks();
+		assertResult("event: local#app#show");
+
+		// logout while the main queue task is pending
+		activeConversation = createConversation();
+
+		mainQueue.dispatchTasks();
+		assertResult("callback: show false");
+	}
+
+	@Test
+	public void testCallbackIsInvokedOnError() throws Exception {
+		Conversation conversation = createConversation();
+		activeConversation = conversation;
+
+		engageAsync(conversation, EVENT_CRASH);
+		engageAsync(conversation, EVENT_SHOW);
+		engagementQueue.dispatchTasks();
+		assertResult("event: local#app#crash", "event: local#app#show");
+
+		mainQueue.dispatchTasks();
+		assertResult("callback: crash false", "launch", "callback: show true");
+	}
+
+	//region Helpers
+
+	private void engageAsync(Conversation conversation, final String eventName) {
+		EngagementModule.engageAsync(context, conversation, "local", "app", null, eventName, null, null, new Apptentive.EngageCallback() {
+			@Override
+			public void onEngageFinished(boolean interactionShown) {
+				addResult("callback: %s %b", eventName, interactionShown);
+			}
+		});
+	}
+
+	private Conversation createConversation() throws IOException {
+		return new MockConversation(tempFolder.newFile(), tempFolder.newFile());
+	}
+
+	//endregion
+
+	//region Mocks
+
+	private class MockConversation extends Conversation {
+		private final EventData eventData = new EventData() {
+			@Override
+			public synchronized void storeEventForCurrentAppVersion(double timestamp, int versionCode, String versionName, String eventLabel) {
+				addResult("event: %s", eventLabel);
+			}
+
+			@Override
+			public synchronized void storeInteractionForCurrentAppVersion(double timestamp, int versionCode, String versionName, String interactionId) {
+			}
+		};
+
+		MockConversation(File conversationDataFile, File conversationMessagesFile) {
+			super(conversationDataFile, conversationMessagesFile);
+		}
+
+		@Override
+		public EventData getEventData() {
+			return eventData;
+		}
+
+		@Override
+		public void addPayload(Payload payload) {
+		}
+
+		@Override
+		public Interaction getApplicableInteraction(String eventLabel) {
+			if (eventLabel.equals(EngagementModule.generateEventLabel("local", "app", EVENT_CRASH))) {
+				throw new RuntimeException("Unable to evaluate criteria");
+			}
+			if (eventLabel.equals(EngagementModule.generateEventLabel("local", "app", EVENT_SHOW))) {
+				try {
+					return new MockInteraction();
+				} catch (JSONException e) {
+					throw new AssertionError(e);
+				}
+			}
+			return null;
+		}
+	}
+
+	private static class MockInteraction extends Interaction {
+		MockInteraction() throws JSONException {
+			super("{}");
+		}
+
+		@Override
+		public String getId() {
+			return "1";
+		}
+
+		@Override
+		public Type getType() {
+			return Type.TextModal;
+		}
+	}
+
+	private class MockContext extends ContextWrapper {
+		MockContext() {
+			super(null);
+		}
+
+		@Override
+		public void startActivity(Intent intent) {
+			addResult("launch");
+		}
+	}
+
+	//endregion
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2017, Apptentive, Inc. All Rights Reserved.
+ * Please refer to the LICENSE file for the terms and conditions
+ * under which redistribution and use of this file is permitted.
+ */
+
+package com.apptentive.android.sdk.module.engagement;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+
+import com.apptentive.android.sdk.ApptentiveInternal;
+import com.apptentive.android.sdk.ApptentiveInternalMock;
+import com.apptentive.android.sdk.ApptentiveLog;
+import com.apptentive.android.sdk.conversation.Conversation;
+import com.apptentive.android.sdk.model.ExtendedData;
+import com.apptentive.android.sdk.model.Payload;
+import com.apptentive.android.sdk.storage.ApptentiveTaskManager;
+import com.apptentive.android.sdk.util.threading.DispatchQueue;
+import com.apptentive.android.sdk.util.threading.MockDispatchQueue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.objenesis.ObjenesisStd;
+
+import static com.apptentive.android.sdk.util.AllocationTracker.measureAllocatedBytes;
+import static org.junit.Assert.*;
+
+public class EngagementModuleTest {
+
+	/**
+	 * Maximum number of bytes allocated by an engage() call which doesn't show an interaction
+	 * (the payload object itself is the only allocation left).
+	 */
+	private static final long ENGAGE_ALLOCATION_CEILING = 128;
+
+	private static final int ITERATIONS = 10000;
+
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+
+	private MockTaskManager taskManager;
+
+	@Before
+	public void setUp() {
+		// conversation data is saved on the background queue
+		MockDispatchQueue.overrideQueue(DispatchQueue.class.getName() + "$Holder", "BACKGROUND_QUEUE", false);
+
+		taskManager = new ObjenesisStd().newInstance(MockTaskManager.class);
+		ApptentiveInternal.setInstance(new ApptentiveInternalMock() {
+			@Override
+			public int getApplicationVersionCode() {
+				return 10;
+			}
+
+			@Override
+			public String getApplicationVersionName() {
+				return "1.0";
+			}
+
+			@Override
+			public ApptentiveTaskManager getApptentiveTaskManager() {
+				return taskManager;
+			}
+		});
+	}
+
+	@After
+	public void tearDown() {
+		ApptentiveInternal.setInstance(null);
+		ApptentiveLog.overrideLogLevel(ApptentiveLog.Level.DEFAULT);
+	}
+
+	@Test
+	public void testEventLabel() {
+		assertEquals("local#app#event", EngagementModule.generateEventLabel("local", "app", "event"));
+		assertEquals("com.apptentive#Survey#submit", EngagementModule.generateEventLabel("com.apptentive", "Survey", "submit"));
+		assertEquals("local#app#100%25 %2Fpath%2F %23hash", EngagementModule.generateEventLabel("local", "app", "100% /path/ #hash"));
+
+		// labels are cached
+		String label = EngagementModule.generateEventLabel("local", "app", "cached");
+		assertSame(label, EngagementModule.generateEventLabel("local", "app", new String("cached")));
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testEventLabelNull() {
+		EngagementModule.generateEventLabel("local", "app", null);
+	}
+
+	@Test
+	public void testEventLabelCacheSize() {
+		for (int i = 0; i < 2000; ++i) {
+			assertEquals("local#app#event-" + i, EngagementModule.generateEventLabel("local", "app", "event-" + i));
+		}
+	}
+
+	@Test
+	public void testNoInteractionAllocationCeiling() throws Exception {
+		ApptentiveLog.overrideLogLevel(ApptentiveLog.Level.INFO);
+
+		// a conversation without any interactions to show
+		final Conversation conversation = new Conversation(tempFolder.newFile(), tempFolder.newFile());
+		final Context context = new ContextWrapper(null);
+		final ExtendedData[] extendedData = new ExtendedData[0];
+
+		long bytes = measureAllocatedBytes(new Runnable() {
+			@Override
+			public void run() {
+				for (int i = 0; i < ITERATIONS; ++i) {
+					boolean interactionShown = EngagementModule.engage(context, conversation, "local", "app", null, "event", null, null, extendedData);
+					assertFalse(interactionShown);
+				}
+			}
+		});
+
+		long bytesPerEngage = bytes / ITERATIONS;
+		System.out.println(String.format("engage() without interaction: %d bytes per call", bytesPerEngage));
+		assertTrue("Allocated " + bytesPerEngage + " bytes per engage() call", bytesPerEngage <= ENGAGE_ALLOCATION_CEILING);
+		assertTrue(taskManager.getPayloadCount() > 0);
+	}
+
+	//region Mocks
+
+	/**
+	 * Accepts payloads without writing them to the database (the database isn't available in unit
+	 * tests). Instantiated with Objenesis so the constructor which needs a real Android context is
+	 * never invoked.
+	 */
+	private static class MockTaskManager extends ApptentiveTaskManager {
+		private int payloadCount;
+
+		private MockTaskManager() {
+			super(null, null);
+		}
+
+		@Override
+		public void addPayload(Payload payload) {
+			++payloadCount;
+		}
+
+		int getPayloadCount() {
+			return payloadCount;
+		}
+	}
+
+	//endregion
+}
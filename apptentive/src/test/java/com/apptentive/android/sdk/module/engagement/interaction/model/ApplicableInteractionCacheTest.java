@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2017, Apptentive, Inc. All Rights Reserved.
+ * Please refer to the LICENSE file for the terms and conditions
+ * under which redistribution and use of this file is permitted.
+ */
+
+package com.apptentive.android.sdk.module.engagement.interaction.model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ApplicableInteractionCacheTest {
+
+	@Test
+	public void testCachedValue() {
+		ApplicableInteractionCache cache = new ApplicableInteractionCache();
+		assertNull(cache.get("event", 0));
+
+		cache.put("event", true, Double.POSITIVE_INFINITY, cache.getGeneration());
+		cache.put("other", false, Double.POSITIVE_INFINITY, cache.getGeneration());
+		assertEquals(Boolean.TRUE, cache.get("event", 0));
+		assertEquals(Boolean.FALSE, cache.get("other", 0));
+		assertEquals(Boolean.TRUE, cache.get("event", Double.MAX_VALUE));
+	}
+
+	@Test
+	public void testInvalidate() {
+		ApplicableInteractionCache cache = new ApplicableInteractionCache();
+		cache.put("event", true, Double.POSITIVE_INFINITY, cache.getGeneration());
+		cache.invalidate();
+		assertNull(cache.get("event", 0));
+	}
+
+	@Test
+	public void testTimeBoundary() {
+		ApplicableInteractionCache cache = new ApplicableInteractionCache();
+		cache.put("event", true, 100, cache.getGeneration());
+		assertEquals(Boolean.TRUE, cache.get("event", 99.9));
+		assertNull(cache.get("event", 100));
+		assertNull(cache.get("event", 99.9)); // expired entry is removed
+	}
+
+	@Test
+	public void testStaleGeneration() {
+		ApplicableInteractionCache cache = new ApplicableInteractionCache();
+
+		long generation = cache.getGeneration();
+		cache.invalidate(); // data changed while criteria were evaluated
+		cache.put("event", true, Double.POSITIVE_INFINITY, generation);
+		assertNull(cache.get("event", 0));
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2017, Apptentive, Inc. All Rights Reserved.
+ * Please refer to the LICENSE file for the terms and conditions
+ * under which redistribution and use of this file is permitted.
+ */
+
+package com.apptentive.android.sdk.module.engagement.interaction.model;
+
+import org.json.JSONException;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class InteractionRegistryTest {
+
+	@Test
+	public void testRegister() throws JSONException {
+		InteractionRegistry registry = new InteractionRegistry();
+		Interaction first = new MockInteraction("1");
+		Interaction second = new MockInteraction("2");
+
+		long firstGeneration = registry.register(first);
+		long secondGeneration = registry.register(second);
+		assertNotEquals(firstGeneration, secondGeneration);
+
+		assertSame(first, registry.get("1", firstGeneration));
+		assertSame(second, registry.get("2", secondGeneration));
+		assertSame(first, registry.get("1", firstGeneration)); // can be resolved more than once (configuration changes)
+	}
+
+	@Test
+	public void testMismatch() throws JSONException {
+		InteractionRegistry registry = new InteractionRegistry();
+		long generation = registry.register(new MockInteraction("1"));
+
+		assertNull(registry.get("2", generation));
+		assertNull(registry.get("1", generation + 1));
+		assertNull(registry.get(null, generation));
+	}
+
+	@Test
+	public void testEviction() throws JSONException {
+		InteractionRegistry registry = new InteractionRegistry();
+		Interaction first = new MockInteraction("first");
+		long firstGeneration = registry.register(first);
+
+		for (int i = 0; i < 100; ++i) {
+			registry.register(new MockInteraction("interaction-" + i));
+		}
+		assertNull(registry.get("first", firstGeneration));
+
+		long lastGeneration = registry.register(first);
+		assertSame(first, registry.get("first", lastGeneration));
+	}
+
+	private static class MockInteraction extends Interaction {
+		private final String id;
+
+		MockInteraction(String id) throws JSONException {
+			super("{}");
+			this.id = id;
+		}
+
+		@Override
+		public String getId() {
+			return id;
+		}
+	}
+}
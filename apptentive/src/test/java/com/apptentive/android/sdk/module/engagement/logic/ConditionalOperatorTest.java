@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2017, Apptentive, Inc. All Rights Reserved.
+ * Please refer to the LICENSE file for the terms and conditions
+ * under which redistribution and use of this file is permitted.
+ */
+
+package com.apptentive.android.sdk.module.engagement.logic;
+
+import com.apptentive.android.sdk.Apptentive;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static com.apptentive.android.sdk.module.engagement.logic.ConditionalOperator.*;
+import static com.apptentive.android.sdk.util.AllocationTracker.measureAllocatedBytes;
+import static org.junit.Assert.*;
+
+public class ConditionalOperatorTest {
+
+	private static final int ITERATIONS = 100000;
+
+	/**
+	 * Maximum number of bytes allocated by a single clause evaluation (leaves room for the JIT and
+	 * the allocation counter noise)
+	 */
+	private static final long CLAUSE_ALLOCATION_CEILING = 16;
+
+	private static int sink; // keeps the benchmark results alive
+
+	private final FieldContext context = new FieldContext(null, 1, "1.0", false, 2000);
+
+	//region Numbers
+
+	@Test
+	public void testParseValue() {
+		assertEquals(Long.valueOf(10), ClauseParser.parseValue(10));
+		assertEquals(Long.valueOf(10), ClauseParser.parseValue((short) 10));
+		assertEquals(Long.valueOf(10), ClauseParser.parseValue(10L));
+		assertEquals(Double.valueOf(1.5), ClauseParser.parseValue(1.5f));
+		assertEquals(Double.valueOf(1.5), ClauseParser.parseValue(1.5));
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public void testParseValueNaN() {
+		ClauseParser.parseValue(Double.NaN);
+	}
+
+	@Test
+	public void testLongComparison() {
+		assertTrue($eq.apply(context, 5L, 5L));
+		assertTrue($ne.apply(context, 5L, 6L));
+		assertTrue($lt.apply(context, Long.MIN_VALUE, Long.MAX_VALUE));
+		assertTrue($lte.apply(context, 5L, 5L));
+		assertTrue($gt.apply(context, 6L, 5L));
+		assertTrue($gte.apply(context, 5L, 5L));
+		assertFalse($gt.apply(context, 5L, 5L));
+	}
+
+	@Test
+	public void testMixedComparison() {
+		assertTrue($eq.apply(context, 5L, 5.0));
+		assertTrue($eq.apply(context, 5.0, 5L));
+		assertTrue($eq.apply(context, 0L, -0.0));
+		assertTrue($lt.apply(context, 5L, 5.5));
+		assertTrue($gt.apply(context, 5L, 4.5));
+		assertTrue($lt.apply(context, -5L, -4.5));
+		assertTrue($gt.apply(context, -5L, -5.5));
+		assertTrue($gt.apply(context, 5.5, 5L));
+
+		// values which can't be distinguished after a conversion to double
+		assertTrue($gt.apply(context, Long.MAX_VALUE, 9.223372036854775E18));
+		assertTrue($lt.apply(context, Long.MAX_VALUE, 0x1p63));
+		assertTrue($eq.apply(context, Long.MIN_VALUE, -0x1p63));
+		assertTrue($gt.apply(context, 9007199254740993L, 9007199254740992.0));
+		assertTrue($ne.apply(context, 9007199254740993L, 9007199254740992.0));
+	}
+
+	@Test
+	public void testDoubleComparison() {
+		assertTrue($eq.apply(context, 0.0, -0.0));
+		assertTrue($lt.apply(context, 1.25, 1.5));
+		assertTrue($gte.apply(context, 1.5, 1.5));
+	}
+
+	@Test
+	public void testBigDecimalComparison() {
+		assertTrue($eq.apply(context, new BigDecimal(5), 5L));
+		assertTrue($lt.apply(context, 5.0, new BigDecimal("5.1")));
+	}
+
+	@Test
+	public void testIncompatibleTypes() {
+		assertFalse($eq.apply(context, 5L, "5"));
+		assertFalse($ne.apply(context, 5L, "5"));
+		assertFalse($lt.apply(context, 5L, new Apptentive.Version(6)));
+		assertFalse($eq.apply(context, 1L, true));
+	}
+
+	@Test
+	public void testBeforeAfter() {
+		Apptentive.DateTime past = new Apptentive.DateTime(1000);
+		assertTrue($before.apply(context, past, 0L));
+		assertTrue($before.apply(context, past, -0.5));
+		assertFalse($after.apply(context, past, 0L));
+		assertFalse($before.apply(context, past, "0"));
+
+		// the context time is used instead of the wall clock
+		Apptentive.DateTime future = new Apptentive.DateTime(3000);
+		assertTrue($after.apply(context, future, 0L));
+		assertTrue($after.apply(context, future, 999L));
+		assertFalse($after.apply(context, future, 1000L));
+		assertTrue($before.apply(context, future, 1001L));
+	}
+
+	//endregion
+
+	//region Versions
+
+	@Test
+	public void testVersionComparison() {
+		assertTrue($lt.apply(context, version("1.0.9"), version("1.0.10")));
+		assertTrue($eq.apply(context, version("1.0"), version("1.0.0")));
+		assertTrue($eq.apply(context, version("1.0."), version("1")));
+		assertTrue($gt.apply(context, version("5"), version("1.2.3")));
+		assertTrue($lt.apply(context, version("0"), version("0.1")));
+	}
+
+	@Test
+	public void testVersionComponents() {
+		String[] versions = {
+			"0", "1.2.3", "01.002", "1.0.", "1..", "...", "+1.-2", "9223372036854775807.-9223372036854775808",
+			"", ".1", "1..2", "1.a", "1.-", "9223372036854775808", "1.2 ", "1.0-rc2"
+		};
+		String[] others = { "0", "1", "1.2.3", "9223372036854775807" };
+		for (String version : versions) {
+			for (String other : others) {
+				assertEquals(version + " vs " + other, compare(version, other), compareLegacyResult(version, other));
+				assertEquals(other + " vs " + version, compare(other, version), compareLegacyResult(other, version));
+			}
+		}
+	}
+
+	@Test
+	public void testVersionSetter() {
+		Apptentive.Version version = version("1.0");
+		assertTrue($lt.apply(context, version, version("2.0")));
+
+		version.setVersion("3.0");
+		assertTrue($gt.apply(context, version, version("2.0")));
+	}
+
+	private static Apptentive.Version version(String value) {
+		Apptentive.Version version = new Apptentive.Version();
+		version.setVersion(value);
+		return version;
+	}
+
+	private static String compare(String first, String second) {
+		try {
+			return String.valueOf(version(first).compareTo(version(second)));
+		} catch (NumberFormatException e) {
+			return "error";
+		}
+	}
+
+	private static String compareLegacyResult(String first, String second) {
+		try {
+			return String.valueOf(compareLegacy(first, second));
+		} catch (NumberFormatException e) {
+			return "error";
+		}
+	}
+
+	/**
+	 * The way versions were compared before the components were cached
+	 */
+	private static int compareLegacy(String thisVersion, String thatVersion) {
+		String[] thisArray = thisVersion.split("\\.");
+		String[] thatArray = thatVersion.split("\\.");
+		for (int i = 0; i < Math.max(thisArray.length, thatArray.length); i++) {
+			long left = thisArray.length > i ? Long.parseLong(thisArray[i]) : 0;
+			long right = thatArray.length > i ? Long.parseLong(thatArray[i]) : 0;
+			if (left != right) {
+				return left < right ? -1 : 1;
+			}
+		}
+		return 0;
+	}
+
+	//endregion
+
+	//region Allocations
+
+	@Test
+	public void testNumericAllocations() {
+		final Comparable parameter = (Comparable) ClauseParser.parseValue(10);
+
+		long legacyBytes = measureAllocatedBytes(new Runnable() {
+			@Override
+			public void run() {
+				// BigDecimal based evaluation: both the field and the parameter were converted
+				for (int i = 0; i < ITERATIONS; ++i) {
+					BigDecimal field = new BigDecimal(Long.valueOf(i & 15));
+					sink += field.compareTo(new BigDecimal(10)) <= 0 ? 1 : 0;
+				}
+			}
+		});
+		long bytes = measureAllocatedBytes(new Runnable() {
+			@Override
+			public void run() {
+				for (int i = 0; i < ITERATIONS; ++i) {
+					Comparable field = (Comparable) ClauseParser.parseValue(Long.valueOf(i & 15));
+					sink += $lte.apply(context, field, parameter) ? 1 : 0;
+				}
+			}
+		});
+
+		System.out.println(String.format("Numeric comparison: %d bytes per clause (BigDecimal: %d bytes per clause)", bytes / ITERATIONS, legacyBytes / ITERATIONS));
+		assertTrue(bytes < legacyBytes);
+		assertTrue("Allocated " + bytes / ITERATIONS + " bytes per clause", bytes / ITERATIONS <= CLAUSE_ALLOCATION_CEILING);
+	}
+
+	@Test
+	public void testVersionAllocations() {
+		final Apptentive.Version field = version("5.10.2");
+		final Apptentive.Version parameter = version("5.10.3");
+
+		long legacyBytes = measureAllocatedBytes(new Runnable() {
+			@Override
+			public void run() {
+				for (int i = 0; i < ITERATIONS; ++i) {
+					sink += compareLegacy(field.getVersion(), parameter.getVersion()) < 0 ? 1 : 0;
+				}
+			}
+		});
+		long bytes = measureAllocatedBytes(new Runnable() {
+			@Override
+			public void run() {
+				for (int i = 0; i < ITERATIONS; ++i) {
+					sink += $lt.apply(context, field, parameter) ? 1 : 0;
+				}
+			}
+		});
+
+		System.out.println(String.format("Version comparison: %d bytes per clause (String.split(): %d bytes per clause)", bytes / ITERATIONS, legacyBytes / ITERATIONS));
+		assertTrue(bytes < legacyBytes);
+		assertTrue("Allocated " + bytes / ITERATIONS + " bytes per clause", bytes / ITERATIONS <= CLAUSE_ALLOCATION_CEILING);
+	}
+
+	//endregion
+}
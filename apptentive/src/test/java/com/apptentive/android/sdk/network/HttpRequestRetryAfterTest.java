@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2017, Apptentive, Inc. All Rights Reserved.
+ * Please refer to the LICENSE file for the terms and conditions
+ * under which redistribution and use of this file is permitted.
+ */
+
+package com.apptentive.android.sdk.network;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class HttpRequestRetryAfterTest {
+
+	// Wed, 21 Oct 2015 07:28:00 GMT
+	private static final long CURRENT_TIME_MILLIS = 1445412480000L;
+
+	@Test
+	public void testDeltaSeconds() {
+		assertEquals(120000, HttpRequest.parseRetryAfterMillis("120", CURRENT_TIME_MILLIS));
+		assertEquals(0, HttpRequest.parseRetryAfterMillis("0", CURRENT_TIME_MILLIS));
+		assertEquals(5000, HttpRequest.parseRetryAfterMillis(" 5 ", CURRENT_TIME_MILLIS));
+	}
+
+	@Test
+	public void testHttpDate() {
+		assertEquals(60000, HttpRequest.parseRetryAfterMillis("Wed, 21 Oct 2015 07:29:00 GMT", CURRENT_TIME_MILLIS));
+
+		// dates in the past mean 'retry now'
+		assertEquals(0, HttpRequest.parseRetryAfterMillis("Wed, 21 Oct 2015 07:27:00 GMT", CURRENT_TIME_MILLIS));
+	}
+
+	@Test
+	public void testInvalidValues() {
+		assertEquals(-1, HttpRequest.parseRetryAfterMillis(null, CURRENT_TIME_MILLIS));
+		assertEquals(-1, HttpRequest.parseRetryAfterMillis("", CURRENT_TIME_MILLIS));
+		assertEquals(-1, HttpRequest.parseRetryAfterMillis("-10", CURRENT_TIME_MILLIS));
+		assertEquals(-1, HttpRequest.parseRetryAfterMillis("tomorrow", CURRENT_TIME_MILLIS));
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2017, Apptentive, Inc. All Rights Reserved.
+ * Please refer to the LICENSE file for the terms and conditions
+ * under which redistribution and use of this file is permitted.
+ */
+
+package com.apptentive.android.sdk.storage;
+
+import com.apptentive.android.sdk.encryption.Encryptor;
+import com.apptentive.android.sdk.util.Util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.ObjectInputStream;
+import java.util.HashMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class EncryptedFileSerializerTest {
+	private static final String ENCRYPTION_KEY = "5C5361D08DA7AD6CD70ACEB572D387BB713A312DE8CE6128B8A42F62A7B381DB";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testSerialization() throws Exception {
+		File file = new File(folder.getRoot(), "conversation.bin");
+		HashMap<String, String> expected = createObject();
+
+		new EncryptedFileSerializer(file, ENCRYPTION_KEY).serialize(expected);
+		Object actual = new EncryptedFileSerializer(file, ENCRYPTION_KEY).deserialize();
+
+		assertEquals(expected, actual);
+	}
+
+	@Test
+	public void testFileFormat() throws Exception {
+		File file = new File(folder.getRoot(), "conversation.bin");
+		HashMap<String, String> expected = createObject();
+
+		// streamed file can be decrypted as a whole
+		new EncryptedFileSerializer(file, ENCRYPTION_KEY).serialize(expected);
+		byte[] plainText = new Encryptor(ENCRYPTION_KEY).decrypt(Util.readBytes(file));
+		ObjectInputStream stream = new ObjectInputStream(new ByteArrayInputStream(plainText));
+		try {
+			assertEquals(expected, stream.readObject());
+		} finally {
+			stream.close();
+		}
+	}
+
+	@Test(expected = SerializerException.class)
+	public void testWrongKey() throws Exception {
+		File file = new File(folder.getRoot(), "conversation.bin");
+		new EncryptedFileSerializer(file, ENCRYPTION_KEY).serialize(createObject());
+		new EncryptedFileSerializer(file, "00000000000000000000000000000000000000000000000000000000000000FF").deserialize();
+	}
+
+	@Test
+	public void testFailedSerializationKeepsFile() throws Exception {
+		File file = new File(folder.getRoot(), "conversation.bin");
+		HashMap<String, String> expected = createObject();
+		new EncryptedFileSerializer(file, ENCRYPTION_KEY).serialize(expected);
+
+		try {
+			new EncryptedFileSerializer(file, ENCRYPTION_KEY).serialize(new Object()); // not serializable
+			fail("Serialization should fail");
+		} catch (SerializerException e) {
+			// expected
+		}
+
+		assertEquals(expected, new EncryptedFileSerializer(file, ENCRYPTION_KEY).deserialize());
+		assertArrayEquals(new String[] { "conversation.bin" }, folder.getRoot().list()); // no temporary files left
+	}
+
+	private static HashMap<String, String> createObject() {
+		HashMap<String, String> object = new HashMap<>();
+		for (int i = 0; i < 1000; ++i) {
+			object.put("key-" + i, "value-" + i);
+		}
+		return object;
+	}
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2017, Apptentive, Inc. All Rights Reserved.
+ * Please refer to the LICENSE file for the terms and conditions
+ * under which redistribution and use of this file is permitted.
+ */
+
+package com.apptentive.android.sdk.storage;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class EventDataTest {
+
+	/**
+	 * EventData serialized by the previous SDK version (maps of EventRecord objects):
+	 * "local#app#init" x2 for 10/"1.0" and x1 for 11/"1.1" (last at 300), and interaction
+	 * "526fe2836dd8bf546a00000b" x1 for 11/"1.1" (last at 250).
+	 */
+	private static final String LEGACY_EVENT_DATA =
+		"aced00057372002c636f6d2e61707074656e746976652e616e64726f69642e73646b2e73746f726167652e4576656e74" +
+		"4461746100000000000000010200024c00066576656e747374000f4c6a6176612f7574696c2f4d61703b4c000c696e74" +
+		"6572616374696f6e7371007e00017870737200116a6176612e7574696c2e486173684d61700507dac1c31660d1030002" +
+		"46000a6c6f6164466163746f724900097468726573686f6c6478703f4000000000000c7708000000100000000174000e" +
+		"6c6f63616c2361707023696e69747372002e636f6d2e61707074656e746976652e616e64726f69642e73646b2e73746f" +
+		"726167652e4576656e745265636f7264b7e05b94bf6ac1a80200044400046c6173744a0005746f74616c4c000c766572" +
+		"73696f6e436f64657371007e00014c000c76657273696f6e4e616d657371007e000178704072c0000000000000000000" +
+		"000000037371007e00033f4000000000000c77080000001000000002737200116a6176612e6c616e672e496e74656765" +
+		"7212e2a0a4f781873802000149000576616c7565787200106a6176612e6c616e672e4e756d62657286ac951d0b94e08b" +
+		"02000078700000000a7372000e6a6176612e6c616e672e4c6f6e673b8be490cc8f23df0200014a000576616c75657871" +
+		"007e000a00000000000000027371007e00090000000b7371007e000c0000000000000001787371007e00033f40000000" +
+		"00000c77080000001000000002740003312e3071007e000d740003312e3171007e000f78787371007e00033f40000000" +
+		"00000c770800000010000000017400183532366665323833366464386266353436613030303030627371007e0006406f" +
+		"40000000000000000000000000017371007e00033f4000000000000c7708000000100000000171007e000e71007e000f" +
+		"787371007e00033f4000000000000c7708000000100000000171007e001271007e000f7878";
+
+	@Test
+	public void testCounts() {
+		EventData data = new EventData();
+		data.storeEventForCurrentAppVersion(100D, 10, "1.0", "foo");
+		data.storeEventForCurrentAppVersion(200D, 10, "1.0", "foo");
+		data.storeEventForCurrentAppVersion(300D, 11, "1.1", "foo");
+		data.storeInteractionForCurrentAppVersion(400D, 11, "1.1", "bar");
+
+		assertEquals(3L, (long) data.getEventCountTotal("foo"));
+		assertEquals(2L, (long) data.getEventCountForVersionCode("foo", 10));
+		assertEquals(1L, (long) data.getEventCountForVersionCode("foo", 11));
+		assertEquals(0L, (long) data.getEventCountForVersionCode("foo", 12));
+		assertEquals(2L, (long) data.getEventCountForVersionName("foo", "1.0"));
+		assertEquals(1L, (long) data.getEventCountForVersionName("foo", "1.1"));
+		assertEquals(0L, (long) data.getEventCountForVersionName("foo", "1.2"));
+		assertEquals(300D, data.getTimeOfLastEventInvocation("foo"), 0.0);
+
+		assertEquals(1L, (long) data.getInteractionCountTotal("bar"));
+		assertEquals(1L, (long) data.getInteractionCountForVersionCode("bar", 11));
+		assertEquals(1L, (long) data.getInteractionCountForVersionName("bar", "1.1"));
+		assertEquals(400D, data.getTimeOfLastInteractionInvocation("bar"), 0.0);
+
+		assertEquals(0L, (long) data.getEventCountTotal("bar"));
+		assertEquals(0L, (long) data.getInteractionCountTotal("foo"));
+		assertNull(data.getTimeOfLastEventInvocation("bar"));
+		assertNull(data.getTimeOfLastInteractionInvocation("foo"));
+	}
+
+	@Test
+	public void testManyVersions() {
+		EventData data = new EventData();
+		for (int versionCode = 0; versionCode < 100; ++versionCode) {
+			for (int i = 0; i <= versionCode; ++i) {
+				data.storeEventForCurrentAppVersion(versionCode, versionCode, "1." + versionCode, "foo");
+			}
+		}
+		data.storeEventForCurrentAppVersion(0, -1, null, "foo");
+
+		for (int versionCode = 0; versionCode < 100; ++versionCode) {
+			assertEquals(versionCode + 1, (long) data.getEventCountForVersionCode("foo", versionCode));
+			assertEquals(versionCode + 1, (long) data.getEventCountForVersionName("foo", "1." + versionCode));
+		}
+		assertEquals(1L, (long) data.getEventCountForVersionCode("foo", -1));
+		assertEquals(1L, (long) data.getEventCountForVersionName("foo", null));
+	}
+
+	@Test
+	public void testSerialization() throws Exception {
+		EventData expected = new EventData();
+		expected.storeEventForCurrentAppVersion(100D, 10, "1.0", "foo");
+		expected.storeEventForCurrentAppVersion(200D, 11, null, "foo");
+		expected.storeInteractionForCurrentAppVersion(300D, 11, "1.1", "bar");
+
+		EventData actual = deserialize(serialize(expected));
+		assertEquals(expected.toString(), actual.toString());
+		assertEquals(2L, (long) actual.getEventCountTotal("foo"));
+		assertEquals(1L, (long) actual.getEventCountForVersionName("foo", null));
+		assertEquals(1L, (long) actual.getInteractionCountForVersionCode("bar", 11));
+		assertEquals(300D, actual.getTimeOfLastInteractionInvocation("bar"), 0.0);
+
+		// should keep working after being deserialized
+		actual.storeEventForCurrentAppVersion(400D, 11, "1.1", "foo");
+		assertEquals(1L, (long) actual.getEventCountForVersionName("foo", "1.1"));
+	}
+
+	@Test
+	public void testLegacySerialization() throws Exception {
+		EventData actual = deserialize(hexToBytes(LEGACY_EVENT_DATA));
+
+		assertEquals(3L, (long) actual.getEventCountTotal("local#app#init"));
+		assertEquals(2L, (long) actual.getEventCountForVersionCode("local#app#init", 10));
+		assertEquals(1L, (long) actual.getEventCountForVersionName("local#app#init", "1.1"));
+		assertEquals(300D, actual.getTimeOfLastEventInvocation("local#app#init"), 0.0);
+		assertEquals(1L, (long) actual.getInteractionCountTotal("526fe2836dd8bf546a00000b"));
+		assertEquals(1L, (long) actual.getInteractionCountForVersionName("526fe2836dd8bf546a00000b", "1.1"));
+		assertEquals(250D, actual.getTimeOfLastInteractionInvocation("526fe2836dd8bf546a00000b"), 0.0);
+	}
+
+	@Test
+	public void testMigration() {
+		EventRecord record = new EventRecord();
+		record.setLast(100D);
+		record.setTotal(3);
+		Map<Integer, Long> versionCodes = new HashMap<>();
+		versionCodes.put(1, 3L);
+		record.setVersionCodes(versionCodes);
+		Map<String, Long> versionNames = new HashMap<>();
+		versionNames.put("1.0", 3L);
+		record.setVersionNames(versionNames);
+
+		Map<String, EventRecord> records = new HashMap<>();
+		records.put("foo", record);
+
+		EventData data = new EventData();
+		data.setEvents(records);
+		data.setInteractions(null);
+
+		assertEquals(3L, (long) data.getEventCountTotal("foo"));
+		assertEquals(3L, (long) data.getEventCountForVersionCode("foo", 1));
+		assertEquals(3L, (long) data.getEventCountForVersionName("foo", "1.0"));
+		assertEquals(0L, (long) data.getInteractionCountTotal("foo"));
+	}
+
+	private static byte[] serialize(EventData data) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(bos);
+		oos.writeObject(data);
+		oos.close();
+		return bos.toByteArray();
+	}
+
+	private static EventData deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+		ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
+		try {
+			return (EventData) ois.readObject();
+		} finally {
+			ois.close();
+		}
+	}
+
+	private static byte[] hexToBytes(String hex) {
+		byte[] bytes = new byte[hex.length() / 2];
+		for (int i = 0; i < bytes.length; ++i) {
+			bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+		}
+		return bytes;
+	}
+}
@@ -7,6 +7,7 @@
 package com.apptentive.android.sdk.storage;
 
 import com.apptentive.android.sdk.TestCaseBase;
+import com.apptentive.android.sdk.model.PayloadBatch;
 import com.apptentive.android.sdk.model.PayloadData;
 import com.apptentive.android.sdk.model.PayloadType;
 import com.apptentive.android.sdk.network.HttpRequest;
@@ -23,6 +24,7 @@ import org.json.JSONObject;
 import org.junit.Before;
 import org.junit.Test;
 
+import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertFalse;
 import static junit.framework.TestCase.assertTrue;
 
@@ -43,7 +45,7 @@ public class JsonPayloadSenderTest extends TestCaseBase {
 		PayloadSender sender = new PayloadSender(requestSender, new HttpRequestRetryPolicyDefault());
 		sender.setListener(new PayloadSender.Listener() {
 			@Override
-			public void onFinishSending(PayloadSender sender, PayloadData payload, boolean cancelled, String errorMessage, int responseCode, JSONObject responseData) {
+			public void onFinishSending(PayloadSender sender, PayloadData payload, boolean cancelled, String errorMessage, int responseCode, JSONObject responseData, long retryAfterMillis) {
 				if (cancelled) {
 					addResult("cancelled: " + payload);
 				} else if (errorMessage != null) {
@@ -52,6 +54,11 @@ public class JsonPayloadSenderTest extends TestCaseBase {
 					addResult("succeed: " + payload);
 				}
 			}
+
+			@Override
+			public void onRejectBatch(PayloadSender sender, PayloadBatch batch, int responseCode) {
+				addResult("rejected: " + batch);
+			}
 		});
 
 		final MockPayload payload1 = new MockPayload("key1", "value1");
@@ -90,12 +97,96 @@ public class JsonPayloadSenderTest extends TestCaseBase {
 		);
 	}
 
+	@Test
+	public void testSendPayloadsConcurrently() throws Exception {
+		final MockPayloadRequestSender requestSender = new MockPayloadRequestSender();
+
+		PayloadSender sender = new PayloadSender(requestSender, new HttpRequestRetryPolicyDefault(), 3);
+		sender.setListener(new PayloadSender.Listener() {
+			@Override
+			public void onFinishSending(PayloadSender sender, PayloadData payload, boolean cancelled, String errorMessage, int responseCode, JSONObject responseData, long retryAfterMillis) {
+				addResult(errorMessage == null ? "succeed: " + payload : "failed: " + payload);
+			}
+
+			@Override
+			public void onRejectBatch(PayloadSender sender, PayloadBatch batch, int responseCode) {
+				addResult("rejected: " + batch);
+			}
+		});
+
+		final MockPayload payload1 = new MockPayload(PayloadType.event, "1", "key1", "value1").setResponseCode(500);
+		final MockPayload payload2 = new MockPayload(PayloadType.event, "2", "key2", "value2");
+		final MockPayload payload3 = new MockPayload(PayloadType.event, "3", "key3", "value3");
+		final MockPayload payload4 = new MockPayload(PayloadType.event, "4", "key4", "value4");
+
+		assertTrue(sender.sendPayload(payload1));
+		assertFalse(sender.sendPayload(payload1)); // already in flight
+		assertTrue(sender.sendPayload(payload2));
+		assertTrue(sender.sendPayload(payload3));
+		assertTrue(sender.isBusy());
+		assertFalse(sender.sendPayload(payload4)); // would not start sending until a request slot is free
+
+		networkQueue.dispatchTasks();
+		assertResult(
+			"succeed: {'key2':'value2'}",
+			"succeed: {'key3':'value3'}",
+			"failed: {'key1':'value1'}" // NOTE: this request is retried so it finishes last
+		);
+		assertFalse(sender.isSendingPayload());
+
+		assertTrue(sender.sendPayload(payload4));
+		networkQueue.dispatchTasks();
+		assertResult(
+			"succeed: {'key4':'value4'}"
+		);
+	}
+
+	@Test
+	public void testSendOrder() throws Exception {
+		final MockPayloadRequestSender requestSender = new MockPayloadRequestSender();
+		PayloadSender sender = new PayloadSender(requestSender, new HttpRequestRetryPolicyDefault(), 3);
+
+		final MockPayload message1 = new MockPayload(PayloadType.message, "m1", "key", "message1");
+		final MockPayload message2 = new MockPayload(PayloadType.message, "m2", "key", "message2");
+		final MockPayload person = new MockPayload(PayloadType.person, "p1", "key", "person");
+		final MockPayload event = new MockPayload(PayloadType.event, "e1", "key", "event");
+		final MockPayload logout = new MockPayload(PayloadType.logout, "l1", "key", "logout");
+
+		// serial payloads go one at a time but events can pass them
+		assertTrue(sender.sendPayload(message1));
+		assertEquals(PayloadSender.SendDecision.SKIP, sender.getSendDecision(message1.getNonce(), message1.getType()));
+		assertEquals(PayloadSender.SendDecision.SKIP, sender.getSendDecision(message2.getNonce(), message2.getType()));
+		assertEquals(PayloadSender.SendDecision.SKIP, sender.getSendDecision(person.getNonce(), person.getType()));
+		assertFalse(sender.sendPayload(message2));
+		assertEquals(PayloadSender.SendDecision.SEND, sender.getSendDecision(event.getNonce(), event.getType()));
+		assertTrue(sender.sendPayload(event));
+
+		// logout waits for everything in flight
+		assertEquals(PayloadSender.SendDecision.STOP, sender.getSendDecision(logout.getNonce(), logout.getType()));
+		assertFalse(sender.sendPayload(logout));
+
+		networkQueue.dispatchTasks();
+		assertFalse(sender.isSendingPayload());
+
+		// nothing can pass logout
+		assertTrue(sender.sendPayload(logout));
+		assertEquals(PayloadSender.SendDecision.STOP, sender.getSendDecision(event.getNonce(), event.getType()));
+		assertEquals(PayloadSender.SendDecision.STOP, sender.getSendDecision(message2.getNonce(), message2.getType()));
+
+		networkQueue.dispatchTasks();
+		assertEquals(PayloadSender.SendDecision.SEND, sender.getSendDecision(message2.getNonce(), message2.getType()));
+	}
+
 	class MockPayload extends PayloadData {
 		private final String json;
 		private ResponseHandler responseHandler;
 
 		public MockPayload(String key, Object value) {
-			super(PayloadType.unknown, "nonce", "conversationId", new byte[0], "authToken", "contentType", "path", HttpRequestMethod.GET, false); // TODO: figure out a better type
+			this(PayloadType.unknown, "nonce", key, value); // TODO: figure out a better type
+		}
+
+		public MockPayload(PayloadType type, String nonce, String key, Object value) {
+			super(type, nonce, "conversationId", new byte[0], "authToken", "contentType", "path", HttpRequestMethod.GET, false);
 
 			json = StringUtils.format("{'%s':'%s'}", key, value);
 			responseHandler = new DefaultResponseHandler();
@@ -136,5 +227,13 @@ public class JsonPayloadSenderTest extends TestCaseBase {
 			request.setRequestManager(requestManager);
 			return request;
 		}
+
+		@Override
+		public HttpRequest createPayloadBatchSendRequest(PayloadBatch batch, HttpRequest.Listener<HttpRequest> listener) {
+			MockHttpRequest request = new MockHttpRequest("http://apptentive.com");
+			request.addListener(listener);
+			request.setRequestManager(requestManager);
+			return request;
+		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2017, Apptentive, Inc. All Rights Reserved.
+ * Please refer to the LICENSE file for the terms and conditions
+ * under which redistribution and use of this file is permitted.
+ */
+
+package com.apptentive.android.sdk.storage;
+
+import com.apptentive.android.sdk.model.PayloadType;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class PayloadMetricsTest {
+
+	private long currentTime;
+	private PayloadMetrics metrics;
+
+	@Before
+	public void setUp() {
+		currentTime = 1000;
+		metrics = new PayloadMetrics() {
+			@Override
+			long getCurrentTimeMillis() {
+				return currentTime;
+			}
+		};
+	}
+
+	@Test
+	public void testStageLatencies() {
+		metrics.onPayloadEnqueued("1");
+		metrics.onPayloadEnqueued("2");
+		currentTime += 40;
+		metrics.onPayloadPersisted("1", PayloadType.event, 100);
+		metrics.onPayloadPersisted("2", PayloadType.message, 300);
+		currentTime += 3000;
+		metrics.onPayloadSendStarted("1");
+		metrics.onPayloadSendStarted("2");
+		metrics.onRequestFinished(150);
+
+		PayloadMetricsSnapshot snapshot = metrics.snapshot();
+		assertEquals(2, snapshot.getEnqueueLatency().getCount());
+		assertEquals(40, snapshot.getEnqueueLatency().getMax());
+		assertEquals(2, snapshot.getQueueingDelay().getCount());
+		assertEquals(3000, snapshot.getQueueingDelay().getMean());
+		assertEquals(1, snapshot.getHttpDuration().getCount());
+		assertEquals(150, snapshot.getHttpDuration().getSum());
+		assertEquals(Long.valueOf(100), snapshot.getPersistedBytes().get(PayloadType.event));
+		assertEquals(Long.valueOf(300), snapshot.getPersistedBytes().get(PayloadType.message));
+	}
+
+	@Test
+	public void testUntrackedPayloads() {
+		// persisted by a previous session
+		metrics.onPayloadSendStarted("1");
+
+		// aggregated into another payload
+		metrics.onPayloadEnqueued("2");
+		metrics.onPayloadDiscarded("2");
+		metrics.onPayloadPersisted("2", PayloadType.event, 10);
+
+		// never performed
+		metrics.onRequestFinished(-1);
+
+		PayloadMetricsSnapshot snapshot = metrics.snapshot();
+		assertEquals(0, snapshot.getEnqueueLatency().getCount());
+		assertEquals(0, snapshot.getQueueingDelay().getCount());
+		assertEquals(0, snapshot.getHttpDuration().getCount());
+	}
+
+	@Test
+	public void testSendResults() {
+		metrics.onPayloadSendFinished(PayloadType.event, 100, 200, true);
+		metrics.onPayloadSendFinished(PayloadType.event, 50, 201, true);
+		metrics.onPayloadSendFinished(PayloadType.person, 20, 200, true);
+		metrics.onPayloadSendFinished(PayloadType.event, 70, 503, false);
+		metrics.onPayloadSendFinished(PayloadType.event, 70, 503, false);
+		metrics.onPayloadSendFinished(PayloadType.message, 80, -1, false);
+		metrics.onRetryScheduled();
+
+		PayloadMetricsSnapshot snapshot = metrics.snapshot();
+		assertEquals(Long.valueOf(150), snapshot.getSentBytes().get(PayloadType.event));
+		assertEquals(Long.valueOf(20), snapshot.getSentBytes().get(PayloadType.person));
+		assertNull(snapshot.getSentBytes().get(PayloadType.message));
+		assertEquals(Long.valueOf(2), snapshot.getSentCounts().get(PayloadType.event));
+		assertEquals(Long.valueOf(2), snapshot.getFailureCounts().get(503));
+		assertEquals(Long.valueOf(1), snapshot.getFailureCounts().get(-1));
+		assertEquals(1, snapshot.getRetryCount());
+	}
+
+	@Test
+	public void testQueueSize() {
+		assertEquals(-1, metrics.snapshot().getQueueDepth());
+
+		metrics.onQueueSizeChanged(10, 1000);
+		metrics.onQueueSizeChanged(4, 400);
+
+		PayloadMetricsSnapshot snapshot = metrics.snapshot();
+		assertEquals(4, snapshot.getQueueDepth());
+		assertEquals(400, snapshot.getQueueBytes());
+		assertEquals(10, snapshot.getMaxQueueDepth());
+
+		metrics.onQueueCleared();
+		assertEquals(0, metrics.snapshot().getQueueDepth());
+		assertEquals(10, metrics.snapshot().getMaxQueueDepth());
+	}
+
+	@Test
+	public void testHistogram() {
+		long[] values = { 0, 1, 3, 4, 30, 30, 30, 90, 700, 5000000 };
+		for (long value : values) {
+			metrics.onRequestFinished(value);
+		}
+
+		PayloadMetricsSnapshot.Histogram histogram = metrics.snapshot().getHttpDuration();
+		assertEquals(10, histogram.getCount());
+		assertEquals(0, histogram.getMin());
+		assertEquals(5000000, histogram.getMax());
+
+		long[] bucketCounts = histogram.getBucketCounts();
+		assertEquals(PayloadMetrics.HISTOGRAM_BUCKET_UPPER_BOUNDS.length + 1, bucketCounts.length);
+		assertEquals(2, bucketCounts[0]); // <= 1
+		assertEquals(2, bucketCounts[2]); // <= 5
+		assertEquals(3, bucketCounts[5]); // <= 50
+		assertEquals(1, bucketCounts[bucketCounts.length - 1]); // unbounded
+
+		assertEquals(1, histogram.getPercentile(0.1));
+		assertEquals(50, histogram.getPercentile(0.5));
+		assertEquals(1000, histogram.getPercentile(0.9));
+		assertEquals(5000000, histogram.getPercentile(1));
+	}
+
+	@Test
+	public void testSnapshotIsReadOnly() {
+		metrics.onPayloadSendFinished(PayloadType.event, 100, 200, true);
+		metrics.onRequestFinished(10);
+		PayloadMetricsSnapshot snapshot = metrics.snapshot();
+
+		metrics.onPayloadSendFinished(PayloadType.event, 100, 200, true);
+		metrics.onRequestFinished(10);
+		snapshot.getHttpDuration().getBucketCounts()[0] = 100;
+
+		assertEquals(Long.valueOf(100), snapshot.getSentBytes().get(PayloadType.event));
+		assertEquals(1, snapshot.getHttpDuration().getCount());
+		assertArrayEquals(metrics.snapshot().getHttpDuration().getBucketUpperBounds(), snapshot.getHttpDuration().getBucketUpperBounds());
+		assertEquals(0, snapshot.getHttpDuration().getBucketCounts()[0]);
+
+		try {
+			Map<PayloadType, Long> sentBytes = snapshot.getSentBytes();
+			sentBytes.put(PayloadType.message, 1L);
+			throw new AssertionError("Snapshot should not be modifiable");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+	}
+}
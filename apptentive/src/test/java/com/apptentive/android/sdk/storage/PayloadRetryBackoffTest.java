@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2017, Apptentive, Inc. All Rights Reserved.
+ * Please refer to the LICENSE file for the terms and conditions
+ * under which redistribution and use of this file is permitted.
+ */
+
+package com.apptentive.android.sdk.storage;
+
+import com.apptentive.android.sdk.network.HttpRequestRetryPolicyDefault;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.apptentive.android.sdk.storage.PayloadRetryBackoff.FailureClass.CONNECTION;
+import static com.apptentive.android.sdk.storage.PayloadRetryBackoff.FailureClass.SERVER;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PayloadRetryBackoffTest {
+
+	private HttpRequestRetryPolicyDefault retryPolicy;
+	private PayloadRetryBackoff backoff;
+
+	@Before
+	public void setUp() {
+		retryPolicy = new HttpRequestRetryPolicyDefault();
+		retryPolicy.setRetryTimeoutMillis(1000);
+		retryPolicy.setMaxRetryTimeoutMillis(10000);
+		retryPolicy.setRetryTimeoutJitter(0);
+		backoff = new PayloadRetryBackoff(retryPolicy);
+	}
+
+	@Test
+	public void testExponentialBackoff() {
+		assertEquals(1000, backoff.onFailure(CONNECTION, -1));
+		assertEquals(2000, backoff.onFailure(CONNECTION, -1));
+		assertEquals(4000, backoff.onFailure(CONNECTION, -1));
+		assertEquals(8000, backoff.onFailure(CONNECTION, -1));
+		assertEquals(10000, backoff.onFailure(CONNECTION, -1));
+		assertEquals(10000, backoff.onFailure(CONNECTION, -1));
+	}
+
+	@Test
+	public void testFailureClasses() {
+		assertEquals(1000, backoff.onFailure(CONNECTION, -1));
+		assertEquals(2000, backoff.onFailure(CONNECTION, -1));
+
+		// server errors back off separately
+		assertEquals(1000, backoff.onFailure(SERVER, -1));
+		assertEquals(4000, backoff.onFailure(CONNECTION, -1));
+		assertEquals(2000, backoff.onFailure(SERVER, -1));
+
+		assertEquals(3, backoff.getFailureCount(CONNECTION));
+		assertEquals(2, backoff.getFailureCount(SERVER));
+	}
+
+	@Test
+	public void testSuccessResetsBackoff() {
+		backoff.onFailure(CONNECTION, -1);
+		backoff.onFailure(CONNECTION, -1);
+		backoff.onFailure(SERVER, -1);
+
+		backoff.onSuccess();
+		assertEquals(0, backoff.getFailureCount(CONNECTION));
+		assertEquals(0, backoff.getFailureCount(SERVER));
+		assertEquals(1000, backoff.onFailure(CONNECTION, -1));
+		assertEquals(1000, backoff.onFailure(SERVER, -1));
+	}
+
+	@Test
+	public void testRetryAfter() {
+		// longer delay requested by the server wins
+		assertEquals(30000, backoff.onFailure(SERVER, 30000));
+
+		// shorter one doesn't make us retry sooner
+		assertEquals(2000, backoff.onFailure(SERVER, 500));
+
+		// bogus values are capped
+		assertEquals(PayloadRetryBackoff.MAX_RETRY_AFTER_MILLIS, backoff.onFailure(SERVER, 7 * 24 * 60 * 60 * 1000L));
+	}
+
+	@Test
+	public void testJitter() {
+		retryPolicy = new HttpRequestRetryPolicyDefault() {
+			@Override
+			protected float nextRandom() {
+				return 1.0f;
+			}
+		};
+		retryPolicy.setRetryTimeoutMillis(1000);
+		retryPolicy.setMaxRetryTimeoutMillis(10000);
+		retryPolicy.setRetryTimeoutJitter(0.5f);
+		backoff = new PayloadRetryBackoff(retryPolicy);
+
+		assertEquals(500, backoff.onFailure(CONNECTION, -1));
+		assertEquals(1000, backoff.onFailure(CONNECTION, -1));
+
+		// default policy stays within the jitter range
+		HttpRequestRetryPolicyDefault defaultPolicy = new HttpRequestRetryPolicyDefault();
+		for (int i = 0; i < 100; ++i) {
+			long timeout = defaultPolicy.getRetryTimeoutMillis(1);
+			assertTrue(timeout > HttpRequestRetryPolicyDefault.DEFAULT_RETRY_TIMEOUT_MILLIS / 2 - 1);
+			assertTrue(timeout <= HttpRequestRetryPolicyDefault.DEFAULT_RETRY_TIMEOUT_MILLIS);
+		}
+	}
+}
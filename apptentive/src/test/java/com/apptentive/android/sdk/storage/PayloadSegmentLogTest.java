@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2017, Apptentive, Inc. All Rights Reserved.
+ * Please refer to the LICENSE file for the terms and conditions
+ * under which redistribution and use of this file is permitted.
+ */
+
+package com.apptentive.android.sdk.storage;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class PayloadSegmentLogTest {
+	private static final long MAX_SEGMENT_SIZE = 100;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File directory;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = folder.newFolder("payloads");
+	}
+
+	@Test
+	public void testAppendAndRead() throws IOException {
+		PayloadSegmentLog log = openLog(Collections.<Integer, Long>emptyMap());
+
+		PayloadSegmentLog.Location first = log.append(bytes("first"));
+		PayloadSegmentLog.Location second = log.append(bytes("second"));
+		log.sync();
+
+		assertEquals(first.segment, second.segment);
+		assertEquals(0, first.offset);
+		assertEquals(5, second.offset);
+		assertEquals("first", read(log, first));
+		assertEquals("second", read(log, second));
+
+		// small bodies share a single file
+		assertEquals(1, directory.listFiles().length);
+	}
+
+	@Test
+	public void testSegmentRollover() throws IOException {
+		PayloadSegmentLog log = openLog(Collections.<Integer, Long>emptyMap());
+
+		PayloadSegmentLog.Location first = log.append(new byte[60]);
+		PayloadSegmentLog.Location second = log.append(new byte[60]);
+		PayloadSegmentLog.Location third = log.append(new byte[60]);
+
+		assertEquals(first.segment, second.segment);
+		assertNotEquals(second.segment, third.segment);
+		assertEquals(0, third.offset);
+		assertEquals(2, log.getSegmentCount());
+	}
+
+	@Test
+	public void testReleaseDeletesDeadSegments() throws IOException {
+		PayloadSegmentLog log = openLog(Collections.<Integer, Long>emptyMap());
+
+		PayloadSegmentLog.Location first = log.append(new byte[60]);
+		PayloadSegmentLog.Location second = log.append(new byte[60]);
+		PayloadSegmentLog.Location third = log.append(new byte[60]); // starts a new segment
+
+		log.release(first.segment, first.length);
+		assertEquals(2, log.getSegmentCount());
+
+		log.release(second.segment, second.length);
+		assertEquals(1, log.getSegmentCount());
+		assertFalse(new File(directory, "segment-" + first.segment + ".log").exists());
+
+		// active segment is never deleted
+		log.release(third.segment, third.length);
+		assertEquals(1, log.getSegmentCount());
+	}
+
+	@Test
+	public void testFindSegmentToCompact() throws IOException {
+		PayloadSegmentLog log = openLog(Collections.<Integer, Long>emptyMap());
+
+		PayloadSegmentLog.Location first = log.append(new byte[30]);
+		PayloadSegmentLog.Location second = log.append(new byte[30]);
+		log.append(new byte[50]);
+		log.append(new byte[10]); // starts a new segment
+
+		assertEquals(-1, log.findSegmentToCompact(0.5f, Collections.<Integer>emptySet()));
+
+		log.release(first.segment, first.length);
+		assertEquals(-1, log.findSegmentToCompact(0.5f, Collections.<Integer>emptySet())); // 80 of 110 bytes are live
+
+		log.release(second.segment, second.length);
+		assertEquals(first.segment, log.findSegmentToCompact(0.5f, Collections.<Integer>emptySet())); // 50 of 110 bytes are live
+
+		// pinned segment is not compacted
+		assertEquals(-1, log.findSegmentToCompact(0.5f, Collections.singleton(first.segment)));
+	}
+
+	@Test
+	public void testReopen() throws IOException {
+		PayloadSegmentLog log = openLog(Collections.<Integer, Long>emptyMap());
+
+		PayloadSegmentLog.Location first = log.append(bytes("first"));
+		PayloadSegmentLog.Location second = log.append(new byte[100]);
+		PayloadSegmentLog.Location third = log.append(bytes("third"));
+		log.sync();
+		log.close();
+
+		assertNotEquals(first.segment, third.segment);
+
+		// the second segment is no longer referenced
+		Map<Integer, Long> liveBytes = new HashMap<>();
+		liveBytes.put(first.segment, (long) (first.length + second.length));
+		log.open(liveBytes);
+
+		assertEquals(1, log.getSegmentCount());
+		assertEquals("first", read(log, first));
+
+		// new bodies never go to the segments of the previous session
+		PayloadSegmentLog.Location fourth = log.append(bytes("fourth"));
+		assertNotEquals(first.segment, fourth.segment);
+		assertNotEquals(third.segment, fourth.segment);
+		assertEquals("fourth", read(log, fourth));
+	}
+
+	@Test
+	public void testAppendStream() throws IOException {
+		PayloadSegmentLog log = openLog(Collections.<Integer, Long>emptyMap());
+
+		PayloadSegmentLog.Location first = log.append(bytes("first"));
+		PayloadSegmentLog.Location second = log.append(new PayloadSegmentLog.BodyWriter() {
+			@Override
+			public void write(OutputStream stream) throws Exception {
+				stream.write(bytes("sec"));
+				stream.write(bytes("ond"));
+			}
+		});
+		PayloadSegmentLog.Location third = log.append(bytes("third"));
+
+		assertEquals(first.segment, second.segment);
+		assertEquals(5, second.offset);
+		assertEquals(6, second.length);
+		assertEquals(11, third.offset);
+		assertEquals("second", read(log, second));
+		assertEquals("third", read(log, third));
+	}
+
+	@Test
+	public void testAppendStreamFailure() throws IOException {
+		PayloadSegmentLog log = openLog(Collections.<Integer, Long>emptyMap());
+
+		PayloadSegmentLog.Location first = log.append(bytes("first"));
+		try {
+			log.append(new PayloadSegmentLog.BodyWriter() {
+				@Override
+				public void write(OutputStream stream) throws Exception {
+					stream.write(new byte[10000]);
+					throw new IllegalStateException("Rendering failed");
+				}
+			});
+			fail("Exception expected");
+		} catch (IOException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+
+		// partially written body is discarded
+		PayloadSegmentLog.Location second = log.append(bytes("second"));
+		assertEquals(first.segment, second.segment);
+		assertEquals(5, second.offset);
+		assertEquals(11, new File(directory, "segment-" + first.segment + ".log").length());
+		assertEquals("second", read(log, second));
+	}
+
+	@Test
+	public void testGetSegmentFile() throws IOException {
+		PayloadSegmentLog log = openLog(Collections.<Integer, Long>emptyMap());
+
+		log.append(bytes("first"));
+		PayloadSegmentLog.Location second = log.append(bytes("second"));
+
+		File file = log.getSegmentFile(second.segment, second.offset, second.length);
+		assertEquals(new File(directory, "segment-" + second.segment + ".log"), file);
+
+		// appended bytes are on the disk and can be read by other file handles
+		RandomAccessFile input = new RandomAccessFile(file, "r");
+		try {
+			byte[] data = new byte[second.length];
+			input.seek(second.offset);
+			input.readFully(data);
+			assertEquals("second", new String(data, "UTF-8"));
+		} finally {
+			input.close();
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testGetSegmentFileInvalidLocation() throws IOException {
+		PayloadSegmentLog log = openLog(Collections.<Integer, Long>emptyMap());
+		PayloadSegmentLog.Location location = log.append(bytes("body"));
+		log.getSegmentFile(location.segment, location.offset, location.length + 1);
+	}
+
+	@Test(expected = IOException.class)
+	public void testReadMissingSegment() throws IOException {
+		PayloadSegmentLog log = openLog(Collections.<Integer, Long>emptyMap());
+		log.read(10, 0, 1);
+	}
+
+	@Test
+	public void testClear() throws IOException {
+		assertTrue(new File(directory, "nonce.data").createNewFile()); // separate body file
+
+		PayloadSegmentLog log = openLog(Collections.<Integer, Long>emptyMap());
+		log.append(bytes("body"));
+		log.clear();
+
+		assertFalse(log.isOpen());
+		assertEquals(0, directory.listFiles().length);
+	}
+
+	//region Helpers
+
+	private PayloadSegmentLog openLog(Map<Integer, Long> liveBytes) {
+		PayloadSegmentLog log = new PayloadSegmentLog(directory, MAX_SEGMENT_SIZE);
+		log.open(liveBytes);
+		return log;
+	}
+
+	private static String read(PayloadSegmentLog log, PayloadSegmentLog.Location location) throws IOException {
+		return new String(log.read(location.segment, location.offset, location.length), "UTF-8");
+	}
+
+	private static byte[] bytes(String str) throws IOException {
+		return str.getBytes("UTF-8");
+	}
+
+	//endregion
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2017, Apptentive, Inc. All Rights Reserved.
+ * Please refer to the LICENSE file for the terms and conditions
+ * under which redistribution and use of this file is permitted.
+ */
+
+package com.apptentive.android.sdk.util;
+
+import org.junit.Assume;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measures the number of bytes allocated by the current thread (HotSpot only: tests are skipped on
+ * the JVMs which don't support thread allocation counters).
+ */
+public class AllocationTracker {
+
+	/**
+	 * Runs <code>runnable</code> twice (the first run warms up lazy caches and class loading) and
+	 * returns the number of bytes allocated by the second run.
+	 */
+	public static long measureAllocatedBytes(Runnable runnable) {
+		ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue("Thread allocation counters are not supported", threadBean instanceof com.sun.management.ThreadMXBean);
+
+		com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+		Assume.assumeTrue("Thread allocation counters are disabled", allocationBean.isThreadAllocatedMemorySupported() && allocationBean.isThreadAllocatedMemoryEnabled());
+
+		runnable.run(); // warm up
+
+		long threadId = Thread.currentThread().getId();
+		long start = allocationBean.getThreadAllocatedBytes(threadId);
+		runnable.run();
+		return allocationBean.getThreadAllocatedBytes(threadId) - start;
+	}
+}
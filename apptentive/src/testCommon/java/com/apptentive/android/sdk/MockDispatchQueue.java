@@ -47,9 +47,26 @@ public class MockDispatchQueue extends DispatchQueue {
 	}
 
 	private static void overrideMainQueue(DispatchQueue queue) {
+		overrideQueue(DispatchQueue.class.getDeclaredClasses()[0], "MAIN_QUEUE", queue);
+	}
+
+	/**
+	 * Replaces a queue stored in a static final field of a holder class (for example, a private
+	 * queue of a module).
+	 */
+	public static MockDispatchQueue overrideQueue(String holderClassName, String fieldName, boolean runImmediately) {
+		MockDispatchQueue queue = new MockDispatchQueue(runImmediately);
+		try {
+			overrideQueue(Class.forName(holderClassName), fieldName, queue);
+		} catch (ClassNotFoundException e) {
+			throw new AssertionError(e);
+		}
+		return queue;
+	}
+
+	private static void overrideQueue(Class<?> holderClass, String fieldName, DispatchQueue queue) {
 		try {
-			Class<?> holderClass = DispatchQueue.class.getDeclaredClasses()[0];
-			Field instanceField = holderClass.getDeclaredField("MAIN_QUEUE");
+			Field instanceField = holderClass.getDeclaredField(fieldName);
 			instanceField.setAccessible(true);
 
 			Field modifiersField = Field.class.getDeclaredField("modifiers");
@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) 2017, Apptentive, Inc. All Rights Reserved.
+ * Please refer to the LICENSE file for the terms and conditions
+ * under which redistribution and use of this file is permitted.
+ */
+
+package com.apptentive.android.sdk.network;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Minimal in-process HTTP/1.1 server for network tests. Each connection is handled on its own
+ * thread and supports keep-alive. An optional latency simulates a round-trip to a real server.
+ * Chunked and gzipped request bodies are decoded before they are passed to the handler.
+ */
+public class MockHttpServer {
+	private final RequestHandler handler;
+	private final ServerSocket serverSocket;
+	private final AtomicInteger requestCount;
+	private final AtomicLong receivedBodyBytes;
+	private volatile long latencyMillis;
+	private volatile boolean running;
+
+	public MockHttpServer(RequestHandler handler) throws IOException {
+		if (handler == null) {
+			throw new IllegalArgumentException("Handler is null");
+		}
+		this.handler = handler;
+		this.serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+		this.requestCount = new AtomicInteger();
+		this.receivedBodyBytes = new AtomicLong();
+	}
+
+	//region Lifecycle
+
+	public MockHttpServer start() {
+		running = true;
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				while (running) {
+					try {
+						final Socket socket = serverSocket.accept();
+						Thread connectionThread = new Thread(new Runnable() {
+							@Override
+							public void run() {
+								handleConnection(socket);
+							}
+						}, "Mock Http Server Connection");
+						connectionThread.setDaemon(true);
+						connectionThread.start();
+					} catch (IOException e) {
+						// server socket closed
+					}
+				}
+			}
+		}, "Mock Http Server");
+		thread.setDaemon(true);
+		thread.start();
+		return this;
+	}
+
+	public void stop() {
+		running = false;
+		try {
+			serverSocket.close();
+		} catch (IOException e) {
+			// ignore
+		}
+	}
+
+	//endregion
+
+	//region Connection
+
+	private void handleConnection(Socket socket) {
+		try {
+			InputStream input = new BufferedInputStream(socket.getInputStream());
+			OutputStream output = socket.getOutputStream();
+
+			String requestLine;
+			while ((requestLine = readLine(input)) != null && requestLine.length() > 0) {
+				String[] tokens = requestLine.split(" ");
+				String method = tokens[0];
+				String path = tokens[1];
+
+				int contentLength = 0;
+				boolean chunked = false;
+				boolean gzipped = false;
+				String header;
+				while ((header = readLine(input)) != null && header.length() > 0) {
+					int colon = header.indexOf(':');
+					if (colon == -1) {
+						continue;
+					}
+					String name = header.substring(0, colon).trim();
+					String value = header.substring(colon + 1).trim();
+					if (name.equalsIgnoreCase("Content-Length")) {
+						contentLength = Integer.parseInt(value);
+					} else if (name.equalsIgnoreCase("Transfer-Encoding")) {
+						chunked = value.equalsIgnoreCase("chunked");
+					} else if (name.equalsIgnoreCase("Content-Encoding")) {
+						gzipped = value.equalsIgnoreCase("gzip");
+					}
+				}
+
+				byte[] body = chunked ? readChunkedBody(input) : readBody(input, contentLength);
+				receivedBodyBytes.addAndGet(body.length);
+				if (gzipped) {
+					body = decompress(body);
+				}
+
+				requestCount.incrementAndGet();
+				if (latencyMillis > 0) {
+					Thread.sleep(latencyMillis);
+				}
+
+				Response response;
+				try {
+					response = handler.handleRequest(method, path, body);
+				} catch (Exception e) {
+					response = new Response(500, "{\"error\":\"" + e.getMessage() + "\"}");
+				}
+
+				byte[] responseBytes = response.body.getBytes("UTF-8");
+				String headers = "HTTP/1.1 " + response.code + " " + (response.code < 300 ? "OK" : "Error") + "\r\n" +
+					"Content-Type: application/json\r\n" +
+					"Content-Length: " + responseBytes.length + "\r\n" +
+					"\r\n";
+				output.write(headers.getBytes("UTF-8"));
+				output.write(responseBytes);
+				output.flush();
+			}
+		} catch (Exception e) {
+			// connection closed
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+
+	private static byte[] readBody(InputStream input, int length) throws IOException {
+		byte[] body = new byte[length];
+		int offset = 0;
+		while (offset < length) {
+			int read = input.read(body, offset, length - offset);
+			if (read == -1) {
+				throw new IOException("Unexpected end of stream");
+			}
+			offset += read;
+		}
+		return body;
+	}
+
+	private static byte[] readChunkedBody(InputStream input) throws IOException {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		while (true) {
+			String line = readLine(input);
+			if (line == null) {
+				throw new IOException("Unexpected end of stream");
+			}
+			int extension = line.indexOf(';');
+			int chunkLength = Integer.parseInt((extension != -1 ? line.substring(0, extension) : line).trim(), 16);
+			if (chunkLength == 0) {
+				break;
+			}
+			body.write(readBody(input, chunkLength));
+			readLine(input); // chunk terminator
+		}
+
+		// skip trailers
+		String trailer;
+		while ((trailer = readLine(input)) != null && trailer.length() > 0) {
+			// ignore
+		}
+		return body.toByteArray();
+	}
+
+	private static byte[] decompress(byte[] data) throws IOException {
+		InputStream input = new GZIPInputStream(new ByteArrayInputStream(data));
+		try {
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int read;
+			while ((read = input.read(buffer)) != -1) {
+				output.write(buffer, 0, read);
+			}
+			return output.toByteArray();
+		} finally {
+			input.close();
+		}
+	}
+
+	private static String readLine(InputStream input) throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		int b;
+		while ((b = input.read()) != -1) {
+			if (b == '\n') {
+				break;
+			}
+			if (b != '\r') {
+				line.write(b);
+			}
+		}
+		if (b == -1 && line.size() == 0) {
+			return null;
+		}
+		return line.toString("UTF-8");
+	}
+
+	//endregion
+
+	//region Getters/Setters
+
+	public String getUrl() {
+		return "http://127.0.0.1:" + serverSocket.getLocalPort();
+	}
+
+	public int getRequestCount() {
+		return requestCount.get();
+	}
+
+	/**
+	 * Returns the total size of the request bodies as they were received (before decompression)
+	 */
+	public long getReceivedBodyBytes() {
+		return receivedBodyBytes.get();
+	}
+
+	public void setLatencyMillis(long latencyMillis) {
+		this.latencyMillis = latencyMillis;
+	}
+
+	//endregion
+
+	//region Handler
+
+	public interface RequestHandler {
+		Response handleRequest(String method, String path, byte[] body) throws Exception;
+	}
+
+	public static class Response {
+		final int code;
+		final String body;
+
+		public Response(int code, String body) {
+			this.code = code;
+			this.body = body != null ? body : "";
+		}
+	}
+
+	//endregion
+}